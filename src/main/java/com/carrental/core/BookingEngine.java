@@ -0,0 +1,304 @@
+package com.carrental.core;
+
+import jakarta.servlet.ServletContext;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Admission control for bookings, so two customers cannot get the same car for overlapping times.
+ * <p>
+ * A booking first takes a hold on [start, end) of its vehicle: under the vehicle's lock stripe (one of STRIPES
+ * monitors, so bookers of different cars do not wait on each other) the range is checked against the other live
+ * holds of the vehicle and against its booked intervals in {@link VehicleAvailability}, and recorded if free.
+ * A customer who is still paying gets a hold that lives BOOKING_HOLD_SECONDS (default 900); OrderServlet takes a
+ * short one ({@link #CLAIM_MILLIS}) for the order insert itself. The hold is turned into a booking by
+ * {@link #confirm} once the order row is committed, or dropped by {@link #release} if the insert fails. A claim
+ * made with the customer's hold covers it rather than replacing it, so a failed insert leaves that hold in place.
+ * A customer may have at most BOOKING_MAX_HOLDS_PER_USER (default 5) live holds; an expired one counts until it
+ * is swept, at most a minute later.
+ * Conflicting requests are refused in memory without touching MySQL, so a burst on one hot car costs one
+ * database transaction per free slot rather than one per booker.
+ * <p>
+ * Holds live in this instance only and the availability index can lag changes made elsewhere, so the database
+ * stays the authority: the order insert locks the vehicle row and re-checks overlapping orders in the same
+ * transaction (see OrderServlet.createOrder).
+ */
+public class BookingEngine {
+    public static final int DEFAULT_HOLD_SECONDS = 900;
+    public static final int DEFAULT_MAX_HOLDS_PER_USER = 5;
+    /** Lifetime of the hold taken for an order insert; only matters if the request thread dies mid-insert. */
+    public static final long CLAIM_MILLIS = 30_000L;
+    private static final int STRIPES = 256;
+    private static final long SWEEP_MILLIS = 60_000L;
+
+    private static final String ATTRIBUTE = BookingEngine.class.getName();
+    private static final Object INIT_LOCK = new Object();
+
+    /** A reservation of [start, end) (epoch millis) on one vehicle until expiresAt. */
+    public static final class Hold {
+        public final String id;
+        public final long userId;
+        public final long vehicleId;
+        public final long start;
+        public final long end;
+        public final long expiresAt;
+        /** For a claim made with the customer's hold: that hold, dropped with the claim on confirm. */
+        final Hold covers;
+
+        Hold(String id, long userId, long vehicleId, long start, long end, long expiresAt, Hold covers) {
+            this.id = id;
+            this.userId = userId;
+            this.vehicleId = vehicleId;
+            this.start = start;
+            this.end = end;
+            this.expiresAt = expiresAt;
+            this.covers = covers;
+        }
+
+        boolean overlaps(long from, long to) {
+            return start < to && end > from;
+        }
+    }
+
+    /** The vehicle is booked or held by someone else over the requested range. */
+    public static class ConflictException extends Exception {
+        public ConflictException(String message) {
+            super(message);
+        }
+    }
+
+    private final VehicleAvailability availability;
+    private final long holdMillis;
+    private final int maxHoldsPerUser;
+    private final Object[] stripes = new Object[STRIPES];
+    // vehicle id -> its live holds; a list is only read or changed under the vehicle's stripe
+    private final ConcurrentHashMap<Long, List<Hold>> holdsByVehicle = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Hold> holdsById = new ConcurrentHashMap<>();
+    // user id -> number of their holds in holdsById
+    private final ConcurrentHashMap<Long, Integer> holdsPerUser = new ConcurrentHashMap<>();
+    private ScheduledExecutorService sweeper;
+
+    private final AtomicLong granted = new AtomicLong();
+    private final AtomicLong conflicts = new AtomicLong();
+    private final AtomicLong confirmed = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+
+    public BookingEngine(VehicleAvailability availability, long holdMillis) {
+        this(availability, holdMillis, DEFAULT_MAX_HOLDS_PER_USER);
+    }
+
+    public BookingEngine(VehicleAvailability availability, long holdMillis, int maxHoldsPerUser) {
+        this.availability = availability;
+        this.holdMillis = holdMillis;
+        this.maxHoldsPerUser = maxHoldsPerUser;
+        for (int i = 0; i < STRIPES; i++) stripes[i] = new Object();
+    }
+
+    /**
+     * The engine for the given context, over the context's {@link VehicleAvailability}. Hold lifetime and the
+     * per-customer limit come from BOOKING_HOLD_SECONDS and BOOKING_MAX_HOLDS_PER_USER (environment or context
+     * init param).
+     */
+    public static BookingEngine get(ServletContext context) {
+        Object existing = context.getAttribute(ATTRIBUTE);
+        if (existing instanceof BookingEngine) return (BookingEngine) existing;
+        synchronized (INIT_LOCK) {
+            existing = context.getAttribute(ATTRIBUTE);
+            if (existing instanceof BookingEngine) return (BookingEngine) existing;
+            int seconds = DEFAULT_HOLD_SECONDS;
+            try {
+                String v = System.getenv("BOOKING_HOLD_SECONDS");
+                if (v == null || v.isEmpty()) v = context.getInitParameter("BOOKING_HOLD_SECONDS");
+                if (v != null && !v.isEmpty()) seconds = Math.max(30, Integer.parseInt(v.trim()));
+            } catch (NumberFormatException ignore) {}
+            int maxHolds = DEFAULT_MAX_HOLDS_PER_USER;
+            try {
+                String v = System.getenv("BOOKING_MAX_HOLDS_PER_USER");
+                if (v == null || v.isEmpty()) v = context.getInitParameter("BOOKING_MAX_HOLDS_PER_USER");
+                if (v != null && !v.isEmpty()) maxHolds = Math.max(1, Integer.parseInt(v.trim()));
+            } catch (NumberFormatException ignore) {}
+            BookingEngine engine = new BookingEngine(VehicleAvailability.get(context), seconds * 1000L, maxHolds);
+            engine.sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "booking-hold-sweeper");
+                t.setDaemon(true);
+                return t;
+            });
+            engine.sweeper.scheduleWithFixedDelay(engine::sweep, SWEEP_MILLIS, SWEEP_MILLIS, TimeUnit.MILLISECONDS);
+            context.setAttribute(ATTRIBUTE, engine);
+            return engine;
+        }
+    }
+
+    public static void shutdown(ServletContext context) {
+        Object existing;
+        synchronized (INIT_LOCK) {
+            existing = context.getAttribute(ATTRIBUTE);
+            context.removeAttribute(ATTRIBUTE);
+        }
+        if (existing instanceof BookingEngine) {
+            ScheduledExecutorService s = ((BookingEngine) existing).sweeper;
+            if (s != null) s.shutdownNow();
+        }
+    }
+
+    private Object stripe(long vehicleId) {
+        return stripes[(int) ((vehicleId ^ (vehicleId >>> 32)) & (STRIPES - 1))];
+    }
+
+    /** Hold [start, end) of the vehicle for the customer while they pay. */
+    public Hold hold(long userId, long vehicleId, long start, long end) throws ConflictException {
+        return acquire(userId, vehicleId, start, end, null, holdMillis);
+    }
+
+    /**
+     * Hold for an order about to be inserted. With holdId, the customer's own live hold covering the range stands
+     * in for the availability check and stays in place until {@link #confirm}; otherwise the range must be free.
+     */
+    public Hold claim(long userId, long vehicleId, long start, long end, String holdId) throws ConflictException {
+        return acquire(userId, vehicleId, start, end, holdId, CLAIM_MILLIS);
+    }
+
+    private Hold acquire(long userId, long vehicleId, long start, long end, String holdId, long ttl) throws ConflictException {
+        if (end <= start) throw new IllegalArgumentException("Return time must be after pickup time");
+        long now = System.currentTimeMillis();
+        synchronized (stripe(vehicleId)) {
+            List<Hold> holds = holdsByVehicle.get(vehicleId);
+            Hold own = null;
+            if (holds != null) {
+                for (Iterator<Hold> it = holds.iterator(); it.hasNext(); ) {
+                    Hold h = it.next();
+                    if (h.expiresAt <= now) {
+                        it.remove();
+                        forget(h);
+                        expired.incrementAndGet();
+                        continue;
+                    }
+                    if (holdId != null && h.id.equals(holdId) && h.userId == userId) {
+                        own = h;
+                        continue;
+                    }
+                    if (h.overlaps(start, end)) {
+                        conflicts.incrementAndGet();
+                        throw new ConflictException("该车辆在所选时间段已被他人锁定，请稍后再试");
+                    }
+                }
+            }
+            if (holdId != null && (own == null || start < own.start || end > own.end)) {
+                conflicts.incrementAndGet();
+                throw new ConflictException("预订锁定已过期，请重新选择时间");
+            }
+            if (own == null && availability.isBooked(vehicleId, start, end)) {
+                conflicts.incrementAndGet();
+                throw new ConflictException("该车辆在所选时间段已被预订");
+            }
+            // a claim on the customer's own hold always goes through, so paying never hits the limit
+            if (!countHold(userId, own == null)) {
+                conflicts.incrementAndGet();
+                throw new ConflictException("锁定的车辆过多，请先完成或取消已有的预订");
+            }
+            Hold h = new Hold(UUID.randomUUID().toString().replace("-", ""), userId, vehicleId, start, end,
+                    own != null ? Math.max(own.expiresAt, now + ttl) : now + ttl, own);
+            holdsByVehicle.computeIfAbsent(vehicleId, k -> new ArrayList<>()).add(h);
+            holdsById.put(h.id, h);
+            granted.incrementAndGet();
+            return h;
+        }
+    }
+
+    /** The order holding h's range was committed: record the booking and drop the hold and the hold it covers. */
+    public void confirm(Hold h, long orderId) {
+        synchronized (stripe(h.vehicleId)) {
+            availability.bookingAdded(orderId, h.vehicleId, h.start, h.end);
+            drop(h);
+            if (h.covers != null) drop(h.covers);
+        }
+        confirmed.incrementAndGet();
+    }
+
+    /** Drop h only; a hold it covers stays until it expires or is confirmed by a later claim. */
+    public void release(Hold h) {
+        synchronized (stripe(h.vehicleId)) {
+            drop(h);
+        }
+    }
+
+    /** Release the customer's hold by id. Returns false if there is no such live hold of theirs. */
+    public boolean release(String holdId, long userId) {
+        Hold h = holdsById.get(holdId);
+        if (h == null || h.userId != userId) return false;
+        release(h);
+        return true;
+    }
+
+    private void drop(Hold h) {
+        forget(h);
+        List<Hold> holds = holdsByVehicle.get(h.vehicleId);
+        if (holds == null) return;
+        holds.remove(h);
+        if (holds.isEmpty()) holdsByVehicle.remove(h.vehicleId);
+    }
+
+    /**
+     * Count a new hold of the user. If limited, only while they have fewer than maxHoldsPerUser; returns false when
+     * the hold is refused.
+     */
+    private boolean countHold(long userId, boolean limited) {
+        boolean[] counted = {false};
+        holdsPerUser.compute(userId, (k, n) -> {
+            int c = n == null ? 0 : n;
+            if (limited && c >= maxHoldsPerUser) return n;
+            counted[0] = true;
+            return c + 1;
+        });
+        return counted[0];
+    }
+
+    // removes h from holdsById and the user's count; no-op if it is already gone
+    private void forget(Hold h) {
+        if (holdsById.remove(h.id) == null) return;
+        holdsPerUser.computeIfPresent(h.userId, (k, n) -> n <= 1 ? null : n - 1);
+    }
+
+    /** Drop expired holds of vehicles nobody has tried to book since. */
+    void sweep() {
+        long now = System.currentTimeMillis();
+        for (Long vehicleId : holdsByVehicle.keySet()) {
+            synchronized (stripe(vehicleId)) {
+                List<Hold> holds = holdsByVehicle.get(vehicleId);
+                if (holds == null) continue;
+                for (Iterator<Hold> it = holds.iterator(); it.hasNext(); ) {
+                    Hold h = it.next();
+                    if (h.expiresAt > now) continue;
+                    it.remove();
+                    forget(h);
+                    expired.incrementAndGet();
+                }
+                if (holds.isEmpty()) holdsByVehicle.remove(vehicleId);
+            }
+        }
+    }
+
+    public Map<String, Object> metrics() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("liveHolds", holdsById.size());
+        m.put("heldVehicles", holdsByVehicle.size());
+        m.put("holdingUsers", holdsPerUser.size());
+        m.put("granted", granted.get());
+        m.put("conflicts", conflicts.get());
+        m.put("confirmed", confirmed.get());
+        m.put("expired", expired.get());
+        m.put("holdSeconds", holdMillis / 1000L);
+        m.put("maxHoldsPerUser", maxHoldsPerUser);
+        return m;
+    }
+}
@@ -1,80 +1,19 @@
 package com.carrental.core;
 
-import java.io.BufferedReader;
-import java.io.InputStream;
-import java.io.InputStreamReader;
+import com.hdfsdrive.core.Database;
+
 import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.Statement;
 
 /**
- * Database schema initializer - reads and executes schema.sql
+ * Database access for the car-rental servlets. The schema itself is created and upgraded once at startup by
+ * {@link com.hdfsdrive.core.SchemaMigrator} (scripts in db/migration/).
  */
 public class DatabaseInitializer {
-    // Database configuration - use environment variables in production
-    private static final String JDBC_URL = System.getenv("DB_URL") != null 
-        ? System.getenv("DB_URL")
-        : "jdbc:mysql://localhost:3306/bigdata?useUnicode=true&characterEncoding=utf8&serverTimezone=UTC&allowMultiQueries=true";
-    private static final String JDBC_USER = System.getenv("DB_USER") != null 
-        ? System.getenv("DB_USER")
-        : "root";
-    private static final String JDBC_PASS = System.getenv("DB_PASSWORD") != null 
-        ? System.getenv("DB_PASSWORD")
-        : "123456"; // Default for development only - CHANGE IN PRODUCTION
-    
-    static {
-        try {
-            Class.forName("com.mysql.cj.jdbc.Driver");
-            initializeSchema();
-        } catch (Exception e) {
-            System.err.println("Failed to initialize database schema: " + e.getMessage());
-            e.printStackTrace();
-        }
-    }
-    
-    private static void initializeSchema() {
-        try (Connection conn = DriverManager.getConnection(JDBC_URL, JDBC_USER, JDBC_PASS)) {
-            InputStream is = DatabaseInitializer.class.getClassLoader().getResourceAsStream("schema.sql");
-            if (is == null) {
-                System.out.println("schema.sql not found, skipping database initialization");
-                return;
-            }
-            
-            BufferedReader reader = new BufferedReader(new InputStreamReader(is));
-            StringBuilder sql = new StringBuilder();
-            String line;
-            
-            while ((line = reader.readLine()) != null) {
-                line = line.trim();
-                if (line.isEmpty() || line.startsWith("--")) {
-                    continue;
-                }
-                sql.append(line).append(" ");
-            }
-            
-            String[] statements = sql.toString().split(";");
-            try (Statement stmt = conn.createStatement()) {
-                for (String statement : statements) {
-                    String trimmed = statement.trim();
-                    if (!trimmed.isEmpty()) {
-                        try {
-                            stmt.execute(trimmed);
-                        } catch (Exception e) {
-                            System.err.println("Failed to execute statement: " + trimmed.substring(0, Math.min(100, trimmed.length())));
-                            System.err.println("Error: " + e.getMessage());
-                        }
-                    }
-                }
-            }
-            
-            System.out.println("Database schema initialized successfully");
-        } catch (Exception e) {
-            System.err.println("Error initializing database: " + e.getMessage());
-            e.printStackTrace();
-        }
-    }
     
+    /**
+     * Borrow a connection from the shared pool; closing it returns it to the pool.
+     */
     public static Connection getConnection() throws Exception {
-        return DriverManager.getConnection(JDBC_URL, JDBC_USER, JDBC_PASS);
+        return Database.getConnection();
     }
 }
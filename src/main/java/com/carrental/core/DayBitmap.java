@@ -0,0 +1,329 @@
+package com.carrental.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Immutable compressed set of days (epoch day numbers), in the manner of a Roaring bitmap: days are split into
+ * chunks of 1024 by their high bits, and each chunk present is stored either as a 1024-bit bitmap (16 longs) or,
+ * when that is smaller, as a list of runs [start, end]. Rentals are stretches of consecutive days, so a vehicle's
+ * year usually fits in a few runs. and / or / cardinality work chunk by chunk and skip chunks only one side has.
+ */
+public final class DayBitmap {
+    private static final int CHUNK_BITS = 10;
+    private static final int CHUNK = 1 << CHUNK_BITS;
+    private static final int WORDS = CHUNK / 64;
+    /** A chunk with more runs than this is stored as a bitmap (2 chars per run against 64 chars of bitmap). */
+    private static final int MAX_RUNS = 32;
+
+    public static final DayBitmap EMPTY = new DayBitmap(new long[0], new Object[0]);
+
+    /** Receives maximal stretches of days [from, to] in increasing order. */
+    public interface RangeConsumer {
+        void accept(long from, long to);
+    }
+
+    // chunk keys, ascending; containers[i] is a long[WORDS] bitmap or a char[] of run (start, end) pairs
+    private final long[] keys;
+    private final Object[] containers;
+
+    private DayBitmap(long[] keys, Object[] containers) {
+        this.keys = keys;
+        this.containers = containers;
+    }
+
+    /** The days of [from, to] inclusive. */
+    public static DayBitmap range(long from, long to) {
+        return of(new long[][]{{from, to}});
+    }
+
+    /** The union of day ranges {from, to} (inclusive, any order, may overlap). */
+    public static DayBitmap of(long[][] ranges) {
+        if (ranges.length == 0) return EMPTY;
+        TreeMap<Long, long[]> acc = new TreeMap<>();
+        for (long[] r : ranges) {
+            for (long d = r[0]; d <= r[1]; ) {
+                long k = d >> CHUNK_BITS;
+                long chunkEnd = Math.min(r[1], ((k + 1) << CHUNK_BITS) - 1);
+                setRange(acc.computeIfAbsent(k, x -> new long[WORDS]), (int) (d - (k << CHUNK_BITS)), (int) (chunkEnd - (k << CHUNK_BITS)));
+                d = chunkEnd + 1;
+            }
+        }
+        return compressAll(acc);
+    }
+
+    private static void setRange(long[] bits, int from, int to) {
+        for (int i = from; i <= to; ) {
+            int w = i >>> 6;
+            int lastInWord = Math.min(to, (w << 6) + 63);
+            int len = lastInWord - i + 1;
+            long mask = len == 64 ? -1L : ((1L << len) - 1) << (i & 63);
+            bits[w] |= mask;
+            i = lastInWord + 1;
+        }
+    }
+
+    /** Runs if they take less room than the bitmap; null for an empty chunk. */
+    private static Object compress(long[] bits) {
+        char[] runs = new char[MAX_RUNS * 2];
+        int n = 0;
+        int i = nextSet(bits, 0);
+        while (i >= 0) {
+            int end = nextClear(bits, i) - 1;
+            if (n == runs.length) return bits;
+            runs[n++] = (char) i;
+            runs[n++] = (char) end;
+            i = end + 1 < CHUNK ? nextSet(bits, end + 1) : -1;
+        }
+        return n == 0 ? null : Arrays.copyOf(runs, n);
+    }
+
+    private static int nextSet(long[] bits, int from) {
+        int w = from >>> 6;
+        if (w >= WORDS) return -1;
+        long word = bits[w] & (-1L << (from & 63));
+        while (true) {
+            if (word != 0) return (w << 6) + Long.numberOfTrailingZeros(word);
+            if (++w == WORDS) return -1;
+            word = bits[w];
+        }
+    }
+
+    private static int nextClear(long[] bits, int from) {
+        int w = from >>> 6;
+        if (w >= WORDS) return CHUNK;
+        long word = ~bits[w] & (-1L << (from & 63));
+        while (true) {
+            if (word != 0) return (w << 6) + Long.numberOfTrailingZeros(word);
+            if (++w == WORDS) return CHUNK;
+            word = ~bits[w];
+        }
+    }
+
+    private static long[] toBits(Object container) {
+        if (container instanceof long[]) return (long[]) container;
+        long[] bits = new long[WORDS];
+        char[] runs = (char[]) container;
+        for (int i = 0; i < runs.length; i += 2) setRange(bits, runs[i], runs[i + 1]);
+        return bits;
+    }
+
+    public boolean isEmpty() {
+        return keys.length == 0;
+    }
+
+    public long cardinality() {
+        long n = 0;
+        for (Object c : containers) n += count(c, 0, CHUNK - 1);
+        return n;
+    }
+
+    /** Number of days in [from, to]. */
+    public long cardinality(long from, long to) {
+        if (to < from) return 0;
+        long n = 0;
+        for (int i = firstChunk(from >> CHUNK_BITS); i < keys.length && keys[i] <= to >> CHUNK_BITS; i++) {
+            long base = keys[i] << CHUNK_BITS;
+            int lo = (int) Math.max(0, from - base);
+            int hi = (int) Math.min(CHUNK - 1, to - base);
+            n += count(containers[i], lo, hi);
+        }
+        return n;
+    }
+
+    private int firstChunk(long key) {
+        int i = Arrays.binarySearch(keys, key);
+        return i >= 0 ? i : -i - 1;
+    }
+
+    private static long count(Object c, int lo, int hi) {
+        if (c instanceof char[]) {
+            char[] runs = (char[]) c;
+            long n = 0;
+            for (int i = 0; i < runs.length; i += 2) {
+                int a = Math.max(lo, runs[i]), b = Math.min(hi, runs[i + 1]);
+                if (a <= b) n += b - a + 1;
+            }
+            return n;
+        }
+        long[] bits = (long[]) c;
+        long n = 0;
+        for (int w = lo >>> 6; w <= hi >>> 6; w++) {
+            long word = bits[w];
+            if (w == lo >>> 6) word &= -1L << (lo & 63);
+            if (w == hi >>> 6 && (hi & 63) != 63) word &= (1L << ((hi & 63) + 1)) - 1;
+            n += Long.bitCount(word);
+        }
+        return n;
+    }
+
+    public boolean contains(long day) {
+        return cardinality(day, day) > 0;
+    }
+
+    public DayBitmap and(DayBitmap o) {
+        List<Long> k = new ArrayList<>();
+        List<Object> c = new ArrayList<>();
+        int i = 0, j = 0;
+        while (i < keys.length && j < o.keys.length) {
+            if (keys[i] < o.keys[j]) i++;
+            else if (keys[i] > o.keys[j]) j++;
+            else {
+                long[] a = toBits(containers[i]), b = toBits(o.containers[j]);
+                long[] r = new long[WORDS];
+                for (int w = 0; w < WORDS; w++) r[w] = a[w] & b[w];
+                Object compressed = compress(r);
+                if (compressed != null) {
+                    k.add(keys[i]);
+                    c.add(compressed);
+                }
+                i++;
+                j++;
+            }
+        }
+        return build(k, c);
+    }
+
+    public DayBitmap or(DayBitmap o) {
+        if (o.isEmpty()) return this;
+        if (isEmpty()) return o;
+        List<Long> k = new ArrayList<>();
+        List<Object> c = new ArrayList<>();
+        int i = 0, j = 0;
+        while (i < keys.length || j < o.keys.length) {
+            if (j == o.keys.length || (i < keys.length && keys[i] < o.keys[j])) {
+                k.add(keys[i]);
+                c.add(containers[i++]);
+            } else if (i == keys.length || o.keys[j] < keys[i]) {
+                k.add(o.keys[j]);
+                c.add(o.containers[j++]);
+            } else {
+                long[] a = toBits(containers[i]), b = toBits(o.containers[j]);
+                long[] r = new long[WORDS];
+                for (int w = 0; w < WORDS; w++) r[w] = a[w] | b[w];
+                k.add(keys[i]);
+                c.add(compress(r));
+                i++;
+                j++;
+            }
+        }
+        return build(k, c);
+    }
+
+    private static DayBitmap build(List<Long> k, List<Object> c) {
+        if (k.isEmpty()) return EMPTY;
+        long[] keys = new long[k.size()];
+        for (int i = 0; i < keys.length; i++) keys[i] = k.get(i);
+        return new DayBitmap(keys, c.toArray());
+    }
+
+    /** Union of many bitmaps, each chunk compressed once at the end rather than after every pairwise or. */
+    public static DayBitmap orAll(Collection<DayBitmap> maps) {
+        TreeMap<Long, long[]> acc = new TreeMap<>();
+        for (DayBitmap m : maps) {
+            for (int i = 0; i < m.keys.length; i++) {
+                long[] bits = acc.computeIfAbsent(m.keys[i], k -> new long[WORDS]);
+                Object c = m.containers[i];
+                if (c instanceof char[]) {
+                    char[] runs = (char[]) c;
+                    for (int x = 0; x < runs.length; x += 2) setRange(bits, runs[x], runs[x + 1]);
+                } else {
+                    long[] other = (long[]) c;
+                    for (int w = 0; w < WORDS; w++) bits[w] |= other[w];
+                }
+            }
+        }
+        return compressAll(acc);
+    }
+
+    /** Intersection of many bitmaps; stops as soon as it is empty. Empty for no bitmaps. */
+    public static DayBitmap andAll(Collection<DayBitmap> maps) {
+        TreeMap<Long, long[]> acc = null;
+        for (DayBitmap m : maps) {
+            if (acc == null) {
+                acc = new TreeMap<>();
+                for (int i = 0; i < m.keys.length; i++) acc.put(m.keys[i], toBits(m.containers[i]).clone());
+                continue;
+            }
+            Iterator<Map.Entry<Long, long[]>> it = acc.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<Long, long[]> e = it.next();
+                int at = Arrays.binarySearch(m.keys, e.getKey());
+                if (at < 0) {
+                    it.remove();
+                    continue;
+                }
+                long[] bits = e.getValue(), other = toBits(m.containers[at]);
+                long any = 0;
+                for (int w = 0; w < WORDS; w++) any |= bits[w] &= other[w];
+                if (any == 0) it.remove();
+            }
+            if (acc.isEmpty()) break;
+        }
+        return acc == null ? EMPTY : compressAll(acc);
+    }
+
+    private static DayBitmap compressAll(TreeMap<Long, long[]> acc) {
+        List<Long> k = new ArrayList<>(acc.size());
+        List<Object> c = new ArrayList<>(acc.size());
+        for (Map.Entry<Long, long[]> e : acc.entrySet()) {
+            Object compressed = compress(e.getValue());
+            if (compressed != null) {
+                k.add(e.getKey());
+                c.add(compressed);
+            }
+        }
+        return build(k, c);
+    }
+
+    /** Call consumer with each maximal stretch of days within [from, to], in order. */
+    public void forEachRange(long from, long to, RangeConsumer consumer) {
+        if (to < from) return;
+        // a stretch is held back until the next one is known, so runs continuing across a chunk boundary are joined
+        long[] pending = {0L, Long.MIN_VALUE};
+        for (int i = firstChunk(from >> CHUNK_BITS); i < keys.length && keys[i] <= to >> CHUNK_BITS; i++) {
+            long base = keys[i] << CHUNK_BITS;
+            int lo = (int) Math.max(0, from - base);
+            int hi = (int) Math.min(CHUNK - 1, to - base);
+            Object c = containers[i];
+            if (c instanceof char[]) {
+                char[] runs = (char[]) c;
+                for (int x = 0; x < runs.length; x += 2) {
+                    int a = Math.max(lo, runs[x]), b = Math.min(hi, runs[x + 1]);
+                    if (a <= b) emit(pending, base + a, base + b, consumer);
+                }
+            } else {
+                long[] bits = (long[]) c;
+                int a = nextSet(bits, lo);
+                while (a >= 0 && a <= hi) {
+                    int b = Math.min(hi, nextClear(bits, a) - 1);
+                    emit(pending, base + a, base + b, consumer);
+                    a = b + 1 < CHUNK ? nextSet(bits, b + 1) : -1;
+                }
+            }
+        }
+        if (pending[1] != Long.MIN_VALUE) consumer.accept(pending[0], pending[1]);
+    }
+
+    private static void emit(long[] pending, long a, long b, RangeConsumer consumer) {
+        if (pending[1] != Long.MIN_VALUE && a == pending[1] + 1) {
+            pending[1] = b;
+            return;
+        }
+        if (pending[1] != Long.MIN_VALUE) consumer.accept(pending[0], pending[1]);
+        pending[0] = a;
+        pending[1] = b;
+    }
+
+    /** Approximate heap bytes of the containers, for metrics. */
+    public long sizeInBytes() {
+        long n = 16L + keys.length * 8L;
+        for (Object c : containers) n += 16L + (c instanceof long[] ? WORDS * 8L : ((char[]) c).length * 2L);
+        return n;
+    }
+}
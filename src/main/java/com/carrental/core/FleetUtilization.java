@@ -0,0 +1,506 @@
+package com.carrental.core;
+
+import com.hdfsdrive.core.Database;
+import jakarta.servlet.ServletContext;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Fleet utilization: on which days each vehicle was (or is booked to be) out on rent.
+ * <p>
+ * Every vehicle keeps one {@link DayBitmap} of its rented days, built from its orders that were not cancelled
+ * (actual pickup / return times when recorded, planned ones otherwise). A day counts as rented when the booking
+ * covers noon of that day, so a 09:00-to-09:00 rental is one day, not two; a booking that covers no noon at all
+ * counts its pickup day. "% of days rented" is a range cardinality per vehicle summed over the group; the days a
+ * group had any car out and the days all of its cars were out are the OR and the AND of its members' bitmaps; peak
+ * days come from the members' runs of rented days, one pair of counter updates per run.
+ * <p>
+ * As in {@link VehicleAvailability}, a vehicle's state is immutable and replaced whole, so reports read without
+ * locks. Orders created through OrderServlet are applied at once; everything is rebuilt from the database every
+ * UTILIZATION_RESYNC_MINUTES (default 15), reading UTILIZATION_HISTORY_DAYS (default 730) of history. Changes made
+ * while a rebuild reads the database are replayed onto the new state before it is swapped in.
+ */
+public class FleetUtilization {
+    public static final int DEFAULT_RESYNC_MINUTES = 15;
+    public static final int DEFAULT_HISTORY_DAYS = 730;
+    public static final String CANCELLED_STATUS = "CANCELLED";
+
+    private static final String ATTRIBUTE = FleetUtilization.class.getName();
+    private static final Object INIT_LOCK = new Object();
+    private static final LocalTime NOON = LocalTime.NOON;
+
+    public static final class Vehicle {
+        public final long id;
+        public final long categoryId;
+        public final long storeId;
+
+        public Vehicle(long id, long categoryId, long storeId) {
+            this.id = id;
+            this.categoryId = categoryId;
+            this.storeId = storeId;
+        }
+
+        long key(String groupBy) {
+            switch (groupBy) {
+                case "vehicle": return id;
+                case "category": return categoryId;
+                case "store": return storeId;
+                default: return 0L;
+            }
+        }
+    }
+
+    /** Utilization of one vehicle, category or store over a range of days. */
+    public static final class Group {
+        public final long key;
+        public final int vehicles;
+        public final long days;
+        /** Vehicle-days rented. */
+        public final long rentedDays;
+        /** Days on which at least one of the group's vehicles was rented. */
+        public final long activeDays;
+        /** Days on which every one of the group's vehicles was rented. */
+        public final long soldOutDays;
+
+        Group(long key, int vehicles, long days, long rentedDays, long activeDays, long soldOutDays) {
+            this.key = key;
+            this.vehicles = vehicles;
+            this.days = days;
+            this.rentedDays = rentedDays;
+            this.activeDays = activeDays;
+            this.soldOutDays = soldOutDays;
+        }
+
+        /** Share of vehicle-days rented, 0..1. */
+        public double utilization() {
+            return vehicles == 0 || days == 0 ? 0.0 : (double) rentedDays / ((double) vehicles * days);
+        }
+    }
+
+    /** How many of a store's vehicles were rented on one day. */
+    public static final class Day {
+        public final LocalDate date;
+        public final int rented;
+        public final int vehicles;
+
+        Day(LocalDate date, int rented, int vehicles) {
+            this.date = date;
+            this.rented = rented;
+            this.vehicles = vehicles;
+        }
+    }
+
+    private static final class Slot {
+        final Vehicle vehicle;
+        // orderIds[i] rents days [firstDays[i], lastDays[i]]
+        final long[] orderIds;
+        final long[] firstDays;
+        final long[] lastDays;
+        final DayBitmap days;
+
+        Slot(Vehicle vehicle, long[] orderIds, long[] firstDays, long[] lastDays, DayBitmap days) {
+            this.vehicle = vehicle;
+            this.orderIds = orderIds;
+            this.firstDays = firstDays;
+            this.lastDays = lastDays;
+            this.days = days;
+        }
+
+        static Slot of(Vehicle vehicle, long[] orderIds, long[] firstDays, long[] lastDays) {
+            long[][] ranges = new long[orderIds.length][];
+            for (int i = 0; i < ranges.length; i++) ranges[i] = new long[]{firstDays[i], lastDays[i]};
+            return new Slot(vehicle, orderIds, firstDays, lastDays, DayBitmap.of(ranges));
+        }
+
+        int indexOf(long orderId) {
+            for (int i = 0; i < orderIds.length; i++) if (orderIds[i] == orderId) return i;
+            return -1;
+        }
+
+        Slot withOrder(long orderId, long first, long last) {
+            int at = indexOf(orderId);
+            if (at < 0) {
+                int n = orderIds.length;
+                long[] o = Arrays.copyOf(orderIds, n + 1), f = Arrays.copyOf(firstDays, n + 1), l = Arrays.copyOf(lastDays, n + 1);
+                o[n] = orderId;
+                f[n] = first;
+                l[n] = last;
+                // a new order only adds days
+                return new Slot(vehicle, o, f, l, days.or(DayBitmap.range(first, last)));
+            }
+            long[] f = firstDays.clone(), l = lastDays.clone();
+            f[at] = first;
+            l[at] = last;
+            return of(vehicle, orderIds, f, l);
+        }
+
+        Slot withoutOrder(long orderId) {
+            int at = indexOf(orderId);
+            if (at < 0) return this;
+            return of(vehicle, drop(orderIds, at), drop(firstDays, at), drop(lastDays, at));
+        }
+
+        private static long[] drop(long[] a, int at) {
+            long[] out = new long[a.length - 1];
+            System.arraycopy(a, 0, out, 0, at);
+            System.arraycopy(a, at + 1, out, at, a.length - at - 1);
+            return out;
+        }
+    }
+
+    private static final long[] EMPTY = new long[0];
+
+    private static final class Index {
+        final Map<Long, Slot> slots = new ConcurrentHashMap<>();
+
+        void putOrder(long orderId, long vehicleId, long first, long last) {
+            Slot s = slots.get(vehicleId);
+            if (s == null) s = new Slot(new Vehicle(vehicleId, 0L, 0L), EMPTY, EMPTY, EMPTY, DayBitmap.EMPTY);
+            slots.put(vehicleId, s.withOrder(orderId, first, last));
+        }
+
+        void removeOrder(long orderId, long vehicleId) {
+            Slot s = slots.get(vehicleId);
+            if (s != null) slots.put(vehicleId, s.withoutOrder(orderId));
+        }
+
+        void putVehicle(Vehicle v) {
+            Slot s = slots.get(v.id);
+            slots.put(v.id, s == null ? new Slot(v, EMPTY, EMPTY, EMPTY, DayBitmap.EMPTY)
+                    : new Slot(v, s.orderIds, s.firstDays, s.lastDays, s.days));
+        }
+    }
+
+    private final ZoneId zone;
+    private volatile Index index = new Index();
+    private final Object writeLock = new Object();
+    // changes made while a rebuild reads the database; null when no rebuild is running
+    private List<Consumer<Index>> journal;
+    private final CountDownLatch loaded = new CountDownLatch(1);
+    private ScheduledExecutorService scheduler;
+    private int historyDays = DEFAULT_HISTORY_DAYS;
+
+    private final AtomicLong reports = new AtomicLong();
+    private final AtomicLong reportNanos = new AtomicLong();
+    private volatile long lastLoadAt;
+    private volatile long lastLoadMillis;
+    private volatile int lastLoadOrders;
+
+    public FleetUtilization() {
+        this(ZoneId.systemDefault());
+    }
+
+    public FleetUtilization(ZoneId zone) {
+        this.zone = zone;
+    }
+
+    /**
+     * The model for the given context, rebuilt in the background every UTILIZATION_RESYNC_MINUTES from
+     * UTILIZATION_HISTORY_DAYS of orders (environment or context init param). The first build starts immediately.
+     */
+    public static FleetUtilization get(ServletContext context) {
+        Object existing = context.getAttribute(ATTRIBUTE);
+        if (existing instanceof FleetUtilization) return (FleetUtilization) existing;
+        synchronized (INIT_LOCK) {
+            existing = context.getAttribute(ATTRIBUTE);
+            if (existing instanceof FleetUtilization) return (FleetUtilization) existing;
+            int minutes = setting(context, "UTILIZATION_RESYNC_MINUTES", DEFAULT_RESYNC_MINUTES);
+            FleetUtilization u = new FleetUtilization();
+            u.historyDays = setting(context, "UTILIZATION_HISTORY_DAYS", DEFAULT_HISTORY_DAYS);
+            u.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "fleet-utilization-resync");
+                t.setDaemon(true);
+                return t;
+            });
+            u.scheduler.scheduleWithFixedDelay(() -> {
+                try {
+                    u.reload(Database.dataSource());
+                } catch (Throwable t) {
+                    System.err.println("FleetUtilization: rebuild failed: " + t.getMessage());
+                }
+            }, 0L, minutes, TimeUnit.MINUTES);
+            context.setAttribute(ATTRIBUTE, u);
+            return u;
+        }
+    }
+
+    private static int setting(ServletContext context, String name, int defaultValue) {
+        try {
+            String v = System.getenv(name);
+            if (v == null || v.isEmpty()) v = context.getInitParameter(name);
+            if (v != null && !v.isEmpty()) return Math.max(1, Integer.parseInt(v.trim()));
+        } catch (NumberFormatException ignore) {}
+        return defaultValue;
+    }
+
+    public static void shutdown(ServletContext context) {
+        Object existing;
+        synchronized (INIT_LOCK) {
+            existing = context.getAttribute(ATTRIBUTE);
+            context.removeAttribute(ATTRIBUTE);
+        }
+        if (existing instanceof FleetUtilization) {
+            ScheduledExecutorService s = ((FleetUtilization) existing).scheduler;
+            if (s != null) s.shutdownNow();
+        }
+    }
+
+    /** Wait up to timeoutMillis for the first build. Returns whether the model is ready. */
+    public boolean awaitLoaded(long timeoutMillis) throws InterruptedException {
+        return loaded.await(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public boolean isLoaded() {
+        return loaded.getCount() == 0;
+    }
+
+    public LocalDate today() {
+        return LocalDate.now(zone);
+    }
+
+    /**
+     * The days [first, last] (epoch days) a booking over [start, end) (epoch millis) rents its vehicle: those whose
+     * noon it covers, or the pickup day if it covers none.
+     */
+    public long[] rentedDays(long start, long end) {
+        LocalDateTime s = LocalDateTime.ofInstant(Instant.ofEpochMilli(start), zone);
+        LocalDateTime e = LocalDateTime.ofInstant(Instant.ofEpochMilli(end), zone);
+        long first = s.toLocalDate().toEpochDay() + (s.toLocalTime().isAfter(NOON) ? 1 : 0);
+        long last = e.toLocalDate().toEpochDay() - (e.toLocalTime().isAfter(NOON) ? 0 : 1);
+        if (last < first) first = last = s.toLocalDate().toEpochDay();
+        return new long[]{first, last};
+    }
+
+    /** Rebuild from the vehicles and the orders of the last history days that were not cancelled. */
+    public void reload(DataSource dataSource) throws Exception {
+        long t0 = System.currentTimeMillis();
+        synchronized (writeLock) {
+            journal = new ArrayList<>();
+        }
+        try {
+            List<Vehicle> vehicles = new ArrayList<>();
+            Map<Long, List<long[]>> orders = new HashMap<>();
+            int count = 0;
+            try (Connection c = dataSource.getConnection()) {
+                try (PreparedStatement ps = c.prepareStatement("SELECT id, category_id, store_id FROM vehicles");
+                     ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) vehicles.add(new Vehicle(rs.getLong(1), rs.getLong(2), rs.getLong(3)));
+                }
+                String sql = "SELECT id, vehicle_id, COALESCE(actual_pickup_time, pickup_time), "
+                        + "COALESCE(actual_return_time, return_time) FROM orders WHERE return_time >= ? "
+                        + "AND pickup_time IS NOT NULL AND return_time IS NOT NULL AND order_status <> ?";
+                try (PreparedStatement ps = c.prepareStatement(sql)) {
+                    ps.setTimestamp(1, Timestamp.valueOf(today().minusDays(historyDays).atStartOfDay()));
+                    ps.setString(2, CANCELLED_STATUS);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            long[] days = rentedDays(rs.getTimestamp(3).getTime(), rs.getTimestamp(4).getTime());
+                            orders.computeIfAbsent(rs.getLong(2), k -> new ArrayList<>()).add(new long[]{rs.getLong(1), days[0], days[1]});
+                            count++;
+                        }
+                    }
+                }
+            }
+            replaceAll(vehicles, orders);
+            lastLoadMillis = System.currentTimeMillis() - t0;
+            lastLoadAt = System.currentTimeMillis();
+            lastLoadOrders = count;
+        } finally {
+            synchronized (writeLock) {
+                journal = null;
+            }
+        }
+    }
+
+    /**
+     * Replace the whole model; orders maps a vehicle id to its {orderId, firstDay, lastDay} rows. Changes recorded
+     * since the rebuild started (see {@link #reload}) are applied on top.
+     */
+    public void replaceAll(Collection<Vehicle> vehicles, Map<Long, List<long[]>> orders) {
+        Index next = new Index();
+        for (Vehicle v : vehicles) next.slots.put(v.id, new Slot(v, EMPTY, EMPTY, EMPTY, DayBitmap.EMPTY));
+        for (Map.Entry<Long, List<long[]>> e : orders.entrySet()) {
+            List<long[]> rows = e.getValue();
+            long[] o = new long[rows.size()], f = new long[rows.size()], l = new long[rows.size()];
+            for (int i = 0; i < o.length; i++) {
+                o[i] = rows.get(i)[0];
+                f[i] = rows.get(i)[1];
+                l[i] = rows.get(i)[2];
+            }
+            Slot slot = next.slots.get(e.getKey());
+            Vehicle v = slot != null ? slot.vehicle : new Vehicle(e.getKey(), 0L, 0L);
+            next.slots.put(e.getKey(), Slot.of(v, o, f, l));
+        }
+        synchronized (writeLock) {
+            if (journal != null) for (Consumer<Index> change : journal) change.accept(next);
+            index = next;
+        }
+        loaded.countDown();
+    }
+
+    private void apply(Consumer<Index> change) {
+        synchronized (writeLock) {
+            change.accept(index);
+            if (journal != null) journal.add(change);
+        }
+    }
+
+    /** An order rents vehicleId over [start, end) (epoch millis). Re-adding an order moves its days. */
+    public void orderAdded(long orderId, long vehicleId, long start, long end) {
+        long[] days = rentedDays(start, end);
+        apply(ix -> ix.putOrder(orderId, vehicleId, days[0], days[1]));
+    }
+
+    /** The order was cancelled. */
+    public void orderRemoved(long orderId, long vehicleId) {
+        apply(ix -> ix.removeOrder(orderId, vehicleId));
+    }
+
+    /** A vehicle was created or moved to another category or store. */
+    public void vehicleChanged(long id, long categoryId, long storeId) {
+        Vehicle v = new Vehicle(id, categoryId, storeId);
+        apply(ix -> ix.putVehicle(v));
+    }
+
+    private static boolean matches(Vehicle v, Long storeId, Long categoryId) {
+        return (storeId == null || v.storeId == storeId) && (categoryId == null || v.categoryId == categoryId);
+    }
+
+    /**
+     * Utilization over [from, to] of the vehicles matching storeId / categoryId (when not null), one group per
+     * vehicle, category or store (groupBy "vehicle", "category", "store"; anything else is one group for the
+     * whole selection, key 0), busiest first.
+     */
+    public List<Group> utilization(LocalDate from, LocalDate to, Long storeId, Long categoryId, String groupBy) {
+        long t0 = System.nanoTime();
+        long first = from.toEpochDay(), last = to.toEpochDay();
+        long days = Math.max(0L, last - first + 1);
+        DayBitmap range = DayBitmap.range(first, last);
+        Map<Long, List<Slot>> groups = new HashMap<>();
+        for (Slot s : index.slots.values()) {
+            if (matches(s.vehicle, storeId, categoryId)) groups.computeIfAbsent(s.vehicle.key(groupBy), k -> new ArrayList<>()).add(s);
+        }
+        List<Group> out = new ArrayList<>(groups.size());
+        for (Map.Entry<Long, List<Slot>> e : groups.entrySet()) {
+            long rented = 0;
+            List<DayBitmap> members = new ArrayList<>(e.getValue().size() + 1);
+            members.add(range);
+            for (Slot s : e.getValue()) {
+                rented += s.days.cardinality(first, last);
+                members.add(s.days);
+            }
+            long all = DayBitmap.andAll(members).cardinality();
+            long any = DayBitmap.orAll(members.subList(1, members.size())).cardinality(first, last);
+            out.add(new Group(e.getKey(), e.getValue().size(), days, rented, any, all));
+        }
+        out.sort((a, b) -> a.utilization() != b.utilization() ? Double.compare(b.utilization(), a.utilization())
+                : Long.compare(a.key, b.key));
+        reports.incrementAndGet();
+        reportNanos.addAndGet(System.nanoTime() - t0);
+        return out;
+    }
+
+    /** Vehicles matching storeId / categoryId (when not null) rented on none of the days [from, to], by id, at most limit. */
+    public List<Vehicle> idleVehicles(LocalDate from, LocalDate to, Long storeId, Long categoryId, int limit) {
+        long t0 = System.nanoTime();
+        long first = from.toEpochDay(), last = to.toEpochDay();
+        List<Vehicle> out = new ArrayList<>();
+        for (Slot s : index.slots.values()) {
+            if (matches(s.vehicle, storeId, categoryId) && s.days.cardinality(first, last) == 0) out.add(s.vehicle);
+        }
+        out.sort((a, b) -> Long.compare(a.id, b.id));
+        reports.incrementAndGet();
+        reportNanos.addAndGet(System.nanoTime() - t0);
+        return out.size() > limit ? new ArrayList<>(out.subList(0, limit)) : out;
+    }
+
+    /**
+     * Per store (only storeId when not null), the limit days of [from, to] with the most of its vehicles rented,
+     * busiest first, earlier first on ties. categoryId narrows the vehicles counted.
+     */
+    public Map<Long, List<Day>> peakDays(LocalDate from, LocalDate to, Long storeId, Long categoryId, int limit) {
+        long t0 = System.nanoTime();
+        long first = from.toEpochDay(), last = to.toEpochDay();
+        int days = (int) Math.max(0L, last - first + 1);
+        Map<Long, int[]> deltas = new HashMap<>();
+        Map<Long, Integer> fleet = new HashMap<>();
+        for (Slot s : index.slots.values()) {
+            if (!matches(s.vehicle, storeId, categoryId)) continue;
+            // +1 where a run of rented days starts, -1 after it ends; prefix sums give the count per day
+            int[] d = deltas.computeIfAbsent(s.vehicle.storeId, k -> new int[days + 1]);
+            fleet.merge(s.vehicle.storeId, 1, Integer::sum);
+            s.days.forEachRange(first, last, (a, b) -> {
+                d[(int) (a - first)]++;
+                d[(int) (b - first) + 1]--;
+            });
+        }
+        Map<Long, List<Day>> out = new LinkedHashMap<>();
+        List<Long> stores = new ArrayList<>(deltas.keySet());
+        stores.sort(Long::compare);
+        for (long store : stores) {
+            int[] d = deltas.get(store);
+            int[] rented = new int[days];
+            Integer[] order = new Integer[days];
+            int running = 0;
+            for (int i = 0; i < days; i++) {
+                running += d[i];
+                rented[i] = running;
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> rented[a] != rented[b] ? Integer.compare(rented[b], rented[a]) : Integer.compare(a, b));
+            List<Day> top = new ArrayList<>();
+            for (int i = 0; i < Math.min(limit, days); i++) {
+                top.add(new Day(LocalDate.ofEpochDay(first + order[i]), rented[order[i]], fleet.get(store)));
+            }
+            out.put(store, top);
+        }
+        reports.incrementAndGet();
+        reportNanos.addAndGet(System.nanoTime() - t0);
+        return out;
+    }
+
+    public Map<String, Object> metrics() {
+        Index ix = index;
+        long orders = 0, bytes = 0;
+        for (Slot s : ix.slots.values()) {
+            orders += s.orderIds.length;
+            bytes += s.days.sizeInBytes();
+        }
+        long r = reports.get();
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("loaded", isLoaded());
+        m.put("vehicles", ix.slots.size());
+        m.put("orders", orders);
+        m.put("bitmapBytes", bytes);
+        m.put("historyDays", historyDays);
+        m.put("reports", r);
+        m.put("avgReportMicros", r == 0 ? 0L : reportNanos.get() / r / 1000L);
+        m.put("lastLoadAt", lastLoadAt);
+        m.put("lastLoadMillis", lastLoadMillis);
+        m.put("lastLoadOrders", lastLoadOrders);
+        return m;
+    }
+}
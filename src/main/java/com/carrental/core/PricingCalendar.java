@@ -0,0 +1,437 @@
+package com.carrental.core;
+
+import com.hdfsdrive.core.Database;
+import jakarta.servlet.ServletContext;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Rental prices from the vehicle_pricing rules, compiled into per-day price calendars.
+ * <p>
+ * A rule applies to one vehicle (vehicle_id), to a category and/or store (category_id, store_id), or to every
+ * vehicle when none is set; on one day (price_date) or over [start_date, end_date], either end open when null.
+ * For each day the most specific rule wins: vehicle, then category + store, category, store, all vehicles; among
+ * rules of the same scope a single-day rule beats a range, a shorter range a longer one, a newer rule an older one.
+ * Days no rule covers cost the vehicle's daily_price. A rule's weekly_price / monthly_price caps what any 7 / 30
+ * consecutive days starting on a day it prices may cost. pricing_type is not interpreted.
+ * <p>
+ * The rules matching a vehicle depend only on its id, category and store, and most vehicles have no rules of their
+ * own, so calendars are compiled per distinct rule set and shared: a calendar holds, for HORIZON_DAYS from
+ * yesterday, the price of each day (or "base price") and the caps that start on it. A quote over n days is then one
+ * pass over n entries, the caps applied by a running minimum over the 7- and 30-day windows. Days outside the
+ * horizon are priced from the rules directly.
+ * <p>
+ * Reads go through an immutable State swapped as a whole, without locks. Every PRICING_RESYNC_MINUTES (default 5)
+ * the rules are reloaded; only calendars whose rule set changed are recompiled, the others are carried over (all
+ * of them once a day, when the horizon moves); nothing in the app writes vehicle_pricing, so a rule edited in the
+ * database is priced from at most that long after.
+ * <p>
+ * A quote is refused when it spans more than MAX_QUOTE_DAYS, or needs the base price of a vehicle without one.
+ */
+public class PricingCalendar {
+    public static final int HORIZON_DAYS = 400;
+    public static final int DEFAULT_RESYNC_MINUTES = 5;
+    /** Longest rental that can be quoted, so a quote's working arrays stay small. */
+    public static final int MAX_QUOTE_DAYS = 366;
+    private static final long BASE = -1L;
+    // baseCents of a vehicle whose daily_price is not set
+    private static final long NO_BASE = -1L;
+
+    private static final String ATTRIBUTE = PricingCalendar.class.getName();
+    private static final Object INIT_LOCK = new Object();
+
+    /** One vehicle_pricing row. Ids are 0 and prices 0 when not set; days are epoch days, inclusive. */
+    public static final class Rule {
+        public final long id;
+        public final long vehicleId;
+        public final long categoryId;
+        public final long storeId;
+        public final long fromDay;
+        public final long toDay;
+        public final boolean singleDay;
+        public final long priceCents;
+        public final long weeklyCents;
+        public final long monthlyCents;
+
+        public Rule(long id, long vehicleId, long categoryId, long storeId, LocalDate priceDate, LocalDate startDate,
+                    LocalDate endDate, BigDecimal price, BigDecimal weeklyPrice, BigDecimal monthlyPrice) {
+            this.id = id;
+            this.vehicleId = vehicleId;
+            this.categoryId = categoryId;
+            this.storeId = storeId;
+            this.singleDay = priceDate != null;
+            this.fromDay = priceDate != null ? priceDate.toEpochDay() : startDate != null ? startDate.toEpochDay() : Long.MIN_VALUE;
+            this.toDay = priceDate != null ? priceDate.toEpochDay() : endDate != null ? endDate.toEpochDay() : Long.MAX_VALUE;
+            this.priceCents = cents(price);
+            this.weeklyCents = cents(weeklyPrice);
+            this.monthlyCents = cents(monthlyPrice);
+        }
+
+        int scope() {
+            if (vehicleId != 0) return 4;
+            if (categoryId != 0 && storeId != 0) return 3;
+            if (categoryId != 0) return 2;
+            if (storeId != 0) return 1;
+            return 0;
+        }
+
+        /** Orders rules from weakest to strongest; compile paints them in this order. */
+        static int compare(Rule a, Rule b) {
+            if (a.scope() != b.scope()) return Integer.compare(a.scope(), b.scope());
+            if (a.singleDay != b.singleDay) return a.singleDay ? 1 : -1;
+            long spanA = a.toDay - a.fromDay, spanB = b.toDay - b.fromDay;
+            if (spanA != spanB) return spanA > spanB ? -1 : 1;
+            return Long.compare(a.id, b.id);
+        }
+
+        boolean sameAs(Rule o) {
+            return o != null && id == o.id && vehicleId == o.vehicleId && categoryId == o.categoryId && storeId == o.storeId
+                    && fromDay == o.fromDay && toDay == o.toDay && singleDay == o.singleDay && priceCents == o.priceCents
+                    && weeklyCents == o.weeklyCents && monthlyCents == o.monthlyCents;
+        }
+    }
+
+    /** Price of a rental: total, days, and whether a weekly or monthly cap lowered it. */
+    public static final class Quote {
+        public final int days;
+        public final BigDecimal total;
+        public final boolean capped;
+
+        Quote(int days, long totalCents, boolean capped) {
+            this.days = days;
+            this.total = BigDecimal.valueOf(totalCents, 2);
+            this.capped = capped;
+        }
+
+        /** Average price per day, for the order's daily_rate. */
+        public BigDecimal averageDaily() {
+            return days == 0 ? total : total.divide(BigDecimal.valueOf(days), 2, RoundingMode.HALF_UP);
+        }
+    }
+
+    /** Compiled prices of one rule set from startDay; BASE where no rule applies, 0 where a day has no cap. */
+    static final class Calendar {
+        final long startDay;
+        final long[] dayCents;
+        final long[] weekCents;
+        final long[] monthCents;
+        final List<Rule> rules;
+
+        Calendar(long startDay, List<Rule> rules) {
+            this.startDay = startDay;
+            this.rules = rules;
+            if (rules.isEmpty()) {
+                dayCents = weekCents = monthCents = null;
+                return;
+            }
+            dayCents = new long[HORIZON_DAYS];
+            weekCents = new long[HORIZON_DAYS];
+            monthCents = new long[HORIZON_DAYS];
+            Arrays.fill(dayCents, BASE);
+            long endDay = startDay + HORIZON_DAYS - 1;
+            for (Rule r : rules) {
+                int from = (int) (Math.max(r.fromDay, startDay) - startDay);
+                int to = (int) (Math.min(r.toDay, endDay) - startDay);
+                for (int d = from; d <= to; d++) {
+                    dayCents[d] = r.priceCents;
+                    weekCents[d] = r.weeklyCents;
+                    monthCents[d] = r.monthlyCents;
+                }
+            }
+        }
+
+        /** Day price, weekly cap and monthly cap of an epoch day; {BASE, 0, 0} when no rule applies. */
+        void day(long epochDay, long[] out) {
+            long i = epochDay - startDay;
+            if (dayCents != null && i >= 0 && i < HORIZON_DAYS) {
+                out[0] = dayCents[(int) i];
+                out[1] = weekCents[(int) i];
+                out[2] = monthCents[(int) i];
+                return;
+            }
+            out[0] = BASE;
+            out[1] = 0;
+            out[2] = 0;
+            // outside the horizon: the strongest rule covering the day, rules being sorted weakest first
+            for (int k = rules.size() - 1; k >= 0; k--) {
+                Rule r = rules.get(k);
+                if (r.fromDay <= epochDay && epochDay <= r.toDay) {
+                    out[0] = r.priceCents;
+                    out[1] = r.weeklyCents;
+                    out[2] = r.monthlyCents;
+                    return;
+                }
+            }
+        }
+    }
+
+    /** Rules bucketed by scope, plus the calendars compiled from them; replaced as a whole. */
+    private static final class State {
+        final long startDay;
+        final Map<Long, Rule> byId;
+        final List<Rule> global;
+        final Map<Long, List<Rule>> byVehicle;
+        final Map<Long, List<Rule>> byCategory;
+        final Map<Long, List<Rule>> byStore;
+        // rule-set key -> calendar, shared by every vehicle with that rule set
+        final ConcurrentHashMap<String, Calendar> calendars = new ConcurrentHashMap<>();
+        // "vehicle:category:store" -> calendar, filled as vehicles are quoted
+        final ConcurrentHashMap<String, Calendar> byScope = new ConcurrentHashMap<>();
+
+        State(long startDay, Collection<Rule> rules) {
+            this.startDay = startDay;
+            this.byId = new HashMap<>();
+            this.global = new ArrayList<>();
+            this.byVehicle = new HashMap<>();
+            this.byCategory = new HashMap<>();
+            this.byStore = new HashMap<>();
+            for (Rule r : rules) {
+                byId.put(r.id, r);
+                if (r.vehicleId != 0) byVehicle.computeIfAbsent(r.vehicleId, k -> new ArrayList<>()).add(r);
+                else if (r.categoryId != 0) byCategory.computeIfAbsent(r.categoryId, k -> new ArrayList<>()).add(r);
+                else if (r.storeId != 0) byStore.computeIfAbsent(r.storeId, k -> new ArrayList<>()).add(r);
+                else global.add(r);
+            }
+        }
+
+        List<Rule> rulesFor(long vehicleId, long categoryId, long storeId) {
+            List<Rule> out = new ArrayList<>(global);
+            out.addAll(byVehicle.getOrDefault(vehicleId, Collections.emptyList()));
+            for (Rule r : byCategory.getOrDefault(categoryId, Collections.emptyList())) {
+                if (r.storeId == 0 || r.storeId == storeId) out.add(r);
+            }
+            out.addAll(byStore.getOrDefault(storeId, Collections.emptyList()));
+            out.sort(Rule::compare);
+            return out;
+        }
+
+        Calendar calendar(long vehicleId, long categoryId, long storeId, AtomicLong compiled) {
+            String scope = vehicleId + ":" + categoryId + ":" + storeId;
+            Calendar c = byScope.get(scope);
+            if (c != null) return c;
+            List<Rule> rules = rulesFor(vehicleId, categoryId, storeId);
+            StringBuilder key = new StringBuilder();
+            for (Rule r : rules) key.append(r.id).append(',');
+            c = calendars.computeIfAbsent(key.toString(), k -> {
+                compiled.incrementAndGet();
+                return new Calendar(startDay, rules);
+            });
+            byScope.put(scope, c);
+            return c;
+        }
+    }
+
+    private volatile State state = new State(LocalDate.now().toEpochDay() - 1, Collections.emptyList());
+    private volatile boolean loaded;
+    private final Object loadLock = new Object();
+    private ScheduledExecutorService scheduler;
+
+    private final AtomicLong quotes = new AtomicLong();
+    private final AtomicLong compiled = new AtomicLong();
+    private volatile long lastLoadAt;
+    private volatile int lastChangedRules;
+    private volatile int lastRecompiled;
+
+    /**
+     * The calendar for the given context, reloaded every PRICING_RESYNC_MINUTES (environment or context init
+     * param). The rules are first loaded by the first quote.
+     */
+    public static PricingCalendar get(ServletContext context) {
+        Object existing = context.getAttribute(ATTRIBUTE);
+        if (existing instanceof PricingCalendar) return (PricingCalendar) existing;
+        synchronized (INIT_LOCK) {
+            existing = context.getAttribute(ATTRIBUTE);
+            if (existing instanceof PricingCalendar) return (PricingCalendar) existing;
+            int minutes = DEFAULT_RESYNC_MINUTES;
+            try {
+                String v = System.getenv("PRICING_RESYNC_MINUTES");
+                if (v == null || v.isEmpty()) v = context.getInitParameter("PRICING_RESYNC_MINUTES");
+                if (v != null && !v.isEmpty()) minutes = Math.max(1, Integer.parseInt(v.trim()));
+            } catch (NumberFormatException ignore) {}
+            PricingCalendar p = new PricingCalendar();
+            p.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "pricing-calendar-resync");
+                t.setDaemon(true);
+                return t;
+            });
+            p.scheduler.scheduleWithFixedDelay(p::resync, minutes, minutes, TimeUnit.MINUTES);
+            context.setAttribute(ATTRIBUTE, p);
+            return p;
+        }
+    }
+
+    public static void shutdown(ServletContext context) {
+        Object existing;
+        synchronized (INIT_LOCK) {
+            existing = context.getAttribute(ATTRIBUTE);
+            context.removeAttribute(ATTRIBUTE);
+        }
+        if (existing instanceof PricingCalendar) {
+            ScheduledExecutorService s = ((PricingCalendar) existing).scheduler;
+            if (s != null) s.shutdownNow();
+        }
+    }
+
+    private void resync() {
+        try {
+            reload(Database.dataSource());
+        } catch (Throwable t) {
+            System.err.println("PricingCalendar: reload failed: " + t.getMessage());
+        }
+    }
+
+    /** Reload the rules (those not ended before yesterday) from the database. */
+    public void reload(DataSource dataSource) throws Exception {
+        List<Rule> rules = new ArrayList<>();
+        LocalDate yesterday = LocalDate.now().minusDays(1);
+        String sql = "SELECT id, vehicle_id, category_id, store_id, price_date, start_date, end_date, price, weekly_price, "
+                + "monthly_price FROM vehicle_pricing WHERE COALESCE(price_date, end_date, ?) >= ?";
+        try (Connection c = dataSource.getConnection(); PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setDate(1, Date.valueOf(yesterday));
+            ps.setDate(2, Date.valueOf(yesterday));
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    rules.add(new Rule(rs.getLong("id"), rs.getLong("vehicle_id"), rs.getLong("category_id"), rs.getLong("store_id"),
+                            localDate(rs.getDate("price_date")), localDate(rs.getDate("start_date")), localDate(rs.getDate("end_date")),
+                            rs.getBigDecimal("price"), rs.getBigDecimal("weekly_price"), rs.getBigDecimal("monthly_price")));
+                }
+            }
+        }
+        replaceRules(rules);
+    }
+
+    private static LocalDate localDate(Date d) {
+        return d == null ? null : d.toLocalDate();
+    }
+
+    /**
+     * Swap in a new rule set. Calendars of vehicles quoted so far are rebuilt before the swap, so the next quote
+     * does not compile; a calendar whose rules did not change is carried over unless the horizon moved.
+     */
+    public void replaceRules(Collection<Rule> rules) {
+        synchronized (loadLock) {
+            State old = state;
+            State next = new State(LocalDate.now().toEpochDay() - 1, rules);
+            int changed = 0;
+            for (Rule r : rules) if (!r.sameAs(old.byId.get(r.id))) changed++;
+            for (Long id : old.byId.keySet()) if (!next.byId.containsKey(id)) changed++;
+            long before = compiled.get();
+            if (next.startDay == old.startDay) {
+                // a calendar compiled from unchanged rules is still right
+                for (Map.Entry<String, Calendar> e : old.calendars.entrySet()) {
+                    boolean same = true;
+                    for (Rule r : e.getValue().rules) {
+                        if (!r.sameAs(next.byId.get(r.id))) {
+                            same = false;
+                            break;
+                        }
+                    }
+                    if (same) next.calendars.put(e.getKey(), e.getValue());
+                }
+            }
+            for (String scope : old.byScope.keySet()) {
+                String[] p = scope.split(":");
+                next.calendar(Long.parseLong(p[0]), Long.parseLong(p[1]), Long.parseLong(p[2]), compiled);
+            }
+            state = next;
+            loaded = true;
+            lastLoadAt = System.currentTimeMillis();
+            lastChangedRules = changed;
+            lastRecompiled = (int) (compiled.get() - before);
+        }
+    }
+
+    private State current() throws Exception {
+        if (!loaded) {
+            synchronized (loadLock) {
+                if (!loaded) reload(Database.dataSource());
+            }
+        }
+        return state;
+    }
+
+    /**
+     * Price of renting the vehicle for days days from the first day, dailyPrice being its vehicles.daily_price.
+     *
+     * @throws IllegalArgumentException if days is not between 1 and MAX_QUOTE_DAYS
+     * @throws IllegalStateException if dailyPrice is null and a day has no rule
+     */
+    public Quote quote(long vehicleId, long categoryId, long storeId, BigDecimal dailyPrice, LocalDate first, long days) throws Exception {
+        if (days < 1 || days > MAX_QUOTE_DAYS) {
+            throw new IllegalArgumentException("Rental period must be between 1 and " + MAX_QUOTE_DAYS + " days");
+        }
+        quotes.incrementAndGet();
+        Calendar cal = current().calendar(vehicleId, categoryId, storeId, compiled);
+        return quote(cal, dailyPrice == null ? NO_BASE : cents(dailyPrice), first.toEpochDay(), (int) days);
+    }
+
+    public Quote quote(VehiclePricingCache.Snapshot vehicle, LocalDate first, long days) throws Exception {
+        return quote(vehicle.vehicleId, vehicle.categoryId, vehicle.storeId, vehicle.dailyPrice, first, days);
+    }
+
+    /**
+     * cost[i] = cheapest price of the first i days: day i on its own, or a 7 / 30 day block ending at i at the cap of
+     * its first day. One pass, O(days).
+     */
+    static Quote quote(Calendar cal, long baseCents, long firstDay, int days) {
+        long[] cost = new long[days + 1];
+        long[] week = new long[days];
+        long[] month = new long[days];
+        long[] d = new long[3];
+        long plain = 0;
+        for (int i = 0; i < days; i++) {
+            cal.day(firstDay + i, d);
+            if (d[0] == BASE && baseCents == NO_BASE) {
+                throw new IllegalStateException("No price for " + LocalDate.ofEpochDay(firstDay + i) + ": the vehicle has no daily price");
+            }
+            long price = d[0] == BASE ? baseCents : d[0];
+            week[i] = d[1];
+            month[i] = d[2];
+            plain += price;
+            long c = cost[i] + price;
+            if (i >= 6 && week[i - 6] > 0) c = Math.min(c, cost[i - 6] + week[i - 6]);
+            if (i >= 29 && month[i - 29] > 0) c = Math.min(c, cost[i - 29] + month[i - 29]);
+            cost[i + 1] = c;
+        }
+        return new Quote(days, cost[days], cost[days] < plain);
+    }
+
+    private static long cents(BigDecimal amount) {
+        return amount == null ? 0L : amount.movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValue();
+    }
+
+    public Map<String, Object> metrics() {
+        State s = state;
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("loaded", loaded);
+        m.put("rules", s.byId.size());
+        m.put("calendars", s.calendars.size());
+        m.put("vehiclesQuoted", s.byScope.size());
+        m.put("quotes", quotes.get());
+        m.put("compiled", compiled.get());
+        m.put("lastLoadAt", lastLoadAt);
+        m.put("lastChangedRules", lastChangedRules);
+        m.put("lastRecompiled", lastRecompiled);
+        return m;
+    }
+}
@@ -0,0 +1,480 @@
+package com.carrental.core;
+
+import com.hdfsdrive.core.Database;
+import jakarta.servlet.ServletContext;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * In-memory index of which vehicles are free over a time range.
+ * <p>
+ * Each vehicle keeps its booked intervals (orders that are not CANCELLED or COMPLETED and end in the future) as
+ * arrays sorted by start, plus a running maximum of the ends. A range [from, to) overlaps a booking iff some
+ * booking starting before {@code to} ends after {@code from}; with the prefix maximum that is one binary search and
+ * one comparison, so a fleet-wide query costs O(vehicles x log bookings) without touching MySQL. Vehicles are also
+ * indexed by store, category and the store's city; a query walks the smallest matching id list from the
+ * newest vehicle down and stops once it has enough.
+ * <p>
+ * A vehicle's arrays are immutable and replaced as a whole on change, so queries read without locks. Orders created
+ * through OrderServlet are applied at once; the whole index is rebuilt from the database every resync interval
+ * (AVAILABILITY_RESYNC_MINUTES, default 5) to pick up status changes made elsewhere. Changes that arrive while a
+ * rebuild is reading the database are replayed onto the new index before it is swapped in.
+ */
+public class VehicleAvailability {
+    public static final int DEFAULT_RESYNC_MINUTES = 5;
+    /** Orders in these states no longer hold their vehicle. */
+    public static final String[] RELEASED_ORDER_STATUSES = {"CANCELLED", "COMPLETED"};
+    public static final String RENTABLE_STATUS = "AVAILABLE";
+
+    private static final String ATTRIBUTE = VehicleAvailability.class.getName();
+    private static final Object INIT_LOCK = new Object();
+    private static final long[] EMPTY = new long[0];
+
+    /** A vehicle as the index sees it. categoryId / storeId are 0 when not set. */
+    public static final class Vehicle {
+        public final long id;
+        public final long categoryId;
+        public final long storeId;
+        public final boolean rentable;
+
+        public Vehicle(long id, long categoryId, long storeId, boolean rentable) {
+            this.id = id;
+            this.categoryId = categoryId;
+            this.storeId = storeId;
+            this.rentable = rentable;
+        }
+    }
+
+    /** One booked interval [start, end) in epoch millis. */
+    public static final class Booking {
+        public final long orderId;
+        public final long vehicleId;
+        public final long start;
+        public final long end;
+
+        public Booking(long orderId, long vehicleId, long start, long end) {
+            this.orderId = orderId;
+            this.vehicleId = vehicleId;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    /** Immutable state of one vehicle. */
+    static final class Slot {
+        final Vehicle vehicle;
+        final long[] starts;
+        final long[] ends;
+        final long[] orderIds;
+        // maxEnd[i] = max(ends[0..i])
+        final long[] maxEnd;
+
+        Slot(Vehicle vehicle, long[] starts, long[] ends, long[] orderIds) {
+            this.vehicle = vehicle;
+            this.starts = starts;
+            this.ends = ends;
+            this.orderIds = orderIds;
+            this.maxEnd = new long[ends.length];
+            long m = Long.MIN_VALUE;
+            for (int i = 0; i < ends.length; i++) maxEnd[i] = m = Math.max(m, ends[i]);
+        }
+
+        boolean isFree(long from, long to) {
+            // number of bookings starting before to
+            int lo = 0, hi = starts.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (starts[mid] < to) lo = mid + 1;
+                else hi = mid;
+            }
+            return lo == 0 || maxEnd[lo - 1] <= from;
+        }
+
+        Slot with(Vehicle v) {
+            return new Slot(v, starts, ends, orderIds);
+        }
+
+        Slot withBooking(long orderId, long start, long end) {
+            Slot base = without(orderId);
+            int n = base.starts.length;
+            int at = Arrays.binarySearch(base.starts, start);
+            if (at < 0) at = -at - 1;
+            long[] s = new long[n + 1], e = new long[n + 1], o = new long[n + 1];
+            System.arraycopy(base.starts, 0, s, 0, at);
+            System.arraycopy(base.ends, 0, e, 0, at);
+            System.arraycopy(base.orderIds, 0, o, 0, at);
+            s[at] = start;
+            e[at] = end;
+            o[at] = orderId;
+            System.arraycopy(base.starts, at, s, at + 1, n - at);
+            System.arraycopy(base.ends, at, e, at + 1, n - at);
+            System.arraycopy(base.orderIds, at, o, at + 1, n - at);
+            return new Slot(vehicle, s, e, o);
+        }
+
+        Slot without(long orderId) {
+            int at = -1;
+            for (int i = 0; i < orderIds.length; i++) if (orderIds[i] == orderId) { at = i; break; }
+            if (at < 0) return this;
+            int n = starts.length - 1;
+            long[] s = new long[n], e = new long[n], o = new long[n];
+            System.arraycopy(starts, 0, s, 0, at);
+            System.arraycopy(ends, 0, e, 0, at);
+            System.arraycopy(orderIds, 0, o, 0, at);
+            System.arraycopy(starts, at + 1, s, at, n - at);
+            System.arraycopy(ends, at + 1, e, at, n - at);
+            System.arraycopy(orderIds, at + 1, o, at, n - at);
+            return new Slot(vehicle, s, e, o);
+        }
+    }
+
+    /**
+     * Slots plus the secondary indexes; a rebuild swaps the whole thing. The id lists are sorted ascending and
+     * copied on change (vehicles change rarely), so a query can walk them newest first without locks and stop at
+     * its limit.
+     */
+    private static final class Index {
+        final ConcurrentHashMap<Long, Slot> slots = new ConcurrentHashMap<>();
+        volatile long[] all = EMPTY;
+        final ConcurrentHashMap<Long, long[]> byStore = new ConcurrentHashMap<>();
+        final ConcurrentHashMap<Long, long[]> byCategory = new ConcurrentHashMap<>();
+        // lower-case city -> vehicle ids
+        final ConcurrentHashMap<String, long[]> byCity = new ConcurrentHashMap<>();
+        // store id -> lower-case city
+        final Map<Long, String> storeCity = new HashMap<>();
+
+        String cityOf(long storeId) {
+            return storeCity.get(storeId);
+        }
+
+        void putVehicle(Vehicle v) {
+            Slot old = slots.get(v.id);
+            slots.put(v.id, old == null ? new Slot(v, EMPTY, EMPTY, EMPTY) : old.with(v));
+            all = insert(all, v.id);
+            if (old != null && old.vehicle.storeId != v.storeId) {
+                byStore.computeIfPresent(old.vehicle.storeId, (k, ids) -> remove(ids, v.id));
+                String oldCity = cityOf(old.vehicle.storeId);
+                if (oldCity != null) byCity.computeIfPresent(oldCity, (k, ids) -> remove(ids, v.id));
+            }
+            if (old != null && old.vehicle.categoryId != v.categoryId) {
+                byCategory.computeIfPresent(old.vehicle.categoryId, (k, ids) -> remove(ids, v.id));
+            }
+            byStore.merge(v.storeId, new long[]{v.id}, (ids, one) -> insert(ids, v.id));
+            byCategory.merge(v.categoryId, new long[]{v.id}, (ids, one) -> insert(ids, v.id));
+            String city = cityOf(v.storeId);
+            if (city != null) byCity.merge(city, new long[]{v.id}, (ids, one) -> insert(ids, v.id));
+        }
+
+        void putBooking(long orderId, long vehicleId, long start, long end) {
+            Slot old = slots.get(vehicleId);
+            // a vehicle created after the last rebuild: track the booking, its details arrive with the next one
+            if (old == null) old = new Slot(new Vehicle(vehicleId, 0L, 0L, false), EMPTY, EMPTY, EMPTY);
+            slots.put(vehicleId, old.withBooking(orderId, start, end));
+        }
+
+        void removeBooking(long orderId, long vehicleId) {
+            Slot old = slots.get(vehicleId);
+            if (old != null) slots.put(vehicleId, old.without(orderId));
+        }
+    }
+
+    /** ids plus id, still sorted; ids itself if already present. */
+    static long[] insert(long[] ids, long id) {
+        int at = Arrays.binarySearch(ids, id);
+        if (at >= 0) return ids;
+        at = -at - 1;
+        long[] out = new long[ids.length + 1];
+        System.arraycopy(ids, 0, out, 0, at);
+        out[at] = id;
+        System.arraycopy(ids, at, out, at + 1, ids.length - at);
+        return out;
+    }
+
+    static long[] remove(long[] ids, long id) {
+        int at = Arrays.binarySearch(ids, id);
+        if (at < 0) return ids;
+        long[] out = new long[ids.length - 1];
+        System.arraycopy(ids, 0, out, 0, at);
+        System.arraycopy(ids, at + 1, out, at, ids.length - at - 1);
+        return out;
+    }
+
+    private volatile Index index = new Index();
+    private final Object writeLock = new Object();
+    // changes made while a rebuild reads the database; null when no rebuild is running
+    private List<Consumer<Index>> journal;
+    private final CountDownLatch loaded = new CountDownLatch(1);
+    private ScheduledExecutorService scheduler;
+
+    private final AtomicLong queries = new AtomicLong();
+    private final AtomicLong queryNanos = new AtomicLong();
+    private volatile long lastLoadAt;
+    private volatile long lastLoadMillis;
+    private volatile int lastLoadBookings;
+
+    /**
+     * The index for the given context, rebuilt in the background every AVAILABILITY_RESYNC_MINUTES (environment or
+     * context init param). The first build starts immediately; see {@link #awaitLoaded}.
+     */
+    public static VehicleAvailability get(ServletContext context) {
+        Object existing = context.getAttribute(ATTRIBUTE);
+        if (existing instanceof VehicleAvailability) return (VehicleAvailability) existing;
+        synchronized (INIT_LOCK) {
+            existing = context.getAttribute(ATTRIBUTE);
+            if (existing instanceof VehicleAvailability) return (VehicleAvailability) existing;
+            int minutes = DEFAULT_RESYNC_MINUTES;
+            try {
+                String v = System.getenv("AVAILABILITY_RESYNC_MINUTES");
+                if (v == null || v.isEmpty()) v = context.getInitParameter("AVAILABILITY_RESYNC_MINUTES");
+                if (v != null && !v.isEmpty()) minutes = Math.max(1, Integer.parseInt(v.trim()));
+            } catch (NumberFormatException ignore) {}
+            VehicleAvailability a = new VehicleAvailability();
+            a.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "vehicle-availability-resync");
+                t.setDaemon(true);
+                return t;
+            });
+            a.scheduler.scheduleWithFixedDelay(() -> {
+                try {
+                    a.reload(Database.dataSource());
+                } catch (Throwable t) {
+                    System.err.println("VehicleAvailability: rebuild failed: " + t.getMessage());
+                }
+            }, 0L, minutes, TimeUnit.MINUTES);
+            context.setAttribute(ATTRIBUTE, a);
+            return a;
+        }
+    }
+
+    public static void shutdown(ServletContext context) {
+        Object existing;
+        synchronized (INIT_LOCK) {
+            existing = context.getAttribute(ATTRIBUTE);
+            context.removeAttribute(ATTRIBUTE);
+        }
+        if (existing instanceof VehicleAvailability) {
+            ScheduledExecutorService s = ((VehicleAvailability) existing).scheduler;
+            if (s != null) s.shutdownNow();
+        }
+    }
+
+    /** Wait up to timeoutMillis for the first build. Returns whether the index is ready. */
+    public boolean awaitLoaded(long timeoutMillis) throws InterruptedException {
+        return loaded.await(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public boolean isLoaded() {
+        return loaded.getCount() == 0;
+    }
+
+    /** Rebuild from vehicles, stores and the orders still holding a vehicle. */
+    public void reload(DataSource dataSource) throws Exception {
+        long t0 = System.currentTimeMillis();
+        synchronized (writeLock) {
+            journal = new ArrayList<>();
+        }
+        try {
+            List<Vehicle> vehicles = new ArrayList<>();
+            List<Booking> bookings = new ArrayList<>();
+            Map<Long, String> storeCities = new HashMap<>();
+            try (Connection c = dataSource.getConnection()) {
+                try (PreparedStatement ps = c.prepareStatement("SELECT id, city FROM stores");
+                     ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) storeCities.put(rs.getLong(1), rs.getString(2));
+                }
+                try (PreparedStatement ps = c.prepareStatement("SELECT id, category_id, store_id, status FROM vehicles");
+                     ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        vehicles.add(new Vehicle(rs.getLong(1), rs.getLong(2), rs.getLong(3), RENTABLE_STATUS.equals(rs.getString(4))));
+                    }
+                }
+                String sql = "SELECT id, vehicle_id, pickup_time, return_time FROM orders WHERE return_time > ? "
+                        + "AND pickup_time IS NOT NULL AND order_status NOT IN ("
+                        + String.join(",", Collections.nCopies(RELEASED_ORDER_STATUSES.length, "?")) + ")";
+                try (PreparedStatement ps = c.prepareStatement(sql)) {
+                    ps.setTimestamp(1, new Timestamp(System.currentTimeMillis()));
+                    for (int i = 0; i < RELEASED_ORDER_STATUSES.length; i++) ps.setString(i + 2, RELEASED_ORDER_STATUSES[i]);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            bookings.add(new Booking(rs.getLong(1), rs.getLong(2), rs.getTimestamp(3).getTime(), rs.getTimestamp(4).getTime()));
+                        }
+                    }
+                }
+            }
+            replaceAll(vehicles, bookings, storeCities);
+            lastLoadMillis = System.currentTimeMillis() - t0;
+            lastLoadAt = System.currentTimeMillis();
+            lastLoadBookings = bookings.size();
+        } finally {
+            synchronized (writeLock) {
+                journal = null;
+            }
+        }
+    }
+
+    /**
+     * Replace the whole index. Changes recorded since the rebuild started (see {@link #reload}) are applied on top,
+     * so an order created while the database was being read is not lost.
+     */
+    public void replaceAll(Collection<Vehicle> vehicles, Collection<Booking> bookings, Map<Long, String> storeCities) {
+        Index next = new Index();
+        for (Map.Entry<Long, String> e : storeCities.entrySet()) {
+            if (e.getValue() != null) next.storeCity.put(e.getKey(), e.getValue().trim().toLowerCase(Locale.ROOT));
+        }
+        // build the id lists in one pass over the vehicles in id order instead of inserting one by one
+        List<Vehicle> sorted = new ArrayList<>(vehicles);
+        sorted.sort((a, b) -> Long.compare(a.id, b.id));
+        Map<Long, List<Long>> stores = new HashMap<>();
+        Map<Long, List<Long>> categories = new HashMap<>();
+        Map<String, List<Long>> cities = new HashMap<>();
+        long[] all = new long[sorted.size()];
+        int n = 0;
+        for (Vehicle v : sorted) {
+            if (next.slots.put(v.id, new Slot(v, EMPTY, EMPTY, EMPTY)) != null) continue;
+            all[n++] = v.id;
+            stores.computeIfAbsent(v.storeId, k -> new ArrayList<>()).add(v.id);
+            categories.computeIfAbsent(v.categoryId, k -> new ArrayList<>()).add(v.id);
+            String city = next.cityOf(v.storeId);
+            if (city != null) cities.computeIfAbsent(city, k -> new ArrayList<>()).add(v.id);
+        }
+        next.all = Arrays.copyOf(all, n);
+        for (Map.Entry<Long, List<Long>> e : stores.entrySet()) next.byStore.put(e.getKey(), toArray(e.getValue()));
+        for (Map.Entry<Long, List<Long>> e : categories.entrySet()) next.byCategory.put(e.getKey(), toArray(e.getValue()));
+        for (Map.Entry<String, List<Long>> e : cities.entrySet()) next.byCity.put(e.getKey(), toArray(e.getValue()));
+        // group per vehicle and sort once instead of inserting one by one
+        Map<Long, List<Booking>> perVehicle = new HashMap<>();
+        for (Booking b : bookings) perVehicle.computeIfAbsent(b.vehicleId, k -> new ArrayList<>()).add(b);
+        for (Map.Entry<Long, List<Booking>> e : perVehicle.entrySet()) {
+            List<Booking> list = e.getValue();
+            list.sort((a, b) -> Long.compare(a.start, b.start));
+            long[] s = new long[list.size()], en = new long[list.size()], o = new long[list.size()];
+            for (int i = 0; i < list.size(); i++) {
+                s[i] = list.get(i).start;
+                en[i] = list.get(i).end;
+                o[i] = list.get(i).orderId;
+            }
+            Slot slot = next.slots.get(e.getKey());
+            Vehicle v = slot != null ? slot.vehicle : new Vehicle(e.getKey(), 0L, 0L, false);
+            next.slots.put(e.getKey(), new Slot(v, s, en, o));
+        }
+        synchronized (writeLock) {
+            if (journal != null) for (Consumer<Index> change : journal) change.accept(next);
+            index = next;
+        }
+        loaded.countDown();
+    }
+
+    private static long[] toArray(List<Long> ids) {
+        long[] out = new long[ids.size()];
+        for (int i = 0; i < out.length; i++) out[i] = ids.get(i);
+        return out;
+    }
+
+    private void apply(Consumer<Index> change) {
+        synchronized (writeLock) {
+            change.accept(index);
+            if (journal != null) journal.add(change);
+        }
+    }
+
+    /** An order now holds vehicleId over [start, end) (epoch millis). Re-adding an order moves its interval. */
+    public void bookingAdded(long orderId, long vehicleId, long start, long end) {
+        apply(ix -> ix.putBooking(orderId, vehicleId, start, end));
+    }
+
+    /** The order was cancelled or completed. */
+    public void bookingRemoved(long orderId, long vehicleId) {
+        apply(ix -> ix.removeBooking(orderId, vehicleId));
+    }
+
+    /** A vehicle was created or its category, store or status changed. */
+    public void vehicleChanged(long id, long categoryId, long storeId, String status) {
+        Vehicle v = new Vehicle(id, categoryId, storeId, RENTABLE_STATUS.equals(status));
+        apply(ix -> ix.putVehicle(v));
+    }
+
+    /** Whether the vehicle is rentable and has no booking overlapping [from, to). */
+    public boolean isAvailable(long vehicleId, long from, long to) {
+        Slot s = index.slots.get(vehicleId);
+        return s != null && s.vehicle.rentable && s.isFree(from, to);
+    }
+
+    /** Whether a known booking of the vehicle overlaps [from, to), whatever the vehicle's status. */
+    public boolean isBooked(long vehicleId, long from, long to) {
+        Slot s = index.slots.get(vehicleId);
+        return s != null && !s.isFree(from, to);
+    }
+
+    /**
+     * Ids of rentable vehicles with no booking overlapping [from, to), newest (highest id) first, at most limit.
+     * categoryId / storeId / city narrow the search when not null.
+     */
+    public List<Long> findAvailable(long from, long to, Long categoryId, Long storeId, String city, int limit) {
+        long t0 = System.nanoTime();
+        Index ix = index;
+        String cityKey = city == null || city.trim().isEmpty() ? null : city.trim().toLowerCase(Locale.ROOT);
+        // walk the smallest candidate list, check the other filters per vehicle
+        long[] candidates = null;
+        if (storeId != null) candidates = ix.byStore.getOrDefault(storeId, EMPTY);
+        if (categoryId != null) {
+            long[] c = ix.byCategory.getOrDefault(categoryId, EMPTY);
+            if (candidates == null || c.length < candidates.length) candidates = c;
+        }
+        if (cityKey != null) {
+            long[] c = ix.byCity.getOrDefault(cityKey, EMPTY);
+            if (candidates == null || c.length < candidates.length) candidates = c;
+        }
+        if (candidates == null) candidates = ix.all;
+
+        List<Long> out = new ArrayList<>(Math.min(limit, 128));
+        for (int i = candidates.length - 1; i >= 0 && out.size() < limit; i--) {
+            Slot s = ix.slots.get(candidates[i]);
+            if (s == null || !s.vehicle.rentable) continue;
+            Vehicle v = s.vehicle;
+            if (storeId != null && v.storeId != storeId) continue;
+            if (categoryId != null && v.categoryId != categoryId) continue;
+            if (cityKey != null && !cityKey.equals(ix.cityOf(v.storeId))) continue;
+            if (s.isFree(from, to)) out.add(v.id);
+        }
+        queries.incrementAndGet();
+        queryNanos.addAndGet(System.nanoTime() - t0);
+        return out;
+    }
+
+    public Map<String, Object> metrics() {
+        Index ix = index;
+        int bookings = 0;
+        for (Slot s : ix.slots.values()) bookings += s.starts.length;
+        long q = queries.get();
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("loaded", isLoaded());
+        m.put("vehicles", ix.slots.size());
+        m.put("bookings", bookings);
+        m.put("queries", q);
+        m.put("avgQueryMicros", q == 0 ? 0L : queryNanos.get() / q / 1000L);
+        m.put("lastLoadAt", lastLoadAt);
+        m.put("lastLoadMillis", lastLoadMillis);
+        m.put("lastLoadBookings", lastLoadBookings);
+        return m;
+    }
+}
@@ -0,0 +1,156 @@
+package com.carrental.core;
+
+import com.hdfsdrive.core.Database;
+import jakarta.servlet.ServletContext;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * What a vehicle costs: daily price and deposit, with the status, category and store that decide whether and how it
+ * can be rented. Quotes read snapshots from this cache instead of MySQL; order creation reads the row itself (locked,
+ * in its own transaction, see {@link #read}) and puts what it read back, so the cache is refreshed by every order.
+ * VehicleServlet invalidates a vehicle it changes; other writers are seen after the TTL
+ * (VEHICLE_PRICING_TTL_SECONDS, default 300). A load that overlaps an invalidation is not kept.
+ */
+public class VehiclePricingCache {
+    public static final int DEFAULT_TTL_SECONDS = 300;
+    public static final int MAX_ENTRIES = 50_000;
+
+    private static final String ATTRIBUTE = VehiclePricingCache.class.getName();
+    private static final Object INIT_LOCK = new Object();
+    private static final String COLUMNS = "id, category_id, store_id, status, daily_price, deposit";
+
+    /**
+     * Immutable pricing row of one vehicle. categoryId / storeId are 0 when not set; dailyPrice stays null when
+     * daily_price is, so PricingCalendar can refuse days it would otherwise price at 0.
+     */
+    public static final class Snapshot {
+        public final long vehicleId;
+        public final long categoryId;
+        public final long storeId;
+        public final String status;
+        public final BigDecimal dailyPrice;
+        public final BigDecimal deposit;
+
+        public Snapshot(long vehicleId, long categoryId, long storeId, String status, BigDecimal dailyPrice, BigDecimal deposit) {
+            this.vehicleId = vehicleId;
+            this.categoryId = categoryId;
+            this.storeId = storeId;
+            this.status = status;
+            this.dailyPrice = dailyPrice;
+            this.deposit = deposit == null ? BigDecimal.ZERO : deposit;
+        }
+
+        public boolean isRentable() {
+            return VehicleAvailability.RENTABLE_STATUS.equals(status);
+        }
+    }
+
+    private static final class Entry {
+        final Snapshot snapshot;
+        final long expiresAt;
+
+        Entry(Snapshot snapshot, long expiresAt) {
+            this.snapshot = snapshot;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final long ttlMillis;
+    private final ConcurrentHashMap<Long, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong generation = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public VehiclePricingCache(long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+    }
+
+    public static VehiclePricingCache get(ServletContext context) {
+        Object existing = context.getAttribute(ATTRIBUTE);
+        if (existing instanceof VehiclePricingCache) return (VehiclePricingCache) existing;
+        synchronized (INIT_LOCK) {
+            existing = context.getAttribute(ATTRIBUTE);
+            if (existing instanceof VehiclePricingCache) return (VehiclePricingCache) existing;
+            int seconds = DEFAULT_TTL_SECONDS;
+            try {
+                String v = System.getenv("VEHICLE_PRICING_TTL_SECONDS");
+                if (v == null || v.isEmpty()) v = context.getInitParameter("VEHICLE_PRICING_TTL_SECONDS");
+                if (v != null && !v.isEmpty()) seconds = Math.max(0, Integer.parseInt(v.trim()));
+            } catch (NumberFormatException ignore) {}
+            VehiclePricingCache cache = new VehiclePricingCache(seconds * 1000L);
+            context.setAttribute(ATTRIBUTE, cache);
+            return cache;
+        }
+    }
+
+    /**
+     * Read a vehicle's pricing row on c; with forUpdate the row stays locked until c's transaction ends.
+     * Returns null if there is no such vehicle.
+     */
+    public static Snapshot read(Connection c, long vehicleId, boolean forUpdate) throws SQLException {
+        String sql = "SELECT " + COLUMNS + " FROM vehicles WHERE id = ?" + (forUpdate ? " FOR UPDATE" : "");
+        try (PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setLong(1, vehicleId);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) return null;
+                return new Snapshot(rs.getLong("id"), rs.getLong("category_id"), rs.getLong("store_id"),
+                        rs.getString("status"), rs.getBigDecimal("daily_price"), rs.getBigDecimal("deposit"));
+            }
+        }
+    }
+
+    /** The vehicle's pricing, from the cache or loaded from the database; null if there is no such vehicle. */
+    public Snapshot snapshot(long vehicleId) throws SQLException {
+        Entry e = entries.get(vehicleId);
+        if (e != null && e.expiresAt > System.currentTimeMillis()) {
+            hits.incrementAndGet();
+            return e.snapshot;
+        }
+        long gen = generation.get();
+        loads.incrementAndGet();
+        Snapshot s;
+        try (Connection c = Database.getConnection()) {
+            s = read(c, vehicleId, false);
+        }
+        if (s != null && generation.get() == gen) put(s);
+        return s;
+    }
+
+    /** Cache a snapshot just read from the database. */
+    public void put(Snapshot s) {
+        if (ttlMillis <= 0) return;
+        if (entries.size() >= MAX_ENTRIES && !entries.containsKey(s.vehicleId)) {
+            long now = System.currentTimeMillis();
+            entries.values().removeIf(e -> e.expiresAt <= now);
+            if (entries.size() >= MAX_ENTRIES) entries.clear();
+        }
+        entries.put(s.vehicleId, new Entry(s, System.currentTimeMillis() + ttlMillis));
+    }
+
+    public void invalidate(long vehicleId) {
+        generation.incrementAndGet();
+        entries.remove(vehicleId);
+        invalidations.incrementAndGet();
+    }
+
+    public Map<String, Object> metrics() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("entries", entries.size());
+        m.put("hits", hits.get());
+        m.put("loads", loads.get());
+        m.put("invalidations", invalidations.get());
+        m.put("ttlSeconds", ttlMillis / 1000L);
+        return m;
+    }
+}
@@ -1,6 +1,11 @@
 package com.carrental.web;
 
+import com.carrental.core.BookingEngine;
 import com.carrental.core.DatabaseInitializer;
+import com.carrental.core.FleetUtilization;
+import com.carrental.core.PricingCalendar;
+import com.carrental.core.VehicleAvailability;
+import com.carrental.core.VehiclePricingCache;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.annotation.WebServlet;
@@ -21,7 +26,11 @@ import java.util.*;
 
 /**
  * Order API Servlet - 订单API
- * Handles order creation, listing, and management
+ * Handles order creation, listing, and management.
+ * POST /api/order/hold reserves a vehicle for a time range while the customer pays (see {@link BookingEngine});
+ * passing the returned holdId to POST /api/order books exactly that range, DELETE /api/order/hold/{id} gives it
+ * back. A booking that overlaps another order or someone else's hold is refused with 409.
+ * DELETE /api/order/{id} cancels the caller's own order while it is still PENDING.
  */
 @WebServlet(name = "OrderServlet", urlPatterns = {"/api/order", "/api/order/*"})
 public class OrderServlet extends HttpServlet {
@@ -114,15 +123,25 @@ public class OrderServlet extends HttpServlet {
             Map<String, Object> orderData = mapper.readValue(sb.toString(), Map.class);
             orderData.put("userId", userId);
             
-            // Create order
-            Map<String, Object> order = createOrder(orderData);
-            
             Map<String, Object> result = new HashMap<>();
-            result.put("success", true);
-            result.put("data", order);
-            result.put("message", "Order created successfully");
+            if ("/hold".equals(req.getPathInfo())) {
+                result.put("success", true);
+                result.put("data", createHold(orderData));
+            } else {
+                // Create order
+                Map<String, Object> order = createOrder(orderData);
+                result.put("success", true);
+                result.put("data", order);
+                result.put("message", "Order created successfully");
+            }
             
             resp.getWriter().write(mapper.writeValueAsString(result));
+        } catch (BookingEngine.ConflictException e) {
+            Map<String, Object> error = new HashMap<>();
+            error.put("success", false);
+            error.put("message", e.getMessage());
+            resp.setStatus(HttpServletResponse.SC_CONFLICT);
+            resp.getWriter().write(mapper.writeValueAsString(error));
         } catch (Exception e) {
             e.printStackTrace();
             Map<String, Object> error = new HashMap<>();
@@ -133,6 +152,53 @@ public class OrderServlet extends HttpServlet {
         }
     }
     
+    @Override
+    protected void doDelete(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        resp.setContentType("application/json");
+        resp.setCharacterEncoding("UTF-8");
+        
+        HttpSession session = req.getSession(false);
+        if (session == null || session.getAttribute("userId") == null) {
+            resp.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+            Map<String, Object> error = new HashMap<>();
+            error.put("success", false);
+            error.put("message", "Please login first");
+            resp.getWriter().write(mapper.writeValueAsString(error));
+            return;
+        }
+        
+        Long userId = (Long) session.getAttribute("userId");
+        String pathInfo = req.getPathInfo();
+        Map<String, Object> result = new HashMap<>();
+        if (pathInfo != null && pathInfo.matches("/\\d+")) {
+            try {
+                if (cancelOrder(Long.parseLong(pathInfo.substring(1)), userId)) {
+                    result.put("success", true);
+                } else {
+                    resp.setStatus(HttpServletResponse.SC_NOT_FOUND);
+                    result.put("success", false);
+                    result.put("message", "Order not found or can no longer be cancelled");
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+                resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                result.put("success", false);
+                result.put("message", e.getMessage());
+            }
+        } else if (pathInfo == null || !pathInfo.startsWith("/hold/")) {
+            resp.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            result.put("success", false);
+            result.put("message", "Not found");
+        } else if (BookingEngine.get(getServletContext()).release(pathInfo.substring("/hold/".length()), userId)) {
+            result.put("success", true);
+        } else {
+            resp.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            result.put("success", false);
+            result.put("message", "Hold not found or expired");
+        }
+        resp.getWriter().write(mapper.writeValueAsString(result));
+    }
+    
     private List<Map<String, Object>> listUserOrders(Long userId, String status) throws Exception {
         List<Map<String, Object>> orders = new ArrayList<>();
         StringBuilder sql = new StringBuilder("SELECT o.*, v.brand, v.model, v.license_plate, s.store_name ");
@@ -242,11 +308,38 @@ public class OrderServlet extends HttpServlet {
         return null;
     }
     
-    private Map<String, Object> createOrder(Map<String, Object> data) throws Exception {
-        // Generate unique order number using UUID to ensure uniqueness under high concurrency
-        String orderNo = "ORD" + UUID.randomUUID().toString().replace("-", "").substring(0, 16).toUpperCase();
-        
-        // Parse and validate dates
+    /**
+     * Cancel the user's order if it is still PENDING, and give its days back to the availability and
+     * utilization indexes. False if there is no such order.
+     */
+    private boolean cancelOrder(long orderId, Long userId) throws Exception {
+        long vehicleId;
+        try (Connection conn = DatabaseInitializer.getConnection()) {
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "SELECT vehicle_id FROM orders WHERE id = ? AND user_id = ? AND order_status = 'PENDING'")) {
+                ps.setLong(1, orderId);
+                ps.setLong(2, userId);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (!rs.next()) return false;
+                    vehicleId = rs.getLong(1);
+                }
+            }
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "UPDATE orders SET order_status = ? WHERE id = ? AND user_id = ? AND order_status = 'PENDING'")) {
+                ps.setString(1, FleetUtilization.CANCELLED_STATUS);
+                ps.setLong(2, orderId);
+                ps.setLong(3, userId);
+                // lost a race with another status change
+                if (ps.executeUpdate() == 0) return false;
+            }
+        }
+        VehicleAvailability.get(getServletContext()).bookingRemoved(orderId, vehicleId);
+        FleetUtilization.get(getServletContext()).orderRemoved(orderId, vehicleId);
+        return true;
+    }
+    
+    /** Parse and validate pickupTime / returnTime of a request body. */
+    private static LocalDateTime[] parseRentalTimes(Map<String, Object> data) {
         DateTimeFormatter formatter = DateTimeFormatter.ISO_DATE_TIME;
         LocalDateTime pickupTime;
         LocalDateTime returnTime;
@@ -262,120 +355,247 @@ public class OrderServlet extends HttpServlet {
         if (returnTime.isBefore(pickupTime) || returnTime.isEqual(pickupTime)) {
             throw new IllegalArgumentException("Return time must be after pickup time");
         }
+        // refused before any hold is taken; PricingCalendar cannot quote longer rentals
+        if (java.time.Duration.between(pickupTime, returnTime).toDays() > PricingCalendar.MAX_QUOTE_DAYS) {
+            throw new IllegalArgumentException("Rental period must not exceed " + PricingCalendar.MAX_QUOTE_DAYS + " days");
+        }
+        return new LocalDateTime[]{pickupTime, returnTime};
+    }
+    
+    private Map<String, Object> createHold(Map<String, Object> data) throws Exception {
+        LocalDateTime[] times = parseRentalTimes(data);
+        if (!(data.get("vehicleId") instanceof Number)) throw new IllegalArgumentException("vehicleId is required");
+        long vehicleId = ((Number) data.get("vehicleId")).longValue();
+        // priced from the cached row before the hold is taken, so an unknown or unpriceable vehicle is never held;
+        // the order itself is priced from the locked vehicle row
+        VehiclePricingCache.Snapshot pricing = VehiclePricingCache.get(getServletContext()).snapshot(vehicleId);
+        if (pricing == null) throw new Exception("Vehicle not found");
+        if (!pricing.isRentable()) throw new BookingEngine.ConflictException("该车辆当前不可租");
+        long days = Math.max(MIN_RENTAL_DAYS, java.time.Duration.between(times[0], times[1]).toDays());
+        PricingCalendar.Quote quote = PricingCalendar.get(getServletContext()).quote(pricing, times[0].toLocalDate(), days);
+        BookingEngine.Hold hold = BookingEngine.get(getServletContext()).hold(((Number) data.get("userId")).longValue(),
+                vehicleId, Timestamp.valueOf(times[0]).getTime(), Timestamp.valueOf(times[1]).getTime());
+        Map<String, Object> result = new HashMap<>();
+        result.put("holdId", hold.id);
+        result.put("vehicleId", vehicleId);
+        result.put("pickupTime", Timestamp.valueOf(times[0]));
+        result.put("returnTime", Timestamp.valueOf(times[1]));
+        result.put("expiresAt", hold.expiresAt);
+        result.put("rentalDays", days);
+        result.put("dailyRate", quote.averageDaily());
+        result.put("rentalAmount", quote.total);
+        result.put("depositAmount", pricing.deposit);
+        return result;
+    }
+    
+    private Map<String, Object> createOrder(Map<String, Object> data) throws Exception {
+        // Generate unique order number using UUID to ensure uniqueness under high concurrency
+        String orderNo = "ORD" + UUID.randomUUID().toString().replace("-", "").substring(0, 16).toUpperCase();
+        
+        // Parse and validate dates
+        LocalDateTime[] times = parseRentalTimes(data);
+        LocalDateTime pickupTime = times[0];
+        LocalDateTime returnTime = times[1];
         
         // Calculate rental days
         long days = java.time.Duration.between(pickupTime, returnTime).toDays();
         if (days < MIN_RENTAL_DAYS) days = MIN_RENTAL_DAYS;
         
-        // Get vehicle price
         Long vehicleId = ((Number) data.get("vehicleId")).longValue();
-        BigDecimal dailyRate = getVehicleDailyPrice(vehicleId);
-        BigDecimal deposit = getVehicleDeposit(vehicleId);
+        long userId = ((Number) data.get("userId")).longValue();
+        List<Map<String, Object>> addons = parseAddons(data.get("addons"));
         
-        // Calculate amounts
-        BigDecimal rentalAmount = dailyRate.multiply(BigDecimal.valueOf(days));
-        BigDecimal serviceFee = new BigDecimal(data.getOrDefault("serviceFee", "0").toString());
-        BigDecimal insuranceFee = new BigDecimal(data.getOrDefault("insuranceFee", "0").toString());
-        BigDecimal addonFee = new BigDecimal(data.getOrDefault("addonFee", "0").toString());
-        BigDecimal discountAmount = new BigDecimal(data.getOrDefault("discountAmount", "0").toString());
+        // Reserve the range in memory first: a conflicting booking is refused here without a database round trip
+        BookingEngine engine = BookingEngine.get(getServletContext());
+        BookingEngine.Hold hold = engine.claim(userId, vehicleId, Timestamp.valueOf(pickupTime).getTime(),
+                Timestamp.valueOf(returnTime).getTime(), (String) data.get("holdId"));
         
-        BigDecimal totalAmount = rentalAmount.add(serviceFee).add(insuranceFee).add(addonFee).subtract(discountAmount);
+        // One pooled connection and one transaction for the vehicle lock and pricing, the overlap check and the inserts
+        boolean committed = false;
+        try (Connection conn = DatabaseInitializer.getConnection()) {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try {
+                // Database backstop, also covering other instances: the vehicle row lock serializes bookings of this
+                // vehicle until commit, so the overlap check below cannot race another insert. The same read is
+                // the order's pricing snapshot. It must be the transaction's first read: a plain SELECT before it
+                // would fix the REPEATABLE READ snapshot before the lock wait and hide an order committed meanwhile.
+                VehiclePricingCache.Snapshot vehicle = VehiclePricingCache.read(conn, vehicleId, true);
+                if (vehicle == null) throw new Exception("Vehicle not found");
+                VehiclePricingCache.get(getServletContext()).put(vehicle);
+                if (!vehicle.isRentable()) throw new BookingEngine.ConflictException("该车辆当前不可租");
+                if (hasOverlappingOrder(conn, vehicleId, pickupTime, returnTime)) {
+                    throw new BookingEngine.ConflictException("该车辆在所选时间段已被预订");
+                }
+                // vehicle_pricing rules for each day, vehicles.daily_price where none applies
+                PricingCalendar.Quote quote = PricingCalendar.get(getServletContext()).quote(vehicle, pickupTime.toLocalDate(), days);
+                BigDecimal dailyRate = quote.averageDaily();
+                BigDecimal deposit = vehicle.deposit;
         
-        String sql = "INSERT INTO orders (order_no, user_id, vehicle_id, store_id, pickup_store_id, " +
-                    "return_store_id, pickup_time, return_time, rental_days, daily_rate, rental_amount, " +
-                    "service_fee, insurance_fee, addon_fee, discount_amount, total_amount, deposit_amount, " +
-                    "order_status, payment_status, deposit_status, pickup_type, return_type, pickup_address, " +
-                    "return_address, remark) VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)";
+                // Calculate amounts
+                BigDecimal rentalAmount = quote.total;
+                BigDecimal serviceFee = new BigDecimal(data.getOrDefault("serviceFee", "0").toString());
+                BigDecimal insuranceFee = new BigDecimal(data.getOrDefault("insuranceFee", "0").toString());
+                BigDecimal addonFee = addons.isEmpty() ? new BigDecimal(data.getOrDefault("addonFee", "0").toString()) : BigDecimal.ZERO;
+                for (Map<String, Object> addon : addons) addonFee = addonFee.add((BigDecimal) addon.get("totalPrice"));
+                BigDecimal discountAmount = new BigDecimal(data.getOrDefault("discountAmount", "0").toString());
         
-        try (Connection conn = DatabaseInitializer.getConnection();
-             PreparedStatement ps = conn.prepareStatement(sql, PreparedStatement.RETURN_GENERATED_KEYS)) {
+                BigDecimal totalAmount = rentalAmount.add(serviceFee).add(insuranceFee).add(addonFee).subtract(discountAmount);
+        
+                String sql = "INSERT INTO orders (order_no, user_id, vehicle_id, store_id, pickup_store_id, " +
+                            "return_store_id, pickup_time, return_time, rental_days, daily_rate, rental_amount, " +
+                            "service_fee, insurance_fee, addon_fee, discount_amount, total_amount, deposit_amount, " +
+                            "order_status, payment_status, deposit_status, pickup_type, return_type, pickup_address, " +
+                            "return_address, remark) VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)";
+        
+                try (PreparedStatement ps = conn.prepareStatement(sql, PreparedStatement.RETURN_GENERATED_KEYS)) {
             
-            ps.setString(1, orderNo);
-            ps.setLong(2, ((Number) data.get("userId")).longValue());
-            ps.setLong(3, vehicleId);
-            // Use setLong with proper null handling instead of setObject
-            if (data.get("storeId") != null) {
-                ps.setLong(4, ((Number) data.get("storeId")).longValue());
-            } else {
-                ps.setNull(4, java.sql.Types.BIGINT);
-            }
-            if (data.get("pickupStoreId") != null) {
-                ps.setLong(5, ((Number) data.get("pickupStoreId")).longValue());
-            } else {
-                ps.setNull(5, java.sql.Types.BIGINT);
-            }
-            if (data.get("returnStoreId") != null) {
-                ps.setLong(6, ((Number) data.get("returnStoreId")).longValue());
-            } else {
-                ps.setNull(6, java.sql.Types.BIGINT);
-            }
-            ps.setTimestamp(7, Timestamp.valueOf(pickupTime));
-            ps.setTimestamp(8, Timestamp.valueOf(returnTime));
-            ps.setInt(9, (int) days);
-            ps.setBigDecimal(10, dailyRate);
-            ps.setBigDecimal(11, rentalAmount);
-            ps.setBigDecimal(12, serviceFee);
-            ps.setBigDecimal(13, insuranceFee);
-            ps.setBigDecimal(14, addonFee);
-            ps.setBigDecimal(15, discountAmount);
-            ps.setBigDecimal(16, totalAmount);
-            ps.setBigDecimal(17, deposit);
-            ps.setString(18, "PENDING");
-            ps.setString(19, "UNPAID");
-            ps.setString(20, "UNPAID");
-            ps.setString(21, (String) data.get("pickupType"));
-            ps.setString(22, (String) data.get("returnType"));
-            ps.setString(23, (String) data.get("pickupAddress"));
-            ps.setString(24, (String) data.get("returnAddress"));
-            ps.setString(25, (String) data.get("remark"));
+                    ps.setString(1, orderNo);
+                    ps.setLong(2, ((Number) data.get("userId")).longValue());
+                    ps.setLong(3, vehicleId);
+                    // Use setLong with proper null handling instead of setObject
+                    if (data.get("storeId") != null) {
+                        ps.setLong(4, ((Number) data.get("storeId")).longValue());
+                    } else {
+                        ps.setNull(4, java.sql.Types.BIGINT);
+                    }
+                    if (data.get("pickupStoreId") != null) {
+                        ps.setLong(5, ((Number) data.get("pickupStoreId")).longValue());
+                    } else {
+                        ps.setNull(5, java.sql.Types.BIGINT);
+                    }
+                    if (data.get("returnStoreId") != null) {
+                        ps.setLong(6, ((Number) data.get("returnStoreId")).longValue());
+                    } else {
+                        ps.setNull(6, java.sql.Types.BIGINT);
+                    }
+                    ps.setTimestamp(7, Timestamp.valueOf(pickupTime));
+                    ps.setTimestamp(8, Timestamp.valueOf(returnTime));
+                    ps.setInt(9, (int) days);
+                    ps.setBigDecimal(10, dailyRate);
+                    ps.setBigDecimal(11, rentalAmount);
+                    ps.setBigDecimal(12, serviceFee);
+                    ps.setBigDecimal(13, insuranceFee);
+                    ps.setBigDecimal(14, addonFee);
+                    ps.setBigDecimal(15, discountAmount);
+                    ps.setBigDecimal(16, totalAmount);
+                    ps.setBigDecimal(17, deposit);
+                    ps.setString(18, "PENDING");
+                    ps.setString(19, "UNPAID");
+                    ps.setString(20, "UNPAID");
+                    ps.setString(21, (String) data.get("pickupType"));
+                    ps.setString(22, (String) data.get("returnType"));
+                    ps.setString(23, (String) data.get("pickupAddress"));
+                    ps.setString(24, (String) data.get("returnAddress"));
+                    ps.setString(25, (String) data.get("remark"));
             
-            ps.executeUpdate();
+                    ps.executeUpdate();
             
-            long orderId = 0;
-            try (ResultSet rs = ps.getGeneratedKeys()) {
-                if (rs.next()) {
-                    orderId = rs.getLong(1);
-                }
-            }
+                    long orderId = 0;
+                    try (ResultSet rs = ps.getGeneratedKeys()) {
+                        if (rs.next()) {
+                            orderId = rs.getLong(1);
+                        }
+                    }
+                    if (!addons.isEmpty()) insertAddons(conn, orderId, addons);
+                    conn.commit();
+                    committed = true;
+                    engine.confirm(hold, orderId);
+                    FleetUtilization.get(getServletContext()).orderAdded(orderId, vehicleId, hold.start, hold.end);
             
-            // Return created order
-            Map<String, Object> result = new HashMap<>();
-            result.put("id", orderId);
-            result.put("orderNo", orderNo);
-            result.put("totalAmount", totalAmount);
-            result.put("depositAmount", deposit);
-            result.put("orderStatus", "PENDING");
-            result.put("paymentStatus", "UNPAID");
+                    // Return created order
+                    Map<String, Object> result = new HashMap<>();
+                    result.put("id", orderId);
+                    result.put("dailyRate", dailyRate);
+                    result.put("rentalAmount", rentalAmount);
+                    result.put("addons", addons);
+                    result.put("orderNo", orderNo);
+                    result.put("totalAmount", totalAmount);
+                    result.put("depositAmount", deposit);
+                    result.put("orderStatus", "PENDING");
+                    result.put("paymentStatus", "UNPAID");
             
-            return result;
+                    return result;
+                }
+            } finally {
+                if (!committed) {
+                    try { conn.rollback(); } catch (Exception ignore) {}
+                }
+                conn.setAutoCommit(autoCommit);
+            }
+        } finally {
+            if (!committed) engine.release(hold);
         }
     }
     
-    private BigDecimal getVehicleDailyPrice(Long vehicleId) throws Exception {
-        String sql = "SELECT daily_price FROM vehicles WHERE id = ?";
-        try (Connection conn = DatabaseInitializer.getConnection();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setLong(1, vehicleId);
-            try (ResultSet rs = ps.executeQuery()) {
-                if (rs.next()) {
-                    return rs.getBigDecimal("daily_price");
-                }
+    /**
+     * Validate the addons of a request body ([{addonType, addonName, quantity, unitPrice}]) into the rows to insert,
+     * with totalPrice = unitPrice x quantity.
+     */
+    private static List<Map<String, Object>> parseAddons(Object value) {
+        List<Map<String, Object>> out = new ArrayList<>();
+        if (value == null) return out;
+        if (!(value instanceof List)) throw new IllegalArgumentException("addons must be a list");
+        for (Object o : (List<?>) value) {
+            if (!(o instanceof Map)) throw new IllegalArgumentException("Invalid addon");
+            Map<?, ?> in = (Map<?, ?>) o;
+            int quantity = in.get("quantity") instanceof Number ? ((Number) in.get("quantity")).intValue() : 1;
+            if (quantity < 1) throw new IllegalArgumentException("Invalid addon quantity");
+            BigDecimal unitPrice;
+            try {
+                unitPrice = new BigDecimal(String.valueOf(in.get("unitPrice")));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid addon unitPrice");
             }
+            if (unitPrice.signum() < 0) throw new IllegalArgumentException("Invalid addon unitPrice");
+            Map<String, Object> addon = new LinkedHashMap<>();
+            addon.put("addonType", in.get("addonType") == null ? null : String.valueOf(in.get("addonType")));
+            addon.put("addonName", in.get("addonName") == null ? null : String.valueOf(in.get("addonName")));
+            addon.put("quantity", quantity);
+            addon.put("unitPrice", unitPrice);
+            addon.put("totalPrice", unitPrice.multiply(BigDecimal.valueOf(quantity)));
+            out.add(addon);
         }
-        throw new Exception("Vehicle not found");
+        return out;
     }
     
-    private BigDecimal getVehicleDeposit(Long vehicleId) throws Exception {
-        String sql = "SELECT deposit FROM vehicles WHERE id = ?";
-        try (Connection conn = DatabaseInitializer.getConnection();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
+    /** Insert the order's addons as one batch (a single multi-row INSERT with the pool's driver settings) and set their ids. */
+    private void insertAddons(Connection conn, long orderId, List<Map<String, Object>> addons) throws Exception {
+        String sql = "INSERT INTO order_addons (order_id, addon_type, addon_name, quantity, unit_price, total_price) " +
+                    "VALUES (?,?,?,?,?,?)";
+        try (PreparedStatement ps = conn.prepareStatement(sql, PreparedStatement.RETURN_GENERATED_KEYS)) {
+            for (Map<String, Object> addon : addons) {
+                ps.setLong(1, orderId);
+                ps.setString(2, (String) addon.get("addonType"));
+                ps.setString(3, (String) addon.get("addonName"));
+                ps.setInt(4, (Integer) addon.get("quantity"));
+                ps.setBigDecimal(5, (BigDecimal) addon.get("unitPrice"));
+                ps.setBigDecimal(6, (BigDecimal) addon.get("totalPrice"));
+                ps.addBatch();
+            }
+            ps.executeBatch();
+            try (ResultSet rs = ps.getGeneratedKeys()) {
+                for (int i = 0; i < addons.size() && rs.next(); i++) addons.get(i).put("id", rs.getLong(1));
+            }
+        }
+    }
+    
+    /** Whether an order still holding the vehicle overlaps [pickupTime, returnTime). */
+    private boolean hasOverlappingOrder(Connection conn, Long vehicleId, LocalDateTime pickupTime, LocalDateTime returnTime) throws Exception {
+        String sql = "SELECT 1 FROM orders WHERE vehicle_id = ? AND pickup_time < ? AND return_time > ? " +
+                    "AND order_status NOT IN (" +
+                    String.join(",", Collections.nCopies(VehicleAvailability.RELEASED_ORDER_STATUSES.length, "?")) +
+                    ") LIMIT 1";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setLong(1, vehicleId);
+            ps.setTimestamp(2, Timestamp.valueOf(returnTime));
+            ps.setTimestamp(3, Timestamp.valueOf(pickupTime));
+            for (int i = 0; i < VehicleAvailability.RELEASED_ORDER_STATUSES.length; i++) {
+                ps.setString(i + 4, VehicleAvailability.RELEASED_ORDER_STATUSES[i]);
+            }
             try (ResultSet rs = ps.executeQuery()) {
-                if (rs.next()) {
-                    return rs.getBigDecimal("deposit");
-                }
+                return rs.next();
             }
         }
-        throw new Exception("Vehicle not found");
     }
 }
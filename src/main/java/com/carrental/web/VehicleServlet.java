@@ -1,6 +1,10 @@
 package com.carrental.web;
 
 import com.carrental.core.DatabaseInitializer;
+import com.carrental.core.FleetUtilization;
+import com.carrental.core.PricingCalendar;
+import com.carrental.core.VehicleAvailability;
+import com.carrental.core.VehiclePricingCache;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.annotation.WebServlet;
@@ -12,7 +16,12 @@ import java.io.IOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -24,6 +33,9 @@ import java.util.Map;
 @WebServlet(name = "VehicleServlet", urlPatterns = {"/api/vehicle", "/api/vehicle/*"})
 public class VehicleServlet extends HttpServlet {
     private final ObjectMapper mapper = new ObjectMapper();
+    private static final int LIST_LIMIT = 100;
+    // how long a date-range search waits for the availability index after startup before using SQL
+    private static final long INDEX_WAIT_MILLIS = 2000L;
     
     @Override
     protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
@@ -38,13 +50,32 @@ public class VehicleServlet extends HttpServlet {
                 String category = req.getParameter("category");
                 String store = req.getParameter("store");
                 String status = req.getParameter("status");
+                String city = req.getParameter("city");
+                // optional rental window: only vehicles not booked between pickupTime and returnTime
+                long[] window = parseWindow(req.getParameter("pickupTime"), req.getParameter("returnTime"));
                 
-                List<Map<String, Object>> vehicles = listVehicles(category, store, status);
+                List<Map<String, Object>> vehicles = listVehicles(category, store, status, city, window);
                 Map<String, Object> result = new HashMap<>();
                 result.put("success", true);
                 result.put("data", vehicles);
                 result.put("total", vehicles.size());
                 
+                resp.getWriter().write(mapper.writeValueAsString(result));
+            } else if (pathInfo.endsWith("/quote")) {
+                // Price of renting the vehicle between pickupTime and returnTime
+                long id = Long.parseLong(pathInfo.substring(1, pathInfo.length() - "/quote".length()));
+                long[] window = parseWindow(req.getParameter("pickupTime"), req.getParameter("returnTime"));
+                if (window == null) throw new IllegalArgumentException("pickupTime and returnTime are required");
+                Map<String, Object> quote = quote(id, window);
+                Map<String, Object> result = new HashMap<>();
+                if (quote != null) {
+                    result.put("success", true);
+                    result.put("data", quote);
+                } else {
+                    result.put("success", false);
+                    result.put("message", "Vehicle not found");
+                }
+                
                 resp.getWriter().write(mapper.writeValueAsString(result));
             } else {
                 // Get vehicle by ID
@@ -96,6 +127,12 @@ public class VehicleServlet extends HttpServlet {
             
             // Create vehicle
             long id = createVehicle(vehicleData);
+            long categoryId = vehicleData.get("categoryId") == null ? 0L : ((Number) vehicleData.get("categoryId")).longValue();
+            long storeId = vehicleData.get("storeId") == null ? 0L : ((Number) vehicleData.get("storeId")).longValue();
+            VehicleAvailability.get(getServletContext()).vehicleChanged(id, categoryId, storeId,
+                    (String) vehicleData.getOrDefault("status", "AVAILABLE"));
+            FleetUtilization.get(getServletContext()).vehicleChanged(id, categoryId, storeId);
+            VehiclePricingCache.get(getServletContext()).invalidate(id);
             
             Map<String, Object> result = new HashMap<>();
             result.put("success", true);
@@ -113,74 +150,166 @@ public class VehicleServlet extends HttpServlet {
         }
     }
     
-    private List<Map<String, Object>> listVehicles(String category, String store, String status) throws Exception {
+    /** Quote from the cached vehicle pricing and the compiled vehicle_pricing calendar; null for an unknown vehicle. */
+    private Map<String, Object> quote(long id, long[] window) throws Exception {
+        VehiclePricingCache.Snapshot vehicle = VehiclePricingCache.get(getServletContext()).snapshot(id);
+        if (vehicle == null) return null;
+        // whole days, at least one, as createOrder charges them
+        long days = Math.max(1L, (window[1] - window[0]) / (24L * 60L * 60L * 1000L));
+        LocalDate first = new Timestamp(window[0]).toLocalDateTime().toLocalDate();
+        PricingCalendar.Quote quote = PricingCalendar.get(getServletContext()).quote(vehicle, first, days);
+        Map<String, Object> m = new HashMap<>();
+        m.put("vehicleId", id);
+        m.put("rentalDays", days);
+        m.put("rentalAmount", quote.total);
+        m.put("dailyRate", quote.averageDaily());
+        m.put("capped", quote.capped);
+        m.put("depositAmount", vehicle.deposit);
+        return m;
+    }
+
+    /**
+     * Parse pickupTime / returnTime (ISO date-time, or a date meaning its start) into epoch millis;
+     * null when neither is given.
+     */
+    private static long[] parseWindow(String pickup, String ret) {
+        if ((pickup == null || pickup.isEmpty()) && (ret == null || ret.isEmpty())) return null;
+        if (pickup == null || pickup.isEmpty() || ret == null || ret.isEmpty()) {
+            throw new IllegalArgumentException("pickupTime and returnTime must be given together");
+        }
+        long from = parseTime(pickup);
+        long to = parseTime(ret);
+        if (to <= from) throw new IllegalArgumentException("Return time must be after pickup time");
+        return new long[]{from, to};
+    }
+
+    private static long parseTime(String s) {
+        try {
+            LocalDateTime t = s.length() <= 10 ? LocalDate.parse(s).atStartOfDay() : LocalDateTime.parse(s, DateTimeFormatter.ISO_DATE_TIME);
+            return Timestamp.valueOf(t).getTime();
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Invalid date format. Use ISO-8601 format (e.g., 2024-01-01T10:00:00)");
+        }
+    }
+
+    private static Long parseId(String value, String name) {
+        if (value == null || value.isEmpty()) return null;
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + name + " ID: " + value);
+        }
+    }
+
+    private List<Map<String, Object>> listVehicles(String category, String store, String status, String city, long[] window) throws Exception {
+        Long categoryId = parseId(category, "category");
+        Long storeId = parseId(store, "store");
+        boolean rentable = status == null || status.isEmpty() || VehicleAvailability.RENTABLE_STATUS.equals(status);
+        if (window != null && rentable) {
+            // answered from the in-memory availability index; SQL below only while it is still loading
+            VehicleAvailability availability = VehicleAvailability.get(getServletContext());
+            if (availability.awaitLoaded(INDEX_WAIT_MILLIS)) {
+                List<Long> ids = availability.findAvailable(window[0], window[1], categoryId, storeId, city, LIST_LIMIT);
+                return vehiclesByIds(ids);
+            }
+        }
+
         List<Map<String, Object>> vehicles = new ArrayList<>();
         StringBuilder sql = new StringBuilder("SELECT v.*, c.category_name, s.store_name FROM vehicles v ");
         sql.append("LEFT JOIN vehicle_categories c ON v.category_id = c.id ");
         sql.append("LEFT JOIN stores s ON v.store_id = s.id WHERE 1=1");
         
-        if (category != null && !category.isEmpty()) {
+        if (categoryId != null) {
             sql.append(" AND v.category_id = ?");
         }
-        if (store != null && !store.isEmpty()) {
+        if (storeId != null) {
             sql.append(" AND v.store_id = ?");
         }
+        if (city != null && !city.isEmpty()) {
+            sql.append(" AND s.city = ?");
+        }
         if (status != null && !status.isEmpty()) {
             sql.append(" AND v.status = ?");
         } else {
             sql.append(" AND v.status = 'AVAILABLE'");
         }
+        if (window != null) {
+            sql.append(" AND NOT EXISTS (SELECT 1 FROM orders o WHERE o.vehicle_id = v.id AND o.pickup_time < ? AND o.return_time > ?");
+            sql.append(" AND o.order_status NOT IN ('").append(String.join("','", VehicleAvailability.RELEASED_ORDER_STATUSES)).append("'))");
+        }
         
-        sql.append(" ORDER BY v.id DESC LIMIT 100");
+        sql.append(" ORDER BY v.id DESC LIMIT " + LIST_LIMIT);
         
         try (Connection conn = DatabaseInitializer.getConnection();
              PreparedStatement ps = conn.prepareStatement(sql.toString())) {
             
             int paramIndex = 1;
-            if (category != null && !category.isEmpty()) {
-                try {
-                    ps.setLong(paramIndex++, Long.parseLong(category));
-                } catch (NumberFormatException e) {
-                    throw new IllegalArgumentException("Invalid category ID: " + category);
-                }
+            if (categoryId != null) {
+                ps.setLong(paramIndex++, categoryId);
             }
-            if (store != null && !store.isEmpty()) {
-                try {
-                    ps.setLong(paramIndex++, Long.parseLong(store));
-                } catch (NumberFormatException e) {
-                    throw new IllegalArgumentException("Invalid store ID: " + store);
-                }
+            if (storeId != null) {
+                ps.setLong(paramIndex++, storeId);
+            }
+            if (city != null && !city.isEmpty()) {
+                ps.setString(paramIndex++, city);
             }
             if (status != null && !status.isEmpty()) {
                 ps.setString(paramIndex++, status);
             }
+            if (window != null) {
+                ps.setTimestamp(paramIndex++, new Timestamp(window[1]));
+                ps.setTimestamp(paramIndex++, new Timestamp(window[0]));
+            }
             
             try (ResultSet rs = ps.executeQuery()) {
                 while (rs.next()) {
-                    Map<String, Object> vehicle = new HashMap<>();
-                    vehicle.put("id", rs.getLong("id"));
-                    vehicle.put("vehicleCode", rs.getString("vehicle_code"));
-                    vehicle.put("licensePlate", rs.getString("license_plate"));
-                    vehicle.put("brand", rs.getString("brand"));
-                    vehicle.put("model", rs.getString("model"));
-                    vehicle.put("year", rs.getInt("year"));
-                    vehicle.put("color", rs.getString("color"));
-                    vehicle.put("seats", rs.getInt("seats"));
-                    vehicle.put("transmission", rs.getString("transmission"));
-                    vehicle.put("fuelType", rs.getString("fuel_type"));
-                    vehicle.put("dailyPrice", rs.getBigDecimal("daily_price"));
-                    vehicle.put("deposit", rs.getBigDecimal("deposit"));
-                    vehicle.put("images", rs.getString("images"));
-                    vehicle.put("status", rs.getString("status"));
-                    vehicle.put("categoryName", rs.getString("category_name"));
-                    vehicle.put("storeName", rs.getString("store_name"));
-                    vehicles.add(vehicle);
+                    vehicles.add(listRow(rs));
                 }
             }
         }
         
         return vehicles;
     }
+
+    private List<Map<String, Object>> vehiclesByIds(List<Long> ids) throws Exception {
+        List<Map<String, Object>> vehicles = new ArrayList<>();
+        if (ids.isEmpty()) return vehicles;
+        String sql = "SELECT v.*, c.category_name, s.store_name FROM vehicles v " +
+                    "LEFT JOIN vehicle_categories c ON v.category_id = c.id " +
+                    "LEFT JOIN stores s ON v.store_id = s.id WHERE v.id IN (" +
+                    String.join(",", Collections.nCopies(ids.size(), "?")) + ") ORDER BY v.id DESC";
+        try (Connection conn = DatabaseInitializer.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            for (int i = 0; i < ids.size(); i++) ps.setLong(i + 1, ids.get(i));
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    vehicles.add(listRow(rs));
+                }
+            }
+        }
+        return vehicles;
+    }
+
+    private static Map<String, Object> listRow(ResultSet rs) throws java.sql.SQLException {
+        Map<String, Object> vehicle = new HashMap<>();
+        vehicle.put("id", rs.getLong("id"));
+        vehicle.put("vehicleCode", rs.getString("vehicle_code"));
+        vehicle.put("licensePlate", rs.getString("license_plate"));
+        vehicle.put("brand", rs.getString("brand"));
+        vehicle.put("model", rs.getString("model"));
+        vehicle.put("year", rs.getInt("year"));
+        vehicle.put("color", rs.getString("color"));
+        vehicle.put("seats", rs.getInt("seats"));
+        vehicle.put("transmission", rs.getString("transmission"));
+        vehicle.put("fuelType", rs.getString("fuel_type"));
+        vehicle.put("dailyPrice", rs.getBigDecimal("daily_price"));
+        vehicle.put("deposit", rs.getBigDecimal("deposit"));
+        vehicle.put("images", rs.getString("images"));
+        vehicle.put("status", rs.getString("status"));
+        vehicle.put("categoryName", rs.getString("category_name"));
+        vehicle.put("storeName", rs.getString("store_name"));
+        return vehicle;
+    }
     
     private Map<String, Object> getVehicleById(long id) throws Exception {
         String sql = "SELECT v.*, c.category_name, s.store_name FROM vehicles v " +
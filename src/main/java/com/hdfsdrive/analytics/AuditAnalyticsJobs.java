@@ -0,0 +1,372 @@
+package com.hdfsdrive.analytics;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.reduce.LongSumReducer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+/**
+ * MapReduce jobs over the archived audit log (gzip segments under yyyy/MM directories, see
+ * {@link com.hdfsdrive.core.AuditLogArchiver}) and the compact summary built from their output:
+ * <ul>
+ *   <li>daily: operations per user per day</li>
+ *   <li>transfer: upload / download counts and bytes per user per day (from the bytes= info of upload,
+ *       download and share-download lines)</li>
+ *   <li>shared: the most shared paths, by share-create count, with their share downloads</li>
+ * </ul>
+ * Only the months overlapping the requested window are read. Jobs run on whatever framework the configuration
+ * names; with mapreduce.framework.name=local (the default) they run in-process on the LocalJobRunner.
+ */
+public class AuditAnalyticsJobs {
+    public static final String CONF_SINCE = "hdfsdrive.analytics.since";
+    public static final String CONF_TOP = "hdfsdrive.analytics.top";
+    public static final int DEFAULT_DAYS = 90;
+    public static final int DEFAULT_TOP = 100;
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final DateTimeFormatter MONTH_DIR = DateTimeFormatter.ofPattern("yyyy/MM");
+
+    private AuditAnalyticsJobs() {}
+
+    // --- line parsing shared by the mappers ---
+
+    /** Fields of one log line; null when the line has no timestamp or action. */
+    static Map<String, String> parse(String line) {
+        if (line.length() < 19 || line.charAt(4) != '-' || line.charAt(10) != ' ') return null;
+        String[] parts = line.split("\t");
+        Map<String, String> m = new LinkedHashMap<>();
+        m.put("day", parts[0].substring(0, 10));
+        for (int i = 1; i < parts.length; i++) {
+            int eq = parts[i].indexOf('=');
+            if (eq > 0) m.put(parts[i].substring(0, eq), parts[i].substring(eq + 1));
+        }
+        return m.get("action") == null ? null : m;
+    }
+
+    /** Value of a "bytes=N" item inside the info field, or -1. */
+    static long bytesOf(String info) {
+        if (info == null) return -1L;
+        int i = info.indexOf("bytes=");
+        if (i < 0) return -1L;
+        long v = 0;
+        int j = i + 6;
+        for (; j < info.length() && Character.isDigit(info.charAt(j)); j++) v = v * 10 + (info.charAt(j) - '0');
+        return j == i + 6 ? -1L : v;
+    }
+
+    private static boolean inWindow(Map<String, String> f, String since) {
+        return since == null || f.get("day").compareTo(since) >= 0;
+    }
+
+    // --- job 1: operations per user per day ---
+
+    public static class DailyUserMapper extends Mapper<LongWritable, Text, Text, LongWritable> {
+        private static final LongWritable ONE = new LongWritable(1);
+        private final Text key = new Text();
+        private String since;
+
+        @Override
+        protected void setup(Context context) {
+            since = context.getConfiguration().get(CONF_SINCE);
+        }
+
+        @Override
+        protected void map(LongWritable offset, Text value, Context context) throws IOException, InterruptedException {
+            Map<String, String> f = parse(value.toString());
+            if (f == null || !inWindow(f, since)) return;
+            String user = f.get("user");
+            key.set(f.get("day") + "\t" + (user == null ? "unknown" : user));
+            context.write(key, ONE);
+        }
+    }
+
+    // --- job 2: upload / download volume per user per day ---
+
+    public static class TransferMapper extends Mapper<LongWritable, Text, Text, LongWritable> {
+        private static final LongWritable ONE = new LongWritable(1);
+        private final Text key = new Text();
+        private final LongWritable bytes = new LongWritable();
+        private String since;
+
+        @Override
+        protected void setup(Context context) {
+            since = context.getConfiguration().get(CONF_SINCE);
+        }
+
+        @Override
+        protected void map(LongWritable offset, Text value, Context context) throws IOException, InterruptedException {
+            Map<String, String> f = parse(value.toString());
+            if (f == null || !inWindow(f, since)) return;
+            String action = f.get("action");
+            String direction;
+            if ("upload".equals(action)) direction = "upload";
+            else if ("download".equals(action) || "share-download".equals(action)) direction = "download";
+            else return;
+            String user = f.get("user");
+            String prefix = f.get("day") + "\t" + (user == null ? "unknown" : user) + "\t" + direction;
+            // two counters per line so the plain long sum can serve as combiner and reducer
+            key.set(prefix + "\tcount");
+            context.write(key, ONE);
+            long n = bytesOf(f.get("info"));
+            if (n > 0) {
+                key.set(prefix + "\tbytes");
+                bytes.set(n);
+                context.write(key, bytes);
+            }
+        }
+    }
+
+    // --- job 3: most shared paths ---
+
+    public static class SharedPathMapper extends Mapper<LongWritable, Text, Text, Text> {
+        private static final Text CREATE = new Text("1,0");
+        private static final Text DOWNLOAD = new Text("0,1");
+        private final Text key = new Text();
+        private String since;
+
+        @Override
+        protected void setup(Context context) {
+            since = context.getConfiguration().get(CONF_SINCE);
+        }
+
+        @Override
+        protected void map(LongWritable offset, Text value, Context context) throws IOException, InterruptedException {
+            Map<String, String> f = parse(value.toString());
+            if (f == null || !inWindow(f, since)) return;
+            String action = f.get("action");
+            String path = f.get("path");
+            if (path == null || path.isEmpty()) return;
+            if ("share-create".equals(action)) {
+                // non-admin users share virtual paths under their own home
+                String user = f.get("user");
+                if (!path.startsWith("/users/") && user != null && !"root".equals(user) && !"unknown".equals(user)) {
+                    path = "/users/" + user + (path.startsWith("/") ? path : "/" + path);
+                }
+                key.set(path);
+                context.write(key, CREATE);
+            } else if ("share-download".equals(action)) {
+                key.set(path);
+                context.write(key, DOWNLOAD);
+            }
+        }
+    }
+
+    static long[] sumPairs(Iterable<Text> values) {
+        long creates = 0, downloads = 0;
+        for (Text v : values) {
+            String s = v.toString();
+            int comma = s.indexOf(',');
+            creates += Long.parseLong(s.substring(0, comma));
+            downloads += Long.parseLong(s.substring(comma + 1));
+        }
+        return new long[]{creates, downloads};
+    }
+
+    public static class PairSumCombiner extends Reducer<Text, Text, Text, Text> {
+        private final Text out = new Text();
+
+        @Override
+        protected void reduce(Text key, Iterable<Text> values, Context context) throws IOException, InterruptedException {
+            long[] sum = sumPairs(values);
+            out.set(sum[0] + "," + sum[1]);
+            context.write(key, out);
+        }
+    }
+
+    /**
+     * Single reducer keeping the top N paths in a bounded min-heap; emits them, most shared first, on cleanup.
+     */
+    public static class TopSharedReducer extends Reducer<Text, Text, Text, Text> {
+        private static final Comparator<Object[]> ORDER = Comparator
+                .<Object[]>comparingLong(e -> (Long) e[1]).thenComparingLong(e -> (Long) e[2]);
+        private final PriorityQueue<Object[]> heap = new PriorityQueue<>(ORDER);
+        private int top;
+
+        @Override
+        protected void setup(Context context) {
+            top = Math.max(1, context.getConfiguration().getInt(CONF_TOP, DEFAULT_TOP));
+        }
+
+        @Override
+        protected void reduce(Text key, Iterable<Text> values, Context context) {
+            long[] sum = sumPairs(values);
+            Object[] e = new Object[]{key.toString(), sum[0], sum[1]};
+            if (heap.size() < top) {
+                heap.add(e);
+            } else if (ORDER.compare(e, heap.peek()) > 0) {
+                heap.poll();
+                heap.add(e);
+            }
+        }
+
+        @Override
+        protected void cleanup(Context context) throws IOException, InterruptedException {
+            List<Object[]> sorted = new ArrayList<>(heap);
+            sorted.sort(ORDER.reversed());
+            for (Object[] e : sorted) context.write(new Text((String) e[0]), new Text(e[1] + "," + e[2]));
+        }
+    }
+
+    // --- driver ---
+
+    /**
+     * Run the three jobs over the archive for the last 'days' days and return the summary. Job output goes to a
+     * fresh directory under workRoot that is removed afterwards.
+     */
+    public static Map<String, Object> run(Configuration conf, String archiveRoot, String workRoot, int days, int top)
+            throws Exception {
+        LocalDate today = LocalDate.now();
+        LocalDate since = today.minusDays(Math.max(1, days) - 1L);
+        conf.set(CONF_SINCE, since.toString());
+        conf.setInt(CONF_TOP, top);
+        FileSystem fs = FileSystem.get(conf);
+
+        List<Path> inputs = new ArrayList<>();
+        for (YearMonth m = YearMonth.from(since); !m.isAfter(YearMonth.from(today)); m = m.plusMonths(1)) {
+            Path p = new Path(archiveRoot + "/" + MONTH_DIR.format(m.atDay(1)));
+            if (fs.exists(p)) inputs.add(p);
+        }
+
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("generatedAt", System.currentTimeMillis());
+        summary.put("since", since.toString());
+        summary.put("until", today.toString());
+        summary.put("inputs", inputs.size());
+        if (inputs.isEmpty()) {
+            summary.put("daily", new TreeMap<>());
+            summary.put("transfer", new TreeMap<>());
+            summary.put("users", new TreeMap<>());
+            summary.put("topShared", new ArrayList<>());
+            return summary;
+        }
+
+        Path work = new Path(workRoot + "/run-" + System.currentTimeMillis());
+        try {
+            Path daily = new Path(work, "daily");
+            Path transfer = new Path(work, "transfer");
+            Path shared = new Path(work, "shared");
+            runJob(conf, "audit-daily-user-ops", inputs, daily, DailyUserMapper.class, LongSumReducer.class,
+                    LongSumReducer.class, LongWritable.class, 0);
+            runJob(conf, "audit-transfer-volume", inputs, transfer, TransferMapper.class, LongSumReducer.class,
+                    LongSumReducer.class, LongWritable.class, 0);
+            runJob(conf, "audit-top-shared", inputs, shared, SharedPathMapper.class, PairSumCombiner.class,
+                    TopSharedReducer.class, Text.class, 1);
+            buildSummary(fs, daily, transfer, shared, summary);
+        } finally {
+            try { fs.delete(work, true); } catch (IOException ignore) {}
+        }
+        return summary;
+    }
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private static void runJob(Configuration conf, String name, List<Path> inputs, Path output,
+                               Class<? extends Mapper> mapperClass, Class<? extends Reducer> combinerClass,
+                               Class<? extends Reducer> reducerClass, Class<?> valueClass, int reducers) throws Exception {
+        Job job = Job.getInstance(conf, name);
+        job.setJarByClass(AuditAnalyticsJobs.class);
+        job.setMapperClass(mapperClass);
+        job.setCombinerClass(combinerClass);
+        job.setReducerClass(reducerClass);
+        job.setOutputKeyClass(Text.class);
+        job.setOutputValueClass(valueClass);
+        if (reducers > 0) job.setNumReduceTasks(reducers);
+        for (Path p : inputs) FileInputFormat.addInputPath(job, p);
+        FileOutputFormat.setOutputPath(job, output);
+        if (!job.waitForCompletion(false)) throw new IOException("job " + name + " failed");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void buildSummary(FileSystem fs, Path daily, Path transfer, Path shared, Map<String, Object> summary)
+            throws IOException {
+        // day -> user -> ops
+        Map<String, Map<String, Long>> byDay = new TreeMap<>();
+        // user -> {ops, upload:{count,bytes}, download:{count,bytes}}
+        Map<String, Map<String, Object>> users = new TreeMap<>();
+        for (String[] kv : readOutput(fs, daily)) {
+            String[] k = kv[0].split("\t");
+            long n = Long.parseLong(kv[1]);
+            byDay.computeIfAbsent(k[0], d -> new TreeMap<>()).put(k[1], n);
+            users.computeIfAbsent(k[1], u -> new LinkedHashMap<>()).merge("ops", n, (a, b) -> (Long) a + (Long) b);
+        }
+
+        // day -> direction -> {count, bytes}
+        Map<String, Map<String, Map<String, Long>>> byDayTransfer = new TreeMap<>();
+        for (String[] kv : readOutput(fs, transfer)) {
+            String[] k = kv[0].split("\t"); // day, user, direction, count|bytes
+            long n = Long.parseLong(kv[1]);
+            byDayTransfer.computeIfAbsent(k[0], d -> new TreeMap<>())
+                    .computeIfAbsent(k[2], d -> new LinkedHashMap<>()).merge(k[3], n, Long::sum);
+            Map<String, Long> u = (Map<String, Long>) users.computeIfAbsent(k[1], x -> new LinkedHashMap<>())
+                    .computeIfAbsent(k[2], d -> new LinkedHashMap<String, Long>());
+            u.merge(k[3], n, Long::sum);
+        }
+
+        List<Map<String, Object>> topShared = new ArrayList<>();
+        for (String[] kv : readOutput(fs, shared)) {
+            int comma = kv[1].indexOf(',');
+            Map<String, Object> e = new LinkedHashMap<>();
+            e.put("path", kv[0]);
+            e.put("shares", Long.parseLong(kv[1].substring(0, comma)));
+            e.put("downloads", Long.parseLong(kv[1].substring(comma + 1)));
+            topShared.add(e);
+        }
+
+        summary.put("daily", byDay);
+        summary.put("transfer", byDayTransfer);
+        summary.put("users", users);
+        summary.put("topShared", topShared);
+    }
+
+    /** key/value pairs of a job's text output, part files in order. */
+    private static List<String[]> readOutput(FileSystem fs, Path dir) throws IOException {
+        List<String[]> out = new ArrayList<>();
+        FileStatus[] parts = fs.globStatus(new Path(dir, "part-*"));
+        if (parts == null) return out;
+        java.util.Arrays.sort(parts, (a, b) -> a.getPath().getName().compareTo(b.getPath().getName()));
+        for (FileStatus st : parts) {
+            try (BufferedReader r = new BufferedReader(new InputStreamReader(fs.open(st.getPath()), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = r.readLine()) != null) {
+                    int tab = line.lastIndexOf('\t');
+                    if (tab > 0) out.add(new String[]{line.substring(0, tab), line.substring(tab + 1)});
+                }
+            }
+        }
+        return out;
+    }
+
+    /** Write the summary as JSON to a file system path, replacing any previous one. */
+    public static void writeSummary(FileSystem fs, Path path, Map<String, Object> summary) throws IOException {
+        Path tmp = new Path(path.getParent(), "_" + path.getName());
+        try (OutputStream out = fs.create(tmp, true)) {
+            mapper.writeValue(out, summary);
+        }
+        fs.delete(path, false);
+        if (!fs.rename(tmp, path)) throw new IOException("cannot replace " + path);
+    }
+}
@@ -0,0 +1,153 @@
+package com.hdfsdrive.analytics;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hdfsdrive.core.AuditLogArchiver;
+import jakarta.servlet.ServletContext;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.security.UserGroupInformation;
+
+import java.io.File;
+import java.security.PrivilegedExceptionAction;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs the audit analytics for the web app: archive pending segments, run {@link AuditAnalyticsJobs}, and store
+ * the summary both in HDFS (SUMMARY_PATH) and locally in WEB-INF/audit-summary.json, which is what the admin
+ * dashboard reads. Runs once a day and on demand, one run at a time, on a single background thread.
+ */
+public class AuditAnalyticsRunner {
+    public static final String SUMMARY_PATH = "/system/audit-analytics/summary.json";
+    public static final String WORK_ROOT = "/system/audit-analytics/tmp";
+    public static final long DEFAULT_INTERVAL_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    private static final String ATTRIBUTE = AuditAnalyticsRunner.class.getName();
+    private static final Object INIT_LOCK = new Object();
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final ServletContext context;
+    private final String hdfsUri;
+    private final String hdfsUser;
+    private final File localSummary;
+    private final ScheduledExecutorService executor;
+    private final AtomicBoolean running = new AtomicBoolean();
+    private volatile long lastStart;
+    private volatile long lastFinish;
+    private volatile String lastError;
+    // parsed local summary, reloaded when the file changes
+    private volatile Map<String, Object> cached;
+    private volatile long cachedModified = -1L;
+
+    private AuditAnalyticsRunner(ServletContext context, String hdfsUri, String hdfsUser, File localSummary) {
+        this.context = context;
+        this.hdfsUri = hdfsUri;
+        this.hdfsUser = hdfsUser;
+        this.localSummary = localSummary;
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "audit-analytics-runner");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Start the daily schedule for the given context; the first run is one interval after startup.
+     */
+    public static AuditAnalyticsRunner start(ServletContext context, String hdfsUri, String hdfsUser, long intervalMillis) {
+        synchronized (INIT_LOCK) {
+            Object existing = context.getAttribute(ATTRIBUTE);
+            if (existing instanceof AuditAnalyticsRunner) return (AuditAnalyticsRunner) existing;
+            String path = context.getRealPath("/WEB-INF/audit-summary.json");
+            if (path == null) return null;
+            AuditAnalyticsRunner runner = new AuditAnalyticsRunner(context, hdfsUri, hdfsUser, new File(path));
+            runner.executor.scheduleWithFixedDelay(runner::runSafely, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+            context.setAttribute(ATTRIBUTE, runner);
+            return runner;
+        }
+    }
+
+    public static AuditAnalyticsRunner get(ServletContext context) {
+        Object existing = context.getAttribute(ATTRIBUTE);
+        return existing instanceof AuditAnalyticsRunner ? (AuditAnalyticsRunner) existing : null;
+    }
+
+    public static void shutdown(ServletContext context) {
+        Object existing;
+        synchronized (INIT_LOCK) {
+            existing = context.getAttribute(ATTRIBUTE);
+            context.removeAttribute(ATTRIBUTE);
+        }
+        if (existing instanceof AuditAnalyticsRunner) ((AuditAnalyticsRunner) existing).executor.shutdownNow();
+    }
+
+    /** Queue a run now; false if one is already running. */
+    public boolean trigger() {
+        if (running.get()) return false;
+        executor.execute(this::runSafely);
+        return true;
+    }
+
+    private void runSafely() {
+        if (!running.compareAndSet(false, true)) return;
+        lastStart = System.currentTimeMillis();
+        try {
+            AuditLogArchiver archiver = AuditLogArchiver.get(context);
+            if (archiver != null) archiver.runOnce();
+            UserGroupInformation.createRemoteUser(hdfsUser).doAs((PrivilegedExceptionAction<Void>) () -> {
+                Configuration conf = new Configuration();
+                conf.set("fs.defaultFS", hdfsUri);
+                Map<String, Object> summary = AuditAnalyticsJobs.run(conf, AuditLogArchiver.ARCHIVE_ROOT, WORK_ROOT,
+                        AuditAnalyticsJobs.DEFAULT_DAYS, AuditAnalyticsJobs.DEFAULT_TOP);
+                AuditAnalyticsJobs.writeSummary(FileSystem.get(conf), new Path(SUMMARY_PATH), summary);
+                writeLocal(summary);
+                return null;
+            });
+            lastError = null;
+        } catch (Throwable t) {
+            lastError = String.valueOf(t.getMessage());
+            System.err.println("AuditAnalyticsRunner: run failed: " + t.getMessage());
+        } finally {
+            lastFinish = System.currentTimeMillis();
+            running.set(false);
+        }
+    }
+
+    private void writeLocal(Map<String, Object> summary) throws java.io.IOException {
+        File tmp = new File(localSummary.getParentFile(), localSummary.getName() + ".tmp");
+        mapper.writeValue(tmp, summary);
+        java.nio.file.Files.move(tmp.toPath(), localSummary.toPath(), java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /** Latest summary from the local copy, or null before the first successful run. */
+    public Map<String, Object> summary() {
+        long modified = localSummary.lastModified();
+        if (modified == 0L) return null;
+        if (modified != cachedModified) {
+            try {
+                cached = mapper.readValue(localSummary, new TypeReference<Map<String, Object>>(){});
+                cachedModified = modified;
+            } catch (Exception e) {
+                System.err.println("AuditAnalyticsRunner: failed to read summary: " + e.getMessage());
+            }
+        }
+        return cached;
+    }
+
+    public Map<String, Object> status() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("running", running.get());
+        m.put("lastStart", lastStart);
+        m.put("lastFinish", lastFinish);
+        m.put("lastError", lastError);
+        AuditLogArchiver archiver = AuditLogArchiver.get(context);
+        if (archiver != null) m.put("archiver", archiver.metrics());
+        return m;
+    }
+}
@@ -0,0 +1,48 @@
+package com.hdfsdrive.app;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hdfsdrive.analytics.AuditAnalyticsJobs;
+import com.hdfsdrive.core.AuditLogArchiver;
+import com.hdfsdrive.core.HdfsService;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import java.io.File;
+import java.util.Map;
+
+/**
+ * Runs the audit log archive + analytics pipeline against the local file system with the LocalJobRunner,
+ * e.g. to check the jobs on a copy of WEB-INF/logs without a cluster. Closed segments are archived under
+ * &lt;workDir&gt;/archive and the summary is written to &lt;workDir&gt;/summary.json.
+ * Usage: java com.hdfsdrive.app.AuditAnalyticsApp &lt;logsDir&gt; &lt;workDir&gt; [days] [top]
+ */
+public class AuditAnalyticsApp {
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: AuditAnalyticsApp <logsDir> <workDir> [days] [top]");
+            System.exit(1);
+        }
+        File logsDir = new File(args[0]);
+        File workDir = new File(args[1]).getAbsoluteFile();
+        int days = args.length > 2 ? Integer.parseInt(args[2]) : AuditAnalyticsJobs.DEFAULT_DAYS;
+        int top = args.length > 3 ? Integer.parseInt(args[3]) : AuditAnalyticsJobs.DEFAULT_TOP;
+
+        Configuration conf = new Configuration();
+        conf.set("fs.defaultFS", "file:///");
+        conf.set("mapreduce.framework.name", "local");
+        String archiveRoot = new File(workDir, "archive").getPath();
+        String user = System.getProperty("user.name");
+
+        long t0 = System.nanoTime();
+        int archived = new AuditLogArchiver(logsDir, archiveRoot,
+                () -> new HdfsService("file:///", user, conf), -1).runOnce();
+        long t1 = System.nanoTime();
+        Map<String, Object> summary = AuditAnalyticsJobs.run(conf, archiveRoot, new File(workDir, "tmp").getPath(), days, top);
+        long t2 = System.nanoTime();
+        AuditAnalyticsJobs.writeSummary(FileSystem.get(conf), new Path(new File(workDir, "summary.json").getPath()), summary);
+
+        System.out.printf("archived %d segment(s) in %d ms, jobs took %d ms%n", archived, (t1 - t0) / 1_000_000, (t2 - t1) / 1_000_000);
+        System.out.println(new ObjectMapper().writerWithDefaultPrettyPrinter().writeValueAsString(summary));
+    }
+}
@@ -0,0 +1,150 @@
+package com.hdfsdrive.app;
+
+import com.carrental.core.VehicleAvailability;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Date-range availability queries against VehicleAvailability for synthetic fleets, compared with a scan of every
+ * active booking per query (what the NOT EXISTS search has to do without an index on vehicle + time).
+ * Each fleet has 50 stores in 10 cities, 20 categories and bookingsPerVehicle bookings per vehicle over the next
+ * 180 days. Queries ask for a random 1-7 day window and a page of 100, unfiltered, by city, and by store + category
+ * (the index's full answers are first checked against the scan); a last round runs queries on all threads while one
+ * thread keeps adding and cancelling bookings.
+ * Usage: java com.hdfsdrive.app.AvailabilityBenchmark [bookingsPerVehicle] [threads] [fleet sizes...]
+ */
+public class AvailabilityBenchmark {
+    private static final long DAY = 24L * 60L * 60L * 1000L;
+    private static final int STORES = 50;
+    private static final int CITIES = 10;
+    private static final int CATEGORIES = 20;
+    private static final int QUERIES = 2000;
+
+    public static void main(String[] args) throws Exception {
+        int perVehicle = args.length > 0 ? Integer.parseInt(args[0]) : 6;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        List<Integer> fleets = new ArrayList<>();
+        for (int i = 2; i < args.length; i++) fleets.add(Integer.parseInt(args[i]));
+        if (fleets.isEmpty()) { fleets.add(10_000); fleets.add(50_000); fleets.add(100_000); }
+
+        for (int fleet : fleets) run(fleet, perVehicle, threads);
+    }
+
+    private static void run(int fleet, int perVehicle, int threads) throws Exception {
+        Random rnd = new Random(42);
+        long now = System.currentTimeMillis();
+        List<VehicleAvailability.Vehicle> vehicles = new ArrayList<>(fleet);
+        List<VehicleAvailability.Booking> bookings = new ArrayList<>(fleet * perVehicle);
+        Map<Long, String> storeCities = new HashMap<>();
+        for (long s = 1; s <= STORES; s++) storeCities.put(s, "city" + (s % CITIES));
+        long orderId = 1;
+        for (long id = 1; id <= fleet; id++) {
+            vehicles.add(new VehicleAvailability.Vehicle(id, 1 + rnd.nextInt(CATEGORIES), 1 + rnd.nextInt(STORES), rnd.nextInt(20) != 0));
+            // non-overlapping rentals of 1-5 days with gaps, starting within the next 180 days
+            long t = now + rnd.nextInt(10) * DAY;
+            for (int b = 0; b < perVehicle; b++) {
+                long start = t + rnd.nextInt(20) * DAY;
+                long end = start + (1 + rnd.nextInt(5)) * DAY;
+                bookings.add(new VehicleAvailability.Booking(orderId++, id, start, end));
+                t = end;
+            }
+        }
+
+        VehicleAvailability index = new VehicleAvailability();
+        long t0 = System.nanoTime();
+        index.replaceAll(vehicles, bookings, storeCities);
+        System.out.printf("%n== fleet %,d vehicles, %,d bookings: built in %.1f ms%n", fleet, bookings.size(), (System.nanoTime() - t0) / 1e6);
+
+        long[] from = new long[QUERIES], to = new long[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            from[i] = now + rnd.nextInt(150) * DAY;
+            to[i] = from[i] + (1 + rnd.nextInt(7)) * DAY;
+        }
+
+        // baseline: scan all bookings for overlaps, then all vehicles
+        boolean[] rentable = new boolean[fleet + 1];
+        for (VehicleAvailability.Vehicle v : vehicles) rentable[(int) v.id] = v.rentable;
+        int scanQueries = Math.min(QUERIES, 200);
+        long found = 0;
+        long[] scanCounts = new long[scanQueries];
+        t0 = System.nanoTime();
+        for (int i = 0; i < scanQueries; i++) {
+            boolean[] busy = new boolean[fleet + 1];
+            for (VehicleAvailability.Booking b : bookings) if (b.start < to[i] && b.end > from[i]) busy[(int) b.vehicleId] = true;
+            for (int v = 1; v <= fleet; v++) if (rentable[v] && !busy[v]) scanCounts[i]++;
+            found += scanCounts[i];
+        }
+        report("scan all bookings", System.nanoTime() - t0, scanQueries, found);
+        for (int i = 0; i < scanQueries; i++) {
+            int n = index.findAvailable(from[i], to[i], null, null, null, Integer.MAX_VALUE).size();
+            if (n != scanCounts[i]) throw new IllegalStateException("query " + i + ": index found " + n + ", scan " + scanCounts[i]);
+        }
+
+        for (int warm = 0; warm < 2; warm++) {
+            for (int i = 0; i < QUERIES; i++) index.findAvailable(from[i], to[i], null, null, null, 100);
+        }
+        found = 0;
+        t0 = System.nanoTime();
+        for (int i = 0; i < QUERIES; i++) found += index.findAvailable(from[i], to[i], null, null, null, 100).size();
+        report("index, whole fleet", System.nanoTime() - t0, QUERIES, found);
+
+        found = 0;
+        t0 = System.nanoTime();
+        for (int i = 0; i < QUERIES; i++) found += index.findAvailable(from[i], to[i], null, null, "city" + (i % CITIES), 100).size();
+        report("index, one city", System.nanoTime() - t0, QUERIES, found);
+
+        found = 0;
+        t0 = System.nanoTime();
+        for (int i = 0; i < QUERIES; i++) {
+            found += index.findAvailable(from[i], to[i], (long) (1 + i % CATEGORIES), (long) (1 + i % STORES), null, 100).size();
+        }
+        report("index, store + category", System.nanoTime() - t0, QUERIES, found);
+
+        // concurrent: city queries on every thread while bookings change
+        AtomicLong done = new AtomicLong();
+        AtomicLong writes = new AtomicLong();
+        CountDownLatch finished = new CountDownLatch(threads);
+        Thread writer = new Thread(() -> {
+            long next = 10_000_000L;
+            ThreadLocalRandom r = ThreadLocalRandom.current();
+            while (finished.getCount() > 0) {
+                long vid = 1 + r.nextInt(fleet);
+                long start = now + r.nextInt(150) * DAY;
+                long id = next++;
+                index.bookingAdded(id, vid, start, start + 2 * DAY);
+                if (r.nextBoolean()) index.bookingRemoved(id, vid);
+                writes.incrementAndGet();
+            }
+        });
+        writer.setDaemon(true);
+        writer.start();
+        t0 = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            final int seed = t;
+            new Thread(() -> {
+                for (int i = 0; i < QUERIES / 2; i++) {
+                    int q = (i * 7 + seed) % QUERIES;
+                    index.findAvailable(from[q], to[q], null, null, "city" + (q % CITIES), 100);
+                    done.incrementAndGet();
+                }
+                finished.countDown();
+            }).start();
+        }
+        finished.await();
+        long elapsed = System.nanoTime() - t0;
+        writer.join();
+        System.out.printf("  %-26s %,10.0f queries/s on %d threads, %,d booking changes meanwhile%n",
+                "concurrent, one city", done.get() / (elapsed / 1e9), threads, writes.get());
+    }
+
+    private static void report(String label, long nanos, int queries, long found) {
+        System.out.printf("  %-26s %10.1f us/query  (%,d vehicles returned)%n", label, nanos / 1e3 / queries, found);
+    }
+}
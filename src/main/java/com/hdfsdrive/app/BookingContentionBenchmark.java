@@ -0,0 +1,148 @@
+package com.hdfsdrive.app;
+
+import com.carrental.core.BookingEngine;
+import com.carrental.core.VehicleAvailability;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Booking bursts against BookingEngine compared with one global lock around the same check-and-insert.
+ * bookers requests run on threads workers; hotShare of them go to hotVehicles cars, the rest are spread over
+ * coldVehicles. Each asks for 1-3 days somewhere in the next 30. The order insert is simulated by sleeping
+ * insertMicros (one transaction of the real thing), so the numbers show how much waiting each scheme adds on top.
+ * After each run every vehicle's confirmed bookings are checked for overlaps.
+ * Usage: java com.hdfsdrive.app.BookingContentionBenchmark [bookers] [workers] [hotVehicles] [coldVehicles]
+ *        [hotShare] [insertMicros]
+ */
+public class BookingContentionBenchmark {
+    private static final long DAY = 24L * 60L * 60L * 1000L;
+
+    private interface Booker {
+        /** Returns whether the booking was granted. */
+        boolean book(long userId, long vehicleId, long start, long end);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int bookers = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        int workers = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int hot = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+        int cold = args.length > 3 ? Integer.parseInt(args[3]) : 1000;
+        double hotShare = args.length > 4 ? Double.parseDouble(args[4]) : 0.8;
+        long insertNanos = (args.length > 5 ? Long.parseLong(args[5]) : 2000L) * 1000L;
+        System.out.printf("%,d bookers on %d threads, %.0f%% on %d hot vehicles, rest on %,d; insert %d us%n",
+                bookers, workers, hotShare * 100, hot, cold, insertNanos / 1000L);
+
+        for (int round = 0; round < 2; round++) {
+            run("global lock", bookers, workers, hot, cold, hotShare, globalLock(insertNanos));
+            run("booking engine", bookers, workers, hot, cold, hotShare, engine(insertNanos));
+        }
+    }
+
+    /** The naive fix: every booking of every vehicle waits for the one before it. */
+    private static Map.Entry<Booker, VehicleAvailability> globalLock(long insertNanos) {
+        VehicleAvailability index = new VehicleAvailability();
+        AtomicLong orderIds = new AtomicLong();
+        Object lock = new Object();
+        Booker b = (userId, vehicleId, start, end) -> {
+            synchronized (lock) {
+                if (index.isBooked(vehicleId, start, end)) return false;
+                LockSupport.parkNanos(insertNanos);
+                index.bookingAdded(orderIds.incrementAndGet(), vehicleId, start, end);
+                return true;
+            }
+        };
+        return Map.entry(b, index);
+    }
+
+    private static Map.Entry<Booker, VehicleAvailability> engine(long insertNanos) {
+        VehicleAvailability index = new VehicleAvailability();
+        BookingEngine engine = new BookingEngine(index, 15L * 60L * 1000L);
+        AtomicLong orderIds = new AtomicLong();
+        Booker b = (userId, vehicleId, start, end) -> {
+            BookingEngine.Hold h;
+            try {
+                h = engine.claim(userId, vehicleId, start, end, null);
+            } catch (BookingEngine.ConflictException e) {
+                return false;
+            }
+            LockSupport.parkNanos(insertNanos);
+            engine.confirm(h, orderIds.incrementAndGet());
+            return true;
+        };
+        return Map.entry(b, index);
+    }
+
+    private static void run(String label, int bookers, int workers, int hot, int cold, double hotShare,
+                            Map.Entry<Booker, VehicleAvailability> scheme) throws Exception {
+        Booker booker = scheme.getKey();
+        long now = System.currentTimeMillis();
+        ConcurrentLinkedQueue<Long> latencies = new ConcurrentLinkedQueue<>();
+        Map<Long, List<long[]>> granted = new ConcurrentHashMap<>();
+        AtomicLong refused = new AtomicLong();
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(bookers);
+        for (int i = 0; i < bookers; i++) {
+            final long userId = i;
+            pool.execute(() -> {
+                try {
+                    start.await();
+                    ThreadLocalRandom r = ThreadLocalRandom.current();
+                    long vehicleId = r.nextDouble() < hotShare ? 1 + r.nextInt(hot) : 1 + hot + r.nextInt(cold);
+                    long from = now + r.nextInt(30) * DAY;
+                    long to = from + (1 + r.nextInt(3)) * DAY;
+                    long t0 = System.nanoTime();
+                    boolean ok = booker.book(userId, vehicleId, from, to);
+                    latencies.add(System.nanoTime() - t0);
+                    if (ok) granted.computeIfAbsent(vehicleId, k -> Collections.synchronizedList(new ArrayList<>())).add(new long[]{from, to});
+                    else refused.incrementAndGet();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        long t0 = System.nanoTime();
+        start.countDown();
+        done.await();
+        long elapsed = System.nanoTime() - t0;
+        pool.shutdown();
+        pool.awaitTermination(10, TimeUnit.SECONDS);
+
+        int overlaps = 0;
+        int bookings = 0;
+        for (List<long[]> list : granted.values()) {
+            List<long[]> sorted = new ArrayList<>(list);
+            sorted.sort((a, b) -> Long.compare(a[0], b[0]));
+            bookings += sorted.size();
+            for (int i = 1; i < sorted.size(); i++) if (sorted.get(i)[0] < sorted.get(i - 1)[1]) overlaps++;
+        }
+        List<Long> sortedLatency = new ArrayList<>(latencies);
+        Collections.sort(sortedLatency);
+        Map<String, Object> summary = new HashMap<>();
+        summary.put("granted", bookings);
+        summary.put("refused", refused.get());
+        System.out.printf("%-15s %8.1f ms total  p50 %8.2f ms  p99 %8.2f ms  %s  overlaps %d%n", label, elapsed / 1e6,
+                percentile(sortedLatency, 0.50) / 1e6, percentile(sortedLatency, 0.99) / 1e6, summary, overlaps);
+        if (overlaps > 0) throw new IllegalStateException(label + ": double booking");
+    }
+
+    private static long percentile(List<Long> sorted, double p) {
+        if (sorted.isEmpty()) return 0L;
+        return sorted.get(Math.min(sorted.size() - 1, (int) (sorted.size() * p)));
+    }
+}
@@ -0,0 +1,102 @@
+package com.hdfsdrive.app;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hdfsdrive.core.ShareService;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Compares the in-memory, write-behind ShareService against the previous per-call file I/O
+ * (parse the whole share.json on every read, rewrite it on every write).
+ * Usage: java com.hdfsdrive.app.MetadataStoreBenchmark [entries] [threads] [opsPerThread] [writePercent]
+ */
+public class MetadataStoreBenchmark {
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    public static void main(String[] args) throws Exception {
+        int entries = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int ops = args.length > 2 ? Integer.parseInt(args[2]) : 500;
+        int writePercent = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+
+        File dir = Files.createTempDirectory("metadata-bench").toFile();
+        File legacyFile = new File(dir, "share-legacy.json");
+        File storeFile = new File(dir, "share.json");
+        List<ShareService.Entry> seed = new ArrayList<>();
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < entries; i++) {
+            String id = UUID.randomUUID().toString();
+            ids.add(id);
+            seed.add(new ShareService.Entry(id, "/users/u" + (i % 100) + "/file" + i, "file" + i, System.currentTimeMillis(), 0L));
+        }
+        mapper.writeValue(legacyFile, seed);
+        mapper.writeValue(storeFile, seed);
+
+        System.out.printf("entries=%d threads=%d opsPerThread=%d writes=%d%%%n", entries, threads, ops, writePercent);
+
+        final Object legacyMonitor = new Object();
+        long legacyNanos = run(threads, ops, () -> {
+            boolean write = ThreadLocalRandom.current().nextInt(100) < writePercent;
+            synchronized (legacyMonitor) {
+                List<ShareService.Entry> all = mapper.readValue(legacyFile, new TypeReference<List<ShareService.Entry>>(){});
+                if (write) {
+                    all.add(new ShareService.Entry(UUID.randomUUID().toString(), "/bench", "bench", System.currentTimeMillis(), 0L));
+                    mapper.writeValue(legacyFile, all);
+                } else {
+                    String id = ids.get(ThreadLocalRandom.current().nextInt(ids.size()));
+                    for (ShareService.Entry e : all) if (e.id.equals(id)) break;
+                }
+            }
+        });
+        report("per-call file I/O", legacyNanos, threads * ops);
+
+        ShareService service = new ShareService(storeFile.getPath());
+        long storeNanos = run(threads, ops, () -> {
+            if (ThreadLocalRandom.current().nextInt(100) < writePercent) {
+                service.add("/bench", "bench", 0L);
+            } else {
+                service.getById(ids.get(ThreadLocalRandom.current().nextInt(ids.size())));
+            }
+        });
+        service.close();
+        report("in-memory + write-behind", storeNanos, threads * ops);
+        System.out.printf("speedup: %.1fx%n", legacyNanos / (double) Math.max(1L, storeNanos));
+    }
+
+    private interface Op {
+        void run() throws Exception;
+    }
+
+    private static long run(int threads, int opsPerThread, Op op) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            new Thread(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < opsPerThread; i++) op.run();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        return System.nanoTime() - begin;
+    }
+
+    private static void report(String label, long nanos, int totalOps) {
+        double seconds = nanos / 1e9;
+        System.out.printf("%-26s %8.0f ops/s  (%.2f s, %.1f us/op)%n", label, totalOps / seconds, seconds, nanos / 1e3 / totalOps);
+    }
+}
@@ -0,0 +1,218 @@
+package com.hdfsdrive.app;
+
+import com.hdfsdrive.core.Database;
+import com.hdfsdrive.core.SchemaMigrator;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Order creation latency against a real MySQL, with the statements OrderServlet.createOrder ran before and after
+ * pricing moved into the vehicle row lock:
+ * <ul>
+ *   <li>before: SELECT status ... FOR UPDATE, SELECT daily_price, SELECT deposit, overlap check, INSERT order,
+ *       one INSERT per addon, COMMIT;</li>
+ *   <li>after: SELECT status, daily_price, deposit ... FOR UPDATE, overlap check, INSERT order, one batched INSERT
+ *       for the addons, COMMIT.</li>
+ * </ul>
+ * Each of threads workers books its own vehicle (so row locks do not serialize them) for consecutive days, with
+ * addons addons per order. Vehicles BENCH-ORDER-&lt;n&gt; and user order_bench are created if missing; the orders
+ * are deleted at the end. Connection settings come from DB_URL / DB_USER / DB_PASSWORD or druid.properties, as for
+ * the web app. Usage: java com.hdfsdrive.app.OrderCreateBenchmark [ordersPerThread] [threads] [addons]
+ */
+public class OrderCreateBenchmark {
+    private static final long DAY = 24L * 60L * 60L * 1000L;
+    private static final String ORDER_PREFIX = "BENCH";
+    private static final String[] RELEASED = {"CANCELLED", "COMPLETED"};
+
+    public static void main(String[] args) throws Exception {
+        int perThread = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int addons = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+
+        SchemaMigrator.migrate(Database.dataSource());
+        long userId = ensureUser();
+        long[] vehicles = new long[threads];
+        for (int t = 0; t < threads; t++) vehicles[t] = ensureVehicle("BENCH-ORDER-" + t);
+        try {
+            for (int round = 0; round < 2; round++) {
+                // rounds after the first are the ones to read; the first warms the pool and statement caches
+                run("before", false, userId, vehicles, perThread, addons, round * 2L);
+                run("after", true, userId, vehicles, perThread, addons, round * 2L + 1);
+            }
+        } finally {
+            try (Connection c = Database.getConnection();
+                 PreparedStatement ps = c.prepareStatement("DELETE FROM orders WHERE order_no LIKE ?")) {
+                ps.setString(1, ORDER_PREFIX + "%");
+                System.out.println("deleted " + ps.executeUpdate() + " benchmark orders");
+            }
+            Database.shutdown();
+        }
+    }
+
+    private static long ensureUser() throws Exception {
+        try (Connection c = Database.getConnection()) {
+            try (PreparedStatement ps = c.prepareStatement("INSERT IGNORE INTO users (username, password) VALUES ('order_bench', '-')")) {
+                ps.executeUpdate();
+            }
+            try (PreparedStatement ps = c.prepareStatement("SELECT id FROM users WHERE username = 'order_bench'");
+                 ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                return rs.getLong(1);
+            }
+        }
+    }
+
+    private static long ensureVehicle(String code) throws Exception {
+        try (Connection c = Database.getConnection()) {
+            try (PreparedStatement ps = c.prepareStatement("INSERT IGNORE INTO vehicles (vehicle_code, brand, daily_price, deposit, status) "
+                    + "VALUES (?, 'Bench', 299.00, 3000.00, 'AVAILABLE')")) {
+                ps.setString(1, code);
+                ps.executeUpdate();
+            }
+            try (PreparedStatement ps = c.prepareStatement("SELECT id FROM vehicles WHERE vehicle_code = ?")) {
+                ps.setString(1, code);
+                try (ResultSet rs = ps.executeQuery()) {
+                    rs.next();
+                    return rs.getLong(1);
+                }
+            }
+        }
+    }
+
+    private static void run(String label, boolean after, long userId, long[] vehicles, int perThread, int addons, long epoch) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(vehicles.length);
+        List<Future<List<Long>>> futures = new ArrayList<>();
+        // every run books a fresh stretch of days so orders never overlap
+        long base = System.currentTimeMillis() + DAY + epoch * (perThread + 1L) * DAY;
+        long t0 = System.nanoTime();
+        for (long vehicleId : vehicles) {
+            futures.add(pool.submit(() -> {
+                List<Long> latencies = new ArrayList<>(perThread);
+                for (int i = 0; i < perThread; i++) {
+                    long from = base + i * DAY;
+                    long start = System.nanoTime();
+                    createOrder(after, userId, vehicleId, from, from + DAY - 60_000L, addons);
+                    latencies.add(System.nanoTime() - start);
+                }
+                return latencies;
+            }));
+        }
+        List<Long> all = new ArrayList<>();
+        for (Future<List<Long>> f : futures) all.addAll(f.get());
+        long elapsed = System.nanoTime() - t0;
+        pool.shutdown();
+        Collections.sort(all);
+        System.out.printf("%-7s %,6d orders  %8.0f orders/s  p50 %6.2f ms  p99 %6.2f ms  max %6.2f ms%n", label, all.size(),
+                all.size() / (elapsed / 1e9), all.get(all.size() / 2) / 1e6,
+                all.get(Math.min(all.size() - 1, (int) (all.size() * 0.99))) / 1e6, all.get(all.size() - 1) / 1e6);
+    }
+
+    private static void createOrder(boolean after, long userId, long vehicleId, long from, long to, int addons) throws Exception {
+        try (Connection c = Database.getConnection()) {
+            c.setAutoCommit(false);
+            try {
+                BigDecimal price;
+                BigDecimal deposit;
+                if (after) {
+                    try (PreparedStatement ps = c.prepareStatement("SELECT id, category_id, store_id, status, daily_price, deposit FROM vehicles WHERE id = ? FOR UPDATE")) {
+                        ps.setLong(1, vehicleId);
+                        try (ResultSet rs = ps.executeQuery()) {
+                            rs.next();
+                            price = rs.getBigDecimal("daily_price");
+                            deposit = rs.getBigDecimal("deposit");
+                        }
+                    }
+                } else {
+                    try (PreparedStatement ps = c.prepareStatement("SELECT status FROM vehicles WHERE id = ? FOR UPDATE")) {
+                        ps.setLong(1, vehicleId);
+                        try (ResultSet rs = ps.executeQuery()) {
+                            rs.next();
+                        }
+                    }
+                    price = scalar(c, "SELECT daily_price FROM vehicles WHERE id = ?", vehicleId);
+                    deposit = scalar(c, "SELECT deposit FROM vehicles WHERE id = ?", vehicleId);
+                }
+                try (PreparedStatement ps = c.prepareStatement("SELECT 1 FROM orders WHERE vehicle_id = ? AND pickup_time < ? "
+                        + "AND return_time > ? AND order_status NOT IN (?,?) LIMIT 1")) {
+                    ps.setLong(1, vehicleId);
+                    ps.setTimestamp(2, new Timestamp(to));
+                    ps.setTimestamp(3, new Timestamp(from));
+                    ps.setString(4, RELEASED[0]);
+                    ps.setString(5, RELEASED[1]);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        if (rs.next()) throw new IllegalStateException("unexpected overlap");
+                    }
+                }
+                long orderId;
+                try (PreparedStatement ps = c.prepareStatement("INSERT INTO orders (order_no, user_id, vehicle_id, pickup_time, "
+                        + "return_time, rental_days, daily_rate, rental_amount, total_amount, deposit_amount, order_status, "
+                        + "payment_status, deposit_status) VALUES (?,?,?,?,?,1,?,?,?,?,'PENDING','UNPAID','UNPAID')",
+                        Statement.RETURN_GENERATED_KEYS)) {
+                    ps.setString(1, ORDER_PREFIX + Long.toHexString(System.nanoTime()) + Thread.currentThread().getId());
+                    ps.setLong(2, userId);
+                    ps.setLong(3, vehicleId);
+                    ps.setTimestamp(4, new Timestamp(from));
+                    ps.setTimestamp(5, new Timestamp(to));
+                    ps.setBigDecimal(6, price);
+                    ps.setBigDecimal(7, price);
+                    ps.setBigDecimal(8, price);
+                    ps.setBigDecimal(9, deposit);
+                    ps.executeUpdate();
+                    try (ResultSet rs = ps.getGeneratedKeys()) {
+                        rs.next();
+                        orderId = rs.getLong(1);
+                    }
+                }
+                String addonSql = "INSERT INTO order_addons (order_id, addon_type, addon_name, quantity, unit_price, total_price) "
+                        + "VALUES (?, 'SERVICE', ?, 1, 50.00, 50.00)";
+                try (PreparedStatement ps = c.prepareStatement(addonSql, Statement.RETURN_GENERATED_KEYS)) {
+                    for (int i = 0; i < addons; i++) {
+                        ps.setLong(1, orderId);
+                        ps.setString(2, "addon-" + i);
+                        if (after) {
+                            ps.addBatch();
+                        } else {
+                            ps.executeUpdate();
+                            try (ResultSet rs = ps.getGeneratedKeys()) {
+                                rs.next();
+                            }
+                        }
+                    }
+                    if (after && addons > 0) {
+                        ps.executeBatch();
+                        try (ResultSet rs = ps.getGeneratedKeys()) {
+                            while (rs.next()) rs.getLong(1);
+                        }
+                    }
+                }
+                c.commit();
+            } catch (Exception e) {
+                c.rollback();
+                throw e;
+            } finally {
+                c.setAutoCommit(true);
+            }
+        }
+    }
+
+    private static BigDecimal scalar(Connection c, String sql, long id) throws Exception {
+        try (PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setLong(1, id);
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                return rs.getBigDecimal(1);
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.hdfsdrive.app;
+
+import com.hdfsdrive.core.Database;
+import com.hdfsdrive.core.SchemaMigrator;
+
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Measures database cold start against a real MySQL: the previous startup (a fresh DriverManager connection that
+ * re-executes every schema statement, ignoring failures, as DatabaseInitializer and the UserDao static initializer
+ * did) against the current one (open the pool, one schema_version read). Run it once against an empty database
+ * first so the migrations are applied; every round after that is a restart of an up-to-date instance.
+ * Connection settings come from DB_URL / DB_USER / DB_PASSWORD or druid.properties, as for the web app.
+ * Usage: java com.hdfsdrive.app.SchemaStartupBenchmark [rounds]
+ */
+public class SchemaStartupBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        Properties p = new Properties();
+        try (InputStream in = SchemaStartupBenchmark.class.getClassLoader().getResourceAsStream("druid.properties")) {
+            if (in != null) p.load(in);
+        }
+        String url = setting("DB_URL", p.getProperty("jdbc.url"));
+        String user = setting("DB_USER", p.getProperty("jdbc.username"));
+        String pass = setting("DB_PASSWORD", p.getProperty("jdbc.password"));
+
+        // make sure the schema is current before timing restarts
+        System.out.println("initial migrate: " + SchemaMigrator.migrate(Database.dataSource()));
+        Database.shutdown();
+
+        List<String> statements = new ArrayList<>();
+        for (SchemaMigrator.Migration m : SchemaMigrator.migrations()) statements.addAll(m.statements());
+
+        List<Long> legacy = new ArrayList<>();
+        List<Long> current = new ArrayList<>();
+        for (int r = 0; r < rounds; r++) {
+            long t0 = System.nanoTime();
+            int failed = 0;
+            try (Connection c = DriverManager.getConnection(url, user, pass); Statement s = c.createStatement()) {
+                for (String sql : statements) {
+                    try {
+                        s.execute(sql);
+                    } catch (Exception e) {
+                        failed++;
+                    }
+                }
+            }
+            legacy.add(System.nanoTime() - t0);
+
+            t0 = System.nanoTime();
+            SchemaMigrator.migrate(Database.dataSource());
+            current.add(System.nanoTime() - t0);
+            Database.shutdown();
+            System.out.printf("round %d: legacy %.1f ms (%d statements, %d failed), migrator %.1f ms%n",
+                    r + 1, legacy.get(r) / 1e6, statements.size(), failed, current.get(r) / 1e6);
+        }
+        System.out.printf("median: legacy %.1f ms, migrator %.1f ms (pool initialSize connections included)%n",
+                median(legacy) / 1e6, median(current) / 1e6);
+    }
+
+    private static String setting(String env, String dflt) {
+        String v = System.getenv(env);
+        return v == null || v.isEmpty() ? dflt : v;
+    }
+
+    private static long median(List<Long> values) {
+        List<Long> sorted = new ArrayList<>(values);
+        Collections.sort(sorted);
+        return sorted.get(sorted.size() / 2);
+    }
+}
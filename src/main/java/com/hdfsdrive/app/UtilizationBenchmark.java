@@ -0,0 +1,125 @@
+package com.hdfsdrive.app;
+
+import com.carrental.core.FleetUtilization;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Utilization reports from FleetUtilization against the straightforward scan over every order of every vehicle.
+ * vehicles cars in stores stores each get orders of 1-7 days with gaps of 0-5 days over the last history days.
+ * Each side answers "% of days rented per store" over the last 30 and 365 days, "idle vehicles this week" and the
+ * peak day per store; the answers are compared and a mismatch fails the run.
+ * Usage: java com.hdfsdrive.app.UtilizationBenchmark [vehicles] [stores] [history]
+ */
+public class UtilizationBenchmark {
+    private static final long DAY = 24L * 60L * 60L * 1000L;
+
+    public static void main(String[] args) {
+        int vehicles = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        int stores = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        int history = args.length > 2 ? Integer.parseInt(args[2]) : 730;
+
+        FleetUtilization model = new FleetUtilization(ZoneOffset.UTC);
+        LocalDate today = model.today();
+        long firstDay = today.toEpochDay() - history;
+        Random r = new Random(42);
+        List<FleetUtilization.Vehicle> fleet = new ArrayList<>();
+        Map<Long, List<long[]>> orders = new HashMap<>();
+        // the naive side: every order's [first, last] days, per vehicle
+        Map<Long, List<long[]>> naive = new HashMap<>();
+        long orderId = 0;
+        for (int v = 1; v <= vehicles; v++) {
+            fleet.add(new FleetUtilization.Vehicle(v, 1 + r.nextInt(8), 1 + r.nextInt(stores)));
+            List<long[]> rows = new ArrayList<>();
+            for (long d = firstDay + r.nextInt(10); d < today.toEpochDay() + 30; ) {
+                long start = d * DAY + (8 + r.nextInt(4)) * 3_600_000L;
+                long end = start + (1 + r.nextInt(7)) * DAY;
+                long[] days = model.rentedDays(start, end);
+                rows.add(new long[]{++orderId, days[0], days[1]});
+                d = days[1] + 1 + r.nextInt(6);
+            }
+            orders.put((long) v, rows);
+            naive.put((long) v, rows);
+        }
+        long t0 = System.nanoTime();
+        model.replaceAll(fleet, orders);
+        System.out.printf("%,d vehicles, %,d orders over %d days; built in %.0f ms, %s%n", vehicles, orderId, history,
+                (System.nanoTime() - t0) / 1e6, model.metrics());
+
+        LocalDate monday = today.minusDays(today.getDayOfWeek().getValue() - 1);
+        for (int round = 0; round < 3; round++) {
+            for (int span : new int[]{30, 365}) {
+                LocalDate from = today.minusDays(span - 1);
+                long b0 = System.nanoTime();
+                List<FleetUtilization.Group> groups = model.utilization(from, today, null, null, "store");
+                long b1 = System.nanoTime();
+                Map<Long, Long> expected = naiveRented(fleet, naive, from.toEpochDay(), today.toEpochDay());
+                long b2 = System.nanoTime();
+                for (FleetUtilization.Group g : groups) {
+                    if (g.rentedDays != expected.getOrDefault(g.key, 0L)) throw new IllegalStateException("store " + g.key + " differs");
+                }
+                print("per store, " + span + " days", b1 - b0, b2 - b1);
+            }
+            long i0 = System.nanoTime();
+            int idle = model.idleVehicles(monday, monday.plusDays(6), null, null, Integer.MAX_VALUE).size();
+            long i1 = System.nanoTime();
+            int naiveIdle = 0;
+            for (FleetUtilization.Vehicle v : fleet) {
+                if (count(naive.get(v.id), monday.toEpochDay(), monday.toEpochDay() + 6) == 0) naiveIdle++;
+            }
+            long i2 = System.nanoTime();
+            if (idle != naiveIdle) throw new IllegalStateException("idle " + idle + " vs " + naiveIdle);
+            print("idle this week (" + idle + ")", i1 - i0, i2 - i1);
+
+            LocalDate from = today.minusDays(89);
+            long p0 = System.nanoTime();
+            Map<Long, List<FleetUtilization.Day>> peaks = model.peakDays(from, today, null, null, 1);
+            long p1 = System.nanoTime();
+            Map<Long, int[]> perDay = new HashMap<>();
+            for (FleetUtilization.Vehicle v : fleet) {
+                int[] c = perDay.computeIfAbsent(v.storeId, k -> new int[90]);
+                for (long[] o : naive.get(v.id)) {
+                    for (long d = Math.max(o[1], from.toEpochDay()); d <= Math.min(o[2], today.toEpochDay()); d++) c[(int) (d - from.toEpochDay())]++;
+                }
+            }
+            long p2 = System.nanoTime();
+            for (Map.Entry<Long, List<FleetUtilization.Day>> e : peaks.entrySet()) {
+                int max = 0;
+                for (int c : perDay.get(e.getKey())) max = Math.max(max, c);
+                if (e.getValue().get(0).rented != max) throw new IllegalStateException("peak of store " + e.getKey() + " differs");
+            }
+            print("peak day per store, 90 days", p1 - p0, p2 - p1);
+        }
+    }
+
+    private static Map<Long, Long> naiveRented(List<FleetUtilization.Vehicle> fleet, Map<Long, List<long[]>> orders, long from, long to) {
+        Map<Long, Long> out = new HashMap<>();
+        for (FleetUtilization.Vehicle v : fleet) out.merge(v.storeId, count(orders.get(v.id), from, to), Long::sum);
+        return out;
+    }
+
+    /** Days of [from, to] covered by the vehicle's orders, counting each day once. */
+    private static long count(List<long[]> orders, long from, long to) {
+        boolean[] seen = new boolean[(int) (to - from + 1)];
+        long n = 0;
+        for (long[] o : orders) {
+            for (long d = Math.max(o[1], from); d <= Math.min(o[2], to); d++) {
+                if (!seen[(int) (d - from)]) {
+                    seen[(int) (d - from)] = true;
+                    n++;
+                }
+            }
+        }
+        return n;
+    }
+
+    private static void print(String label, long modelNanos, long scanNanos) {
+        System.out.printf("%-32s bitmaps %8.2f ms   scan %8.2f ms%n", label, modelNanos / 1e6, scanNanos / 1e6);
+    }
+}
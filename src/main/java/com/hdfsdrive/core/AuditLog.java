@@ -0,0 +1,464 @@
+package com.hdfsdrive.core;
+
+import jakarta.servlet.ServletContext;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous appender for the admin operation log under WEB-INF/logs.
+ * Request threads put records into a bounded lock-free ring buffer and return; a single writer thread drains it,
+ * formats lines with one shared DateTimeFormatter, encodes them with a reused UTF-8 encoder and appends them to the
+ * current segment, rolling over by size and by day and maintaining each segment's sparse time index
+ * (see {@link AuditLogSegments}).
+ * The writer flushes when a batch reaches flushBytes or flushIntervalMillis has passed since the first unflushed line.
+ * What happens when the ring is full is decided by the {@link Overflow} policy.
+ */
+public class AuditLog implements Closeable {
+    private static final String ATTRIBUTE = AuditLog.class.getName();
+    private static final Object INIT_LOCK = new Object();
+
+    public static final int DEFAULT_CAPACITY = 8192;
+    public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 200L;
+    public static final int DEFAULT_FLUSH_BYTES = 64 * 1024;
+    /** Segments also roll over at midnight. */
+    public static final long DEFAULT_SEGMENT_BYTES = 16L * 1024 * 1024;
+    /** Under SAMPLE, once the ring is this full only one record in SAMPLE_RATE is kept. */
+    private static final double SAMPLE_WATERMARK = 0.75;
+    private static final int SAMPLE_RATE = 10;
+
+    private static final DateTimeFormatter TIME_FORMAT = AuditLogSegments.LINE_TIME;
+
+    /** What a producer does when the ring buffer is full. */
+    public enum Overflow {
+        /** wait for the writer to make room */
+        BLOCK,
+        /** discard the new record */
+        DROP,
+        /** keep 1 in SAMPLE_RATE records once the ring passes the watermark, drop when full */
+        SAMPLE;
+
+        static Overflow parse(String s) {
+            if (s != null) {
+                for (Overflow o : values()) if (o.name().equalsIgnoreCase(s.trim())) return o;
+            }
+            return BLOCK;
+        }
+    }
+
+    private static final class Record {
+        final long time;
+        final String user;
+        final String action;
+        final String path;
+        final String info;
+
+        Record(long time, String user, String action, String path, String info) {
+            this.time = time;
+            this.user = user;
+            this.action = action;
+            this.path = path;
+            this.info = info;
+        }
+    }
+
+    private final File dir;
+    private final long maxSegmentBytes;
+    private final Overflow overflow;
+    private final long flushIntervalNanos;
+    private final int flushBytes;
+
+    // bounded MPSC ring: a slot is writable by the producer that claimed its sequence once seq == position,
+    // and readable by the writer once seq == position + 1
+    private final int capacity;
+    private final int mask;
+    private final AtomicReferenceArray<Record> slots;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong(); // next position producers claim
+    private volatile long head;                       // next position the writer reads; written by the writer only
+
+    // writer thread state
+    private File segment;
+    private LocalDate segmentDay;
+    private OutputStream out;
+    private DataOutputStream indexOut;
+    private long offset;
+    private long lastIndexedOffset;
+    private int pendingBytes;
+    private final StringBuilder line = new StringBuilder(256);
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private ByteBuffer encodeBuffer = ByteBuffer.allocate(1024);
+
+    private final Thread writerThread;
+    private volatile boolean writerIdle;
+    private volatile boolean running = true;
+
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder sampledOut = new LongAdder();
+    private final LongAdder blockedNanos = new LongAdder();
+    private final AtomicLong sampleCounter = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong writeErrors = new AtomicLong();
+    private final AtomicLong rotations = new AtomicLong();
+
+    /**
+     * @param dir directory holding the log segments (see {@link AuditLogSegments})
+     */
+    public AuditLog(File dir, long maxSegmentBytes, int capacity, Overflow overflow, long flushIntervalMillis, int flushBytes) {
+        this.dir = dir;
+        this.maxSegmentBytes = Math.max(64 * 1024, maxSegmentBytes);
+        this.overflow = overflow == null ? Overflow.BLOCK : overflow;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1L, flushIntervalMillis));
+        this.flushBytes = Math.max(1024, flushBytes);
+        int cap = Integer.highestOneBit(Math.max(16, capacity - 1)) << 1;
+        this.capacity = cap;
+        this.mask = cap - 1;
+        this.slots = new AtomicReferenceArray<>(cap);
+        this.sequences = new AtomicLongArray(cap);
+        for (int i = 0; i < cap; i++) sequences.set(i, i);
+        migrateLegacy(dir);
+        this.writerThread = new Thread(this::writeLoop, "audit-log-writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    /**
+     * Return the audit log bound to the given context, creating it on first use. Capacity and overflow policy come
+     * from AUDIT_LOG_CAPACITY / AUDIT_LOG_OVERFLOW (block, drop or sample) in the environment or context init params.
+     */
+    public static AuditLog get(ServletContext context) {
+        Object existing = context.getAttribute(ATTRIBUTE);
+        if (existing instanceof AuditLog) return (AuditLog) existing;
+        synchronized (INIT_LOCK) {
+            existing = context.getAttribute(ATTRIBUTE);
+            if (existing instanceof AuditLog) return (AuditLog) existing;
+            String logsDir = context.getRealPath("/WEB-INF/logs");
+            if (logsDir == null) return null;
+            int capacity = DEFAULT_CAPACITY;
+            try {
+                String c = setting(context, "AUDIT_LOG_CAPACITY");
+                if (c != null) capacity = Integer.parseInt(c.trim());
+            } catch (NumberFormatException ignore) {}
+            AuditLog log = new AuditLog(new File(logsDir), DEFAULT_SEGMENT_BYTES, capacity,
+                    Overflow.parse(setting(context, "AUDIT_LOG_OVERFLOW")),
+                    DEFAULT_FLUSH_INTERVAL_MILLIS, DEFAULT_FLUSH_BYTES);
+            context.setAttribute(ATTRIBUTE, log);
+            return log;
+        }
+    }
+
+    /**
+     * Drain, flush and detach the audit log bound to the given context, if any.
+     */
+    public static void shutdown(ServletContext context) {
+        Object existing = context.getAttribute(ATTRIBUTE);
+        context.removeAttribute(ATTRIBUTE);
+        if (existing instanceof AuditLog) ((AuditLog) existing).close();
+    }
+
+    private static String setting(ServletContext context, String name) {
+        String v = System.getenv(name);
+        if (v == null || v.isEmpty()) v = context.getInitParameter(name);
+        return v == null || v.isEmpty() ? null : v;
+    }
+
+    /**
+     * Queue one line: time, user, action, then path and info when not null. Never performs file I/O.
+     */
+    public void log(String user, String action, String path, String info) {
+        if (!running) {
+            dropped.increment();
+            return;
+        }
+        if (overflow == Overflow.SAMPLE && queued() >= capacity * SAMPLE_WATERMARK
+                && sampleCounter.incrementAndGet() % SAMPLE_RATE != 0) {
+            sampledOut.increment();
+            return;
+        }
+        Record r = new Record(System.currentTimeMillis(), user, action, path, info);
+        if (offer(r)) {
+            accepted.increment();
+        } else if (overflow == Overflow.BLOCK) {
+            long start = System.nanoTime();
+            boolean ok = false;
+            while (running && !(ok = offer(r))) {
+                LockSupport.unpark(writerThread);
+                LockSupport.parkNanos(50_000L);
+            }
+            blockedNanos.add(System.nanoTime() - start);
+            if (ok) accepted.increment(); else dropped.increment();
+        } else {
+            dropped.increment();
+        }
+        if (writerIdle) LockSupport.unpark(writerThread);
+    }
+
+    private boolean offer(Record r) {
+        while (true) {
+            long pos = tail.get();
+            int idx = (int) (pos & mask);
+            long seq = sequences.get(idx);
+            if (seq == pos) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    slots.lazySet(idx, r);
+                    sequences.set(idx, pos + 1); // publish
+                    return true;
+                }
+            } else if (seq < pos) {
+                return false; // the writer has not consumed this slot from the previous lap: full
+            }
+            // another producer claimed pos; retry with the new tail
+        }
+    }
+
+    // writer thread only
+    private Record poll() {
+        long pos = head;
+        int idx = (int) (pos & mask);
+        if (sequences.get(idx) != pos + 1) return null; // empty, or claimed but not yet published
+        Record r = slots.get(idx);
+        slots.lazySet(idx, null);
+        sequences.set(idx, pos + capacity); // free the slot for the next lap
+        head = pos + 1;
+        return r;
+    }
+
+    public long queued() {
+        return Math.max(0L, tail.get() - head);
+    }
+
+    private void writeLoop() {
+        long firstPendingAt = 0L;
+        while (true) {
+            Record r = poll();
+            if (r != null) {
+                try {
+                    if (pendingBytes == 0) firstPendingAt = System.nanoTime();
+                    write(r);
+                    written.incrementAndGet();
+                } catch (IOException e) {
+                    writeErrors.incrementAndGet();
+                    System.err.println("AuditLog: failed to write " + segment + ": " + e.getMessage());
+                    closeSegment();
+                }
+                if (pendingBytes >= flushBytes) flush();
+                continue;
+            }
+            // ring is empty
+            if (pendingBytes > 0 && System.nanoTime() - firstPendingAt >= flushIntervalNanos) flush();
+            if (!running && queued() == 0) break;
+            writerIdle = true;
+            if (queued() == 0) {
+                long wait = pendingBytes > 0 ? Math.max(0L, firstPendingAt + flushIntervalNanos - System.nanoTime()) : flushIntervalNanos;
+                LockSupport.parkNanos(Math.max(wait, 10_000L));
+            }
+            writerIdle = false;
+        }
+        flush();
+        closeSegment();
+    }
+
+    // writer thread only
+    private void write(Record r) throws IOException {
+        LocalDate day = Instant.ofEpochMilli(r.time).atZone(AuditLogSegments.ZONE).toLocalDate();
+        if (out == null) openSegment(r.time, day);
+        else if (offset >= maxSegmentBytes || !day.equals(segmentDay)) {
+            flush();
+            closeSegment();
+            rotations.incrementAndGet();
+            openSegment(r.time, day);
+        }
+        format(r, line);
+        ByteBuffer bytes = encode(line);
+        if (offset - lastIndexedOffset >= AuditLogSegments.INDEX_INTERVAL_BYTES) {
+            indexOut.writeLong(r.time);
+            indexOut.writeLong(offset);
+            lastIndexedOffset = offset;
+        }
+        out.write(bytes.array(), 0, bytes.limit());
+        offset += bytes.limit();
+        pendingBytes += bytes.limit();
+    }
+
+    /**
+     * Continue the newest segment if it belongs to the same day and has room, otherwise start a new one.
+     */
+    private void openSegment(long time, LocalDate day) throws IOException {
+        if (!dir.exists()) dir.mkdirs();
+        File target = null;
+        List<File> segs = AuditLogSegments.segments(dir);
+        if (!segs.isEmpty() && segment == null) {
+            File last = segs.get(segs.size() - 1);
+            long start = AuditLogSegments.segmentStart(last.getName());
+            if (start >= 0 && last.length() < maxSegmentBytes
+                    && Instant.ofEpochMilli(start).atZone(AuditLogSegments.ZONE).toLocalDate().equals(day)) {
+                target = last;
+            }
+        }
+        if (target == null) target = new File(dir, AuditLogSegments.segmentName(time));
+        long length = target.length();
+        lastIndexedOffset = -AuditLogSegments.INDEX_INTERVAL_BYTES;
+        if (length > 0) {
+            // resuming: make sure the index matches what is on disk (it may lag after a crash)
+            File idx = AuditLogSegments.indexFile(target);
+            long[] points = idx.exists() ? AuditLogSegments.readIndex(target, true) : new long[0];
+            if (points.length == 0 || points[points.length - 1] >= length) {
+                points = AuditLogSegments.buildIndex(target);
+                AuditLogSegments.writeIndex(idx, points);
+            }
+            if (points.length > 0) lastIndexedOffset = points[points.length - 1];
+        }
+        segment = target;
+        segmentDay = Instant.ofEpochMilli(AuditLogSegments.segmentStart(target.getName()) >= 0
+                ? AuditLogSegments.segmentStart(target.getName()) : time).atZone(AuditLogSegments.ZONE).toLocalDate();
+        offset = length;
+        out = new BufferedOutputStream(new FileOutputStream(target, true), flushBytes);
+        indexOut = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(AuditLogSegments.indexFile(target), true), 4096));
+    }
+
+    private void flush() {
+        pendingBytes = 0;
+        if (out == null) return;
+        try {
+            out.flush();
+            indexOut.flush(); // after the log, so index points never run ahead of flushed lines
+            flushes.incrementAndGet();
+        } catch (IOException e) {
+            writeErrors.incrementAndGet();
+            System.err.println("AuditLog: failed to flush " + segment + ": " + e.getMessage());
+            closeSegment();
+        }
+    }
+
+    private void closeSegment() {
+        if (out != null) try { out.close(); } catch (IOException ignore) {}
+        if (indexOut != null) try { indexOut.close(); } catch (IOException ignore) {}
+        out = null;
+        indexOut = null;
+        pendingBytes = 0;
+    }
+
+    private ByteBuffer encode(CharSequence chars) throws IOException {
+        encoder.reset();
+        CharBuffer in = CharBuffer.wrap(chars);
+        encodeBuffer.clear();
+        while (true) {
+            CoderResult cr = encoder.encode(in, encodeBuffer, true);
+            if (cr.isOverflow()) {
+                ByteBuffer bigger = ByteBuffer.allocate(encodeBuffer.capacity() * 2);
+                encodeBuffer.flip();
+                bigger.put(encodeBuffer);
+                encodeBuffer = bigger;
+                continue;
+            }
+            if (cr.isError()) cr.throwException();
+            break;
+        }
+        encoder.flush(encodeBuffer);
+        encodeBuffer.flip();
+        return encodeBuffer;
+    }
+
+    /**
+     * Rename a pre-rotation admin-operations.log into a segment named after its first line.
+     */
+    private static void migrateLegacy(File dir) {
+        File legacy = new File(dir, AuditLogSegments.LEGACY_FILE);
+        if (!legacy.exists()) return;
+        long first = -1L;
+        try (java.io.BufferedReader br = new java.io.BufferedReader(new java.io.InputStreamReader(
+                new java.io.FileInputStream(legacy), StandardCharsets.UTF_8))) {
+            String l;
+            while (first < 0 && (l = br.readLine()) != null) first = AuditLogSegments.lineTime(l);
+        } catch (IOException ignore) {}
+        if (first < 0) first = legacy.lastModified();
+        File target = new File(dir, AuditLogSegments.segmentName(first));
+        if (target.exists() || !legacy.renameTo(target)) {
+            System.err.println("AuditLog: could not migrate " + legacy + " to " + target.getName());
+        }
+    }
+
+    private static void format(Record r, StringBuilder sb) {
+        sb.setLength(0);
+        TIME_FORMAT.formatTo(Instant.ofEpochMilli(r.time), sb);
+        sb.append("\tuser=");
+        appendField(sb, r.user);
+        sb.append("\taction=");
+        appendField(sb, r.action);
+        if (r.path != null) {
+            sb.append("\tpath=");
+            appendField(sb, r.path);
+        }
+        if (r.info != null) {
+            sb.append("\tinfo=");
+            appendField(sb, r.info);
+        }
+        sb.append('\n');
+    }
+
+    // keep one record per line and tab-separated fields intact
+    private static void appendField(StringBuilder sb, String v) {
+        if (v == null) return;
+        for (int i = 0; i < v.length(); i++) {
+            char c = v.charAt(i);
+            sb.append(c == '\n' || c == '\r' || c == '\t' ? ' ' : c);
+        }
+    }
+
+    public Map<String, Object> metrics() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("overflow", overflow.name().toLowerCase());
+        m.put("capacity", capacity);
+        m.put("queued", queued());
+        m.put("accepted", accepted.sum());
+        m.put("written", written.get());
+        m.put("dropped", dropped.sum());
+        m.put("sampledOut", sampledOut.sum());
+        m.put("blockedMillis", TimeUnit.NANOSECONDS.toMillis(blockedNanos.sum()));
+        m.put("flushes", flushes.get());
+        m.put("writeErrors", writeErrors.get());
+        m.put("rotations", rotations.get());
+        return m;
+    }
+
+    /**
+     * Stop accepting records, write out everything queued and close the file.
+     */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(writerThread);
+        try {
+            writerThread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
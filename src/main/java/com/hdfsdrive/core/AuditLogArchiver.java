@@ -0,0 +1,197 @@
+package com.hdfsdrive.core;
+
+import jakarta.servlet.ServletContext;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Copies closed audit log segments into HDFS as gzip files under ARCHIVE_ROOT/yyyy/MM/&lt;segment&gt;.gz, the input
+ * of the analytics jobs. Each file is written under a "_"-prefixed name (ignored by MapReduce input listing) and
+ * renamed into place once complete; a local &lt;segment&gt;.archived marker records success so a segment is uploaded
+ * once. Archived segments older than the local retention are then removed from WEB-INF/logs.
+ * The newest segment is still being written by {@link AuditLog} and is never touched.
+ */
+public class AuditLogArchiver {
+    public static final String ARCHIVE_ROOT = "/system/audit-logs";
+    static final String MARKER_SUFFIX = ".archived";
+    public static final long DEFAULT_INTERVAL_MILLIS = TimeUnit.HOURS.toMillis(1);
+    public static final int DEFAULT_LOCAL_RETENTION_DAYS = 30;
+
+    private static final String ATTRIBUTE = AuditLogArchiver.class.getName();
+    private static final Object INIT_LOCK = new Object();
+    private static final DateTimeFormatter MONTH_DIR = DateTimeFormatter.ofPattern("yyyy/MM").withZone(AuditLogSegments.ZONE);
+
+    private final File dir;
+    private final String archiveRoot;
+    private final HdfsFactory hdfsFactory;
+    private final long localRetentionMillis;
+    private ScheduledExecutorService scheduler;
+
+    private final LongAdder archived = new LongAdder();
+    private final LongAdder archivedBytes = new LongAdder();
+    private final LongAdder deletedLocal = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private volatile long lastRun;
+
+    /**
+     * @param archiveRoot HDFS directory holding the yyyy/MM archive tree, normally ARCHIVE_ROOT
+     * @param localRetentionDays days to keep archived segments locally; negative keeps them forever
+     */
+    public AuditLogArchiver(File dir, String archiveRoot, HdfsFactory hdfsFactory, int localRetentionDays) {
+        this.dir = dir;
+        this.archiveRoot = archiveRoot;
+        this.hdfsFactory = hdfsFactory;
+        this.localRetentionMillis = localRetentionDays < 0 ? -1L : TimeUnit.DAYS.toMillis(localRetentionDays);
+    }
+
+    /**
+     * Start the archiver for the given context, running every intervalMillis. Local retention comes from
+     * AUDIT_LOG_LOCAL_RETENTION_DAYS in the environment or context init params.
+     */
+    public static AuditLogArchiver start(ServletContext context, HdfsFactory hdfsFactory, long intervalMillis) {
+        synchronized (INIT_LOCK) {
+            Object existing = context.getAttribute(ATTRIBUTE);
+            if (existing instanceof AuditLogArchiver) return (AuditLogArchiver) existing;
+            String logsDir = context.getRealPath("/WEB-INF/logs");
+            if (logsDir == null) return null;
+            int retention = DEFAULT_LOCAL_RETENTION_DAYS;
+            try {
+                String v = System.getenv("AUDIT_LOG_LOCAL_RETENTION_DAYS");
+                if (v == null || v.isEmpty()) v = context.getInitParameter("AUDIT_LOG_LOCAL_RETENTION_DAYS");
+                if (v != null && !v.isEmpty()) retention = Integer.parseInt(v.trim());
+            } catch (NumberFormatException ignore) {}
+            AuditLogArchiver archiver = new AuditLogArchiver(new File(logsDir), ARCHIVE_ROOT, hdfsFactory, retention);
+            archiver.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "audit-log-archiver");
+                t.setDaemon(true);
+                return t;
+            });
+            archiver.scheduler.scheduleWithFixedDelay(() -> {
+                try {
+                    archiver.runOnce();
+                } catch (Throwable t) {
+                    System.err.println("AuditLogArchiver: run failed: " + t.getMessage());
+                }
+            }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+            context.setAttribute(ATTRIBUTE, archiver);
+            return archiver;
+        }
+    }
+
+    public static AuditLogArchiver get(ServletContext context) {
+        Object existing = context.getAttribute(ATTRIBUTE);
+        return existing instanceof AuditLogArchiver ? (AuditLogArchiver) existing : null;
+    }
+
+    public static void shutdown(ServletContext context) {
+        Object existing;
+        synchronized (INIT_LOCK) {
+            existing = context.getAttribute(ATTRIBUTE);
+            context.removeAttribute(ATTRIBUTE);
+        }
+        if (existing instanceof AuditLogArchiver) {
+            ScheduledExecutorService s = ((AuditLogArchiver) existing).scheduler;
+            if (s != null) s.shutdownNow();
+        }
+    }
+
+    /** HDFS path a segment is archived to. */
+    public static String archivePath(String archiveRoot, String segmentName) {
+        long start = AuditLogSegments.segmentStart(segmentName);
+        return archiveRoot + "/" + MONTH_DIR.format(Instant.ofEpochMilli(Math.max(0L, start))) + "/" + segmentName + ".gz";
+    }
+
+    /**
+     * Archive every closed segment that has not been archived yet, then apply local retention.
+     * Returns the number of segments uploaded. Synchronized so a manual run and the schedule never overlap.
+     */
+    public synchronized int runOnce() throws Exception {
+        List<File> segs = AuditLogSegments.segments(dir);
+        int uploaded = 0;
+        if (segs.size() > 1) {
+            HdfsService hdfs = null;
+            try {
+                for (File seg : segs.subList(0, segs.size() - 1)) {
+                    File marker = new File(dir, seg.getName() + MARKER_SUFFIX);
+                    if (marker.exists()) continue;
+                    if (hdfs == null) hdfs = hdfsFactory.create();
+                    try {
+                        archive(hdfs, seg);
+                        if (!marker.createNewFile() && !marker.exists()) throw new IOException("cannot create " + marker);
+                        archived.increment();
+                        archivedBytes.add(seg.length());
+                        uploaded++;
+                    } catch (IOException e) {
+                        failures.increment();
+                        System.err.println("AuditLogArchiver: failed to archive " + seg.getName() + ": " + e.getMessage());
+                    }
+                }
+            } finally {
+                if (hdfs != null) try { hdfs.close(); } catch (IOException ignore) {}
+            }
+            if (localRetentionMillis >= 0) deleteExpired(segs);
+        }
+        lastRun = System.currentTimeMillis();
+        return uploaded;
+    }
+
+    private void archive(HdfsService hdfs, File seg) throws IOException {
+        String target = archivePath(archiveRoot, seg.getName());
+        if (hdfs.exists(target)) return; // uploaded before the marker could be written
+        String parent = target.substring(0, target.lastIndexOf('/'));
+        String tmp = parent + "/_" + seg.getName() + ".gz";
+        hdfs.mkdirs(parent);
+        try (InputStream in = new BufferedInputStream(new FileInputStream(seg), 64 * 1024);
+             OutputStream out = new GZIPOutputStream(hdfs.create(tmp, true), 64 * 1024)) {
+            byte[] buf = new byte[64 * 1024];
+            int n;
+            while ((n = in.read(buf)) != -1) out.write(buf, 0, n);
+        }
+        if (!hdfs.move(tmp, target)) {
+            try { hdfs.delete(tmp, false); } catch (IOException ignore) {}
+            throw new IOException("rename failed: " + tmp + " -> " + target);
+        }
+    }
+
+    // a closed segment is deleted once archived and its end (the next segment's start) is older than the retention
+    private void deleteExpired(List<File> segs) {
+        long cutoff = System.currentTimeMillis() - localRetentionMillis;
+        for (int i = 0; i + 1 < segs.size(); i++) {
+            File seg = segs.get(i);
+            File marker = new File(dir, seg.getName() + MARKER_SUFFIX);
+            if (!marker.exists()) continue;
+            long end = AuditLogSegments.segmentStart(segs.get(i + 1).getName());
+            if (end < 0 || end > cutoff) continue;
+            if (seg.delete()) {
+                AuditLogSegments.indexFile(seg).delete();
+                marker.delete();
+                deletedLocal.increment();
+            }
+        }
+    }
+
+    public Map<String, Object> metrics() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("archived", archived.sum());
+        m.put("archivedBytes", archivedBytes.sum());
+        m.put("deletedLocal", deletedLocal.sum());
+        m.put("failures", failures.sum());
+        m.put("lastRun", lastRun);
+        return m;
+    }
+}
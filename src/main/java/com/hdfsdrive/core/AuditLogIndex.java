@@ -0,0 +1,361 @@
+package com.hdfsdrive.core;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * In-memory inverted index over the audit log segments, for filtering by user, action and path prefix.
+ * Each segment gets its own index mapping terms to the byte offsets of matching lines. Users and actions are plain
+ * terms; paths go into a trie of path components whose every node carries the lines at or below that prefix.
+ * Postings are delta + varint encoded. Segments are append-only, so an index just catches up from the last offset it
+ * saw; closed segments are indexed once on first use and kept in a bounded LRU.
+ * A filtered query intersects the postings of each segment, newest segment first, and reads only the matching lines.
+ */
+public class AuditLogIndex {
+    private final int maxCachedSegments;
+    // segment name -> index; access-ordered for LRU eviction, guarded by itself
+    private final LinkedHashMap<String, SegmentIndex> cache = new LinkedHashMap<>(16, 0.75f, true);
+
+    public AuditLogIndex(int maxCachedSegments) {
+        this.maxCachedSegments = Math.max(1, maxCachedSegments);
+    }
+
+    /** Filter on the indexed fields; null fields match everything. */
+    public static class Filter {
+        public String user;
+        public String action;
+        public String pathPrefix;
+
+        boolean isEmpty() {
+            return user == null && action == null && pathPrefix == null;
+        }
+    }
+
+    /**
+     * Newest-first page of lines matching the filter and from &lt;= time &lt;= to, continuing before the cursor
+     * (same cursor format as {@link AuditLogSegments#query}).
+     */
+    public AuditLogSegments.Page search(File dir, Filter filter, long from, long to, String cursor, int limit) throws IOException {
+        if (filter == null || filter.isEmpty()) return AuditLogSegments.query(dir, from, to, cursor, limit);
+        AuditLogSegments.Page page = new AuditLogSegments.Page();
+        List<File> segs = AuditLogSegments.segments(dir);
+        forgetMissing(segs);
+        if (segs.isEmpty() || limit <= 0) return page;
+
+        int seg = segs.size() - 1;
+        long before = Long.MAX_VALUE;
+        if (cursor != null && !cursor.isEmpty()) {
+            int at = cursor.lastIndexOf('@');
+            if (at <= 0) throw new IllegalArgumentException("bad cursor");
+            String name = cursor.substring(0, at);
+            before = Long.parseLong(cursor.substring(at + 1));
+            seg = -1;
+            for (int i = 0; i < segs.size(); i++) if (segs.get(i).getName().equals(name)) seg = i;
+            if (seg < 0) throw new IllegalArgumentException("cursor segment no longer exists");
+        } else {
+            while (seg > 0 && AuditLogSegments.segmentStart(segs.get(seg).getName()) > to) seg--;
+        }
+
+        for (; seg >= 0; seg--, before = Long.MAX_VALUE) {
+            File f = segs.get(seg);
+            if (AuditLogSegments.segmentStart(f.getName()) > to) continue;
+            long[] offsets = segment(f).match(f, filter);
+            if (offsets.length == 0) continue;
+            int i = offsets.length - 1;
+            while (i >= 0 && offsets[i] >= before) i--;
+            if (i < 0) continue;
+            try (RandomAccessFile raf = new RandomAccessFile(f, "r")) {
+                byte[] buf = new byte[4096];
+                for (; i >= 0; i--) {
+                    String line = readLine(raf, offsets[i], buf);
+                    long t = AuditLogSegments.lineTime(line);
+                    if (t > to) continue;
+                    if (t >= 0 && t < from) return page;
+                    Map<String, Object> m = AuditLogSegments.parseLine(line, t);
+                    if (m == null) continue;
+                    page.items.add(m);
+                    if (page.items.size() >= limit) {
+                        if (i > 0 || seg > 0) page.nextCursor = f.getName() + "@" + offsets[i];
+                        return page;
+                    }
+                }
+            }
+        }
+        return page;
+    }
+
+    /** Number of segments indexed in memory and their total encoded postings size. */
+    public Map<String, Object> stats() {
+        long bytes = 0, lines = 0;
+        int n;
+        synchronized (cache) {
+            n = cache.size();
+            for (SegmentIndex s : cache.values()) {
+                synchronized (s) {
+                    bytes += s.postingBytes();
+                    lines += s.lines;
+                }
+            }
+        }
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("segments", n);
+        m.put("lines", lines);
+        m.put("postingBytes", bytes);
+        return m;
+    }
+
+    private SegmentIndex segment(File f) {
+        synchronized (cache) {
+            SegmentIndex s = cache.get(f.getName());
+            if (s == null) {
+                s = new SegmentIndex();
+                cache.put(f.getName(), s);
+                Iterator<Map.Entry<String, SegmentIndex>> it = cache.entrySet().iterator();
+                while (cache.size() > maxCachedSegments && it.hasNext()) {
+                    it.next();
+                    it.remove();
+                }
+            }
+            return s;
+        }
+    }
+
+    private void forgetMissing(List<File> segs) {
+        Set<String> names = new HashSet<>();
+        for (File f : segs) names.add(f.getName());
+        synchronized (cache) {
+            cache.keySet().retainAll(names);
+        }
+    }
+
+    private static String readLine(RandomAccessFile raf, long offset, byte[] buf) throws IOException {
+        raf.seek(offset);
+        ByteArrayOutputStream out = null;
+        while (true) {
+            int n = raf.read(buf);
+            if (n <= 0) break;
+            int nl = -1;
+            for (int i = 0; i < n; i++) if (buf[i] == '\n') { nl = i; break; }
+            if (nl >= 0) {
+                if (out == null) return new String(buf, 0, nl, StandardCharsets.UTF_8);
+                out.write(buf, 0, nl);
+                break;
+            }
+            if (out == null) out = new ByteArrayOutputStream();
+            out.write(buf, 0, n);
+        }
+        return out == null ? "" : out.toString(StandardCharsets.UTF_8);
+    }
+
+    static String[] pathComponents(String path) {
+        String[] parts = path.split("/");
+        List<String> out = new ArrayList<>(parts.length);
+        for (String p : parts) if (!p.isEmpty()) out.add(p);
+        return out.toArray(new String[0]);
+    }
+
+    /**
+     * Sorted line offsets, delta + varint encoded.
+     */
+    static final class Postings {
+        private byte[] data = new byte[8];
+        private int size;
+        private int count;
+        private long last;
+
+        void add(long offset) {
+            long delta = offset - last;
+            last = offset;
+            count++;
+            if (size + 10 > data.length) data = Arrays.copyOf(data, Math.max(data.length * 2, size + 10));
+            while ((delta & ~0x7FL) != 0) {
+                data[size++] = (byte) ((delta & 0x7F) | 0x80);
+                delta >>>= 7;
+            }
+            data[size++] = (byte) delta;
+        }
+
+        long[] decode() {
+            long[] out = new long[count];
+            long v = 0;
+            int pos = 0;
+            for (int i = 0; i < count; i++) {
+                long delta = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = data[pos++];
+                    delta |= (long) (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                v += delta;
+                out[i] = v;
+            }
+            return out;
+        }
+
+        int bytes() {
+            return size;
+        }
+    }
+
+    static final class PathNode {
+        final Map<String, PathNode> children = new HashMap<>();
+        final Postings postings = new Postings();
+    }
+
+    /**
+     * Index of one segment, caught up to indexedUpTo bytes.
+     */
+    static final class SegmentIndex {
+        final Map<String, Postings> users = new HashMap<>();
+        final Map<String, Postings> actions = new HashMap<>();
+        final PathNode paths = new PathNode();
+        long indexedUpTo;
+        long lines;
+        // last match, reused while paging through the same filter and nothing new was indexed
+        private String lastKey;
+        private long lastUpTo = -1;
+        private long[] lastResult;
+
+        synchronized long[] match(File f, Filter filter) throws IOException {
+            catchUp(f);
+            String key = filter.user + "\u0000" + filter.action + "\u0000" + filter.pathPrefix;
+            if (lastUpTo == indexedUpTo && key.equals(lastKey)) return lastResult;
+            long[] result = intersectAll(filter);
+            lastKey = key;
+            lastUpTo = indexedUpTo;
+            lastResult = result;
+            return result;
+        }
+
+        private long[] intersectAll(Filter filter) {
+            List<long[]> lists = new ArrayList<>(3);
+            if (filter.user != null) {
+                Postings p = users.get(filter.user);
+                if (p == null) return new long[0];
+                lists.add(p.decode());
+            }
+            if (filter.action != null) {
+                Postings p = actions.get(filter.action);
+                if (p == null) return new long[0];
+                lists.add(p.decode());
+            }
+            if (filter.pathPrefix != null) {
+                PathNode node = paths;
+                for (String c : pathComponents(filter.pathPrefix)) {
+                    node = node.children.get(c);
+                    if (node == null) return new long[0];
+                }
+                lists.add(node.postings.decode());
+            }
+            lists.sort((a, b) -> Integer.compare(a.length, b.length));
+            long[] result = lists.get(0);
+            for (int i = 1; i < lists.size() && result.length > 0; i++) result = intersect(result, lists.get(i));
+            return result;
+        }
+
+        // read complete lines appended since the last catch-up
+        private void catchUp(File f) throws IOException {
+            long length = f.length();
+            if (length <= indexedUpTo) return;
+            try (InputStream in = new BufferedInputStream(new FileInputStream(f), 64 * 1024)) {
+                long skipped = in.skip(indexedUpTo);
+                if (skipped != indexedUpTo) return;
+                ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+                long pos = indexedUpTo;
+                long lineStart = pos;
+                int b;
+                while (pos < length && (b = in.read()) != -1) {
+                    pos++;
+                    if (b != '\n') {
+                        line.write(b);
+                        continue;
+                    }
+                    add(line.toString(StandardCharsets.UTF_8), lineStart);
+                    line.reset();
+                    lineStart = pos;
+                }
+                indexedUpTo = lineStart; // a trailing partial line is picked up next time
+            }
+        }
+
+        private void add(String line, long offset) {
+            String[] parts = line.split("\t");
+            boolean any = false;
+            for (int i = 1; i < parts.length; i++) {
+                String p = parts[i];
+                if (p.startsWith("user=")) {
+                    users.computeIfAbsent(p.substring(5), k -> new Postings()).add(offset);
+                    any = true;
+                } else if (p.startsWith("action=")) {
+                    actions.computeIfAbsent(p.substring(7), k -> new Postings()).add(offset);
+                    any = true;
+                } else if (p.startsWith("path=/")) {
+                    PathNode node = paths;
+                    node.postings.add(offset);
+                    for (String c : pathComponents(p.substring(5))) {
+                        node = node.children.computeIfAbsent(c, k -> new PathNode());
+                        node.postings.add(offset);
+                    }
+                    any = true;
+                }
+            }
+            if (any) lines++;
+        }
+
+        long postingBytes() {
+            long n = 0;
+            for (Postings p : users.values()) n += p.bytes();
+            for (Postings p : actions.values()) n += p.bytes();
+            List<PathNode> stack = new ArrayList<>();
+            stack.add(paths);
+            while (!stack.isEmpty()) {
+                PathNode node = stack.remove(stack.size() - 1);
+                n += node.postings.bytes();
+                stack.addAll(node.children.values());
+            }
+            return n;
+        }
+
+        private static long[] intersect(long[] small, long[] large) {
+            long[] out = new long[small.length];
+            int n = 0;
+            int j = 0;
+            for (long v : small) {
+                // gallop forward in the larger list
+                int step = 1;
+                int lo = j;
+                while (j < large.length && large[j] < v) {
+                    lo = j;
+                    j = Math.min(large.length, j + step);
+                    step <<= 1;
+                }
+                int idx = Arrays.binarySearch(large, lo, j < large.length ? j + 1 : large.length, v);
+                if (idx >= 0) {
+                    out[n++] = v;
+                    j = idx + 1;
+                } else {
+                    j = -idx - 1;
+                }
+                if (j >= large.length) break;
+            }
+            return Arrays.copyOf(out, n);
+        }
+    }
+}
@@ -0,0 +1,311 @@
+package com.hdfsdrive.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * On-disk layout and queries for the rotated admin operation log.
+ * The log is a series of segments admin-operations-&lt;yyyyMMdd-HHmmss-SSS of first line&gt;.log under WEB-INF/logs,
+ * each bounded by size and by calendar day; the newest one is appended to by {@link AuditLog}. Next to every segment
+ * a sparse .idx file holds (time, byte offset) pairs, one per INDEX_INTERVAL_BYTES of log, so a time can be turned
+ * into a file position without reading the segment. Queries read lines backwards from that position (or from the
+ * tail), newest first, and stop as soon as the page is full, so their cost does not depend on total log size.
+ */
+public final class AuditLogSegments {
+    public static final String LEGACY_FILE = "admin-operations.log";
+    static final String PREFIX = "admin-operations-";
+    static final String SUFFIX = ".log";
+    static final String INDEX_SUFFIX = ".idx";
+    /** One index point per this many bytes of log. */
+    static final int INDEX_INTERVAL_BYTES = 8 * 1024;
+
+    static final ZoneId ZONE = ZoneId.systemDefault();
+    static final DateTimeFormatter LINE_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZONE);
+    private static final DateTimeFormatter NAME_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS").withZone(ZONE);
+    private static final int READ_BLOCK = 64 * 1024;
+    private static final Object INDEX_BUILD_LOCK = new Object();
+
+    private AuditLogSegments() {}
+
+    /** One page of query results, newest first. */
+    public static class Page {
+        public final List<Map<String, Object>> items = new ArrayList<>();
+        /** Pass back as "before" to continue; null when there is nothing older in range. */
+        public String nextCursor;
+    }
+
+    static String segmentName(long firstTime) {
+        return PREFIX + NAME_TIME.format(java.time.Instant.ofEpochMilli(firstTime)) + SUFFIX;
+    }
+
+    static boolean isSegmentName(String name) {
+        return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+    }
+
+    /** Start time encoded in a segment name, or -1. */
+    static long segmentStart(String name) {
+        try {
+            String ts = name.substring(PREFIX.length(), name.length() - SUFFIX.length());
+            return LocalDateTime.parse(ts.substring(0, 19), NAME_TIME).atZone(ZONE).toInstant().toEpochMilli();
+        } catch (RuntimeException e) {
+            return -1L;
+        }
+    }
+
+    static File indexFile(File segment) {
+        return new File(segment.getParentFile(), segment.getName() + INDEX_SUFFIX);
+    }
+
+    /**
+     * Segments in chronological order; the last one is the segment currently being written.
+     */
+    public static List<File> segments(File dir) {
+        File[] files = dir.listFiles((d, n) -> isSegmentName(n));
+        if (files == null) return new ArrayList<>();
+        Arrays.sort(files, (a, b) -> a.getName().compareTo(b.getName()));
+        return new ArrayList<>(Arrays.asList(files));
+    }
+
+    /** Epoch millis of a log line's leading timestamp, or -1 if it has none. */
+    static long lineTime(String line) {
+        if (line.length() < 19) return -1L;
+        try {
+            return LocalDateTime.parse(line.substring(0, 19), LINE_TIME).atZone(ZONE).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return -1L;
+        }
+    }
+
+    /**
+     * Read a segment's sparse index as interleaved [time0, offset0, time1, offset1, ...].
+     * Closed segments without an index (e.g. a log written before rotation existed) get one built and saved;
+     * the segment being written is indexed by its writer only, so a missing index there just means no index.
+     */
+    static long[] readIndex(File segment, boolean active) throws IOException {
+        File idx = indexFile(segment);
+        if (!idx.exists()) {
+            if (active) return new long[0];
+            synchronized (INDEX_BUILD_LOCK) {
+                if (!idx.exists()) writeIndex(idx, buildIndex(segment));
+            }
+        }
+        long len = idx.length();
+        int n = (int) (len / 16); // ignore a torn trailing pair
+        long[] out = new long[n * 2];
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(idx)))) {
+            for (int i = 0; i < n * 2; i++) out[i] = in.readLong();
+        } catch (EOFException ignore) {
+            // truncated concurrently; what was read is still valid
+        }
+        return out;
+    }
+
+    /**
+     * Scan a segment forward and return index points every INDEX_INTERVAL_BYTES.
+     */
+    static long[] buildIndex(File segment) throws IOException {
+        long[] points = new long[16];
+        int n = 0;
+        long lastIndexed = -INDEX_INTERVAL_BYTES;
+        try (BufferedInputStream in = new BufferedInputStream(new FileInputStream(segment), READ_BLOCK)) {
+            long offset = 0;
+            byte[] line = new byte[256];
+            int len = 0;
+            long lineStart = 0;
+            int b;
+            while ((b = in.read()) != -1) {
+                offset++;
+                if (b != '\n') {
+                    if (len < line.length) line[len++] = (byte) b; // only the timestamp prefix matters
+                    continue;
+                }
+                if (lineStart - lastIndexed >= INDEX_INTERVAL_BYTES) {
+                    long t = lineTime(new String(line, 0, Math.min(len, 19), StandardCharsets.UTF_8));
+                    if (t >= 0) {
+                        if (n + 2 > points.length) points = Arrays.copyOf(points, points.length * 2);
+                        points[n++] = t;
+                        points[n++] = lineStart;
+                        lastIndexed = lineStart;
+                    }
+                }
+                lineStart = offset;
+                len = 0;
+            }
+        }
+        return Arrays.copyOf(points, n);
+    }
+
+    static void writeIndex(File idx, long[] points) throws IOException {
+        File tmp = new File(idx.getParentFile(), idx.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            for (long v : points) out.writeLong(v);
+        }
+        if (!tmp.renameTo(idx)) {
+            idx.delete();
+            if (!tmp.renameTo(idx)) throw new IOException("cannot replace " + idx);
+        }
+    }
+
+    /**
+     * Newest-first page of log lines with from &lt;= time &lt;= to (either bound may be open: Long.MIN_VALUE /
+     * Long.MAX_VALUE), starting just before the cursor when one is given.
+     */
+    public static Page query(File dir, long from, long to, String cursor, int limit) throws IOException {
+        Page page = new Page();
+        List<File> segs = segments(dir);
+        if (segs.isEmpty() || limit <= 0) return page;
+
+        int seg;
+        long start;
+        if (cursor != null && !cursor.isEmpty()) {
+            int at = cursor.lastIndexOf('@');
+            if (at <= 0) throw new IllegalArgumentException("bad cursor");
+            String name = cursor.substring(0, at);
+            start = Long.parseLong(cursor.substring(at + 1));
+            seg = -1;
+            for (int i = 0; i < segs.size(); i++) if (segs.get(i).getName().equals(name)) seg = i;
+            if (seg < 0) throw new IllegalArgumentException("cursor segment no longer exists");
+        } else {
+            // newest segment that can hold lines at or before 'to'
+            seg = segs.size() - 1;
+            while (seg > 0 && segmentStart(segs.get(seg).getName()) > to) seg--;
+            start = to == Long.MAX_VALUE ? -1L : seekAfter(segs.get(seg), seg == segs.size() - 1, to);
+        }
+
+        for (; seg >= 0; seg--, start = -1L) {
+            File f = segs.get(seg);
+            boolean active = seg == segs.size() - 1;
+            try (RandomAccessFile raf = new RandomAccessFile(f, "r")) {
+                long end = start < 0 ? raf.length() : Math.min(start, raf.length());
+                BackwardLines lines = new BackwardLines(raf, end, active && start < 0);
+                while (lines.next()) {
+                    String line = lines.text();
+                    if (line.trim().isEmpty()) continue;
+                    long t = lineTime(line);
+                    if (t > to) continue;
+                    if (t >= 0 && t < from) return page; // lines are in time order: nothing older can match
+                    Map<String, Object> m = parseLine(line, t);
+                    if (m == null) continue;
+                    page.items.add(m);
+                    if (page.items.size() >= limit) {
+                        if (lines.lineStart() > 0 || seg > 0) page.nextCursor = f.getName() + "@" + lines.lineStart();
+                        return page;
+                    }
+                }
+            }
+        }
+        return page;
+    }
+
+    /**
+     * File position of the first indexed line later than time, or -1 (read from the end) when none is.
+     */
+    private static long seekAfter(File segment, boolean active, long time) throws IOException {
+        long[] idx = readIndex(segment, active);
+        int lo = 0, hi = idx.length / 2; // first point with time > 'time'
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (idx[mid * 2] > time) hi = mid; else lo = mid + 1;
+        }
+        return lo < idx.length / 2 ? idx[lo * 2 + 1] : -1L;
+    }
+
+    /**
+     * Split a line of the form "yyyy-MM-dd HH:mm:ss\tuser=..\taction=..[\tpath=..][\tinfo=..]" into a map;
+     * null for lines without an action.
+     */
+    static Map<String, Object> parseLine(String line, long time) {
+        String[] parts = line.split("\t");
+        Map<String, Object> m = new HashMap<>();
+        m.put("raw", line);
+        m.put("timeText", parts[0]);
+        if (time >= 0) m.put("time", time);
+        for (int i = 1; i < parts.length; i++) {
+            String p = parts[i];
+            int eq = p.indexOf('=');
+            if (eq > 0) m.put(p.substring(0, eq), p.substring(eq + 1));
+        }
+        return m.containsKey("action") ? m : null;
+    }
+
+    /**
+     * Iterates the lines that end before a file position, last line first, reading the file in blocks from the end.
+     */
+    static final class BackwardLines {
+        private final RandomAccessFile raf;
+        private byte[] buf = new byte[0];
+        private int len;          // buf[0, len) holds file bytes [bufStart, bufStart + len)
+        private long bufStart;
+        private boolean skipPartial;
+        private String text;
+        private long lineStart;
+
+        BackwardLines(RandomAccessFile raf, long end, boolean skipPartialTail) {
+            this.raf = raf;
+            this.bufStart = end;
+            this.skipPartial = skipPartialTail;
+        }
+
+        boolean next() throws IOException {
+            while (true) {
+                if (len == 0 && bufStart == 0) return false;
+                if (len == 0) fill();
+                int lineEnd = buf[len - 1] == '\n' ? len - 1 : len;
+                boolean partial = lineEnd == len;
+                int i = lineEnd - 1;
+                while (i >= 0 && buf[i] != '\n') i--;
+                if (i < 0 && bufStart > 0) {
+                    fill(); // line starts in an earlier block
+                    continue;
+                }
+                text = new String(buf, i + 1, lineEnd - i - 1, StandardCharsets.UTF_8);
+                lineStart = bufStart + i + 1;
+                len = i + 1;
+                if (partial && skipPartial) {
+                    // the writer may be mid-line at the tail of the active segment
+                    skipPartial = false;
+                    continue;
+                }
+                skipPartial = false;
+                return true;
+            }
+        }
+
+        private void fill() throws IOException {
+            int n = (int) Math.min(READ_BLOCK, bufStart);
+            byte[] next = new byte[n + len];
+            raf.seek(bufStart - n);
+            raf.readFully(next, 0, n);
+            System.arraycopy(buf, 0, next, n, len);
+            buf = next;
+            len += n;
+            bufStart -= n;
+        }
+
+        String text() {
+            return text;
+        }
+
+        long lineStart() {
+            return lineStart;
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package com.hdfsdrive.core;
+
+import jakarta.servlet.ServletContext;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.SQLException;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.regex.Pattern;
+
+/**
+ * Content-addressed avatar storage. An upload is decoded, cropped to a centred square and rendered at each of
+ * SIZES (PNG if it has transparency, JPEG otherwise); the files are named after a hash of the uploaded bytes, so
+ * the same image uploaded twice is stored once and a stored file never changes. The users table and the session
+ * keep only the key ("&lt;24 hex&gt;.png|jpg"); pages load the image from /api/avatar/&lt;key&gt;?s=&lt;size&gt;, which
+ * can be cached by browsers for good.
+ * Files live under AVATAR_DIR (environment or context init param), default WEB-INF/avatars, in 256 subdirectories
+ * by the first two hex digits of the key.
+ */
+public class AvatarStore {
+    /** 72 covers the 32-36px header and list avatars on 2x screens, 256 the profile page. */
+    public static final int[] SIZES = {72, 128, 256};
+    public static final int SMALL_SIZE = 72;
+    public static final int DEFAULT_SIZE = 128;
+    public static final int MAX_UPLOAD_BYTES = 5 * 1024 * 1024;
+    /** Larger images are rejected before decoding, so a small compressed file cannot expand to gigabytes. */
+    public static final long MAX_PIXELS = 40_000_000L;
+    public static final String URL_PREFIX = "/api/avatar/";
+
+    private static final Pattern KEY = Pattern.compile("[0-9a-f]{24}\\.(png|jpg)");
+    private static final float JPEG_QUALITY = 0.85f;
+    private static final String ATTRIBUTE = AvatarStore.class.getName();
+    private static final Object INIT_LOCK = new Object();
+
+    private final File dir;
+
+    public AvatarStore(File dir) {
+        this.dir = dir;
+    }
+
+    public static AvatarStore get(ServletContext context) {
+        Object existing = context.getAttribute(ATTRIBUTE);
+        if (existing instanceof AvatarStore) return (AvatarStore) existing;
+        synchronized (INIT_LOCK) {
+            existing = context.getAttribute(ATTRIBUTE);
+            if (existing instanceof AvatarStore) return (AvatarStore) existing;
+            String path = System.getenv("AVATAR_DIR");
+            if (path == null || path.isEmpty()) path = context.getInitParameter("AVATAR_DIR");
+            if (path == null || path.isEmpty()) path = context.getRealPath("/WEB-INF/avatars");
+            if (path == null) path = System.getProperty("java.io.tmpdir") + File.separator + "hdfsdrive-avatars";
+            AvatarStore store = new AvatarStore(new File(path));
+            context.setAttribute(ATTRIBUTE, store);
+            return store;
+        }
+    }
+
+    public static boolean isKey(String avatar) {
+        return avatar != null && KEY.matcher(avatar).matches();
+    }
+
+    /**
+     * URL to show for the avatar column's value: the avatar endpoint for a key, anything else (an older
+     * /avatars/ path) unchanged.
+     */
+    public static String url(String contextPath, String avatar, int size) {
+        if (!isKey(avatar)) return avatar;
+        return (contextPath == null ? "" : contextPath) + URL_PREFIX + avatar + "?s=" + size;
+    }
+
+    /** The rendered size served for a requested one: the smallest that is at least as big, else the largest. */
+    public static int servedSize(int requested) {
+        for (int s : SIZES) if (s >= requested) return s;
+        return SIZES[SIZES.length - 1];
+    }
+
+    /** Stored file for a key at one of SIZES. */
+    public File file(String key, int size) {
+        String hex = key.substring(0, key.indexOf('.'));
+        String ext = key.substring(key.indexOf('.') + 1);
+        return new File(new File(dir, hex.substring(0, 2)), hex + "-" + size + "." + ext);
+    }
+
+    /** Store an avatar sent as a data: URL (what the profile page uploads). Returns the key. */
+    public String storeDataUrl(String dataUrl) throws IOException {
+        int comma = dataUrl.indexOf(',');
+        if (!dataUrl.startsWith("data:") || comma < 0 || !dataUrl.substring(0, comma).endsWith(";base64")) {
+            throw new IOException("头像数据格式无效");
+        }
+        // base64 is 4 chars per 3 bytes: reject oversized uploads before decoding them
+        if ((long) (dataUrl.length() - comma - 1) * 3 / 4 > MAX_UPLOAD_BYTES) throw new IOException("头像图片过大（最大 5MB）");
+        byte[] bytes;
+        try {
+            bytes = Base64.getMimeDecoder().decode(dataUrl.substring(comma + 1));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("头像数据格式无效");
+        }
+        return store(bytes);
+    }
+
+    /**
+     * The avatar column's value for u. A data: URL saved inline by older versions is moved into the store and the
+     * row updated to its key (or cleared if it is not a usable image).
+     */
+    public String migrate(User u) {
+        String avatar = u.getAvatar();
+        if (avatar == null || !avatar.startsWith("data:")) return avatar;
+        String key = null;
+        try {
+            key = storeDataUrl(avatar);
+        } catch (IOException e) {
+            System.err.println("AvatarStore: dropping unreadable inline avatar of user " + u.getId() + ": " + e.getMessage());
+        }
+        try {
+            UserDao.setAvatar(u.getId(), key);
+        } catch (SQLException e) {
+            System.err.println("AvatarStore: failed to update avatar of user " + u.getId() + ": " + e.getMessage());
+        }
+        u.setAvatar(key);
+        return key;
+    }
+
+    /** Resize and store an uploaded image unless the same bytes were stored before. Returns the key. */
+    public String store(byte[] original) throws IOException {
+        if (original.length > MAX_UPLOAD_BYTES) throw new IOException("头像图片过大（最大 5MB）");
+        String hex = sha256Hex(original).substring(0, 24);
+        for (String ext : new String[]{"png", "jpg"}) {
+            String key = hex + "." + ext;
+            if (file(key, SIZES[SIZES.length - 1]).exists()) return key;
+        }
+        BufferedImage square = cropSquare(decode(original));
+        boolean alpha = square.getColorModel().hasAlpha();
+        String key = hex + (alpha ? ".png" : ".jpg");
+        // largest last: its presence marks the key as complete
+        for (int size : SIZES) {
+            File f = file(key, size);
+            File parent = f.getParentFile();
+            if (!parent.exists() && !parent.mkdirs() && !parent.exists()) throw new IOException("cannot create " + parent);
+            byte[] encoded = encode(scale(square, size, alpha), alpha);
+            File tmp = new File(parent, f.getName() + "." + Thread.currentThread().getId() + ".tmp");
+            Files.write(tmp.toPath(), encoded);
+            try {
+                Files.move(tmp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException atomicUnsupported) {
+                Files.move(tmp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        return key;
+    }
+
+    private static BufferedImage decode(byte[] bytes) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(new ByteArrayInputStream(bytes))) {
+            Iterator<ImageReader> readers = in == null ? null : ImageIO.getImageReaders(in);
+            if (readers == null || !readers.hasNext()) throw new IOException("不支持的图片格式");
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                if ((long) reader.getWidth(0) * reader.getHeight(0) > MAX_PIXELS) throw new IOException("图片尺寸过大");
+                return reader.read(0);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private static BufferedImage cropSquare(BufferedImage img) {
+        int side = Math.min(img.getWidth(), img.getHeight());
+        return img.getSubimage((img.getWidth() - side) / 2, (img.getHeight() - side) / 2, side, side);
+    }
+
+    /** Scale a square image to size x size, halving first when shrinking a lot so bicubic does not alias. */
+    private static BufferedImage scale(BufferedImage src, int size, boolean alpha) {
+        int type = alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        BufferedImage current = src;
+        int side = src.getWidth();
+        do {
+            side = side / 2 >= size ? side / 2 : size;
+            BufferedImage next = new BufferedImage(side, side, type);
+            Graphics2D g = next.createGraphics();
+            try {
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+                g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                if (!alpha) {
+                    g.setColor(Color.WHITE);
+                    g.fillRect(0, 0, side, side);
+                }
+                g.drawImage(current, 0, 0, side, side, null);
+            } finally {
+                g.dispose();
+            }
+            current = next;
+        } while (side != size);
+        return current;
+    }
+
+    private static byte[] encode(BufferedImage img, boolean alpha) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        if (alpha) {
+            ImageIO.write(img, "png", bos);
+            return bos.toByteArray();
+        }
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(bos)) {
+            writer.setOutput(out);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(JPEG_QUALITY);
+            writer.write(null, new IIOImage(img, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return bos.toByteArray();
+    }
+
+    private static String sha256Hex(byte[] bytes) {
+        try {
+            byte[] d = MessageDigest.getInstance("SHA-256").digest(bytes);
+            StringBuilder sb = new StringBuilder(d.length * 2);
+            for (byte b : d) sb.append(String.format("%02x", b));
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.hdfsdrive.core;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Request-scoped helper that resolves size/mtime for many paths at once.
+ * Paths are grouped by parent directory and each parent is listed exactly once (in parallel on the given
+ * executor), so N entries under K directories cost K listStatus calls instead of 2N RPCs plus N listings.
+ * Listings are cached for the lifetime of the fetcher, i.e. one request.
+ */
+public class BatchStatusFetcher {
+    private final HdfsService hdfs;
+    private final ExecutorService executor;
+    // parent dir -> (child path -> entry); an empty map means the parent is missing or unreadable
+    private final Map<String, Map<String, HdfsService.FileEntry>> listings = new HashMap<>();
+
+    public BatchStatusFetcher(HdfsService hdfs, ExecutorService executor) {
+        this.hdfs = hdfs;
+        this.executor = executor;
+    }
+
+    /**
+     * Resolve metadata for the given paths. Paths that do not exist are absent from the result.
+     */
+    public Map<String, HdfsService.FileEntry> fetch(Collection<String> paths) {
+        Set<String> parents = new LinkedHashSet<>();
+        for (String p : paths) {
+            String parent = parentOf(p);
+            if (!listings.containsKey(parent)) parents.add(parent);
+        }
+
+        List<String> order = new ArrayList<>(parents);
+        List<Future<Map<String, HdfsService.FileEntry>>> futures = new ArrayList<>(order.size());
+        for (String parent : order) {
+            futures.add(executor.submit(() -> listParent(parent)));
+        }
+        for (int i = 0; i < order.size(); i++) {
+            Map<String, HdfsService.FileEntry> children;
+            try {
+                children = futures.get(i).get();
+            } catch (Exception e) {
+                children = new HashMap<>();
+            }
+            listings.put(order.get(i), children);
+        }
+
+        Map<String, HdfsService.FileEntry> out = new HashMap<>();
+        for (String p : paths) {
+            HdfsService.FileEntry fe = listings.get(parentOf(p)).get(p);
+            if (fe != null) out.put(p, fe);
+        }
+        return out;
+    }
+
+    private Map<String, HdfsService.FileEntry> listParent(String parent) throws IOException {
+        Map<String, HdfsService.FileEntry> children = new HashMap<>();
+        try {
+            for (HdfsService.FileEntry fe : hdfs.listDirWithMeta(parent)) children.put(fe.path, fe);
+        } catch (FileNotFoundException missing) {
+            // parent gone: none of its children exist
+        }
+        return children;
+    }
+
+    private static String parentOf(String path) {
+        int idx = path.lastIndexOf('/');
+        return idx <= 0 ? "/" : path.substring(0, idx);
+    }
+}
@@ -0,0 +1,140 @@
+package com.hdfsdrive.core;
+
+import com.alibaba.druid.pool.DruidDataSource;
+
+import javax.sql.DataSource;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * The single pooled {@link DataSource} shared by UserDao and the car-rental servlets.
+ * Settings come from druid.properties on the classpath; DB_URL / DB_USER / DB_PASSWORD and the DB_POOL_* variables
+ * in the environment override them. Connections are validated while idle (not on every borrow), prepared statements
+ * are cached per connection, and a connection held longer than the abandon timeout is reclaimed and its borrower's
+ * stack trace logged.
+ */
+public final class Database {
+    private static final Object INIT_LOCK = new Object();
+    private static volatile DruidDataSource dataSource;
+
+    private Database() {}
+
+    /** The shared pool, created and filled to its initial size on first use. */
+    public static DataSource dataSource() throws SQLException {
+        DruidDataSource ds = dataSource;
+        if (ds != null) return ds;
+        synchronized (INIT_LOCK) {
+            if (dataSource == null) dataSource = create(loadProperties());
+            return dataSource;
+        }
+    }
+
+    public static Connection getConnection() throws SQLException {
+        return dataSource().getConnection();
+    }
+
+    private static Properties loadProperties() {
+        Properties p = new Properties();
+        try (InputStream in = Database.class.getClassLoader().getResourceAsStream("druid.properties")) {
+            if (in != null) p.load(in);
+        } catch (Exception e) {
+            System.err.println("Database: failed to read druid.properties: " + e.getMessage());
+        }
+        return p;
+    }
+
+    private static DruidDataSource create(Properties p) throws SQLException {
+        DruidDataSource ds = new DruidDataSource();
+        ds.setName("hdfsdrive");
+        ds.setUrl(setting(p, "DB_URL", "jdbc.url", "jdbc:mysql://localhost:3306/bigdata?useUnicode=true&characterEncoding=utf8&serverTimezone=UTC"));
+        ds.setUsername(setting(p, "DB_USER", "jdbc.username", "root"));
+        ds.setPassword(setting(p, "DB_PASSWORD", "jdbc.password", ""));
+        ds.setDriverClassName(setting(p, "DB_DRIVER", "jdbc.driverClassName", "com.mysql.cj.jdbc.Driver"));
+        // send JDBC batches (bulk user import) as multi-row INSERTs instead of one round trip per row
+        ds.setConnectionProperties("rewriteBatchedStatements=true");
+
+        ds.setInitialSize(intSetting(p, "DB_POOL_INITIAL_SIZE", "druid.initialSize", 2));
+        ds.setMinIdle(intSetting(p, "DB_POOL_MIN_IDLE", "druid.minIdle", 2));
+        ds.setMaxActive(intSetting(p, "DB_POOL_MAX_ACTIVE", "druid.maxActive", 20));
+        ds.setMaxWait(intSetting(p, "DB_POOL_MAX_WAIT_MILLIS", "druid.maxWait", 3000));
+
+        ds.setPoolPreparedStatements(true);
+        ds.setMaxPoolPreparedStatementPerConnectionSize(intSetting(p, "DB_POOL_PS_CACHE_SIZE", "druid.maxPoolPreparedStatementPerConnectionSize", 50));
+
+        ds.setValidationQuery(setting(p, "DB_POOL_VALIDATION_QUERY", "druid.validationQuery", "SELECT 1"));
+        ds.setValidationQueryTimeout(2);
+        ds.setTestWhileIdle(true);
+        ds.setTestOnBorrow(false);
+        ds.setTestOnReturn(false);
+        ds.setKeepAlive(true);
+        ds.setTimeBetweenEvictionRunsMillis(intSetting(p, "DB_POOL_EVICTION_MILLIS", "druid.timeBetweenEvictionRunsMillis", 60_000));
+        ds.setMinEvictableIdleTimeMillis(intSetting(p, "DB_POOL_MIN_EVICTABLE_IDLE_MILLIS", "druid.minEvictableIdleTimeMillis", 300_000));
+
+        int abandonSeconds = intSetting(p, "DB_POOL_LEAK_TIMEOUT_SECONDS", "druid.removeAbandonedTimeout", 120);
+        ds.setRemoveAbandoned(abandonSeconds > 0);
+        if (abandonSeconds > 0) ds.setRemoveAbandonedTimeout(abandonSeconds);
+        ds.setLogAbandoned(true);
+
+        long t0 = System.currentTimeMillis();
+        try {
+            ds.init();
+        } catch (SQLException e) {
+            ds.close();
+            throw e;
+        }
+        System.out.println("Database: pool ready in " + (System.currentTimeMillis() - t0) + " ms");
+        return ds;
+    }
+
+    private static String setting(Properties p, String env, String key, String dflt) {
+        String v = System.getenv(env);
+        if (v == null || v.isEmpty()) v = p.getProperty(key);
+        return v == null || v.trim().isEmpty() ? dflt : v.trim();
+    }
+
+    private static int intSetting(Properties p, String env, String key, int dflt) {
+        try {
+            return Integer.parseInt(setting(p, env, key, String.valueOf(dflt)));
+        } catch (NumberFormatException e) {
+            return dflt;
+        }
+    }
+
+    /** Pool counters for the admin dashboard; only {"initialized": false} before the first connection. */
+    public static Map<String, Object> metrics() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        DruidDataSource ds = dataSource;
+        m.put("initialized", ds != null);
+        if (ds == null) return m;
+        m.put("active", ds.getActiveCount());
+        m.put("idle", ds.getPoolingCount());
+        m.put("maxActive", ds.getMaxActive());
+        m.put("activePeak", ds.getActivePeak());
+        m.put("waitingThreads", ds.getWaitThreadCount());
+        m.put("waitCount", ds.getNotEmptyWaitCount());
+        m.put("waitMillis", ds.getNotEmptyWaitMillis());
+        m.put("borrowed", ds.getConnectCount());
+        m.put("returned", ds.getCloseCount());
+        m.put("physicalOpened", ds.getCreateCount());
+        m.put("physicalClosed", ds.getDestroyCount());
+        m.put("createErrors", ds.getCreateErrorCount());
+        m.put("leaksReclaimed", ds.getRemoveAbandonedCount());
+        m.put("psCacheHits", ds.getCachedPreparedStatementHitCount());
+        m.put("psCacheMisses", ds.getCachedPreparedStatementMissCount());
+        return m;
+    }
+
+    /** Close the pool; a later {@link #getConnection()} creates a new one. */
+    public static void shutdown() {
+        DruidDataSource ds;
+        synchronized (INIT_LOCK) {
+            ds = dataSource;
+            dataSource = null;
+        }
+        if (ds != null) ds.close();
+    }
+}
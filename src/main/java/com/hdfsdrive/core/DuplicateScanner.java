@@ -0,0 +1,435 @@
+package com.hdfsdrive.core;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.ServletContext;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Finds duplicate files under /users.
+ * A scan walks the tree once (one listing per directory), groups files by size, and only for sizes shared by two
+ * or more files asks HDFS for the file checksum; files whose file system has no checksum are read and SHA-256
+ * hashed instead. Files with equal size and checksum form a duplicate set; optionally (verify) every set is
+ * confirmed with full SHA-256 hashes. The oldest copy of each set is considered the original and the others
+ * reclaimable, charged to the user owning them.
+ * <p>
+ * Listings/checksum calls and hashed bytes are throttled so a scan can run during the day. Checksums are kept in
+ * WEB-INF/dedup-checksums.json keyed by path and validated by size + modification time, so a cancelled or
+ * interrupted scan resumes where it left off when started again, and later scans only look at changed files.
+ * The report is written to WEB-INF/dedup-report.json.
+ */
+public class DuplicateScanner {
+    public static final String SCAN_ROOT = "/users";
+    public static final int DEFAULT_OPS_PER_SECOND = 50;
+    public static final long DEFAULT_HASH_BYTES_PER_SECOND = 20L * 1024 * 1024;
+    public static final int DEFAULT_THREADS = 4;
+    /** Largest duplicate sets (by reclaimable bytes) kept in the report. */
+    public static final int MAX_REPORTED_SETS = 500;
+
+    private static final String ATTRIBUTE = DuplicateScanner.class.getName();
+    private static final Object INIT_LOCK = new Object();
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    /** Cached checksums of one file version. */
+    public static class Checksum {
+        public long size;
+        public long mtime;
+        /** File system checksum, or "SHA-256:..." when the file system has none. */
+        public String value;
+        /** Full content hash, once computed. */
+        public String sha256;
+
+        public Checksum() {}
+
+        Checksum(long size, long mtime) {
+            this.size = size;
+            this.mtime = mtime;
+        }
+    }
+
+    private final HdfsFactory hdfsFactory;
+    private final File reportFile;
+    private final Map<String, Checksum> checksums = new ConcurrentHashMap<>();
+    private final WriteBehindWriter checksumWriter;
+    private final Throttle opsThrottle;
+    private final Throttle bytesThrottle;
+    private final int threads;
+
+    private final AtomicReference<Thread> running = new AtomicReference<>();
+    private volatile boolean cancelled;
+    private volatile String phase = "idle";
+    private volatile String lastError;
+    private volatile long startedAt;
+    private volatile long finishedAt;
+    private final AtomicLong filesScanned = new AtomicLong();
+    private final AtomicLong candidates = new AtomicLong();
+    private final AtomicLong checksummed = new AtomicLong();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong hashedBytes = new AtomicLong();
+
+    private volatile Map<String, Object> cachedReport;
+    private volatile long cachedReportModified = -1L;
+
+    public DuplicateScanner(HdfsFactory hdfsFactory, File checksumFile, File reportFile,
+                            int opsPerSecond, long hashBytesPerSecond, int threads) {
+        this.hdfsFactory = hdfsFactory;
+        this.reportFile = reportFile;
+        this.opsThrottle = new Throttle(opsPerSecond);
+        this.bytesThrottle = new Throttle(hashBytesPerSecond);
+        this.threads = Math.max(1, threads);
+        if (checksumFile.exists()) {
+            try {
+                checksums.putAll(mapper.readValue(checksumFile, new TypeReference<Map<String, Checksum>>(){}));
+            } catch (IOException e) {
+                System.err.println("DuplicateScanner: ignoring unreadable " + checksumFile + ": " + e.getMessage());
+            }
+        }
+        this.checksumWriter = new WriteBehindWriter(checksumFile, mapper, () -> new HashMap<>(checksums), 5000L);
+    }
+
+    /**
+     * Return the scanner bound to the given context, creating it on first use. Rates come from DEDUP_OPS_PER_SECOND,
+     * DEDUP_HASH_MB_PER_SECOND and DEDUP_THREADS in the environment or context init params.
+     */
+    public static DuplicateScanner get(ServletContext context, HdfsFactory hdfsFactory) {
+        Object existing = context.getAttribute(ATTRIBUTE);
+        if (existing instanceof DuplicateScanner) return (DuplicateScanner) existing;
+        synchronized (INIT_LOCK) {
+            existing = context.getAttribute(ATTRIBUTE);
+            if (existing instanceof DuplicateScanner) return (DuplicateScanner) existing;
+            String dir = context.getRealPath("/WEB-INF");
+            if (dir == null) return null;
+            int ops = intSetting(context, "DEDUP_OPS_PER_SECOND", DEFAULT_OPS_PER_SECOND);
+            long bytes = intSetting(context, "DEDUP_HASH_MB_PER_SECOND", (int) (DEFAULT_HASH_BYTES_PER_SECOND >> 20)) * 1024L * 1024L;
+            int threads = intSetting(context, "DEDUP_THREADS", DEFAULT_THREADS);
+            DuplicateScanner scanner = new DuplicateScanner(hdfsFactory, new File(dir, "dedup-checksums.json"),
+                    new File(dir, "dedup-report.json"), ops, bytes, threads);
+            context.setAttribute(ATTRIBUTE, scanner);
+            return scanner;
+        }
+    }
+
+    /**
+     * Stop a running scan and persist the checksums gathered so far.
+     */
+    public static void shutdown(ServletContext context) {
+        Object existing = context.getAttribute(ATTRIBUTE);
+        context.removeAttribute(ATTRIBUTE);
+        if (existing instanceof DuplicateScanner) {
+            DuplicateScanner s = (DuplicateScanner) existing;
+            s.cancel();
+            Thread t = s.running.get();
+            if (t != null) try { t.join(5000L); } catch (InterruptedException ignore) { Thread.currentThread().interrupt(); }
+            try { s.checksumWriter.close(); } catch (IOException ignore) {}
+        }
+    }
+
+    private static int intSetting(ServletContext context, String name, int dflt) {
+        String v = System.getenv(name);
+        if (v == null || v.isEmpty()) v = context.getInitParameter(name);
+        try {
+            return v == null || v.isEmpty() ? dflt : Integer.parseInt(v.trim());
+        } catch (NumberFormatException e) {
+            return dflt;
+        }
+    }
+
+    /** Start a scan in the background; false if one is already running. */
+    public boolean start(boolean verify) {
+        Thread t = new Thread(() -> runScan(verify), "duplicate-scan");
+        t.setDaemon(true);
+        if (!running.compareAndSet(null, t)) return false;
+        cancelled = false;
+        t.start();
+        return true;
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    private void runScan(boolean verify) {
+        startedAt = System.currentTimeMillis();
+        finishedAt = 0L;
+        lastError = null;
+        filesScanned.set(0);
+        candidates.set(0);
+        checksummed.set(0);
+        cacheHits.set(0);
+        hashedBytes.set(0);
+        ExecutorService workers = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "duplicate-scan-worker");
+            t.setDaemon(true);
+            return t;
+        });
+        HdfsService hdfs = null;
+        try {
+            hdfs = hdfsFactory.create();
+            phase = "walking";
+            Map<Long, List<HdfsService.FileEntry>> bySize = walk(hdfs);
+
+            phase = "checksumming";
+            List<List<HdfsService.FileEntry>> groups = new ArrayList<>();
+            for (List<HdfsService.FileEntry> g : bySize.values()) {
+                if (g.size() < 2) continue;
+                groups.add(g);
+                candidates.addAndGet(g.size());
+            }
+            bySize = null;
+            List<List<HdfsService.FileEntry>> sets = splitBy(hdfs, workers, groups, false);
+
+            if (verify) {
+                phase = "verifying";
+                sets = splitBy(hdfs, workers, sets, true);
+            }
+
+            phase = "reporting";
+            Map<String, Object> report = buildReport(sets, verify);
+            new WriteBehindWriter(reportFile, mapper, () -> report, 0L).flush();
+            phase = "done";
+        } catch (CancelledException | InterruptedIOException | InterruptedException e) {
+            phase = "cancelled";
+        } catch (Exception e) {
+            phase = "failed";
+            lastError = String.valueOf(e.getMessage());
+            System.err.println("DuplicateScanner: scan failed: " + e.getMessage());
+        } finally {
+            workers.shutdownNow();
+            if (hdfs != null) try { hdfs.close(); } catch (IOException ignore) {}
+            try { checksumWriter.flush(); } catch (IOException e) { System.err.println("DuplicateScanner: failed to save checksums: " + e.getMessage()); }
+            finishedAt = System.currentTimeMillis();
+            running.set(null);
+        }
+    }
+
+    private static final class CancelledException extends RuntimeException {
+        CancelledException() {
+            super("cancelled", null, false, false);
+        }
+    }
+
+    private void checkCancelled() {
+        if (cancelled) throw new CancelledException();
+    }
+
+    private Map<Long, List<HdfsService.FileEntry>> walk(HdfsService hdfs) throws IOException {
+        Map<Long, List<HdfsService.FileEntry>> bySize = new HashMap<>();
+        Set<String> seen = new HashSet<>();
+        hdfs.walk(SCAN_ROOT, e -> {
+            checkCancelled();
+            if (e.isDirectory) {
+                // the walker lists this directory next: pay for that listing now
+                try { opsThrottle.acquire(); } catch (InterruptedException ie) { throw new InterruptedIOException(); }
+                return true;
+            }
+            filesScanned.incrementAndGet();
+            seen.add(e.path);
+            if (e.size > 0) bySize.computeIfAbsent(e.size, k -> new ArrayList<>(2)).add(e);
+            return true;
+        });
+        // forget checksums of files that no longer exist
+        if (checksums.keySet().retainAll(seen)) checksumWriter.markDirty();
+        return bySize;
+    }
+
+    /**
+     * Split groups of same-size files by checksum (or by full SHA-256 when fullHash), keeping subgroups of 2+.
+     * All files are queued up front so the workers stay busy across small groups.
+     */
+    private List<List<HdfsService.FileEntry>> splitBy(HdfsService hdfs, ExecutorService workers,
+                                                      List<List<HdfsService.FileEntry>> groups, boolean fullHash) throws Exception {
+        List<List<Future<String>>> futures = new ArrayList<>(groups.size());
+        for (List<HdfsService.FileEntry> g : groups) {
+            List<Future<String>> f = new ArrayList<>(g.size());
+            for (HdfsService.FileEntry e : g) f.add(workers.submit(() -> checksumOf(hdfs, e, fullHash)));
+            futures.add(f);
+        }
+        List<List<HdfsService.FileEntry>> out = new ArrayList<>();
+        for (int gi = 0; gi < groups.size(); gi++) {
+            List<HdfsService.FileEntry> group = groups.get(gi);
+            Map<String, List<HdfsService.FileEntry>> byChecksum = new LinkedHashMap<>();
+            for (int i = 0; i < group.size(); i++) {
+                String c;
+                try {
+                    c = futures.get(gi).get(i).get();
+                } catch (java.util.concurrent.ExecutionException ex) {
+                    Throwable cause = ex.getCause();
+                    if (cause instanceof CancelledException) throw (CancelledException) cause;
+                    if (cause instanceof java.io.FileNotFoundException) continue; // deleted since the walk
+                    throw ex;
+                }
+                if (c != null) byChecksum.computeIfAbsent(c, k -> new ArrayList<>(2)).add(group.get(i));
+            }
+            for (List<HdfsService.FileEntry> g : byChecksum.values()) if (g.size() > 1) out.add(g);
+        }
+        return out;
+    }
+
+    private String checksumOf(HdfsService hdfs, HdfsService.FileEntry e, boolean fullHash) throws Exception {
+        checkCancelled();
+        Checksum c = checksums.get(e.path);
+        if (c == null || c.size != e.size || c.mtime != e.modificationTime) c = new Checksum(e.size, e.modificationTime);
+        String cached = fullHash ? c.sha256 : c.value;
+        if (cached != null) {
+            cacheHits.incrementAndGet();
+            return cached;
+        }
+        // fill in a copy: the flush thread may be serializing the cached instance
+        Checksum cur = c;
+        c = new Checksum(e.size, e.modificationTime);
+        c.value = cur.value;
+        c.sha256 = cur.sha256;
+        if (fullHash) {
+            c.sha256 = sha256(hdfs, e.path);
+        } else {
+            opsThrottle.acquire();
+            c.value = hdfs.getFileChecksum(e.path);
+            if (c.value == null) {
+                c.sha256 = sha256(hdfs, e.path);
+                c.value = "SHA-256:" + c.sha256;
+            }
+        }
+        checksums.put(e.path, c);
+        checksumWriter.markDirty();
+        checksummed.incrementAndGet();
+        return fullHash ? c.sha256 : c.value;
+    }
+
+    private String sha256(HdfsService hdfs, String path) throws Exception {
+        MessageDigest md = MessageDigest.getInstance("SHA-256");
+        opsThrottle.acquire();
+        try (InputStream in = hdfs.open(path)) {
+            byte[] buf = new byte[64 * 1024];
+            int n;
+            while ((n = in.read(buf)) != -1) {
+                checkCancelled();
+                bytesThrottle.acquire(n);
+                md.update(buf, 0, n);
+                hashedBytes.addAndGet(n);
+            }
+        }
+        StringBuilder sb = new StringBuilder(64);
+        for (byte x : md.digest()) sb.append(Character.forDigit((x >> 4) & 0xF, 16)).append(Character.forDigit(x & 0xF, 16));
+        return sb.toString();
+    }
+
+    private static String ownerOf(HdfsService.FileEntry e) {
+        String prefix = SCAN_ROOT + "/";
+        if (e.path.startsWith(prefix)) {
+            int slash = e.path.indexOf('/', prefix.length());
+            if (slash > prefix.length()) return e.path.substring(prefix.length(), slash);
+        }
+        return e.owner == null ? "unknown" : e.owner;
+    }
+
+    private Map<String, Object> buildReport(List<List<HdfsService.FileEntry>> sets, boolean verified) {
+        long totalReclaimable = 0;
+        long duplicateFiles = 0;
+        Map<String, long[]> byUser = new TreeMap<>(); // user -> {files, bytes}
+        List<Map<String, Object>> out = new ArrayList<>(sets.size());
+        for (List<HdfsService.FileEntry> s : sets) {
+            s.sort((a, b) -> Long.compare(a.modificationTime, b.modificationTime)); // oldest copy is kept
+            long size = s.get(0).size;
+            long reclaimable = size * (s.size() - 1);
+            totalReclaimable += reclaimable;
+            duplicateFiles += s.size() - 1;
+            List<Map<String, Object>> files = new ArrayList<>(s.size());
+            for (int i = 0; i < s.size(); i++) {
+                HdfsService.FileEntry e = s.get(i);
+                String owner = ownerOf(e);
+                Map<String, Object> f = new LinkedHashMap<>();
+                f.put("path", e.path);
+                f.put("owner", owner);
+                f.put("mtime", e.modificationTime);
+                f.put("keep", i == 0);
+                files.add(f);
+                if (i > 0) {
+                    long[] u = byUser.computeIfAbsent(owner, k -> new long[2]);
+                    u[0]++;
+                    u[1] += size;
+                }
+            }
+            Map<String, Object> set = new LinkedHashMap<>();
+            set.put("size", size);
+            set.put("checksum", checksums.containsKey(s.get(0).path) ? checksums.get(s.get(0).path).value : null);
+            set.put("reclaimable", reclaimable);
+            set.put("files", files);
+            out.add(set);
+        }
+        out.sort((a, b) -> Long.compare((Long) b.get("reclaimable"), (Long) a.get("reclaimable")));
+
+        Map<String, Object> users = new LinkedHashMap<>();
+        for (Map.Entry<String, long[]> e : byUser.entrySet()) {
+            users.put(e.getKey(), mapOf("duplicateFiles", e.getValue()[0], "reclaimable", e.getValue()[1]));
+        }
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("startedAt", startedAt);
+        report.put("finishedAt", System.currentTimeMillis());
+        report.put("root", SCAN_ROOT);
+        report.put("verified", verified);
+        report.put("filesScanned", filesScanned.get());
+        report.put("candidates", candidates.get());
+        report.put("duplicateSets", out.size());
+        report.put("duplicateFiles", duplicateFiles);
+        report.put("reclaimable", totalReclaimable);
+        report.put("byUser", users);
+        report.put("sets", out.size() > MAX_REPORTED_SETS ? new ArrayList<>(out.subList(0, MAX_REPORTED_SETS)) : out);
+        return report;
+    }
+
+    /** Latest finished report, or null if no scan has completed yet. */
+    public Map<String, Object> report() {
+        long modified = reportFile.lastModified();
+        if (modified == 0L) return null;
+        if (modified != cachedReportModified) {
+            try {
+                cachedReport = mapper.readValue(reportFile, new TypeReference<Map<String, Object>>(){});
+                cachedReportModified = modified;
+            } catch (IOException e) {
+                System.err.println("DuplicateScanner: failed to read report: " + e.getMessage());
+            }
+        }
+        return cachedReport;
+    }
+
+    public Map<String, Object> status() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("running", running.get() != null);
+        m.put("phase", phase);
+        m.put("startedAt", startedAt);
+        m.put("finishedAt", finishedAt);
+        m.put("filesScanned", filesScanned.get());
+        m.put("candidates", candidates.get());
+        m.put("checksummed", checksummed.get());
+        m.put("cacheHits", cacheHits.get());
+        m.put("hashedBytes", hashedBytes.get());
+        m.put("cachedChecksums", checksums.size());
+        m.put("lastError", lastError);
+        return m;
+    }
+
+    private static Map<String, Object> mapOf(Object... kv) {
+        Map<String, Object> m = new LinkedHashMap<>();
+        for (int i = 0; i + 1 < kv.length; i += 2) m.put(String.valueOf(kv[i]), kv[i + 1]);
+        return m;
+    }
+}
@@ -0,0 +1,9 @@
+package com.hdfsdrive.core;
+
+/**
+ * Supplies an HDFS client for one batch of background work (a purge, scan, archive run or user deletion); the
+ * caller closes it when the batch is done.
+ */
+public interface HdfsFactory {
+    HdfsService create() throws Exception;
+}
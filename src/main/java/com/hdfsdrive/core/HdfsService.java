@@ -9,6 +9,7 @@ import org.apache.hadoop.fs.permission.FsPermission;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Closeable;
 import java.net.URI;
@@ -30,6 +31,8 @@ public class HdfsService implements Closeable {
         public boolean isDirectory;
         public long size;
         public long modificationTime;
+        /** Owner name; filled in by {@link #walk} and {@link #listDirWithMeta}. */
+        public String owner;
 
         public FileEntry(String path, boolean isDirectory, long size, long modificationTime) {
             this.path = path;
@@ -84,6 +87,20 @@ public class HdfsService implements Closeable {
         }
     }
 
+    /**
+     * Open an HDFS file for streaming reads. The caller closes the stream.
+     */
+    public InputStream open(String remotePath) throws IOException {
+        return fs.open(new Path(remotePath));
+    }
+
+    /**
+     * Create an HDFS file for streaming writes. The caller closes the stream.
+     */
+    public OutputStream create(String remotePath, boolean overwrite) throws IOException {
+        return fs.create(new Path(remotePath), overwrite);
+    }
+
     /**
      * Create a new file on HDFS and write the provided content bytes.
      */
@@ -208,11 +225,74 @@ public class HdfsService implements Closeable {
             String pathOnly = s.getPath().toUri().getPath();
             long size = s.isDirectory() ? 0L : s.getLen();
             long mtime = s.getModificationTime();
-            out.add(new FileEntry(pathOnly, s.isDirectory(), size, mtime));
+            FileEntry e = new FileEntry(pathOnly, s.isDirectory(), size, mtime);
+            e.owner = s.getOwner();
+            out.add(e);
         }
         return out;
     }
 
+    /** Receives entries from {@link #walk}. */
+    public interface EntryVisitor {
+        /** Return false to skip the children of a directory entry. */
+        boolean visit(FileEntry entry) throws IOException;
+    }
+
+    /**
+     * Depth-first streaming walk below startDir (not including it), one listing per directory, without collecting
+     * entries in memory. Entries carry their owner. Directories that vanish or cannot be listed are skipped.
+     */
+    public void walk(String startDir, EntryVisitor visitor) throws IOException {
+        java.util.ArrayDeque<Path> stack = new java.util.ArrayDeque<>();
+        stack.push(new Path(startDir));
+        while (!stack.isEmpty()) {
+            Path dir = stack.pop();
+            RemoteIterator<FileStatus> it;
+            try {
+                it = fs.listStatusIterator(dir);
+            } catch (java.io.FileNotFoundException | org.apache.hadoop.security.AccessControlException e) {
+                continue;
+            }
+            while (it.hasNext()) {
+                FileStatus s = it.next();
+                FileEntry e = new FileEntry(s.getPath().toUri().getPath(), s.isDirectory(),
+                        s.isDirectory() ? 0L : s.getLen(), s.getModificationTime());
+                e.owner = s.getOwner();
+                if (visitor.visit(e) && s.isDirectory()) stack.push(s.getPath());
+            }
+        }
+    }
+
+    /**
+     * File checksum as "algorithm:hex", or null when the file system does not provide one (e.g. the local one).
+     * HDFS checksums are composed from block CRCs, so they only compare equal for files written with the same
+     * block size and bytes-per-checksum.
+     */
+    public String getFileChecksum(String remotePath) throws IOException {
+        FileChecksum c = fs.getFileChecksum(new Path(remotePath));
+        if (c == null) return null;
+        byte[] b = c.getBytes();
+        StringBuilder sb = new StringBuilder(c.getAlgorithmName()).append(':');
+        for (byte x : b) sb.append(Character.forDigit((x >> 4) & 0xF, 16)).append(Character.forDigit(x & 0xF, 16));
+        return sb.toString();
+    }
+
+    /**
+     * Fetch type, size, modification time and owner of a single path with one getFileStatus call.
+     * Returns null if the path does not exist.
+     */
+    public FileEntry getFileEntry(String remotePath) throws IOException {
+        FileStatus s;
+        try {
+            s = fs.getFileStatus(new Path(remotePath));
+        } catch (java.io.FileNotFoundException e) {
+            return null;
+        }
+        FileEntry e = new FileEntry(s.getPath().toUri().getPath(), s.isDirectory(), s.isDirectory() ? 0L : s.getLen(), s.getModificationTime());
+        e.owner = s.getOwner();
+        return e;
+    }
+
     /**
      * Read small file content as String from HDFS
      */
@@ -228,6 +308,20 @@ public class HdfsService implements Closeable {
         return fs.exists(new Path(remotePath));
     }
 
+    /**
+     * Number of files plus directories under a path (the path itself included), or -1 if it does not exist.
+     * Answered by the NameNode from its summary of the subtree, without listing it.
+     */
+    public long countEntries(String remotePath) throws IOException {
+        Path p = new Path(remotePath);
+        try {
+            ContentSummary cs = fs.getContentSummary(p);
+            return cs.getFileCount() + cs.getDirectoryCount();
+        } catch (java.io.FileNotFoundException e) {
+            return -1;
+        }
+    }
+
     public boolean isDirectory(String remotePath) throws IOException {
         Path p = new Path(remotePath);
         if (!fs.exists(p)) return false;
@@ -0,0 +1,173 @@
+package com.hdfsdrive.core;
+
+import jakarta.servlet.ServletContext;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Process-wide owner of the JSON metadata stores under WEB-INF (trash.json, share.json,
+ * share-revoked.json, share-stats.json).
+ * One registry is kept per ServletContext so every servlet works on the same in-memory copy and the same
+ * locks, instead of each servlet constructing its own service on the same file.
+ * Servlets must take the stores from {@link #get(ServletContext)} in {@code init()} and never construct a
+ * {@code TrashService} or {@code ShareService} of their own: a second instance would keep a diverging copy
+ * of the file and overwrite the other's changes on its next save.
+ */
+public class MetadataRegistry implements Closeable {
+    private static final String ATTRIBUTE = MetadataRegistry.class.getName();
+    private static final Object INIT_LOCK = new Object();
+    /** How often expired shares are dropped from the share store. */
+    private static final long SHARE_SWEEP_INTERVAL_MILLIS = 60_000L;
+    /** Default for SHARE_REVOCATION_SYNC_SECONDS: how often revocations made on other nodes are picked up. */
+    public static final int DEFAULT_REVOCATION_SYNC_SECONDS = 5;
+
+    private final TrashService trashService;
+    private final ShareService shareService;
+    private final ShareTokenService shareTokens;
+    private final ShareStats shareStats;
+    private final ScheduledExecutorService sweeper;
+
+    private MetadataRegistry(String trashPath, String sharePath, String revokedPath, String statsPath,
+                             byte[] tokenSecret, long flushDelayMillis, int revocationSyncSeconds) throws IOException {
+        this.trashService = new TrashService(trashPath, flushDelayMillis);
+        this.shareService = new ShareService(sharePath, flushDelayMillis);
+        this.shareTokens = new ShareTokenService(tokenSecret, new ShareRevocationList(revokedPath, flushDelayMillis, true));
+        this.shareStats = new ShareStats(statsPath, ShareStats.DEFAULT_FLUSH_INTERVAL_MILLIS, shareService::contains);
+        this.shareService.addRemovalListener(shareStats::remove);
+        Set<String> live = new HashSet<>();
+        for (ShareService.Entry e : shareService.list()) live.add(e.id);
+        int stale = shareStats.retainOnly(live);
+        if (stale > 0) System.out.println("Dropped counters of removed shares: " + stale);
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "share-expiry-sweep");
+            t.setDaemon(true);
+            return t;
+        });
+        this.sweeper.scheduleWithFixedDelay(() -> {
+            try {
+                int dropped = shareService.dropExpired();
+                if (dropped > 0) System.out.println("Dropped expired shares: " + dropped);
+            } catch (Exception e) {
+                System.err.println("Share expiry sweep failed: " + e.getMessage());
+            }
+        }, 0L, SHARE_SWEEP_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        this.sweeper.scheduleWithFixedDelay(() -> {
+            try {
+                shareTokens.revocations().sync();
+            } catch (Exception e) {
+                System.err.println("Share revocation sync failed: " + e.getMessage());
+            }
+        }, 0L, revocationSyncSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Return the registry bound to the given context, creating it on first use.
+     */
+    public static MetadataRegistry get(ServletContext context) throws IOException {
+        Object existing = context.getAttribute(ATTRIBUTE);
+        if (existing instanceof MetadataRegistry) return (MetadataRegistry) existing;
+        synchronized (INIT_LOCK) {
+            existing = context.getAttribute(ATTRIBUTE);
+            if (existing instanceof MetadataRegistry) return (MetadataRegistry) existing;
+            MetadataRegistry r = new MetadataRegistry(
+                    context.getRealPath("/WEB-INF/trash.json"),
+                    context.getRealPath("/WEB-INF/share.json"),
+                    context.getRealPath("/WEB-INF/share-revoked.json"),
+                    context.getRealPath("/WEB-INF/share-stats.json"),
+                    shareTokenSecret(context),
+                    WriteBehindWriter.DEFAULT_FLUSH_DELAY_MILLIS,
+                    revocationSyncSeconds(context));
+            context.setAttribute(ATTRIBUTE, r);
+            return r;
+        }
+    }
+
+    private static int revocationSyncSeconds(ServletContext context) {
+        try {
+            String v = System.getenv("SHARE_REVOCATION_SYNC_SECONDS");
+            if (v == null || v.isEmpty()) v = context.getInitParameter("SHARE_REVOCATION_SYNC_SECONDS");
+            if (v != null && !v.isEmpty()) return Math.max(1, Integer.parseInt(v.trim()));
+        } catch (NumberFormatException ignore) {}
+        return DEFAULT_REVOCATION_SYNC_SECONDS;
+    }
+
+    /**
+     * Secret for signed share links: SHARE_TOKEN_SECRET from the environment or context init params, otherwise a
+     * random key generated once and kept in WEB-INF/share-token.key. Nodes serving the same links must share it.
+     */
+    private static byte[] shareTokenSecret(ServletContext context) throws IOException {
+        String s = System.getenv("SHARE_TOKEN_SECRET");
+        if (s == null || s.isEmpty()) s = context.getInitParameter("SHARE_TOKEN_SECRET");
+        if (s != null && !s.isEmpty()) return s.getBytes(StandardCharsets.UTF_8);
+        File keyFile = new File(context.getRealPath("/WEB-INF/share-token.key"));
+        if (keyFile.exists()) {
+            return Base64.getDecoder().decode(new String(Files.readAllBytes(keyFile.toPath()), StandardCharsets.US_ASCII).trim());
+        }
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        File parent = keyFile.getParentFile();
+        if (parent != null && !parent.exists()) parent.mkdirs();
+        Files.write(keyFile.toPath(), Base64.getEncoder().encode(key));
+        return key;
+    }
+
+    /**
+     * Flush and detach the registry bound to the given context, if any.
+     */
+    public static void shutdown(ServletContext context) {
+        Object existing = context.getAttribute(ATTRIBUTE);
+        context.removeAttribute(ATTRIBUTE);
+        if (existing instanceof MetadataRegistry) {
+            try {
+                ((MetadataRegistry) existing).close();
+            } catch (IOException e) {
+                System.err.println("MetadataRegistry: failed to flush stores: " + e.getMessage());
+            }
+        }
+    }
+
+    public TrashService trash() {
+        return trashService;
+    }
+
+    public ShareService shares() {
+        return shareService;
+    }
+
+    public ShareTokenService shareTokens() {
+        return shareTokens;
+    }
+
+    public ShareStats shareStats() {
+        return shareStats;
+    }
+
+    @Override
+    public void close() throws IOException {
+        sweeper.shutdownNow();
+        try {
+            trashService.close();
+        } finally {
+            try {
+                shareService.close();
+            } finally {
+                try {
+                    shareTokens.close();
+                } finally {
+                    shareStats.close();
+                }
+            }
+        }
+    }
+}
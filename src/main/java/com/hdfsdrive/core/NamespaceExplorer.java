@@ -0,0 +1,154 @@
+package com.hdfsdrive.core;
+
+import jakarta.servlet.ServletContext;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps a periodically refreshed {@link NamespaceSnapshot} of the whole namespace for the admin explorer.
+ * Requests read the current snapshot through a volatile reference and never wait for HDFS; a refresh builds a new
+ * snapshot on the background thread (listings throttled) and swaps it in when complete.
+ * Each new image is saved to WEB-INF/namespace.img and loaded again at startup, so after a restart the explorer
+ * serves the last image right away and only walks the namespace when that image is due for a refresh.
+ */
+public class NamespaceExplorer {
+    public static final String ROOT = "/";
+    public static final int DEFAULT_REFRESH_MINUTES = 15;
+    public static final int DEFAULT_OPS_PER_SECOND = 200;
+
+    private static final String ATTRIBUTE = NamespaceExplorer.class.getName();
+    private static final Object INIT_LOCK = new Object();
+
+    private final HdfsFactory hdfsFactory;
+    private final String root;
+    private final File imageFile;
+    private final Throttle throttle;
+    private final ScheduledExecutorService scheduler;
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+    private volatile NamespaceSnapshot snapshot;
+    private volatile String lastError;
+    private volatile long lastAttempt;
+
+    /**
+     * @param imageFile where the image is persisted, or null to keep it in memory only
+     */
+    public NamespaceExplorer(HdfsFactory hdfsFactory, String root, File imageFile, int opsPerSecond, long refreshMillis) {
+        this.hdfsFactory = hdfsFactory;
+        this.root = root;
+        this.imageFile = imageFile;
+        this.throttle = new Throttle(opsPerSecond);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "namespace-snapshot");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1000L, refreshMillis);
+        long firstDelay = 0L;
+        if (imageFile != null && imageFile.exists()) {
+            try {
+                long t0 = System.currentTimeMillis();
+                NamespaceSnapshot loaded = NamespaceSnapshot.load(imageFile);
+                if (root.equals(loaded.stats().get("root"))) {
+                    snapshot = loaded;
+                    firstDelay = Math.max(0L, loaded.builtAt() + period - System.currentTimeMillis());
+                    System.out.println("NamespaceExplorer: loaded " + loaded.size() + " entries from " + imageFile
+                            + " in " + (System.currentTimeMillis() - t0) + " ms");
+                }
+            } catch (Exception e) {
+                System.err.println("NamespaceExplorer: ignoring unreadable " + imageFile + ": " + e.getMessage());
+            }
+        }
+        scheduler.scheduleWithFixedDelay(this::refreshQuietly, firstDelay, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Return the explorer bound to the given context, creating it on first use. The refresh period and listing
+     * rate come from NAMESPACE_REFRESH_MINUTES / NAMESPACE_OPS_PER_SECOND in the environment or context init params.
+     */
+    public static NamespaceExplorer get(ServletContext context, HdfsFactory hdfsFactory) {
+        Object existing = context.getAttribute(ATTRIBUTE);
+        if (existing instanceof NamespaceExplorer) return (NamespaceExplorer) existing;
+        synchronized (INIT_LOCK) {
+            existing = context.getAttribute(ATTRIBUTE);
+            if (existing instanceof NamespaceExplorer) return (NamespaceExplorer) existing;
+            int minutes = intSetting(context, "NAMESPACE_REFRESH_MINUTES", DEFAULT_REFRESH_MINUTES);
+            int ops = intSetting(context, "NAMESPACE_OPS_PER_SECOND", DEFAULT_OPS_PER_SECOND);
+            String image = context.getRealPath("/WEB-INF/namespace.img");
+            NamespaceExplorer explorer = new NamespaceExplorer(hdfsFactory, ROOT, image == null ? null : new File(image),
+                    ops, TimeUnit.MINUTES.toMillis(minutes));
+            context.setAttribute(ATTRIBUTE, explorer);
+            return explorer;
+        }
+    }
+
+    public static void shutdown(ServletContext context) {
+        Object existing = context.getAttribute(ATTRIBUTE);
+        context.removeAttribute(ATTRIBUTE);
+        if (existing instanceof NamespaceExplorer) ((NamespaceExplorer) existing).scheduler.shutdownNow();
+    }
+
+    private static int intSetting(ServletContext context, String name, int dflt) {
+        String v = System.getenv(name);
+        if (v == null || v.isEmpty()) v = context.getInitParameter(name);
+        try {
+            return v == null || v.isEmpty() ? dflt : Integer.parseInt(v.trim());
+        } catch (NumberFormatException e) {
+            return dflt;
+        }
+    }
+
+    /** Current snapshot, or null until the first one has been built. */
+    public NamespaceSnapshot snapshot() {
+        return snapshot;
+    }
+
+    /** Queue a refresh now; false if one is already in progress. */
+    public boolean refresh() {
+        if (refreshing.get()) return false;
+        scheduler.execute(this::refreshQuietly);
+        return true;
+    }
+
+    private void refreshQuietly() {
+        if (!refreshing.compareAndSet(false, true)) return;
+        lastAttempt = System.currentTimeMillis();
+        HdfsService hdfs = null;
+        try {
+            hdfs = hdfsFactory.create();
+            NamespaceSnapshot built = NamespaceSnapshot.build(hdfs, root, throttle);
+            snapshot = built;
+            lastError = null;
+            if (imageFile != null) {
+                try {
+                    built.save(imageFile);
+                } catch (IOException e) {
+                    System.err.println("NamespaceExplorer: failed to save " + imageFile + ": " + e.getMessage());
+                }
+            }
+        } catch (Throwable t) {
+            lastError = String.valueOf(t.getMessage());
+            System.err.println("NamespaceExplorer: snapshot failed: " + t.getMessage());
+        } finally {
+            if (hdfs != null) try { hdfs.close(); } catch (Exception ignore) {}
+            refreshing.set(false);
+        }
+    }
+
+    public Map<String, Object> status() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        NamespaceSnapshot s = snapshot;
+        m.put("ready", s != null);
+        m.put("refreshing", refreshing.get());
+        m.put("lastAttempt", lastAttempt);
+        m.put("lastError", lastError);
+        if (s != null) m.put("snapshot", s.stats());
+        return m;
+    }
+}
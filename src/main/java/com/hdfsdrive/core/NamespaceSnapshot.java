@@ -0,0 +1,682 @@
+package com.hdfsdrive.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Immutable point-in-time image of an HDFS subtree for the admin explorer, stored as primitive columns.
+ * <p>
+ * Entries are kept in depth-first preorder with each directory's children sorted by name, so the subtree of an
+ * entry is the contiguous range [i, i + 1 + files + dirs) and a path prefix query is a range scan. Paths are not
+ * stored: each entry has its parent index and its own name (UTF-8 in one shared byte array); owners are ids into
+ * a small dictionary. For directories the size column holds the recursive size, and files/dirs columns the
+ * recursive counts. That is about 45 bytes per entry plus the name, against several hundred for a list of
+ * {@link HdfsService.FileEntry} objects.
+ * <p>
+ * Built by one streaming walk that never holds per-file objects; the largest / oldest files are collected in
+ * bounded heaps on the way. Images can be saved to and loaded from a file so a restart does not need a full walk.
+ */
+public class NamespaceSnapshot {
+    /** Entries kept for the largest / oldest file lists. */
+    public static final int TOP_N = 1000;
+
+    private static final int MAGIC = 0x4E53494D; // "NSIM"
+    private static final int VERSION = 1;
+    private static final byte FLAG_DIR = 1;
+
+    /** Filter for {@link #files}; null / negative fields are not applied. */
+    public static class FileFilter {
+        public String prefix;
+        public String owner;
+        public long minSize = -1L;
+        public long maxSize = -1L;
+        /** Only files modified before this time (epoch millis). */
+        public long modifiedBefore = -1L;
+        /** Only files modified after this time (epoch millis). */
+        public long modifiedAfter = -1L;
+    }
+
+    public static class Page {
+        public final List<Map<String, Object>> items = new ArrayList<>();
+        public int total;
+    }
+
+    private final String root;
+    private final long builtAt;
+    private final long buildMillis;
+    private final int n;
+    // columns, preorder; entry 0 is the root
+    private final int[] parent;
+    private final int[] nameOffset; // n + 1 entries into names
+    private final byte[] names;
+    private final long[] size;      // file size, or recursive size for directories
+    private final long[] mtime;
+    private final byte[] flags;
+    private final int[] owner;      // index into owners
+    private final int[] treeFiles;  // recursive, directories only
+    private final int[] treeDirs;
+    private final String[] owners;
+    private final long[] ownerFiles;
+    private final long[] ownerBytes;
+    private final int[] largest;    // file indexes, largest first
+    private final int[] oldest;     // file indexes, oldest first
+
+    private NamespaceSnapshot(String root, long builtAt, long buildMillis, int n, int[] parent, int[] nameOffset,
+                              byte[] names, long[] size, long[] mtime, byte[] flags, int[] owner, int[] treeFiles,
+                              int[] treeDirs, String[] owners, long[] ownerFiles, long[] ownerBytes,
+                              int[] largest, int[] oldest) {
+        this.root = root;
+        this.builtAt = builtAt;
+        this.buildMillis = buildMillis;
+        this.n = n;
+        this.parent = parent;
+        this.nameOffset = nameOffset;
+        this.names = names;
+        this.size = size;
+        this.mtime = mtime;
+        this.flags = flags;
+        this.owner = owner;
+        this.treeFiles = treeFiles;
+        this.treeDirs = treeDirs;
+        this.owners = owners;
+        this.ownerFiles = ownerFiles;
+        this.ownerBytes = ownerBytes;
+        this.largest = largest;
+        this.oldest = oldest;
+    }
+
+    /**
+     * Growable columns in walk order, used while building.
+     */
+    private static final class Builder {
+        int n;
+        int[] parent = new int[1024];
+        int[] nameOffset = new int[1025];
+        byte[] names = new byte[16 * 1024];
+        long[] size = new long[1024];
+        long[] mtime = new long[1024];
+        byte[] flags = new byte[1024];
+        int[] owner = new int[1024];
+        final Map<String, Integer> ownerIds = new HashMap<>();
+        final List<String> ownerNames = new ArrayList<>();
+
+        int add(int p, String name, boolean dir, long sz, long mt, String ownerName) {
+            if (n == parent.length) {
+                int cap = n * 2;
+                parent = Arrays.copyOf(parent, cap);
+                nameOffset = Arrays.copyOf(nameOffset, cap + 1);
+                size = Arrays.copyOf(size, cap);
+                mtime = Arrays.copyOf(mtime, cap);
+                flags = Arrays.copyOf(flags, cap);
+                owner = Arrays.copyOf(owner, cap);
+            }
+            byte[] b = name.getBytes(StandardCharsets.UTF_8);
+            int off = nameOffset[n];
+            if (off + b.length > names.length) names = Arrays.copyOf(names, Math.max(names.length * 2, off + b.length));
+            System.arraycopy(b, 0, names, off, b.length);
+            nameOffset[n + 1] = off + b.length;
+            parent[n] = p;
+            size[n] = sz;
+            mtime[n] = mt;
+            flags[n] = dir ? FLAG_DIR : 0;
+            String o = ownerName == null ? "" : ownerName;
+            Integer id = ownerIds.get(o);
+            if (id == null) {
+                id = ownerNames.size();
+                ownerIds.put(o, id);
+                ownerNames.add(o);
+            }
+            owner[n] = id;
+            return n++;
+        }
+    }
+
+    /**
+     * Walk root and build an image. The throttle (may be null) is charged one permit per directory listing.
+     */
+    public static NamespaceSnapshot build(HdfsService hdfs, String root, Throttle throttle) throws IOException {
+        long t0 = System.currentTimeMillis();
+        HdfsService.FileEntry rootEntry = hdfs.getFileEntry(root);
+        if (rootEntry == null) throw new IOException("not found: " + root);
+        Builder b = new Builder();
+        b.add(-1, "", rootEntry.isDirectory, rootEntry.size, rootEntry.modificationTime, rootEntry.owner);
+        // directory path -> index, only while walking
+        Map<String, Integer> dirIndex = new HashMap<>();
+        dirIndex.put(rootEntry.path, 0);
+
+        Comparator<Integer> bySizeAsc = Comparator.comparingLong(i -> b.size[i]);
+        Comparator<Integer> byMtimeDesc = (x, y) -> Long.compare(b.mtime[y], b.mtime[x]);
+        PriorityQueue<Integer> largestHeap = new PriorityQueue<>(bySizeAsc);   // smallest of the kept on top
+        PriorityQueue<Integer> oldestHeap = new PriorityQueue<>(byMtimeDesc);  // newest of the kept on top
+
+        if (rootEntry.isDirectory) {
+            hdfs.walk(root, e -> {
+                int slash = e.path.lastIndexOf('/');
+                Integer p = dirIndex.get(e.path.substring(0, Math.max(1, slash)));
+                int idx = b.add(p == null ? 0 : p, e.path.substring(slash + 1), e.isDirectory, e.size, e.modificationTime, e.owner);
+                if (e.isDirectory) {
+                    dirIndex.put(e.path, idx);
+                    if (throttle != null) {
+                        try { throttle.acquire(); } catch (InterruptedException ie) { throw new java.io.InterruptedIOException(); }
+                    }
+                } else {
+                    offer(largestHeap, idx, bySizeAsc);
+                    offer(oldestHeap, idx, byMtimeDesc);
+                }
+                return true;
+            });
+        }
+        dirIndex.clear();
+        int n = b.n;
+
+        // children of each entry (walk order), sorted by name
+        int[] childStart = new int[n + 1];
+        for (int i = 1; i < n; i++) childStart[b.parent[i] + 1]++;
+        for (int i = 0; i < n; i++) childStart[i + 1] += childStart[i];
+        int[] children = new int[Math.max(0, n - 1)];
+        int[] fill = Arrays.copyOf(childStart, n);
+        for (int i = 1; i < n; i++) children[fill[b.parent[i]]++] = i;
+        fill = null;
+        for (int i = 0; i < n; i++) {
+            if (childStart[i + 1] - childStart[i] > 1) sortByName(children, childStart[i], childStart[i + 1], b.names, b.nameOffset);
+        }
+
+        // preorder: order[newIndex] = walk index
+        int[] order = new int[n];
+        int[] pos = new int[n];
+        int[] stack = new int[Math.max(16, n)];
+        int sp = 0, k = 0;
+        stack[sp++] = 0;
+        while (sp > 0) {
+            int i = stack[--sp];
+            pos[i] = k;
+            order[k++] = i;
+            for (int c = childStart[i + 1] - 1; c >= childStart[i]; c--) stack[sp++] = children[c];
+        }
+        stack = null;
+        children = null;
+        childStart = null;
+
+        int[] parent = new int[n];
+        int[] nameOffset = new int[n + 1];
+        byte[] names = new byte[b.nameOffset[n]];
+        long[] size = new long[n];
+        long[] mtime = new long[n];
+        byte[] flags = new byte[n];
+        int[] owner = new int[n];
+        int off = 0;
+        for (int j = 0; j < n; j++) {
+            int i = order[j];
+            parent[j] = b.parent[i] < 0 ? -1 : pos[b.parent[i]];
+            int len = b.nameOffset[i + 1] - b.nameOffset[i];
+            System.arraycopy(b.names, b.nameOffset[i], names, off, len);
+            nameOffset[j] = off;
+            off += len;
+            size[j] = (b.flags[i] & FLAG_DIR) != 0 ? 0L : b.size[i];
+            mtime[j] = b.mtime[i];
+            flags[j] = b.flags[i];
+            owner[j] = b.owner[i];
+        }
+        nameOffset[n] = off;
+
+        // recursive totals: children come after their parent in preorder
+        int[] treeFiles = new int[n];
+        int[] treeDirs = new int[n];
+        String[] ownerNames = b.ownerNames.toArray(new String[0]);
+        long[] ownerFiles = new long[ownerNames.length];
+        long[] ownerBytes = new long[ownerNames.length];
+        for (int j = n - 1; j >= 0; j--) {
+            boolean dir = (flags[j] & FLAG_DIR) != 0;
+            if (!dir) {
+                ownerFiles[owner[j]]++;
+                ownerBytes[owner[j]] += size[j];
+            }
+            int p = parent[j];
+            if (p >= 0) {
+                size[p] += size[j];
+                treeFiles[p] += dir ? treeFiles[j] : 1;
+                treeDirs[p] += dir ? treeDirs[j] + 1 : 0;
+            }
+        }
+
+        int[] largest = remap(drain(largestHeap, bySizeAsc.reversed()), pos);
+        int[] oldest = remap(drain(oldestHeap, byMtimeDesc.reversed()), pos);
+        return new NamespaceSnapshot(rootEntry.path, System.currentTimeMillis(), System.currentTimeMillis() - t0, n,
+                parent, nameOffset, names, size, mtime, flags, owner, treeFiles, treeDirs,
+                ownerNames, ownerFiles, ownerBytes, largest, oldest);
+    }
+
+    private static void offer(PriorityQueue<Integer> heap, int idx, Comparator<Integer> order) {
+        if (heap.size() < TOP_N) {
+            heap.add(idx);
+        } else if (order.compare(idx, heap.peek()) > 0) {
+            heap.poll();
+            heap.add(idx);
+        }
+    }
+
+    private static int[] drain(PriorityQueue<Integer> heap, Comparator<Integer> order) {
+        List<Integer> l = new ArrayList<>(heap);
+        l.sort(order);
+        int[] out = new int[l.size()];
+        for (int i = 0; i < out.length; i++) out[i] = l.get(i);
+        return out;
+    }
+
+    private static int[] remap(int[] idx, int[] pos) {
+        for (int i = 0; i < idx.length; i++) idx[i] = pos[idx[i]];
+        return idx;
+    }
+
+    private static int compareNames(byte[] names, int[] off, int a, int b) {
+        return Arrays.compareUnsigned(names, off[a], off[a + 1], names, off[b], off[b + 1]);
+    }
+
+    // merge sort of a[from, to) by name
+    private static void sortByName(int[] a, int from, int to, byte[] names, int[] off) {
+        if (to - from < 12) {
+            for (int i = from + 1; i < to; i++) {
+                int v = a[i];
+                int j = i - 1;
+                while (j >= from && compareNames(names, off, a[j], v) > 0) {
+                    a[j + 1] = a[j];
+                    j--;
+                }
+                a[j + 1] = v;
+            }
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        sortByName(a, from, mid, names, off);
+        sortByName(a, mid, to, names, off);
+        if (compareNames(names, off, a[mid - 1], a[mid]) <= 0) return;
+        int[] left = Arrays.copyOfRange(a, from, mid);
+        int i = 0, j = mid, k = from;
+        while (i < left.length && j < to) a[k++] = compareNames(names, off, left[i], a[j]) <= 0 ? left[i++] : a[j++];
+        while (i < left.length) a[k++] = left[i++];
+    }
+
+    // --- queries ---
+
+    private boolean isDir(int i) {
+        return (flags[i] & FLAG_DIR) != 0;
+    }
+
+    /** Index one past the last entry of i's subtree. */
+    private int subtreeEnd(int i) {
+        return isDir(i) ? i + 1 + treeFiles[i] + treeDirs[i] : i + 1;
+    }
+
+    private String name(int i) {
+        return new String(names, nameOffset[i], nameOffset[i + 1] - nameOffset[i], StandardCharsets.UTF_8);
+    }
+
+    private String path(int i) {
+        if (i == 0) return root;
+        int depth = 0;
+        for (int p = i; p > 0; p = parent[p]) depth++;
+        String[] parts = new String[depth];
+        for (int p = i; p > 0; p = parent[p]) parts[--depth] = name(p);
+        StringBuilder sb = new StringBuilder(root.equals("/") ? "" : root);
+        for (String s : parts) sb.append('/').append(s);
+        return sb.toString();
+    }
+
+    /** Index of a path, or -1 if it is not in the image. */
+    private int find(String path) {
+        if (path == null || path.isEmpty()) path = "/";
+        if (path.length() > 1 && path.endsWith("/")) path = path.substring(0, path.length() - 1);
+        String rel;
+        if (path.equals(root)) return 0;
+        if (root.equals("/")) rel = path.substring(1);
+        else if (path.startsWith(root + "/")) rel = path.substring(root.length() + 1);
+        else return -1;
+        int node = 0;
+        for (String part : rel.split("/")) {
+            if (part.isEmpty()) continue;
+            byte[] want = part.getBytes(StandardCharsets.UTF_8);
+            int end = subtreeEnd(node);
+            int found = -1;
+            for (int c = node + 1; c < end; c = subtreeEnd(c)) {
+                if (Arrays.equals(names, nameOffset[c], nameOffset[c + 1], want, 0, want.length)) {
+                    found = c;
+                    break;
+                }
+            }
+            if (found < 0) return -1;
+            node = found;
+        }
+        return node;
+    }
+
+    public long builtAt() {
+        return builtAt;
+    }
+
+    public int size() {
+        return n;
+    }
+
+    public boolean contains(String dir) {
+        int i = find(dir);
+        return i >= 0 && isDir(i);
+    }
+
+    private Map<String, Object> item(int i) {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("path", path(i));
+        m.put("owner", owners[owner[i]]);
+        m.put("isDirectory", isDir(i));
+        m.put("size", size[i]);
+        m.put("mtime", mtime[i]);
+        if (isDir(i)) {
+            m.put("files", treeFiles[i]);
+            m.put("dirs", treeDirs[i]);
+        }
+        return m;
+    }
+
+    /** Recursive totals of one directory, or null if it is not in the image. */
+    public Map<String, Object> summary(String dir) {
+        int i = find(dir);
+        return i < 0 || !isDir(i) ? null : item(i);
+    }
+
+    /**
+     * One page of a directory's children; sort is "name" (default), "size" (recursive, largest first) or "mtime"
+     * (newest first). Null if the directory is not in the image.
+     */
+    public Page list(String dir, String sort, int offset, int limit) {
+        int d = find(dir);
+        if (d < 0 || !isDir(d)) return null;
+        int end = subtreeEnd(d);
+        int count = 0;
+        for (int c = d + 1; c < end; c = subtreeEnd(c)) count++;
+        Integer[] order = new Integer[count];
+        count = 0;
+        for (int c = d + 1; c < end; c = subtreeEnd(c)) order[count++] = c;
+        if ("size".equals(sort)) Arrays.sort(order, (a, b) -> Long.compare(size[b], size[a]));
+        else if ("mtime".equals(sort)) Arrays.sort(order, (a, b) -> Long.compare(mtime[b], mtime[a]));
+        Page page = new Page();
+        page.total = count;
+        for (int i = Math.max(0, offset); i < count && page.items.size() < limit; i++) page.items.add(item(order[i]));
+        return page;
+    }
+
+    /** Per-owner file count and bytes, largest first. */
+    public List<Map<String, Object>> owners() {
+        List<Map<String, Object>> out = new ArrayList<>(owners.length);
+        for (int i = 0; i < owners.length; i++) {
+            if (ownerFiles[i] == 0) continue;
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("owner", owners[i]);
+            m.put("files", ownerFiles[i]);
+            m.put("bytes", ownerBytes[i]);
+            out.add(m);
+        }
+        out.sort((a, b) -> Long.compare((Long) b.get("bytes"), (Long) a.get("bytes")));
+        return out;
+    }
+
+    /** The n (at most TOP_N) largest or, with oldestFirst, least recently modified files. */
+    public List<Map<String, Object>> top(boolean oldestFirst, int count) {
+        int[] src = oldestFirst ? oldest : largest;
+        List<Map<String, Object>> out = new ArrayList<>();
+        for (int i = 0; i < src.length && i < count; i++) out.add(item(src[i]));
+        return out;
+    }
+
+    /**
+     * Files matching the filter, sorted by "size" (largest first), "mtime" (oldest first) or path, one page.
+     * A prefix narrows the scan to that directory's subtree.
+     */
+    public Page files(FileFilter f, String sort, int offset, int limit) {
+        Page page = new Page();
+        int from = 0, to = n;
+        if (f.prefix != null) {
+            int d = find(f.prefix);
+            if (d < 0) return page;
+            from = d;
+            to = subtreeEnd(d);
+        }
+        int ownerId = -1;
+        if (f.owner != null) {
+            for (int i = 0; i < owners.length; i++) if (owners[i].equals(f.owner)) ownerId = i;
+            if (ownerId < 0) return page;
+        }
+        int[] match = new int[64];
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            if ((flags[i] & FLAG_DIR) != 0) continue;
+            long s = size[i];
+            if (f.minSize >= 0 && s < f.minSize) continue;
+            if (f.maxSize >= 0 && s > f.maxSize) continue;
+            long t = mtime[i];
+            if (f.modifiedBefore >= 0 && t >= f.modifiedBefore) continue;
+            if (f.modifiedAfter >= 0 && t <= f.modifiedAfter) continue;
+            if (ownerId >= 0 && owner[i] != ownerId) continue;
+            if (count == match.length) match = Arrays.copyOf(match, count * 2);
+            match[count++] = i;
+        }
+        page.total = count;
+        if ("size".equals(sort) || "mtime".equals(sort)) {
+            Integer[] order = new Integer[count];
+            for (int i = 0; i < count; i++) order[i] = match[i];
+            if ("size".equals(sort)) Arrays.sort(order, (a, b) -> Long.compare(size[b], size[a]));
+            else Arrays.sort(order, (a, b) -> Long.compare(mtime[a], mtime[b]));
+            for (int i = Math.max(0, offset); i < count && page.items.size() < limit; i++) page.items.add(item(order[i]));
+        } else {
+            // preorder with sorted children is already path order
+            for (int i = Math.max(0, offset); i < count && page.items.size() < limit; i++) page.items.add(item(match[i]));
+        }
+        return page;
+    }
+
+    /** Approximate heap footprint of the image. */
+    public long memoryBytes() {
+        return (long) n * (4 + 4 + 8 + 8 + 1 + 4 + 4 + 4) + names.length + (long) owners.length * 64;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("root", root);
+        m.put("builtAt", builtAt);
+        m.put("buildMillis", buildMillis);
+        m.put("entries", n);
+        m.put("files", treeFiles[0]);
+        m.put("dirs", treeDirs[0]);
+        m.put("bytes", size[0]);
+        m.put("memoryBytes", memoryBytes());
+        return m;
+    }
+
+    // --- persistence ---
+
+    /**
+     * Write the image to a file (via a temp file and rename).
+     */
+    public void save(File file) throws IOException {
+        File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (FileChannel ch = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            Columns out = new Columns(ch);
+            out.buf.putInt(MAGIC).putInt(VERSION).putLong(builtAt).putLong(buildMillis);
+            out.string(root);
+            out.ensure(8);
+            out.buf.putInt(n).putInt(owners.length);
+            for (String o : owners) out.string(o);
+            out.ints(parent, n);
+            out.ints(nameOffset, n + 1);
+            out.bytes(names, names.length);
+            out.longs(size, n);
+            out.longs(mtime, n);
+            out.bytes(flags, n);
+            out.ints(owner, n);
+            out.ints(treeFiles, n);
+            out.ints(treeDirs, n);
+            out.longs(ownerFiles, owners.length);
+            out.longs(ownerBytes, owners.length);
+            out.ensure(8);
+            out.buf.putInt(largest.length).putInt(oldest.length);
+            out.ints(largest, largest.length);
+            out.ints(oldest, oldest.length);
+            out.flush();
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Read an image written by {@link #save}. A truncated or inconsistent file is an IOException, so the caller
+     * falls back to a rebuild.
+     */
+    public static NamespaceSnapshot load(File file) throws IOException {
+        ByteBuffer in;
+        try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            in = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        }
+        need(in, 24);
+        if (in.getInt() != MAGIC || in.getInt() != VERSION) throw new IOException("not a namespace image: " + file);
+        long builtAt = in.getLong();
+        long buildMillis = in.getLong();
+        String root = readString(in);
+        need(in, 8);
+        int n = in.getInt();
+        int ownerCount = in.getInt();
+        if (n < 1 || ownerCount < 0) throw new IOException("corrupt namespace image: " + file);
+        need(in, 4L * ownerCount); // each owner name has at least its length
+        String[] owners = new String[ownerCount];
+        for (int i = 0; i < owners.length; i++) owners[i] = readString(in);
+        int[] parent = readInts(in, n);
+        int[] nameOffset = readInts(in, n + 1);
+        if (nameOffset[n] < 0) throw new IOException("corrupt namespace image: " + file);
+        byte[] names = readBytes(in, nameOffset[n]);
+        long[] size = readLongs(in, n);
+        long[] mtime = readLongs(in, n);
+        byte[] flags = readBytes(in, n);
+        int[] owner = readInts(in, n);
+        int[] treeFiles = readInts(in, n);
+        int[] treeDirs = readInts(in, n);
+        long[] ownerFiles = readLongs(in, owners.length);
+        long[] ownerBytes = readLongs(in, owners.length);
+        need(in, 8);
+        int largestLen = in.getInt();
+        int oldestLen = in.getInt();
+        int[] largest = readInts(in, largestLen);
+        int[] oldest = readInts(in, oldestLen);
+        // indexes into the other columns, checked once here rather than on every query
+        for (int i = 0; i < n; i++) {
+            if (parent[i] >= i || (i > 0 && parent[i] < 0) || owner[i] < 0 || owner[i] >= owners.length
+                    || nameOffset[i] < 0 || nameOffset[i] > nameOffset[i + 1]) {
+                throw new IOException("corrupt namespace image: " + file);
+            }
+        }
+        for (int[] heap : new int[][]{largest, oldest}) {
+            for (int i : heap) if (i < 0 || i >= n) throw new IOException("corrupt namespace image: " + file);
+        }
+        return new NamespaceSnapshot(root, builtAt, buildMillis, n, parent, nameOffset, names, size, mtime, flags,
+                owner, treeFiles, treeDirs, owners, ownerFiles, ownerBytes, largest, oldest);
+    }
+
+    /** Fail with an IOException, not a BufferUnderflowException, when fewer than bytes remain. */
+    private static void need(ByteBuffer in, long bytes) throws IOException {
+        if (bytes < 0 || bytes > in.remaining()) throw new IOException("truncated namespace image");
+    }
+
+    private static int[] readInts(ByteBuffer in, int count) throws IOException {
+        need(in, 4L * count);
+        int[] a = new int[count];
+        in.asIntBuffer().get(a);
+        in.position(in.position() + 4 * count);
+        return a;
+    }
+
+    private static long[] readLongs(ByteBuffer in, int count) throws IOException {
+        need(in, 8L * count);
+        long[] a = new long[count];
+        in.asLongBuffer().get(a);
+        in.position(in.position() + 8 * count);
+        return a;
+    }
+
+    private static byte[] readBytes(ByteBuffer in, int count) throws IOException {
+        need(in, count);
+        byte[] b = new byte[count];
+        in.get(b);
+        return b;
+    }
+
+    private static String readString(ByteBuffer in) throws IOException {
+        need(in, 4);
+        return new String(readBytes(in, in.getInt()), StandardCharsets.UTF_8);
+    }
+
+    /** Buffered bulk writer of primitive columns to a channel. */
+    private static final class Columns {
+        final FileChannel ch;
+        final ByteBuffer buf = ByteBuffer.allocateDirect(1 << 20);
+
+        Columns(FileChannel ch) {
+            this.ch = ch;
+        }
+
+        void ensure(int bytes) throws IOException {
+            if (buf.remaining() < bytes) flush();
+        }
+
+        void flush() throws IOException {
+            buf.flip();
+            while (buf.hasRemaining()) ch.write(buf);
+            buf.clear();
+        }
+
+        void string(String s) throws IOException {
+            byte[] b = s.getBytes(StandardCharsets.UTF_8);
+            ensure(4);
+            buf.putInt(b.length);
+            bytes(b, b.length);
+        }
+
+        void bytes(byte[] a, int len) throws IOException {
+            for (int off = 0; off < len; ) {
+                if (!buf.hasRemaining()) flush();
+                int k = Math.min(buf.remaining(), len - off);
+                buf.put(a, off, k);
+                off += k;
+            }
+        }
+
+        void ints(int[] a, int len) throws IOException {
+            for (int off = 0; off < len; ) {
+                if (buf.remaining() < 4) flush();
+                int k = Math.min(buf.remaining() / 4, len - off);
+                buf.asIntBuffer().put(a, off, k);
+                buf.position(buf.position() + 4 * k);
+                off += k;
+            }
+        }
+
+        void longs(long[] a, int len) throws IOException {
+            for (int off = 0; off < len; ) {
+                if (buf.remaining() < 8) flush();
+                int k = Math.min(buf.remaining() / 8, len - off);
+                buf.asLongBuffer().put(a, off, k);
+                buf.position(buf.position() + 8 * k);
+                off += k;
+            }
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package com.hdfsdrive.core;
+
+import javax.sql.DataSource;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * Versioned schema migrations. Scripts live in db/migration/ on the classpath, named V&lt;n&gt;__&lt;description&gt;.sql,
+ * and are applied once each, in order; the schema_version table records the version, a CRC32 of the script and
+ * how long it took. At startup a database that is already current costs one query (read schema_version); the
+ * upgrade path takes a MySQL named lock so two instances starting together do not both run a script.
+ * Statements are split on ';' after dropping "--" comment lines, so a script must not use ';' inside literals.
+ * MySQL DDL is not transactional: a script that fails halfway is not recorded and is re-run from the top on the
+ * next start, so scripts should be safe to re-run (IF NOT EXISTS, INSERT IGNORE, guarded ALTERs).
+ */
+public final class SchemaMigrator {
+    public static final String LOCATION = "db/migration/";
+    /** Applied in this order. Append new scripts; never edit one that has been released. */
+    static final String[] SCRIPTS = {
+            "V1__baseline.sql",
+            "V2__users_legacy_columns.sql",
+            "V3__users_search_indexes.sql",
+            "V4__users_status.sql",
+            "V5__orders_vehicle_time_index.sql",
+            "V6__share_revocations.sql",
+    };
+    private static final String LOCK_NAME = "hdfsdrive_schema_migration";
+    private static final int LOCK_TIMEOUT_SECONDS = 60;
+
+    private static volatile Map<String, Object> lastRun;
+
+    private SchemaMigrator() {}
+
+    public static final class Migration {
+        public final int version;
+        public final String description;
+        public final String script;
+        public final long checksum;
+        final String sql;
+
+        Migration(int version, String description, String script, long checksum, String sql) {
+            this.version = version;
+            this.description = description;
+            this.script = script;
+            this.checksum = checksum;
+            this.sql = sql;
+        }
+
+        public List<String> statements() {
+            return splitStatements(sql);
+        }
+    }
+
+    /** The known migrations, in version order. */
+    public static List<Migration> migrations() throws IOException {
+        List<Migration> out = new ArrayList<>();
+        int previous = 0;
+        for (String script : SCRIPTS) {
+            int sep = script.indexOf("__");
+            int version = Integer.parseInt(script.substring(1, sep));
+            if (version <= previous) throw new IllegalStateException("migrations out of order at " + script);
+            previous = version;
+            String description = script.substring(sep + 2, script.length() - ".sql".length()).replace('_', ' ');
+            byte[] bytes = readResource(LOCATION + script);
+            CRC32 crc = new CRC32();
+            crc.update(bytes);
+            out.add(new Migration(version, description, script, crc.getValue(), new String(bytes, StandardCharsets.UTF_8)));
+        }
+        return out;
+    }
+
+    private static byte[] readResource(String name) throws IOException {
+        try (InputStream in = SchemaMigrator.class.getClassLoader().getResourceAsStream(name)) {
+            if (in == null) throw new IOException("missing migration " + name);
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            byte[] buf = new byte[8192];
+            int r;
+            while ((r = in.read(buf)) != -1) bos.write(buf, 0, r);
+            return bos.toByteArray();
+        }
+    }
+
+    static List<String> splitStatements(String sql) {
+        StringBuilder sb = new StringBuilder();
+        for (String line : sql.split("\r?\n")) {
+            String t = line.trim();
+            if (t.isEmpty() || t.startsWith("--")) continue;
+            sb.append(t).append(' ');
+        }
+        List<String> out = new ArrayList<>();
+        for (String s : sb.toString().split(";")) {
+            String t = s.trim();
+            if (!t.isEmpty()) out.add(t);
+        }
+        return out;
+    }
+
+    /**
+     * Bring the database up to the latest version. Returns what was done: the version before and after, the
+     * scripts applied and the elapsed time.
+     */
+    public static synchronized Map<String, Object> migrate(DataSource dataSource) throws Exception {
+        long t0 = System.nanoTime();
+        List<Migration> migrations = migrations();
+        int latest = migrations.get(migrations.size() - 1).version;
+        List<String> applied = new ArrayList<>();
+        int before;
+        try (Connection c = dataSource.getConnection()) {
+            Map<Integer, Long> done = appliedVersions(c);
+            before = currentVersion(done);
+            warnOnChecksumMismatch(migrations, done);
+            if (before < latest) {
+                lock(c);
+                try {
+                    // another instance may have upgraded while we waited for the lock
+                    done = appliedVersions(c);
+                    for (Migration m : migrations) {
+                        if (done.containsKey(m.version)) continue;
+                        apply(c, m);
+                        applied.add(m.script);
+                    }
+                } finally {
+                    unlock(c);
+                }
+            }
+        }
+        long millis = (System.nanoTime() - t0) / 1_000_000L;
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("versionBefore", before);
+        m.put("version", latest);
+        m.put("applied", applied);
+        m.put("millis", millis);
+        m.put("at", System.currentTimeMillis());
+        lastRun = m;
+        if (applied.isEmpty()) System.out.println("SchemaMigrator: schema at version " + latest + ", checked in " + millis + " ms");
+        else System.out.println("SchemaMigrator: upgraded schema " + before + " -> " + latest + " " + applied + " in " + millis + " ms");
+        return m;
+    }
+
+    /** Result of the last {@link #migrate} in this process, or null if it has not run. */
+    public static Map<String, Object> status() {
+        return lastRun;
+    }
+
+    private static Map<Integer, Long> appliedVersions(Connection c) throws SQLException {
+        Map<Integer, Long> done = new TreeMap<>();
+        try (Statement s = c.createStatement();
+             ResultSet rs = s.executeQuery("SELECT version, checksum FROM schema_version")) {
+            while (rs.next()) done.put(rs.getInt(1), rs.getLong(2));
+            return done;
+        } catch (SQLException e) {
+            // 42S02: table does not exist yet, i.e. a database that predates the migration runner
+            if (!"42S02".equals(e.getSQLState())) throw e;
+        }
+        try (Statement s = c.createStatement()) {
+            s.executeUpdate("CREATE TABLE IF NOT EXISTS schema_version (version INT PRIMARY KEY, description VARCHAR(200) NOT NULL, "
+                    + "script VARCHAR(200) NOT NULL, checksum BIGINT NOT NULL, execution_ms BIGINT NOT NULL, "
+                    + "installed_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4");
+        }
+        return done;
+    }
+
+    private static int currentVersion(Map<Integer, Long> done) {
+        int v = 0;
+        for (int k : done.keySet()) v = Math.max(v, k);
+        return v;
+    }
+
+    private static void warnOnChecksumMismatch(List<Migration> migrations, Map<Integer, Long> done) {
+        for (Migration m : migrations) {
+            Long recorded = done.get(m.version);
+            if (recorded != null && recorded != m.checksum) {
+                System.err.println("SchemaMigrator: " + m.script + " changed after it was applied (checksum "
+                        + recorded + " in schema_version, " + m.checksum + " now); changes must go in a new script");
+            }
+        }
+    }
+
+    private static void apply(Connection c, Migration m) throws SQLException {
+        long t0 = System.currentTimeMillis();
+        try (Statement s = c.createStatement()) {
+            for (String sql : m.statements()) {
+                try {
+                    s.execute(sql);
+                } catch (SQLException e) {
+                    throw new SQLException("migration " + m.script + " failed at: "
+                            + sql.substring(0, Math.min(100, sql.length())) + ": " + e.getMessage(), e.getSQLState(), e);
+                }
+            }
+        }
+        long millis = System.currentTimeMillis() - t0;
+        try (PreparedStatement ps = c.prepareStatement(
+                "INSERT INTO schema_version (version, description, script, checksum, execution_ms) VALUES (?, ?, ?, ?, ?)")) {
+            ps.setInt(1, m.version);
+            ps.setString(2, m.description);
+            ps.setString(3, m.script);
+            ps.setLong(4, m.checksum);
+            ps.setLong(5, millis);
+            ps.executeUpdate();
+        }
+        System.out.println("SchemaMigrator: applied " + m.script + " in " + millis + " ms");
+    }
+
+    private static void lock(Connection c) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement("SELECT GET_LOCK(?, ?)")) {
+            ps.setString(1, LOCK_NAME);
+            ps.setInt(2, LOCK_TIMEOUT_SECONDS);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next() || rs.getInt(1) != 1) throw new SQLException("timed out waiting for the schema migration lock");
+            }
+        }
+    }
+
+    private static void unlock(Connection c) {
+        try (PreparedStatement ps = c.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+            ps.setString(1, LOCK_NAME);
+            ps.executeQuery().close();
+        } catch (SQLException ignore) {
+            // the lock goes away with the session anyway
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package com.hdfsdrive.core;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Revoked signed-share ids.
+ * Lookups go through a Bloom filter first, so the common case (token not revoked) is a few bit tests with no
+ * locking; only filter hits are confirmed against the exact set. Ids are kept until their token expires.
+ * <p>
+ * The shared share_revocations table is the record every node goes by: {@link #revoke} writes it before returning,
+ * and each node picks up the other nodes' revocations in {@link #sync}, which MetadataRegistry runs every
+ * SHARE_REVOCATION_SYNC_SECONDS (default 5). So a link removed on one node stops working everywhere within that
+ * interval. The local JSON map { id: expireAt } (0 means the token never expires) is only a cache that keeps
+ * revocations in force when the database cannot be reached at startup.
+ */
+public class ShareRevocationList implements Closeable {
+    private static final int HASHES = 7;      // ~1% false positives at 10 bits per id
+    private static final int BITS_PER_ID = 10;
+    private static final int MIN_CAPACITY = 1024;
+    /** Rows re-read below the highest seen seq, for inserts that committed out of seq order. */
+    private static final long SEQ_OVERLAP = 64L;
+    /** Expired rows are deleted from the table every this many syncs. */
+    private static final int PRUNE_EVERY_SYNCS = 720;
+
+    private final File storeFile;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Map<String, Long> revoked = new ConcurrentHashMap<>();
+    private final WriteBehindWriter writer;
+    // false: revocations stay on this node (tools and benchmarks without a database)
+    private final boolean shared;
+    private long lastSeq = -1L; // -1 until the first full load from the table; guarded by syncLock
+    private int syncs;
+    private final Object syncLock = new Object();
+    // replaced wholesale when the filter is resized or pruned; writers hold this
+    private volatile Filter filter;
+    private int capacity;
+
+    private static final class Filter {
+        final AtomicLongArray words;
+        final int n;
+
+        Filter(int n) {
+            this.words = new AtomicLongArray((n + 63) >>> 6);
+            this.n = n;
+        }
+    }
+
+    public ShareRevocationList(String storePath, long flushDelayMillis) throws IOException {
+        this(storePath, flushDelayMillis, false);
+    }
+
+    /**
+     * @param shared whether to record and pick up revocations in the share_revocations table (see {@link Database})
+     */
+    public ShareRevocationList(String storePath, long flushDelayMillis, boolean shared) throws IOException {
+        this.shared = shared;
+        this.storeFile = new File(storePath);
+        File parent = storeFile.getParentFile();
+        if (parent != null && !parent.exists()) parent.mkdirs();
+        if (storeFile.exists()) {
+            revoked.putAll(mapper.readValue(storeFile, new TypeReference<Map<String, Long>>(){}));
+        }
+        this.writer = new WriteBehindWriter(storeFile, mapper, () -> new HashMap<>(revoked), flushDelayMillis);
+        synchronized (this) {
+            pruneExpired(System.currentTimeMillis());
+            rebuild(Math.max(MIN_CAPACITY, revoked.size() * 2));
+        }
+    }
+
+    /**
+     * Revoke a signed share id until the given expiry (0 = forever). The revocation is written to the shared table
+     * before this returns; if that fails it still holds on this node and an IOException tells the caller the other
+     * nodes have not been told.
+     */
+    public void revoke(String id, long expireAt) throws IOException {
+        if (id == null) return;
+        add(id, expireAt);
+        writer.markDirty();
+        if (!shared) return;
+        try (Connection c = Database.getConnection();
+             PreparedStatement ps = c.prepareStatement("INSERT INTO share_revocations (share_id, expire_at) VALUES (?, ?) "
+                     + "ON DUPLICATE KEY UPDATE expire_at = VALUES(expire_at)")) {
+            ps.setString(1, id);
+            ps.setLong(2, expireAt);
+            ps.executeUpdate();
+        } catch (SQLException e) {
+            throw new IOException("revocation of " + id + " not shared with other nodes: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Pull revocations made on other nodes from the shared table: everything on the first call, then the rows
+     * added since the last one. Returns the number of ids newly revoked here.
+     */
+    public int sync() throws SQLException {
+        if (!shared) return 0;
+        synchronized (syncLock) {
+            long now = System.currentTimeMillis();
+            int added = 0;
+            try (Connection c = Database.getConnection()) {
+                if (++syncs % PRUNE_EVERY_SYNCS == 0) {
+                    try (PreparedStatement ps = c.prepareStatement("DELETE FROM share_revocations WHERE expire_at > 0 AND expire_at < ?")) {
+                        ps.setLong(1, now);
+                        ps.executeUpdate();
+                    }
+                }
+                String sql = lastSeq < 0
+                        ? "SELECT seq, share_id, expire_at FROM share_revocations WHERE expire_at = 0 OR expire_at >= ?"
+                        : "SELECT seq, share_id, expire_at FROM share_revocations WHERE seq > ?";
+                try (PreparedStatement ps = c.prepareStatement(sql)) {
+                    ps.setLong(1, lastSeq < 0 ? now : Math.max(0L, lastSeq - SEQ_OVERLAP));
+                    try (ResultSet rs = ps.executeQuery()) {
+                        long max = Math.max(lastSeq, 0L);
+                        while (rs.next()) {
+                            max = Math.max(max, rs.getLong(1));
+                            String id = rs.getString(2);
+                            if (!revoked.containsKey(id)) {
+                                add(id, rs.getLong(3));
+                                added++;
+                            }
+                        }
+                        lastSeq = max;
+                    }
+                }
+            }
+            if (added > 0) writer.markDirty();
+            return added;
+        }
+    }
+
+    private synchronized void add(String id, long expireAt) {
+        revoked.put(id, expireAt);
+        if (revoked.size() > capacity) {
+            pruneExpired(System.currentTimeMillis());
+            rebuild(Math.max(capacity, revoked.size() * 2));
+        } else {
+            set(filter, id);
+        }
+    }
+
+    public boolean isRevoked(String id) {
+        if (id == null) return false;
+        if (!mightContain(filter, id)) return false;
+        return revoked.containsKey(id);
+    }
+
+    public int size() {
+        return revoked.size();
+    }
+
+    // callers hold this
+    private void pruneExpired(long now) {
+        Iterator<Map.Entry<String, Long>> it = revoked.entrySet().iterator();
+        while (it.hasNext()) {
+            long expireAt = it.next().getValue();
+            if (expireAt > 0 && expireAt < now) it.remove();
+        }
+    }
+
+    // callers hold this
+    private void rebuild(int newCapacity) {
+        Filter next = new Filter(newCapacity * BITS_PER_ID);
+        for (String id : revoked.keySet()) set(next, id);
+        capacity = newCapacity;
+        filter = next;
+    }
+
+    private static void set(Filter f, String id) {
+        AtomicLongArray words = f.words;
+        int n = f.n;
+        long h = hash(id);
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32);
+        for (int i = 0; i < HASHES; i++) {
+            int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % n;
+            int w = bit >>> 6;
+            long mask = 1L << bit;
+            long cur;
+            do {
+                cur = words.get(w);
+                if ((cur & mask) != 0) break;
+            } while (!words.compareAndSet(w, cur, cur | mask));
+        }
+    }
+
+    private static boolean mightContain(Filter f, String id) {
+        AtomicLongArray words = f.words;
+        int n = f.n;
+        long h = hash(id);
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32);
+        for (int i = 0; i < HASHES; i++) {
+            int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % n;
+            if ((words.get(bit >>> 6) & (1L << bit)) == 0) return false;
+        }
+        return true;
+    }
+
+    // 64-bit FNV-1a followed by a murmur3 finalizer
+    private static long hash(String s) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
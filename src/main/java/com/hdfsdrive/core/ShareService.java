@@ -3,20 +3,45 @@ package com.hdfsdrive.core;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
 
 /**
  * Simple persistent share metadata service.
- * Stores a JSON array of entries: { id, path, name, createdAt, expireAt }
+ * Stores a JSON array of entries: { id, path, name, createdAt, expireAt, owner, token }
+ * The store is loaded once and served from memory under a read-write lock; mutations are persisted
+ * write-behind (see {@link WriteBehindWriter}). Use a single instance per store file, normally the one
+ * owned by {@link MetadataRegistry}.
+ * Entries are indexed by id (O(1) lookup for public share hits), by owner, and by expireAt so that
+ * expired shares can be dropped from the head of the expiry index without scanning the store.
  */
-public class ShareService {
+public class ShareService implements Closeable {
     private final File storeFile;
     private final ObjectMapper mapper = new ObjectMapper();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // indexes, all guarded by lock
+    private final Map<String, Entry> byId = new LinkedHashMap<>();
+    private final Map<String, Set<String>> idsByOwner = new HashMap<>();
+    private final TreeSet<Entry> byExpiry = new TreeSet<>(
+            Comparator.comparingLong((Entry e) -> e.expireAt).thenComparing(e -> e.id));
+    private final WriteBehindWriter writer;
+    private final List<Consumer<String>> removalListeners = new CopyOnWriteArrayList<>();
 
     public static class Entry {
         public String id;
@@ -24,6 +49,10 @@ public class ShareService {
         public String name;
         public long createdAt;
         public long expireAt; // 0 means never
+        // username that created the share; null for entries written before owners were recorded
+        public String owner;
+        // signed link (see ShareTokenService) when the share was created with one; null for plain id links
+        public String token;
 
         public Entry() {}
 
@@ -34,69 +63,250 @@ public class ShareService {
             this.createdAt = createdAt;
             this.expireAt = expireAt;
         }
+
+        /** Detached copy, so callers cannot change the store without going through it. */
+        public Entry copy() {
+            Entry c = new Entry(id, path, name, createdAt, expireAt);
+            c.owner = owner;
+            c.token = token;
+            return c;
+        }
     }
 
     public ShareService(String storePath) throws IOException {
+        this(storePath, WriteBehindWriter.DEFAULT_FLUSH_DELAY_MILLIS);
+    }
+
+    public ShareService(String storePath, long flushDelayMillis) throws IOException {
         this.storeFile = new File(storePath);
         File parent = this.storeFile.getParentFile();
         if (parent != null && !parent.exists()) parent.mkdirs();
         if (!this.storeFile.exists()) {
             mapper.writeValue(this.storeFile, new ArrayList<Entry>());
         }
+        for (Entry e : mapper.readValue(storeFile, new TypeReference<List<Entry>>(){})) {
+            if (e.id != null) index(e);
+        }
+        this.writer = new WriteBehindWriter(storeFile, mapper, this::snapshot, flushDelayMillis);
+    }
+
+    /**
+     * Called with the id of every share that leaves the store, whether removed or dropped on expiry. Runs under the
+     * store's write lock, so listeners must be quick.
+     */
+    public void addRemovalListener(Consumer<String> listener) {
+        removalListeners.add(listener);
+    }
+
+    private List<Entry> snapshot() {
+        lock.readLock().lock();
+        try {
+            return new ArrayList<>(byId.values());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // callers hold the write lock
+    private void index(Entry e) {
+        Entry prev = byId.put(e.id, e);
+        if (prev != null) unindex(prev);
+        String owner = ownerOf(e);
+        if (owner != null) idsByOwner.computeIfAbsent(owner, k -> new LinkedHashSet<>()).add(e.id);
+        if (e.expireAt > 0) byExpiry.add(e);
+    }
+
+    // callers hold the write lock
+    private void unindex(Entry e) {
+        String owner = ownerOf(e);
+        if (owner != null) {
+            Set<String> ids = idsByOwner.get(owner);
+            if (ids != null) {
+                ids.remove(e.id);
+                if (ids.isEmpty()) idsByOwner.remove(owner);
+            }
+        }
+        if (e.expireAt > 0) byExpiry.remove(e);
+    }
+
+    /**
+     * Owner of an entry; legacy entries without one fall back to the user directory in an absolute /users/<name>/ path.
+     * This is the owner {@link #listByOwner} files an entry under.
+     */
+    public static String ownerOf(Entry e) {
+        if (e.owner != null && !e.owner.isEmpty()) return e.owner;
+        if (e.path != null && e.path.startsWith("/users/")) {
+            int end = e.path.indexOf('/', "/users/".length());
+            String name = end < 0 ? e.path.substring("/users/".length()) : e.path.substring("/users/".length(), end);
+            if (!name.isEmpty()) return name;
+        }
+        return null;
+    }
+
+    /** Whether user owns e, by the same rule {@link #listByOwner} lists it under. */
+    public static boolean isOwnedBy(Entry e, String user) {
+        return user != null && user.equals(ownerOf(e));
+    }
+
+    // callers hold the write lock
+    private void removed(String id) {
+        for (Consumer<String> l : removalListeners) l.accept(id);
+    }
+
+    // callers hold the write lock; pops expired entries off the head of the expiry index
+    private int dropExpiredLocked(long now) {
+        int dropped = 0;
+        while (!byExpiry.isEmpty() && byExpiry.first().expireAt < now) {
+            Entry e = byExpiry.pollFirst();
+            byId.remove(e.id);
+            unindex(e);
+            removed(e.id);
+            dropped++;
+        }
+        return dropped;
+    }
+
+    private static boolean isExpired(Entry e, long now) {
+        return e.expireAt > 0 && e.expireAt < now;
     }
 
-    private synchronized List<Entry> readAll() throws IOException {
-        return mapper.readValue(storeFile, new TypeReference<List<Entry>>(){});
+    public Entry add(String path, String name, long expireAt) throws IOException {
+        return add(path, name, expireAt, null);
     }
 
-    private synchronized void writeAll(List<Entry> entries) throws IOException {
-        mapper.writeValue(storeFile, entries);
+    public Entry add(String path, String name, long expireAt, String owner) throws IOException {
+        return add(newEntry(path, name, expireAt, owner));
     }
 
-    public synchronized Entry add(String path, String name, long expireAt) throws IOException {
-        List<Entry> entries = readAll();
-        String id = UUID.randomUUID().toString();
-        Entry e = new Entry(id, path, name, System.currentTimeMillis(), expireAt);
-        entries.add(e);
-        writeAll(entries);
+    /**
+     * Build an entry with a fresh id without storing it, so callers can fill in derived fields (e.g. token) first.
+     */
+    public static Entry newEntry(String path, String name, long expireAt, String owner) {
+        Entry e = new Entry(UUID.randomUUID().toString(), path, name, System.currentTimeMillis(), expireAt);
+        e.owner = owner;
+        return e;
+    }
+
+    /**
+     * Store an entry built by {@link #newEntry}. The entry must not be modified afterwards.
+     */
+    public Entry add(Entry e) throws IOException {
+        lock.writeLock().lock();
+        try {
+            dropExpiredLocked(e.createdAt);
+            index(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        writer.markDirty();
         return e;
     }
 
-    public synchronized List<Entry> list() throws IOException {
-        List<Entry> all = readAll();
+    /**
+     * Copies of all non-expired shares.
+     */
+    public List<Entry> list() throws IOException {
         long now = System.currentTimeMillis();
         List<Entry> out = new ArrayList<>();
-        for (Entry e : all) {
-            if (e.expireAt > 0 && e.expireAt < now) continue; // skip expired
-            out.add(e);
+        lock.readLock().lock();
+        try {
+            for (Entry e : byId.values()) {
+                if (isExpired(e, now)) continue; // not yet dropped by the sweep
+                out.add(e.copy());
+            }
+        } finally {
+            lock.readLock().unlock();
         }
         return out;
     }
 
-    public synchronized boolean remove(String id) throws IOException {
-        List<Entry> entries = readAll();
-        Iterator<Entry> it = entries.iterator();
-        boolean removed = false;
-        while (it.hasNext()) {
-            Entry e = it.next();
-            if (e.id.equals(id)) {
-                it.remove();
-                removed = true;
+    /**
+     * Copies of the non-expired shares created by the given user, in creation order.
+     */
+    public List<Entry> listByOwner(String owner) throws IOException {
+        if (owner == null) return Collections.emptyList();
+        long now = System.currentTimeMillis();
+        List<Entry> out = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            Set<String> ids = idsByOwner.get(owner);
+            if (ids == null) return out;
+            for (String id : ids) {
+                Entry e = byId.get(id);
+                if (e != null && !isExpired(e, now)) out.add(e.copy());
             }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return out;
+    }
+
+    public boolean remove(String id) throws IOException {
+        lock.writeLock().lock();
+        try {
+            Entry e = byId.remove(id);
+            if (e == null) return false;
+            unindex(e);
+            removed(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        writer.markDirty();
+        return true;
+    }
+
+    public Entry getById(String id) throws IOException {
+        if (id == null) return null;
+        lock.readLock().lock();
+        try {
+            Entry e = byId.get(id);
+            if (e == null || isExpired(e, System.currentTimeMillis())) return null;
+            return e.copy();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Whether the store holds the share, expired or not; until an expired share is dropped its removal listeners
+     * have not run.
+     */
+    public boolean contains(String id) {
+        if (id == null) return false;
+        lock.readLock().lock();
+        try {
+            return byId.containsKey(id);
+        } finally {
+            lock.readLock().unlock();
         }
-        if (removed) writeAll(entries);
-        return removed;
     }
 
-    public synchronized Entry getById(String id) throws IOException {
-        List<Entry> entries = readAll();
+    /**
+     * Drop every share whose expireAt has passed. Cost is proportional to the number of expired entries.
+     * Returns the number of shares dropped.
+     */
+    public int dropExpired() {
         long now = System.currentTimeMillis();
-        for (Entry e : entries) {
-            if (e.id.equals(id)) {
-                if (e.expireAt > 0 && e.expireAt < now) return null;
-                return e;
-            }
+        int dropped;
+        lock.writeLock().lock();
+        try {
+            dropped = dropExpiredLocked(now);
+        } finally {
+            lock.writeLock().unlock();
         }
-        return null;
+        if (dropped > 0) writer.markDirty();
+        return dropped;
+    }
+
+    /**
+     * Write any pending changes to disk now.
+     */
+    public void flush() throws IOException {
+        writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
     }
-}
\ No newline at end of file
+}
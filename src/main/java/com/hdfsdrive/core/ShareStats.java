@@ -0,0 +1,391 @@
+package com.hdfsdrive.core;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * Per-share access counters (views, downloads, bytes served, last access).
+ * Hits only touch striped LongAdders and mark the share dirty. At most once per flush interval
+ * {@link WriteBehindWriter} appends the dirty shares to a journal next to the store, one JSON line
+ * { id, stats } each (stats null once the share is removed); when the journal holds more lines than there are
+ * shares it is compacted into the JSON map { id: { views, downloads, bytes, lastAccess } } and deleted.
+ * Counters only grow, so loading takes the largest value seen for each and a journal left behind by an interrupted
+ * compaction replays harmlessly. Removed shares must be passed to {@link #remove} to keep the map bounded.
+ * Hot shares are tracked with a count-min sketch feeding a small top-K candidate set, so finding the most accessed
+ * shares never needs a scan or sort over all counters.
+ * Counters are only created for shares the exists predicate accepts, so a hit racing a share's removal does not
+ * bring its counters back.
+ */
+public class ShareStats implements Closeable {
+    /** Default interval between counter flushes. */
+    public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 30_000L;
+    private static final int TOP_K = 100;
+    private static final int MIN_COMPACT_LINES = 1024;
+
+    private final File storeFile;
+    private final File journalFile;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Map<String, Counters> counters = new ConcurrentHashMap<>();
+    private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+    // lines in the journal; only touched on load and by the writer's flushes, which never overlap
+    private long journalLines;
+    private final HeavyHitters hot = new HeavyHitters(4, 1 << 16, TOP_K); // 2 MB of counters regardless of share count
+    private final WriteBehindWriter writer;
+    private final Predicate<String> exists;
+
+    private static final class Counters {
+        final LongAdder views = new LongAdder();
+        final LongAdder downloads = new LongAdder();
+        final LongAdder bytes = new LongAdder();
+        volatile long lastAccess;
+    }
+
+    /** Persisted form of one share's counters. */
+    public static class Snapshot {
+        public long views;
+        public long downloads;
+        public long bytes;
+        public long lastAccess;
+    }
+
+    /** One journal line; stats is null when the share was removed. */
+    public static class JournalLine {
+        public String id;
+        public Snapshot stats;
+    }
+
+    public ShareStats(String storePath, long flushIntervalMillis) throws IOException {
+        this(storePath, flushIntervalMillis, id -> true);
+    }
+
+    /**
+     * @param exists whether a share is still stored; asked when a share gets its first counter since loading
+     */
+    public ShareStats(String storePath, long flushIntervalMillis, Predicate<String> exists) throws IOException {
+        this.exists = exists;
+        this.storeFile = new File(storePath);
+        this.journalFile = new File(storePath + ".journal");
+        File parent = storeFile.getParentFile();
+        if (parent != null && !parent.exists()) parent.mkdirs();
+        Map<String, Snapshot> saved = new HashMap<>();
+        if (storeFile.exists()) {
+            saved.putAll(mapper.readValue(storeFile, new TypeReference<Map<String, Snapshot>>(){}));
+        }
+        if (journalFile.exists()) {
+            try (BufferedReader in = Files.newBufferedReader(journalFile.toPath(), StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    journalLines++;
+                    JournalLine j;
+                    try {
+                        j = mapper.readValue(line, JournalLine.class);
+                    } catch (IOException e) {
+                        continue; // torn by a crash mid-append
+                    }
+                    if (j.id == null) continue;
+                    if (j.stats == null) saved.remove(j.id);
+                    else saved.merge(j.id, j.stats, ShareStats::max);
+                }
+            }
+        }
+        for (Map.Entry<String, Snapshot> e : saved.entrySet()) {
+            Counters c = new Counters();
+            Snapshot s = e.getValue();
+            c.views.add(s.views);
+            c.downloads.add(s.downloads);
+            c.bytes.add(s.bytes);
+            c.lastAccess = s.lastAccess;
+            counters.put(e.getKey(), c);
+            hot.add(e.getKey(), s.views + s.downloads);
+        }
+        this.writer = new WriteBehindWriter(storeFile, this::persist, flushIntervalMillis);
+    }
+
+    public void recordView(String id) {
+        Counters c = counters(id);
+        if (c == null) return;
+        c.views.increment();
+        touch(id, c);
+    }
+
+    public void recordDownload(String id, long bytesServed) {
+        Counters c = counters(id);
+        if (c == null) return;
+        c.downloads.increment();
+        if (bytesServed > 0) c.bytes.add(bytesServed);
+        touch(id, c);
+    }
+
+    /**
+     * Forget the counters of a removed share.
+     */
+    public void remove(String id) {
+        if (id == null || counters.remove(id) == null) return;
+        hot.remove(id);
+        dirty.add(id);
+        writer.markDirty();
+    }
+
+    /**
+     * Forget the counters of every share not in live, e.g. shares removed while counters were not being kept.
+     *
+     * @return the number of shares forgotten
+     */
+    public int retainOnly(Collection<String> live) {
+        int removed = 0;
+        for (String id : new ArrayList<>(counters.keySet())) {
+            if (!live.contains(id)) {
+                remove(id);
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    public Snapshot get(String id) {
+        Counters c = id == null ? null : counters.get(id);
+        return c == null ? null : snapshot(c);
+    }
+
+    /**
+     * Most accessed shares (views + downloads), highest first, with their exact counters.
+     * Candidates come from the sketch; they are re-ranked by exact counts to drop collision-inflated estimates.
+     */
+    public List<Map<String, Object>> top(int n) {
+        List<Map<String, Object>> out = new ArrayList<>();
+        for (Map.Entry<String, Long> e : hot.candidates()) {
+            Counters c = counters.get(e.getKey());
+            if (c == null) continue; // share removed since
+            Snapshot s = snapshot(c);
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("id", e.getKey());
+            m.put("hits", s.views + s.downloads);
+            m.put("views", s.views);
+            m.put("downloads", s.downloads);
+            m.put("bytes", s.bytes);
+            m.put("lastAccess", s.lastAccess);
+            out.add(m);
+        }
+        out.sort((a, b) -> Long.compare((Long) b.get("hits"), (Long) a.get("hits")));
+        return out.size() > n ? new ArrayList<>(out.subList(0, n)) : out;
+    }
+
+    // null for a share that is gone
+    private Counters counters(String id) {
+        Counters c = counters.get(id);
+        if (c != null) return c;
+        if (id == null || !exists.test(id)) return null;
+        c = counters.computeIfAbsent(id, k -> new Counters());
+        // the share may have been removed, and its counters dropped, since the check: look again
+        if (!exists.test(id)) {
+            counters.remove(id, c);
+            return null;
+        }
+        return c;
+    }
+
+    private void touch(String id, Counters c) {
+        c.lastAccess = System.currentTimeMillis();
+        hot.add(id, 1);
+        dirty.add(id);
+        writer.markDirty();
+    }
+
+    private static Snapshot max(Snapshot a, Snapshot b) {
+        Snapshot s = new Snapshot();
+        s.views = Math.max(a.views, b.views);
+        s.downloads = Math.max(a.downloads, b.downloads);
+        s.bytes = Math.max(a.bytes, b.bytes);
+        s.lastAccess = Math.max(a.lastAccess, b.lastAccess);
+        return s;
+    }
+
+    private static Snapshot snapshot(Counters c) {
+        Snapshot s = new Snapshot();
+        s.views = c.views.sum();
+        s.downloads = c.downloads.sum();
+        s.bytes = c.bytes.sum();
+        s.lastAccess = c.lastAccess;
+        return s;
+    }
+
+    private Map<String, Snapshot> snapshotAll() {
+        Map<String, Snapshot> out = new HashMap<>(counters.size() * 2);
+        for (Map.Entry<String, Counters> e : counters.entrySet()) out.put(e.getKey(), snapshot(e.getValue()));
+        return out;
+    }
+
+    // runs on the writer's flush, never concurrently with itself
+    private void persist() throws IOException {
+        if (dirty.isEmpty()) return;
+        List<String> ids = new ArrayList<>(dirty);
+        dirty.removeAll(ids);
+        try {
+            if (journalLines + ids.size() > Math.max(MIN_COMPACT_LINES, counters.size())) {
+                WriteBehindWriter.writeAtomically(storeFile, mapper, snapshotAll());
+                Files.deleteIfExists(journalFile.toPath());
+                journalLines = 0;
+                return;
+            }
+            StringBuilder sb = new StringBuilder();
+            for (String id : ids) {
+                JournalLine j = new JournalLine();
+                j.id = id;
+                Counters c = counters.get(id);
+                j.stats = c == null ? null : snapshot(c);
+                sb.append(mapper.writeValueAsString(j)).append('\n');
+            }
+            try (Writer w = new OutputStreamWriter(new FileOutputStream(journalFile, true), StandardCharsets.UTF_8)) {
+                w.write(sb.toString());
+            }
+            journalLines += ids.size();
+        } catch (IOException | RuntimeException e) {
+            dirty.addAll(ids);
+            throw e;
+        }
+    }
+
+    public void flush() throws IOException {
+        writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+
+    /**
+     * Count-min sketch plus a bounded candidate set of the K keys with the highest estimates.
+     * Sketch updates and hits on keys already in the candidate set are lock-free; only a key reaching the
+     * admission threshold from outside the set takes the lock, to join the set and evict its smallest member.
+     * The smallest member is found through a min-heap ordered by each candidate's estimate when it was queued;
+     * estimates only grow, so a stale heap entry is re-queued with its current estimate when it reaches the top.
+     */
+    static final class HeavyHitters {
+        private static final class Candidate {
+            final String key;
+            final AtomicLong estimate;
+            long queued; // guarded by HeavyHitters.this; the heap key
+
+            Candidate(String key, long estimate) {
+                this.key = key;
+                this.estimate = new AtomicLong(estimate);
+                this.queued = estimate;
+            }
+        }
+
+        private final int depth;
+        private final int width;
+        private final int k;
+        private final AtomicLongArray cells;
+        private final ConcurrentHashMap<String, Candidate> candidates = new ConcurrentHashMap<>();
+        // guarded by this; holds exactly the values of candidates
+        private final PriorityQueue<Candidate> heap = new PriorityQueue<>((a, b) -> Long.compare(a.queued, b.queued));
+        private volatile long threshold;
+
+        HeavyHitters(int depth, int width, int k) {
+            this.depth = depth;
+            this.width = width;
+            this.k = k;
+            this.cells = new AtomicLongArray(depth * width);
+        }
+
+        void add(String key, long count) {
+            if (count <= 0) return;
+            long h = hash(key);
+            int h1 = (int) h;
+            int h2 = (int) (h >>> 32);
+            long estimate = Long.MAX_VALUE;
+            for (int i = 0; i < depth; i++) {
+                int col = ((h1 + i * h2) & Integer.MAX_VALUE) % width;
+                estimate = Math.min(estimate, cells.addAndGet(i * width + col, count));
+            }
+            Candidate c = candidates.get(key);
+            if (c != null) {
+                c.estimate.accumulateAndGet(estimate, Math::max);
+                return;
+            }
+            if (estimate >= threshold) offer(key, estimate);
+        }
+
+        private synchronized void offer(String key, long estimate) {
+            Candidate c = candidates.get(key);
+            if (c != null) {
+                c.estimate.accumulateAndGet(estimate, Math::max);
+                return;
+            }
+            c = new Candidate(key, estimate);
+            candidates.put(key, c);
+            heap.add(c);
+            if (candidates.size() > k) {
+                Candidate min = smallest();
+                heap.poll();
+                candidates.remove(min.key);
+            }
+            if (candidates.size() >= k) threshold = smallest().queued;
+        }
+
+        // callers hold the lock; re-queues stale heap entries until the top one is current
+        private Candidate smallest() {
+            while (true) {
+                Candidate top = heap.peek();
+                long cur = top.estimate.get();
+                if (cur == top.queued) return top;
+                heap.poll();
+                top.queued = cur;
+                heap.add(top);
+            }
+        }
+
+        synchronized void remove(String key) {
+            Candidate c = candidates.remove(key);
+            if (c == null) return;
+            heap.remove(c);
+            if (candidates.size() < k) threshold = 0;
+        }
+
+        List<Map.Entry<String, Long>> candidates() {
+            List<Map.Entry<String, Long>> all = new ArrayList<>(candidates.size());
+            for (Candidate c : candidates.values()) all.add(Map.entry(c.key, c.estimate.get()));
+            return all;
+        }
+
+        // 64-bit FNV-1a followed by a murmur3 finalizer
+        private static long hash(String s) {
+            long h = 0xcbf29ce484222325L;
+            for (int i = 0; i < s.length(); i++) {
+                h ^= s.charAt(i);
+                h *= 0x100000001b3L;
+            }
+            h ^= h >>> 33;
+            h *= 0xff51afd7ed558ccdL;
+            h ^= h >>> 33;
+            h *= 0xc4ceb9fe1a85ec53L;
+            h ^= h >>> 33;
+            return h;
+        }
+    }
+}
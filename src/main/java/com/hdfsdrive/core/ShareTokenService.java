@@ -0,0 +1,137 @@
+package com.hdfsdrive.core;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Stateless signed share links.
+ * A token is "st1.&lt;payload&gt;.&lt;signature&gt;" where payload is base64url JSON
+ * { i: id, p: path, n: name, e: expireAt, m: perms, o: owner } and signature is HMAC-SHA256 over the encoded payload.
+ * Any node holding the same secret can validate a token in memory, without reading share.json; early removal is
+ * covered by {@link ShareRevocationList}.
+ */
+public class ShareTokenService implements Closeable {
+    public static final String PREFIX = "st1.";
+    /** Permission letters carried in a token. */
+    public static final String PERM_VIEW = "r";
+    public static final String PERM_DOWNLOAD = "d";
+    public static final String DEFAULT_PERMS = PERM_VIEW + PERM_DOWNLOAD;
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final Base64.Encoder B64 = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder B64D = Base64.getUrlDecoder();
+
+    private final SecretKeySpec key;
+    private final ShareRevocationList revocations;
+    private final ObjectMapper mapper = new ObjectMapper();
+    // Mac is not thread-safe; keep one per thread
+    private final ThreadLocal<Mac> macs;
+
+    /** Decoded, verified token contents. */
+    public static class Claims {
+        public String id;
+        public String path;
+        public String name;
+        public long expireAt; // 0 means never
+        public String perms;
+        public String owner; // creator, whose directory a virtual path is relative to
+
+        public boolean can(String perm) {
+            return perms != null && perms.contains(perm);
+        }
+    }
+
+    public ShareTokenService(byte[] secret, ShareRevocationList revocations) {
+        if (secret == null || secret.length < 16) throw new IllegalArgumentException("share token secret must be at least 16 bytes");
+        this.key = new SecretKeySpec(secret, ALGORITHM);
+        this.revocations = revocations;
+        this.macs = ThreadLocal.withInitial(() -> {
+            try {
+                Mac mac = Mac.getInstance(ALGORITHM);
+                mac.init(key);
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    public static boolean isToken(String id) {
+        return id != null && id.startsWith(PREFIX);
+    }
+
+    /**
+     * Issue a token for an existing share entry; the token id is the entry id so removal can revoke it.
+     */
+    public String issue(ShareService.Entry entry, String perms) throws IOException {
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("i", entry.id);
+        payload.put("p", entry.path);
+        payload.put("n", entry.name);
+        payload.put("e", entry.expireAt);
+        payload.put("m", perms == null || perms.isEmpty() ? DEFAULT_PERMS : perms);
+        payload.put("o", entry.owner);
+        String body = B64.encodeToString(mapper.writeValueAsBytes(payload));
+        return PREFIX + body + "." + B64.encodeToString(sign(body));
+    }
+
+    /**
+     * Validate a token. Returns null when the signature does not match, the token has expired or it was revoked.
+     */
+    public Claims verify(String token) {
+        if (!isToken(token)) return null;
+        int dot = token.indexOf('.', PREFIX.length());
+        if (dot < 0) return null;
+        String body = token.substring(PREFIX.length(), dot);
+        try {
+            byte[] given = B64D.decode(token.substring(dot + 1));
+            if (!MessageDigest.isEqual(given, sign(body))) return null;
+            @SuppressWarnings("unchecked")
+            Map<String, Object> payload = mapper.readValue(B64D.decode(body), Map.class);
+            Claims c = new Claims();
+            c.id = (String) payload.get("i");
+            c.path = (String) payload.get("p");
+            c.name = (String) payload.get("n");
+            Object e = payload.get("e");
+            c.expireAt = e instanceof Number ? ((Number) e).longValue() : 0L;
+            c.perms = (String) payload.get("m");
+            c.owner = (String) payload.get("o");
+            if (c.id == null || c.path == null) return null;
+            if (c.expireAt > 0 && c.expireAt < System.currentTimeMillis()) return null;
+            if (revocations.isRevoked(c.id)) return null;
+            return c;
+        } catch (IllegalArgumentException | IOException | ClassCastException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Revoke every token issued for the given share entry, on every node (see {@link ShareRevocationList}).
+     */
+    public void revoke(ShareService.Entry entry) throws IOException {
+        revocations.revoke(entry.id, entry.expireAt);
+    }
+
+    public ShareRevocationList revocations() {
+        return revocations;
+    }
+
+    private byte[] sign(String body) {
+        return macs.get().doFinal(body.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @Override
+    public void close() throws IOException {
+        revocations.close();
+    }
+}
@@ -0,0 +1,32 @@
+package com.hdfsdrive.core;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Simple pacing throttle: hands out one permit every intervalNanos, so callers sharing it are spread evenly over
+ * time instead of bursting. A rate &lt;= 0 means unlimited.
+ */
+final class Throttle {
+    private final long intervalNanos;
+    private long next = System.nanoTime();
+
+    Throttle(long permitsPerSecond) {
+        this.intervalNanos = permitsPerSecond <= 0 ? 0L : Math.max(1L, TimeUnit.SECONDS.toNanos(1) / permitsPerSecond);
+    }
+
+    void acquire() throws InterruptedException {
+        acquire(1);
+    }
+
+    void acquire(long permits) throws InterruptedException {
+        if (intervalNanos == 0L || permits <= 0) return;
+        long wait;
+        synchronized (this) {
+            long now = System.nanoTime();
+            long at = Math.max(now, next);
+            next = at + intervalNanos * permits;
+            wait = at - now;
+        }
+        if (wait > 0) TimeUnit.NANOSECONDS.sleep(wait);
+    }
+}
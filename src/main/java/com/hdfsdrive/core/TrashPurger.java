@@ -0,0 +1,298 @@
+package com.hdfsdrive.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Expiry-driven purge engine for UI trash entries.
+ * Entries are kept in a DelayQueue ordered by their effective expiration (expireAt, or deletedAt + retention),
+ * so the dispatcher thread sleeps until the earliest entry is due instead of scanning the whole store.
+ * Due entries are deleted in parallel batches, throttled to a maximum number of NameNode ops per second.
+ * Failed deletes are re-queued with exponential backoff; metadata is only removed once HDFS no longer has the path.
+ */
+public class TrashPurger implements TrashService.Listener, Closeable {
+
+    private static final class Task implements Delayed {
+        final String path;
+        final long expireAt;
+        final int attempts;
+        final long dueAt;
+        volatile boolean cancelled;
+
+        Task(String path, long expireAt, int attempts, long dueAt) {
+            this.path = path;
+            this.expireAt = expireAt;
+            this.attempts = attempts;
+            this.dueAt = dueAt;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(dueAt - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed o) {
+            return Long.compare(dueAt, ((Task) o).dueAt);
+        }
+    }
+
+    private final TrashService trashService;
+    private final HdfsFactory hdfsFactory;
+    private final long defaultRetentionMillis;
+    private final int batchSize;
+    private final long baseBackoffMillis;
+    private final long maxBackoffMillis;
+    private final Throttle throttle;
+
+    private final DelayQueue<Task> queue = new DelayQueue<>();
+    // latest task per path, used to cancel on restore and to ignore stale re-queues
+    private final Map<String, Task> scheduled = new ConcurrentHashMap<>();
+    private final ExecutorService deleters;
+    private final Thread dispatcher;
+    private volatile boolean running = true;
+
+    // metrics
+    private final LongAdder purgedTotal = new LongAdder();
+    private final LongAdder failedAttempts = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder lagSumMillis = new LongAdder();
+    private final AtomicLong lastLagMillis = new AtomicLong();
+    private final AtomicLong maxLagMillis = new AtomicLong();
+    private final AtomicLong lastBatchSize = new AtomicLong();
+    private final AtomicLong lastBatchMillis = new AtomicLong();
+    private final AtomicLong lastBatchAt = new AtomicLong();
+    private final long startedAt = System.currentTimeMillis();
+
+    public TrashPurger(TrashService trashService, HdfsFactory hdfsFactory, long defaultRetentionMillis,
+                       int batchSize, int parallelism, int opsPerSecond,
+                       long baseBackoffMillis, long maxBackoffMillis) {
+        this.trashService = trashService;
+        this.hdfsFactory = hdfsFactory;
+        this.defaultRetentionMillis = defaultRetentionMillis;
+        this.batchSize = Math.max(1, batchSize);
+        this.baseBackoffMillis = Math.max(1L, baseBackoffMillis);
+        this.maxBackoffMillis = Math.max(this.baseBackoffMillis, maxBackoffMillis);
+        this.throttle = new Throttle(opsPerSecond);
+        this.deleters = Executors.newFixedThreadPool(Math.max(1, parallelism), r -> {
+            Thread t = new Thread(r, "trash-purge-worker");
+            t.setDaemon(true);
+            return t;
+        });
+        this.dispatcher = new Thread(this::dispatchLoop, "trash-purge-thread");
+        this.dispatcher.setDaemon(true);
+    }
+
+    /**
+     * Load all current trash entries and start the dispatcher thread.
+     */
+    public void start() throws IOException {
+        reload();
+        trashService.addListener(this);
+        dispatcher.start();
+    }
+
+    /**
+     * Re-read the trash store and schedule any entries not yet known. Entries whose expiration changed
+     * are rescheduled.
+     */
+    public void reload() throws IOException {
+        List<TrashService.Entry> entries = trashService.list();
+        for (TrashService.Entry e : entries) {
+            long expireAt = TrashService.effectiveExpireAt(e, defaultRetentionMillis);
+            Task known = scheduled.get(e.path);
+            if (known == null || known.expireAt != expireAt) schedule(e.path, expireAt);
+        }
+    }
+
+    public void schedule(String path, long expireAt) {
+        Task t = new Task(path, expireAt, 0, expireAt);
+        Task prev = scheduled.put(path, t);
+        if (prev != null) prev.cancelled = true;
+        queue.offer(t);
+    }
+
+    public void cancel(String path) {
+        Task prev = scheduled.remove(path);
+        if (prev != null) prev.cancelled = true;
+    }
+
+    @Override
+    public void onAdded(TrashService.Entry entry) {
+        schedule(entry.path, TrashService.effectiveExpireAt(entry, defaultRetentionMillis));
+    }
+
+    @Override
+    public void onRemoved(String path) {
+        cancel(path);
+    }
+
+    /**
+     * Purge whatever is due right now on the calling thread and return the purged paths.
+     * Returns immediately when nothing is due.
+     */
+    public List<String> purgeDueNow() {
+        List<Task> due = new ArrayList<>();
+        queue.drainTo(due, batchSize);
+        return runBatch(due);
+    }
+
+    private void dispatchLoop() {
+        while (running) {
+            try {
+                Task head = queue.take();
+                List<Task> due = new ArrayList<>();
+                due.add(head);
+                queue.drainTo(due, batchSize - 1);
+                runBatch(due);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Throwable t) {
+                System.err.println("Trash purge batch failed: " + t.getMessage());
+            }
+        }
+    }
+
+    private List<String> runBatch(List<Task> due) {
+        List<String> purged = new ArrayList<>();
+        if (due.isEmpty()) return purged;
+        List<Task> done = new ArrayList<>();
+
+        // drop cancelled/stale tasks and re-check against the store, which may have been changed by restore
+        Map<String, TrashService.Entry> current = new HashMap<>();
+        try {
+            for (TrashService.Entry e : trashService.list()) current.put(e.path, e);
+        } catch (IOException ioe) {
+            for (Task t : due) retry(t);
+            return purged;
+        }
+        long now = System.currentTimeMillis();
+        List<Task> work = new ArrayList<>();
+        for (Task t : due) {
+            if (t.cancelled || scheduled.get(t.path) != t) continue;
+            TrashService.Entry e = current.get(t.path);
+            if (e == null) { scheduled.remove(t.path, t); continue; }
+            long expireAt = TrashService.effectiveExpireAt(e, defaultRetentionMillis);
+            if (expireAt > now) { schedule(t.path, expireAt); continue; }
+            work.add(t);
+        }
+        if (work.isEmpty()) return purged;
+
+        long started = System.currentTimeMillis();
+        HdfsService hdfs = null;
+        try {
+            hdfs = hdfsFactory.create();
+            final HdfsService client = hdfs;
+            List<Future<Boolean>> results = new ArrayList<>(work.size());
+            for (Task t : work) {
+                results.add(deleters.submit(() -> {
+                    throttle.acquire();
+                    if (client.delete(t.path, true)) return true;
+                    // delete returns false when the path is already gone; that counts as purged
+                    throttle.acquire();
+                    return !client.exists(t.path);
+                }));
+            }
+            for (int i = 0; i < work.size(); i++) {
+                Task t = work.get(i);
+                boolean ok;
+                try {
+                    ok = results.get(i).get();
+                } catch (Exception ex) {
+                    ok = false;
+                }
+                if (ok) {
+                    done.add(t);
+                    purged.add(t.path);
+                } else {
+                    retry(t);
+                }
+            }
+        } catch (Exception e) {
+            // could not obtain an HDFS client: keep everything for a later attempt
+            for (Task t : work) retry(t);
+        } finally {
+            if (hdfs != null) try { hdfs.close(); } catch (IOException ignore) {}
+        }
+
+        if (!purged.isEmpty()) {
+            try {
+                trashService.removeAll(purged);
+            } catch (IOException ioe) {
+                System.err.println("Failed to drop purged trash metadata: " + ioe.getMessage());
+            }
+            long finished = System.currentTimeMillis();
+            for (Task t : done) {
+                scheduled.remove(t.path, t);
+                long lag = Math.max(0L, finished - t.expireAt);
+                lagSumMillis.add(lag);
+                lastLagMillis.set(lag);
+                maxLagMillis.accumulateAndGet(lag, Math::max);
+            }
+            purgedTotal.add(purged.size());
+            System.out.println("Purged expired trash entries: " + purged);
+        }
+        batches.increment();
+        lastBatchSize.set(work.size());
+        lastBatchMillis.set(System.currentTimeMillis() - started);
+        lastBatchAt.set(System.currentTimeMillis());
+        return purged;
+    }
+
+    private void retry(Task t) {
+        failedAttempts.increment();
+        if (!running || scheduled.get(t.path) != t) return;
+        int attempts = t.attempts + 1;
+        long backoff = baseBackoffMillis << Math.min(attempts - 1, 20);
+        if (backoff <= 0 || backoff > maxBackoffMillis) backoff = maxBackoffMillis;
+        Task next = new Task(t.path, t.expireAt, attempts, System.currentTimeMillis() + backoff);
+        if (scheduled.replace(t.path, t, next)) queue.offer(next);
+    }
+
+    /**
+     * Snapshot of purge lag and throughput counters.
+     */
+    public Map<String, Object> metrics() {
+        long now = System.currentTimeMillis();
+        long purged = purgedTotal.sum();
+        Map<String, Object> m = new HashMap<>();
+        m.put("queued", scheduled.size());
+        m.put("purgedTotal", purged);
+        m.put("failedAttempts", failedAttempts.sum());
+        m.put("batches", batches.sum());
+        m.put("lastBatchSize", lastBatchSize.get());
+        m.put("lastBatchMillis", lastBatchMillis.get());
+        m.put("lastBatchAt", lastBatchAt.get());
+        m.put("lastLagMillis", lastLagMillis.get());
+        m.put("maxLagMillis", maxLagMillis.get());
+        m.put("avgLagMillis", purged == 0 ? 0L : lagSumMillis.sum() / purged);
+        long elapsed = Math.max(1L, now - startedAt);
+        m.put("purgedPerMinute", purged * 60000.0 / elapsed);
+        Task head = queue.peek();
+        m.put("nextDueAt", head == null ? 0L : head.dueAt);
+        m.put("overdueMillis", head == null ? 0L : Math.max(0L, now - head.dueAt));
+        return m;
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        trashService.removeListener(this);
+        dispatcher.interrupt();
+        deleters.shutdownNow();
+    }
+}
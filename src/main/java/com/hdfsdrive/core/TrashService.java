@@ -3,19 +3,44 @@ package com.hdfsdrive.core;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * Simple persistent trash metadata service.
- * Stores a JSON array of entries: { path, isDirectory, name, deletedAt }
+ * Stores a JSON array of entries: { path, isDirectory, name, deletedAt, expireAt, size, modificationTime }
+ * The store is loaded once and served from memory; reads share a read lock and run concurrently, and
+ * mutations are persisted write-behind (see {@link WriteBehindWriter}). Use a single instance per store
+ * file, normally the one owned by {@link MetadataRegistry}.
  */
-public class TrashService {
+public class TrashService implements Closeable {
+    /** Retention applied to entries without an explicit expireAt. */
+    public static final long DEFAULT_RETENTION_MILLIS = 30L * 24L * 60L * 60L * 1000L;
+
     private final File storeFile;
     private final ObjectMapper mapper = new ObjectMapper();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // path -> entry, in insertion order; guarded by lock
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    private final WriteBehindWriter writer;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Notified after trash metadata changes, e.g. so the purge engine can (re)schedule or cancel an entry.
+     */
+    public interface Listener {
+        void onAdded(Entry entry);
+        void onRemoved(String path);
+    }
 
     public static class Entry {
         public String path;
@@ -25,6 +50,10 @@ public class TrashService {
         // expireAt: epoch millis when this trash entry should be permanently purged.
         // 0 means not yet set (backwards compatibility) and will be computed from deletedAt + default retention.
         public long expireAt;
+        // size/modificationTime captured when the entry was trashed, so the trash view needs no NameNode RPCs.
+        // Both are 0 for entries written before these fields existed.
+        public long size;
+        public long modificationTime;
 
         public Entry() {}
 
@@ -35,9 +64,37 @@ public class TrashService {
             this.deletedAt = deletedAt;
             this.expireAt = 0L; // will be computed lazily
         }
+
+        /** Detached copy, so callers cannot change the store without going through it. */
+        public Entry copy() {
+            Entry c = new Entry(path, isDirectory, name, deletedAt);
+            c.expireAt = expireAt;
+            c.size = size;
+            c.modificationTime = modificationTime;
+            return c;
+        }
+    }
+
+    /**
+     * Epoch millis at which the entry should be purged: expireAt if set, else deletedAt + defaultRetentionMillis.
+     */
+    public static long effectiveExpireAt(Entry e, long defaultRetentionMillis) {
+        return e.expireAt > 0 ? e.expireAt : (e.deletedAt + defaultRetentionMillis);
+    }
+
+    public void addListener(Listener l) {
+        listeners.add(l);
+    }
+
+    public void removeListener(Listener l) {
+        listeners.remove(l);
     }
 
     public TrashService(String storePath) throws IOException {
+        this(storePath, WriteBehindWriter.DEFAULT_FLUSH_DELAY_MILLIS);
+    }
+
+    public TrashService(String storePath, long flushDelayMillis) throws IOException {
         this.storeFile = new File(storePath);
         File parent = this.storeFile.getParentFile();
         if (parent != null && !parent.exists()) parent.mkdirs();
@@ -45,17 +102,22 @@ public class TrashService {
             // create empty list
             mapper.writeValue(this.storeFile, new ArrayList<Entry>());
         }
+        for (Entry e : mapper.readValue(storeFile, new TypeReference<List<Entry>>(){})) {
+            if (e.path != null) entries.putIfAbsent(e.path, e);
+        }
+        this.writer = new WriteBehindWriter(storeFile, mapper, this::snapshot, flushDelayMillis);
     }
 
-    private synchronized List<Entry> readAll() throws IOException {
-        return mapper.readValue(storeFile, new TypeReference<List<Entry>>(){});
-    }
-
-    private synchronized void writeAll(List<Entry> entries) throws IOException {
-        mapper.writeValue(storeFile, entries);
+    private List<Entry> snapshot() {
+        lock.readLock().lock();
+        try {
+            return new ArrayList<>(entries.values());
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
-    public synchronized void add(String path, boolean isDirectory) throws IOException {
+    public void add(String path, boolean isDirectory) throws IOException {
         add(path, isDirectory, 0L);
     }
 
@@ -63,88 +125,91 @@ public class TrashService {
      * Add a trash entry with optional explicit expireAt (epoch millis). If expireAt==0 it will be computed later
      * using deletedAt + default retention when purging.
      */
-    public synchronized void add(String path, boolean isDirectory, long expireAt) throws IOException {
-        List<Entry> entries = readAll();
-        // avoid duplicates
-        for (Entry e : entries) {
-            if (e.path.equals(path)) return;
-        }
+    public void add(String path, boolean isDirectory, long expireAt) throws IOException {
+        add(path, isDirectory, expireAt, 0L, 0L);
+    }
+
+    /**
+     * Add a trash entry recording the file's size and modification time as seen at delete time.
+     */
+    public void add(String path, boolean isDirectory, long expireAt, long size, long modificationTime) throws IOException {
         String name = path.substring(path.lastIndexOf('/') + 1);
         if (name.isEmpty()) name = "/";
         Entry ne = new Entry(path, isDirectory, name, System.currentTimeMillis());
         ne.expireAt = expireAt;
-        entries.add(ne);
-        writeAll(entries);
+        ne.size = size;
+        ne.modificationTime = modificationTime;
+        lock.writeLock().lock();
+        try {
+            // avoid duplicates
+            if (entries.containsKey(path)) return;
+            entries.put(path, ne);
+            for (Listener l : listeners) l.onAdded(ne);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        writer.markDirty();
     }
 
     /**
-     * Purge expired trash entries. For each entry whose expireAt (or deletedAt + defaultRetention) is <= now,
-     * attempt to permanently delete it from the given HdfsService and remove it from the metadata list.
-     * Returns list of paths that were purged.
+     * Copies of all entries; changing them does not change the store.
      */
-    public synchronized List<String> purgeExpired(HdfsService hdfsService, long defaultRetentionMillis) throws IOException {
-        List<Entry> entries = readAll();
-        long now = System.currentTimeMillis();
-        boolean changed = false;
-        List<String> purged = new ArrayList<>();
-        Iterator<Entry> it = entries.iterator();
-        while (it.hasNext()) {
-            Entry e = it.next();
-            long expiration = e.expireAt > 0 ? e.expireAt : (e.deletedAt + defaultRetentionMillis);
-            if (expiration <= now) {
-                // attempt to remove from HDFS (best-effort)
-                try {
-                    // attempt permanent delete; if entry is directory, try recursive
-                    // attempt permanent delete; if entry is directory, try recursive
-                    try {
-                        hdfsService.delete(e.path, true);
-                    } catch (Exception ioe) {
-                        // ignore HDFS delete failure but still remove metadata to avoid accumulating stale entries
-                    }
-                    // remove metadata regardless of HDFS deletion success to avoid reprocessing
-                    it.remove();
-                    changed = true;
-                    purged.add(e.path);
-                } catch (Exception ex) {
-                    // on unexpected errors, skip this entry and continue
-                    ex.printStackTrace();
-                }
-            }
+    public List<Entry> list() throws IOException {
+        List<Entry> out = snapshot();
+        out.replaceAll(Entry::copy);
+        return out;
+    }
+
+    public boolean remove(String path) throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (entries.remove(path) == null) return false;
+            for (Listener l : listeners) l.onRemoved(path);
+        } finally {
+            lock.writeLock().unlock();
         }
-        if (changed) writeAll(entries);
-        return purged;
+        writer.markDirty();
+        return true;
     }
 
     /**
-     * Convenience overload with default retention of 30 days.
+     * Remove several entries with a single metadata write. Returns the number of entries removed.
      */
-    public synchronized List<String> purgeExpired(HdfsService hdfsService) throws IOException {
-        long thirtyDays = 30L * 24L * 60L * 60L * 1000L;
-        return purgeExpired(hdfsService, thirtyDays);
+    public int removeAll(Collection<String> paths) throws IOException {
+        if (paths == null || paths.isEmpty()) return 0;
+        int removed = 0;
+        lock.writeLock().lock();
+        try {
+            for (String p : paths) {
+                if (entries.remove(p) == null) continue;
+                removed++;
+                for (Listener l : listeners) l.onRemoved(p);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (removed > 0) writer.markDirty();
+        return removed;
     }
 
-    public synchronized List<Entry> list() throws IOException {
-        return readAll();
+    public boolean contains(String path) throws IOException {
+        lock.readLock().lock();
+        try {
+            return entries.containsKey(path);
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
-    public synchronized boolean remove(String path) throws IOException {
-        List<Entry> entries = readAll();
-        Iterator<Entry> it = entries.iterator();
-        boolean found = false;
-        while (it.hasNext()) {
-            Entry e = it.next();
-            if (e.path.equals(path)) {
-                it.remove();
-                found = true;
-            }
-        }
-        if (found) writeAll(entries);
-        return found;
+    /**
+     * Write any pending changes to disk now.
+     */
+    public void flush() throws IOException {
+        writer.flush();
     }
 
-    public synchronized boolean contains(String path) throws IOException {
-        List<Entry> entries = readAll();
-        for (Entry e : entries) if (e.path.equals(path)) return true;
-        return false;
+    @Override
+    public void close() throws IOException {
+        writer.close();
     }
-}
\ No newline at end of file
+}
@@ -7,6 +7,8 @@ public class User {
     private String avatar;
     private String email;
     private String phone;
+    // ACTIVE, or DISABLED / DELETING for accounts that may not log in
+    private String status;
 
     public User() {}
 
@@ -33,4 +35,9 @@ public class User {
 
     public String getPhone() { return phone; }
     public void setPhone(String phone) { this.phone = phone; }
+
+    public String getStatus() { return status; }
+    public void setStatus(String status) { this.status = status; }
+
+    public boolean isActive() { return status == null || "ACTIVE".equalsIgnoreCase(status); }
 }
@@ -0,0 +1,247 @@
+package com.hdfsdrive.core;
+
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded, TTL-based cache of users keyed by id and by username, used by UserDao's lookups.
+ * <ul>
+ *   <li>A found user is cached under both keys, as one entry: the entry under either key names the other, so
+ *       invalidating or evicting a user removes both in O(1). An unknown username is cached as a miss for a
+ *       shorter TTL so repeated logins with a wrong name do not each reach MySQL.</li>
+ *   <li>Concurrent misses for the same key share one query: the first caller loads, the others wait for it.</li>
+ *   <li>UserDao invalidates on every write. A load that overlaps an invalidation is not kept, so a query that read
+ *       the old row cannot put it back after the update.</li>
+ *   <li>When full, an arbitrary tenth of the entries is dropped (expired ones first).</li>
+ * </ul>
+ * Other app instances writing the same table are only seen once the TTL runs out.
+ * Usernames are matched case-insensitively, like the users table's collation.
+ */
+public final class UserCache {
+    public static final int DEFAULT_MAX_ENTRIES = 10_000;
+    public static final int DEFAULT_TTL_SECONDS = 300;
+    public static final int DEFAULT_NEGATIVE_TTL_SECONDS = 30;
+
+    public interface Loader {
+        User load() throws SQLException;
+    }
+
+    private static final class Entry {
+        final User user; // null for a cached miss
+        final long expiresAt;
+
+        Entry(User user, long expiresAt) {
+            this.user = user;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final long negativeTtlMillis;
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, CompletableFuture<User>> loading = new ConcurrentHashMap<>();
+    private final AtomicLong generation = new AtomicLong();
+    private final ReentrantLock evictLock = new ReentrantLock();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong negativeHits = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public UserCache(int maxEntries, long ttlMillis, long negativeTtlMillis) {
+        this.maxEntries = Math.max(16, maxEntries);
+        this.ttlMillis = ttlMillis;
+        this.negativeTtlMillis = negativeTtlMillis;
+    }
+
+    /** Sized from USER_CACHE_MAX_ENTRIES, USER_CACHE_TTL_SECONDS and USER_CACHE_NEGATIVE_TTL_SECONDS. */
+    public static UserCache fromEnvironment() {
+        return new UserCache(intEnv("USER_CACHE_MAX_ENTRIES", DEFAULT_MAX_ENTRIES),
+                intEnv("USER_CACHE_TTL_SECONDS", DEFAULT_TTL_SECONDS) * 1000L,
+                intEnv("USER_CACHE_NEGATIVE_TTL_SECONDS", DEFAULT_NEGATIVE_TTL_SECONDS) * 1000L);
+    }
+
+    private static int intEnv(String name, int dflt) {
+        String v = System.getenv(name);
+        try {
+            return v == null || v.isEmpty() ? dflt : Integer.parseInt(v.trim());
+        } catch (NumberFormatException e) {
+            return dflt;
+        }
+    }
+
+    private static String idKey(long id) {
+        return "#" + id;
+    }
+
+    private static String nameKey(String username) {
+        return "@" + username.toLowerCase(Locale.ROOT);
+    }
+
+    public User byId(long id, Loader loader) throws SQLException {
+        return get(idKey(id), loader);
+    }
+
+    public User byUsername(String username, Loader loader) throws SQLException {
+        if (username == null) return loader.load();
+        return get(nameKey(username), loader);
+    }
+
+    private User get(String key, Loader loader) throws SQLException {
+        Entry e = entries.get(key);
+        if (e != null && e.expiresAt > System.currentTimeMillis()) {
+            if (e.user == null) negativeHits.incrementAndGet();
+            else hits.incrementAndGet();
+            return copy(e.user);
+        }
+        CompletableFuture<User> mine = new CompletableFuture<>();
+        CompletableFuture<User> inFlight = loading.putIfAbsent(key, mine);
+        if (inFlight != null) {
+            coalesced.incrementAndGet();
+            return copy(await(inFlight));
+        }
+        try {
+            long gen = generation.get();
+            loads.incrementAndGet();
+            User u = loader.load();
+            mine.complete(u);
+            if (u != null) {
+                storeUser(u, gen);
+            } else {
+                store(key, null, negativeTtlMillis, gen);
+            }
+            return copy(u);
+        } catch (SQLException | RuntimeException ex) {
+            mine.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            loading.remove(key, mine);
+        }
+    }
+
+    private static User await(CompletableFuture<User> f) throws SQLException {
+        try {
+            return f.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException) throw (SQLException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new SQLException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("interrupted waiting for user lookup", e);
+        }
+    }
+
+    // a cached miss
+    private void store(String key, User u, long ttl, long gen) {
+        if (ttl <= 0) return;
+        Entry e = new Entry(u == null ? null : copy(u), System.currentTimeMillis() + ttl);
+        entries.put(key, e);
+        // an invalidation ran while this value was being loaded: it may be stale
+        if (generation.get() != gen) entries.remove(key, e);
+        if (entries.size() > maxEntries) evict();
+    }
+
+    // one entry under both the id and the username key
+    private void storeUser(User u, long gen) {
+        if (ttlMillis <= 0) return;
+        Entry e = new Entry(copy(u), System.currentTimeMillis() + ttlMillis);
+        entries.put(idKey(u.getId()), e);
+        if (u.getUsername() != null) entries.put(nameKey(u.getUsername()), e);
+        // an invalidation ran while this value was being loaded: it may be stale
+        if (generation.get() != gen) drop(e);
+        if (entries.size() > maxEntries) evict();
+    }
+
+    // removes both keys of a user entry, if they still map to it
+    private void drop(Entry e) {
+        if (e.user == null) return;
+        entries.remove(idKey(e.user.getId()), e);
+        if (e.user.getUsername() != null) entries.remove(nameKey(e.user.getUsername()), e);
+    }
+
+    private void evict() {
+        if (!evictLock.tryLock()) return;
+        try {
+            long now = System.currentTimeMillis();
+            int target = maxEntries - maxEntries / 10;
+            Iterator<Entry> it = entries.values().iterator();
+            while (it.hasNext()) {
+                Entry e = it.next();
+                if (e.expiresAt <= now) { it.remove(); drop(e); evictions.incrementAndGet(); }
+            }
+            it = entries.values().iterator();
+            while (entries.size() > target && it.hasNext()) {
+                Entry e = it.next();
+                it.remove();
+                drop(e);
+                evictions.incrementAndGet();
+            }
+        } finally {
+            evictLock.unlock();
+        }
+    }
+
+    /** Cache a user that was just written, e.g. after an insert, so the next lookup does not query. */
+    public void put(User u) {
+        generation.incrementAndGet();
+        storeUser(u, generation.get());
+    }
+
+    /** Forget the user with this id, under both keys. */
+    public void invalidateId(long id) {
+        generation.incrementAndGet();
+        invalidations.incrementAndGet();
+        Entry e = entries.remove(idKey(id));
+        if (e != null) drop(e);
+    }
+
+    /** Forget this username (including a cached miss) and the user it belonged to. */
+    public void invalidateUsername(String username) {
+        if (username == null) return;
+        generation.incrementAndGet();
+        invalidations.incrementAndGet();
+        Entry e = entries.remove(nameKey(username));
+        if (e != null) drop(e);
+    }
+
+    public void clear() {
+        generation.incrementAndGet();
+        entries.clear();
+    }
+
+    private static User copy(User u) {
+        if (u == null) return null;
+        User c = new User(u.getId(), u.getUsername(), u.getPassword());
+        c.setAvatar(u.getAvatar());
+        c.setEmail(u.getEmail());
+        c.setPhone(u.getPhone());
+        c.setStatus(u.getStatus());
+        return c;
+    }
+
+    public Map<String, Object> metrics() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("entries", entries.size());
+        m.put("maxEntries", maxEntries);
+        m.put("hits", hits.get());
+        m.put("negativeHits", negativeHits.get());
+        m.put("loads", loads.get());
+        m.put("coalesced", coalesced.get());
+        m.put("evictions", evictions.get());
+        m.put("invalidations", invalidations.get());
+        return m;
+    }
+}
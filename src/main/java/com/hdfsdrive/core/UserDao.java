@@ -3,154 +3,35 @@ package com.hdfsdrive.core;
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Data access for the users table. The schema is created and upgraded by {@link SchemaMigrator} at startup.
+ * Lookups by id and username go through a {@link UserCache}; every write below invalidates the rows it touches.
+ */
 public class UserDao {
-    private static final String JDBC_URL = "jdbc:mysql://localhost:3306/bigdata?useUnicode=true&characterEncoding=utf8&serverTimezone=UTC";
-    private static final String JDBC_USER = "root";
-    private static final String JDBC_PASS = "123456";
-
-    static {
-        try {
-            // ensure driver loaded
-            Class.forName("com.mysql.cj.jdbc.Driver");
-        } catch (ClassNotFoundException e) {
-            throw new RuntimeException(e);
-        }
-        // create table if not exists; store password in plaintext per requirement and add avatar column
-        try (Connection c = getConnection()) {
-            try (Statement s = c.createStatement()) {
-                s.executeUpdate("CREATE TABLE IF NOT EXISTS users (id BIGINT AUTO_INCREMENT PRIMARY KEY, username VARCHAR(100) NOT NULL UNIQUE, password VARCHAR(255) NOT NULL, avatar VARCHAR(1024) DEFAULT NULL, email VARCHAR(255) DEFAULT NULL, phone VARCHAR(50) DEFAULT NULL, created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP)");
-            }
-            // --- BEGIN: ensure required columns exist (for compatibility with older schemas) ---
-            try {
-                // Ensure created_at exists (older schemas may lack it)
-                try (PreparedStatement psCreated = c.prepareStatement(
-                        "SELECT COUNT(*) FROM information_schema.columns WHERE table_schema = DATABASE() AND table_name = 'users' AND column_name = 'created_at'")) {
-                    try (ResultSet rsCreated = psCreated.executeQuery()) {
-                        if (rsCreated.next() && rsCreated.getInt(1) == 0) {
-                            try (Statement s2 = c.createStatement()) {
-                                s2.executeUpdate("ALTER TABLE users ADD COLUMN created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP");
-                            }
-                        }
-                    }
-                } catch (SQLException ignoreCreated) {
-                    // best-effort: if unable to add created_at, ignore and continue; listUsers will fallback
-                }
-
-                // check if 'password' column exists
-                try (PreparedStatement ps = c.prepareStatement(
-                        "SELECT COUNT(*) FROM information_schema.columns WHERE table_schema = DATABASE() AND table_name = 'users' AND column_name = ?")) {
-                    ps.setString(1, "password");
-                    try (ResultSet rs = ps.executeQuery()) {
-                        if (rs.next() && rs.getInt(1) == 0) {
-                            try (Statement s = c.createStatement()) {
-                                // add password column; allow NULL to be safe for existing rows
-                                s.executeUpdate("ALTER TABLE users ADD COLUMN password VARCHAR(255) DEFAULT NULL");
-                            }
-                        }
-                    }
-                }
-                // ensure email column
-                try (PreparedStatement psEmail = c.prepareStatement(
-                        "SELECT COUNT(*) FROM information_schema.columns WHERE table_schema = DATABASE() AND table_name = 'users' AND column_name = 'email'")) {
-                    try (ResultSet rsEmail = psEmail.executeQuery()) {
-                        if (rsEmail.next() && rsEmail.getInt(1) == 0) {
-                            try (Statement s = c.createStatement()) {
-                                s.executeUpdate("ALTER TABLE users ADD COLUMN email VARCHAR(255) DEFAULT NULL");
-                            }
-                        }
-                    }
-                } catch (SQLException ignoreEmail) {
-                    // best-effort
-                }
-                // ensure phone column
-                try (PreparedStatement psPhone = c.prepareStatement(
-                        "SELECT COUNT(*) FROM information_schema.columns WHERE table_schema = DATABASE() AND table_name = 'users' AND column_name = 'phone'")) {
-                    try (ResultSet rsPhone = psPhone.executeQuery()) {
-                        if (rsPhone.next() && rsPhone.getInt(1) == 0) {
-                            try (Statement s = c.createStatement()) {
-                                s.executeUpdate("ALTER TABLE users ADD COLUMN phone VARCHAR(50) DEFAULT NULL");
-                            }
-                        }
-                    }
-                } catch (SQLException ignorePhone) {
-                    // best-effort
-                }
-
-                // check avatar column: if missing -> add, else if too small or not TEXT-like -> convert to TEXT
-                try (PreparedStatement ps2 = c.prepareStatement(
-                        "SELECT DATA_TYPE, CHARACTER_MAXIMUM_LENGTH FROM information_schema.columns WHERE table_schema = DATABASE() AND table_name = 'users' AND column_name = 'avatar'")) {
-                    try (ResultSet rs = ps2.executeQuery()) {
-                        if (!rs.next()) {
-                            try (Statement s = c.createStatement()) {
-                                s.executeUpdate("ALTER TABLE users ADD COLUMN avatar TEXT DEFAULT NULL");
-                            }
-                        } else {
-                            String dataType = rs.getString("DATA_TYPE");
-                            Long charMax = rs.getObject("CHARACTER_MAXIMUM_LENGTH") == null ? null : rs.getLong("CHARACTER_MAXIMUM_LENGTH");
-                            boolean needsChange = false;
-                            if (dataType == null) dataType = "";
-                            String dt = dataType.toLowerCase();
-                            // If current type is not text/blob and has small max length, convert to TEXT
-                            if (!(dt.contains("text") || dt.contains("blob"))) {
-                                if (charMax == null || charMax < 2048) {
-                                    needsChange = true;
-                                }
-                            }
-                            if (needsChange) {
-                                try (Statement s = c.createStatement()) {
-                                    s.executeUpdate("ALTER TABLE users MODIFY COLUMN avatar TEXT DEFAULT NULL");
-                                }
-                            }
-                        }
-                    }
-                }
-            } catch (SQLException ignore) {
-                // best-effort; if information_schema query fails (older MySQL or restricted privileges), ignore and continue
-            }
-            // --- END ---
-        } catch (SQLException e) {
-            throw new RuntimeException("Failed to initialize users table", e);
-        }
-    }
-
+    private static final UserCache cache = UserCache.fromEnvironment();
+    private static final long USER_COUNT_RESYNC_MILLIS = 10 * 60 * 1000L;
+    // -1 until first counted
+    private static final AtomicLong userCount = new AtomicLong(-1L);
+    private static volatile long userCountAt;
+    // pooled; see Database
     private static Connection getConnection() throws SQLException {
-        return DriverManager.getConnection(JDBC_URL, JDBC_USER, JDBC_PASS);
+        return Database.getConnection();
     }
 
-    // Public helper to ensure avatar column can store longer values; intended to be called before updates where avatar may be long
-    public static void ensureAvatarColumnIsText() throws SQLException {
-        try (Connection c = getConnection()) {
-            try (PreparedStatement ps = c.prepareStatement(
-                    "SELECT DATA_TYPE, CHARACTER_MAXIMUM_LENGTH FROM information_schema.columns WHERE table_schema = DATABASE() AND table_name = 'users' AND column_name = 'avatar'")) {
-                try (ResultSet rs = ps.executeQuery()) {
-                    if (!rs.next()) {
-                        try (Statement s = c.createStatement()) {
-                            s.executeUpdate("ALTER TABLE users ADD COLUMN avatar TEXT DEFAULT NULL");
-                        }
-                        return;
-                    }
-                    String dataType = rs.getString("DATA_TYPE");
-                    Long charMax = rs.getObject("CHARACTER_MAXIMUM_LENGTH") == null ? null : rs.getLong("CHARACTER_MAXIMUM_LENGTH");
-                    if (dataType == null) dataType = "";
-                    String dt = dataType.toLowerCase();
-                    if (!(dt.contains("text") || dt.contains("blob"))) {
-                        if (charMax == null || charMax < 2048) {
-                            try (Statement s = c.createStatement()) {
-                                s.executeUpdate("ALTER TABLE users MODIFY COLUMN avatar TEXT DEFAULT NULL");
-                            }
-                        }
-                    }
-                }
-            }
-        }
+    public static User findByUsername(String username) throws SQLException {
+        return cache.byUsername(username, () -> loadByUsername(username));
     }
 
-    public static User findByUsername(String username) throws SQLException {
+    private static User loadByUsername(String username) throws SQLException {
         try (Connection c = getConnection()) {
-            String sql = "SELECT id, username, password, avatar, email, phone FROM users WHERE username = ?";
+            String sql = "SELECT id, username, password, avatar, email, phone, status FROM users WHERE username = ?";
             try (PreparedStatement ps = c.prepareStatement(sql)) {
                 ps.setString(1, username);
                 try (ResultSet rs = ps.executeQuery()) {
@@ -160,6 +41,7 @@ public class UserDao {
                         u.setAvatar(rs.getString("avatar"));
                         try { u.setEmail(rs.getString("email")); } catch (SQLException ignore) { u.setEmail(null); }
                         try { u.setPhone(rs.getString("phone")); } catch (SQLException ignore) { u.setPhone(null); }
+                        u.setStatus(rs.getString("status"));
                         return u;
                     }
                 }
@@ -169,8 +51,12 @@ public class UserDao {
     }
 
     public static User findById(long id) throws SQLException {
+        return cache.byId(id, () -> loadById(id));
+    }
+
+    private static User loadById(long id) throws SQLException {
         try (Connection c = getConnection()) {
-            String sql = "SELECT id, username, password, avatar, email, phone FROM users WHERE id = ?";
+            String sql = "SELECT id, username, password, avatar, email, phone, status FROM users WHERE id = ?";
             try (PreparedStatement ps = c.prepareStatement(sql)) {
                 ps.setLong(1, id);
                 try (ResultSet rs = ps.executeQuery()) {
@@ -179,6 +65,7 @@ public class UserDao {
                         u.setAvatar(rs.getString("avatar"));
                         try { u.setEmail(rs.getString("email")); } catch (SQLException ignore) { u.setEmail(null); }
                         try { u.setPhone(rs.getString("phone")); } catch (SQLException ignore) { u.setPhone(null); }
+                        u.setStatus(rs.getString("status"));
                         return u;
                     }
                 }
@@ -210,36 +97,36 @@ public class UserDao {
             String phoneValue = (phone == null || phone.trim().isEmpty()) ? null : phone.trim();
             if (createdAt == null || createdAt <= 0) {
                 String sql = "INSERT INTO users (username, password, email, phone) VALUES (?, ?, ?, ?)";
-                try (PreparedStatement ps = c.prepareStatement(sql)) {
+                try (PreparedStatement ps = c.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
                     ps.setString(1, username);
                     ps.setString(2, password);
                     ps.setString(3, emailValue);
                     ps.setString(4, phoneValue);
                     int r = ps.executeUpdate();
-                    return r == 1;
+                    return created(ps, r, username, password, emailValue, phoneValue);
                 }
             } else {
                 String sql = "INSERT INTO users (username, password, email, phone, created_at) VALUES (?, ?, ?, ?, ?)";
-                try (PreparedStatement ps = c.prepareStatement(sql)) {
+                try (PreparedStatement ps = c.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
                     ps.setString(1, username);
                     ps.setString(2, password);
                     ps.setString(3, emailValue);
                     ps.setString(4, phoneValue);
                     ps.setTimestamp(5, new Timestamp(createdAt));
                     int r = ps.executeUpdate();
-                    return r == 1;
+                    return created(ps, r, username, password, emailValue, phoneValue);
                 } catch (SQLException e) {
                     // If created_at column does not exist (older schema), fallback to insert without created_at
                     String msg = e.getMessage() == null ? "" : e.getMessage().toLowerCase();
                     if (msg.contains("unknown column") || msg.contains("created_at")) {
                         String sql2 = "INSERT INTO users (username, password, email, phone) VALUES (?, ?, ?, ?)";
-                        try (PreparedStatement ps2 = c.prepareStatement(sql2)) {
+                        try (PreparedStatement ps2 = c.prepareStatement(sql2, Statement.RETURN_GENERATED_KEYS)) {
                             ps2.setString(1, username);
                             ps2.setString(2, password);
                             ps2.setString(3, emailValue);
                             ps2.setString(4, phoneValue);
                             int r2 = ps2.executeUpdate();
-                            return r2 == 1;
+                            return created(ps2, r2, username, password, emailValue, phoneValue);
                         }
                     }
                     throw e;
@@ -248,6 +135,106 @@ public class UserDao {
          }
      }
 
+    // a just-inserted user goes straight into the cache (and replaces a cached "unknown username")
+    private static boolean created(PreparedStatement ps, int rows, String username, String password, String email, String phone) throws SQLException {
+        cache.invalidateUsername(username);
+        if (rows != 1) return false;
+        adjustUserCount(1);
+        try (ResultSet keys = ps.getGeneratedKeys()) {
+            if (keys.next()) {
+                User u = new User(keys.getLong(1), username, password);
+                u.setEmail(email);
+                u.setPhone(phone);
+                u.setStatus("ACTIVE"); // the column default; AccountStatusFilter reads it from the cache
+                cache.put(u);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Insert many users at once (bulk import). Names that already exist are skipped; the rest go in as one JDBC
+     * batch in a single transaction. If the batch fails (e.g. a name was registered meanwhile) it is rolled back
+     * and the rows are inserted one by one so each gets its own result.
+     * On return errors[i] is null for every user that was created, otherwise the reason it was not; the returned
+     * array holds the new ids (0 where not created or not reported by the driver).
+     */
+    public static long[] createUsers(List<User> users, String[] errors) throws SQLException {
+        long[] ids = new long[users.size()];
+        if (users.isEmpty()) return ids;
+        List<Integer> todo = new ArrayList<>();
+        try (Connection c = getConnection()) {
+            Set<String> existing = new HashSet<>();
+            StringBuilder sql = new StringBuilder("SELECT username FROM users WHERE username IN (");
+            for (int i = 0; i < users.size(); i++) sql.append(i == 0 ? "?" : ",?");
+            try (PreparedStatement ps = c.prepareStatement(sql.append(')').toString())) {
+                for (int i = 0; i < users.size(); i++) ps.setString(i + 1, users.get(i).getUsername());
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) existing.add(rs.getString(1).toLowerCase(Locale.ROOT));
+                }
+            }
+            for (int i = 0; i < users.size(); i++) {
+                if (existing.contains(users.get(i).getUsername().toLowerCase(Locale.ROOT))) errors[i] = "用户名已存在";
+                else todo.add(i);
+            }
+            if (todo.isEmpty()) return ids;
+
+            String insert = "INSERT INTO users (username, password, email, phone) VALUES (?, ?, ?, ?)";
+            boolean autoCommit = c.getAutoCommit();
+            boolean batched = false;
+            c.setAutoCommit(false);
+            try (PreparedStatement ps = c.prepareStatement(insert, Statement.RETURN_GENERATED_KEYS)) {
+                for (int i : todo) {
+                    bindNewUser(ps, users.get(i));
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+                c.commit();
+                batched = true;
+                try (ResultSet keys = ps.getGeneratedKeys()) {
+                    for (int k = 0; k < todo.size() && keys.next(); k++) ids[todo.get(k)] = keys.getLong(1);
+                }
+            } catch (SQLException e) {
+                if (batched) throw e;
+                try { c.rollback(); } catch (SQLException ignore) {}
+            } finally {
+                c.setAutoCommit(autoCommit);
+            }
+            if (!batched) {
+                try (PreparedStatement ps = c.prepareStatement(insert, Statement.RETURN_GENERATED_KEYS)) {
+                    for (int i : todo) {
+                        try {
+                            bindNewUser(ps, users.get(i));
+                            ps.executeUpdate();
+                            try (ResultSet keys = ps.getGeneratedKeys()) {
+                                if (keys.next()) ids[i] = keys.getLong(1);
+                            }
+                        } catch (SQLIntegrityConstraintViolationException dup) {
+                            errors[i] = "用户名已存在";
+                        } catch (SQLException rowError) {
+                            errors[i] = rowError.getMessage();
+                        }
+                    }
+                }
+            }
+        } finally {
+            int created = 0;
+            for (int i : todo) {
+                if (errors[i] == null) created++;
+                cache.invalidateUsername(users.get(i).getUsername());
+            }
+            adjustUserCount(created);
+        }
+        return ids;
+    }
+
+    private static void bindNewUser(PreparedStatement ps, User u) throws SQLException {
+        ps.setString(1, u.getUsername());
+        ps.setString(2, u.getPassword());
+        ps.setString(3, u.getEmail() == null || u.getEmail().trim().isEmpty() ? null : u.getEmail().trim());
+        ps.setString(4, u.getPhone() == null || u.getPhone().trim().isEmpty() ? null : u.getPhone().trim());
+    }
+
     public static boolean updateUser(long id, String newUsername, String newPassword, String avatar, String email, String phone) throws SQLException {
         try (Connection c = getConnection()) {
             String sql = "UPDATE users SET username = ?, password = ?, avatar = ?, email = ?, phone = ? WHERE id = ?";
@@ -259,67 +246,108 @@ public class UserDao {
                 ps.setString(5, phone);
                 ps.setLong(6, id);
                 int r = ps.executeUpdate();
+                cache.invalidateId(id);
+                cache.invalidateUsername(newUsername);
                 return r == 1;
             }
         }
     }
 
-    // 列出所有用户（供管理员界面使用）
-    public static List<Map<String,Object>> listUsers() throws SQLException {
+    private static final String LIST_COLUMNS = "id, username, avatar, email, phone, status, created_at";
+
+    /**
+     * One page of users for the admin console, newest first (keyset pagination on id). Pass the last id of the
+     * previous page as beforeId, or null for the first page. A non-empty query matches the start of the username,
+     * email or phone; each branch of the UNION is a range scan on that column's index, so the cost depends on how
+     * many rows share the prefix, not on the size of the table.
+     */
+    public static List<Map<String,Object>> listUsersPage(Long beforeId, String query, int limit) throws SQLException {
+        long before = beforeId == null ? Long.MAX_VALUE : beforeId;
+        String prefix = query == null || query.trim().isEmpty() ? null : likePrefix(query.trim());
+        String sql;
+        if (prefix == null) {
+            sql = "SELECT " + LIST_COLUMNS + " FROM users WHERE id < ? ORDER BY id DESC LIMIT ?";
+        } else {
+            String branch = "(SELECT " + LIST_COLUMNS + " FROM users WHERE %s LIKE ? AND id < ? ORDER BY id DESC LIMIT ?)";
+            sql = "SELECT * FROM (" + String.format(branch, "username") + " UNION " + String.format(branch, "email")
+                    + " UNION " + String.format(branch, "phone") + ") u ORDER BY id DESC LIMIT ?";
+        }
         List<Map<String,Object>> out = new ArrayList<>();
-        try (Connection c = getConnection()) {
-            String sql = "SELECT id, username, avatar, email, phone, created_at FROM users ORDER BY id DESC";
-            try (PreparedStatement ps = c.prepareStatement(sql)) {
-                try (ResultSet rs = ps.executeQuery()) {
-                    while (rs.next()) {
-                        Map<String,Object> m = new HashMap<>();
-                        m.put("id", rs.getLong("id"));
-                        m.put("username", rs.getString("username"));
-                        try { m.put("email", rs.getString("email")); } catch (SQLException e) { m.put("email", ""); }
-                        try { m.put("phone", rs.getString("phone")); } catch (SQLException e) { m.put("phone", ""); }
-                        // role: default user, special-case 'admin' username
-                        String uname = rs.getString("username");
-                        m.put("role", "admin".equalsIgnoreCase(uname) ? "admin" : "user");
-                        Timestamp ts = null;
-                        try {
-                            ts = rs.getTimestamp("created_at");
-                        } catch (SQLException e) {
-                            // If created_at column disappears between prepare and fetch, fallback below
-                            ts = null;
-                        }
-                        m.put("createdAt", ts == null ? 0 : ts.getTime());
-                        m.put("avatar", rs.getString("avatar"));
-                        out.add(m);
-                    }
-                }
-            } catch (SQLException e) {
-                // Fallback for databases without created_at column: query without it
-                String msg = e.getMessage() == null ? "" : e.getMessage().toLowerCase();
-                if (msg.contains("unknown column") || msg.contains("created_at")) {
-                    String sql2 = "SELECT id, username, avatar, email, phone FROM users ORDER BY id DESC";
-                    try (PreparedStatement ps2 = c.prepareStatement(sql2)) {
-                        try (ResultSet rs2 = ps2.executeQuery()) {
-                            while (rs2.next()) {
-                                Map<String,Object> m = new HashMap<>();
-                                m.put("id", rs2.getLong("id"));
-                                m.put("username", rs2.getString("username"));
-                                try { m.put("email", rs2.getString("email")); } catch (SQLException e2) { m.put("email", ""); }
-                                try { m.put("phone", rs2.getString("phone")); } catch (SQLException e2) { m.put("phone", ""); }
-                                String uname = rs2.getString("username");
-                                m.put("role", "admin".equalsIgnoreCase(uname) ? "admin" : "user");
-                                m.put("avatar", rs2.getString("avatar"));
-                                m.put("createdAt", 0);
-                                out.add(m);
-                            }
-                        }
-                    }
-                } else {
-                    throw e; // rethrow unexpected SQL errors
+        try (Connection c = getConnection(); PreparedStatement ps = c.prepareStatement(sql)) {
+            int i = 1;
+            if (prefix != null) {
+                for (int b = 0; b < 3; b++) {
+                    ps.setString(i++, prefix);
+                    ps.setLong(i++, before);
+                    ps.setInt(i++, limit);
                 }
+            } else {
+                ps.setLong(i++, before);
             }
-         }
-         return out;
-     }
+            ps.setInt(i, limit);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) out.add(listRow(rs));
+            }
+        }
+        return out;
+    }
+
+    /** The admin list row for one user, or null if there is no such user. */
+    public static Map<String,Object> findUserRow(String username) throws SQLException {
+        try (Connection c = getConnection();
+             PreparedStatement ps = c.prepareStatement("SELECT " + LIST_COLUMNS + " FROM users WHERE username = ?")) {
+            ps.setString(1, username);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? listRow(rs) : null;
+            }
+        }
+    }
+
+    private static Map<String,Object> listRow(ResultSet rs) throws SQLException {
+        Map<String,Object> m = new HashMap<>();
+        m.put("id", rs.getLong("id"));
+        String uname = rs.getString("username");
+        m.put("username", uname);
+        m.put("email", rs.getString("email"));
+        m.put("phone", rs.getString("phone"));
+        // role: default user, special-case 'admin' username
+        m.put("role", "admin".equalsIgnoreCase(uname) ? "admin" : "user");
+        Timestamp ts = rs.getTimestamp("created_at");
+        m.put("createdAt", ts == null ? 0 : ts.getTime());
+        m.put("avatar", rs.getString("avatar"));
+        String status = rs.getString("status");
+        m.put("status", status == null ? "ACTIVE" : status);
+        return m;
+    }
+
+    // escape LIKE wildcards so the search is a plain prefix match
+    private static String likePrefix(String q) {
+        return q.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+    }
+
+    /**
+     * Number of users. Counted once and then kept up to date by the inserts and deletes in this class; recounted
+     * every USER_COUNT_RESYNC_MILLIS to pick up changes made elsewhere (other instances, manual SQL).
+     */
+    public static long countUsers() throws SQLException {
+        long n = userCount.get();
+        if (n >= 0 && System.currentTimeMillis() - userCountAt < USER_COUNT_RESYNC_MILLIS) return n;
+        synchronized (userCount) {
+            n = userCount.get();
+            if (n >= 0 && System.currentTimeMillis() - userCountAt < USER_COUNT_RESYNC_MILLIS) return n;
+            try (Connection c = getConnection(); Statement st = c.createStatement();
+                 ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM users")) {
+                n = rs.next() ? rs.getLong(1) : 0L;
+            }
+            userCount.set(n);
+            userCountAt = System.currentTimeMillis();
+            return n;
+        }
+    }
+
+    private static void adjustUserCount(long delta) {
+        userCount.updateAndGet(v -> v < 0 ? v : Math.max(0L, v + delta));
+    }
 
     // 删除用户（按用户名）
     public static boolean deleteUserByUsername(String username) throws SQLException {
@@ -328,6 +356,36 @@ public class UserDao {
             try (PreparedStatement ps = c.prepareStatement(sql)) {
                 ps.setString(1, username);
                 int r = ps.executeUpdate();
+                cache.invalidateUsername(username);
+                adjustUserCount(-r);
+                return r > 0;
+            }
+        }
+    }
+
+    // 修改头像（AvatarStore 的 key）
+    public static boolean setAvatar(long id, String avatar) throws SQLException {
+        try (Connection c = getConnection()) {
+            String sql = "UPDATE users SET avatar = ? WHERE id = ?";
+            try (PreparedStatement ps = c.prepareStatement(sql)) {
+                ps.setString(1, avatar);
+                ps.setLong(2, id);
+                int r = ps.executeUpdate();
+                cache.invalidateId(id);
+                return r > 0;
+            }
+        }
+    }
+
+    // 修改账号状态（ACTIVE / DISABLED / DELETING），非 ACTIVE 的账号不能登录
+    public static boolean setStatus(String username, String status) throws SQLException {
+        try (Connection c = getConnection()) {
+            String sql = "UPDATE users SET status = ? WHERE username = ?";
+            try (PreparedStatement ps = c.prepareStatement(sql)) {
+                ps.setString(1, status);
+                ps.setString(2, username);
+                int r = ps.executeUpdate();
+                cache.invalidateUsername(username);
                 return r > 0;
             }
         }
@@ -341,8 +399,13 @@ public class UserDao {
                 ps.setString(1, newPassword);
                 ps.setString(2, username);
                 int r = ps.executeUpdate();
+                cache.invalidateUsername(username);
                 return r > 0;
             }
         }
     }
+
+    public static Map<String,Object> cacheMetrics() {
+        return cache.metrics();
+    }
 }
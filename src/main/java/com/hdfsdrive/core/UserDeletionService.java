@@ -0,0 +1,397 @@
+package com.hdfsdrive.core;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.ServletContext;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Background removal of deleted accounts. The admin request only marks the account DELETING (so it can no longer
+ * log in) and queues a job; a single worker thread then
+ * <ol>
+ *   <li>revokes and removes the user's shares,</li>
+ *   <li>drops the user's trash metadata,</li>
+ *   <li>deletes /users/&lt;name&gt;: a subtree of at most chunkEntries files and directories is removed with one
+ *       recursive delete, a bigger one is taken apart child by child, so no single NameNode call has to delete a
+ *       huge tree while holding its lock,</li>
+ *   <li>and finally deletes the users row, which keeps the name reserved until the home is gone.</li>
+ * </ol>
+ * HDFS calls are throttled to opsPerSecond. Every step is safe to repeat, so a failed job is retried from the top
+ * with exponential backoff, and jobs still queued or running at shutdown resume on the next start. Jobs are kept
+ * in WEB-INF/user-deletions.json, together with the last finished ones for the admin console.
+ */
+public class UserDeletionService implements Closeable {
+    public static final String USER_ROOT = "/users";
+    public static final int DEFAULT_OPS_PER_SECOND = 100;
+    public static final int DEFAULT_CHUNK_ENTRIES = 5000;
+    public static final int MAX_ATTEMPTS = 8;
+    private static final long BASE_BACKOFF_MILLIS = 30_000L;
+    private static final long MAX_BACKOFF_MILLIS = 60L * 60L * 1000L;
+    private static final int KEEP_FINISHED = 100;
+    private static final long FLUSH_DELAY_MILLIS = 1000L;
+
+    public static final String PENDING = "PENDING";
+    public static final String RUNNING = "RUNNING";
+    public static final String FAILED = "FAILED";
+    public static final String DONE = "DONE";
+
+    private static final String ATTRIBUTE = UserDeletionService.class.getName();
+    private static final Object INIT_LOCK = new Object();
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    public static class Job {
+        public String username;
+        public String state;
+        /** shares, trash, home or account while running. */
+        public String phase;
+        public long deletedEntries;
+        /** Files and directories in the home when its deletion started; 0 until then. */
+        public long totalEntries;
+        public int attempts;
+        public String lastError;
+        public long requestedAt;
+        public long updatedAt;
+        public long nextAttemptAt;
+
+        public Job() {}
+
+        Job copy() {
+            Job j = new Job();
+            j.username = username;
+            j.state = state;
+            j.phase = phase;
+            j.deletedEntries = deletedEntries;
+            j.totalEntries = totalEntries;
+            j.attempts = attempts;
+            j.lastError = lastError;
+            j.requestedAt = requestedAt;
+            j.updatedAt = updatedAt;
+            j.nextAttemptAt = nextAttemptAt;
+            return j;
+        }
+    }
+
+    private final MetadataRegistry registry;
+    private final HdfsFactory hdfsFactory;
+    private final int chunkEntries;
+    private final Throttle throttle;
+    // keyed by lower-case username, in request order
+    private final Map<String, Job> jobs = new LinkedHashMap<>();
+    private final WriteBehindWriter writer;
+    private final Thread worker;
+    private volatile boolean running = true;
+
+    public UserDeletionService(File storeFile, MetadataRegistry registry, HdfsFactory hdfsFactory,
+                               int opsPerSecond, int chunkEntries) throws IOException {
+        this.registry = registry;
+        this.hdfsFactory = hdfsFactory;
+        this.chunkEntries = Math.max(1, chunkEntries);
+        this.throttle = new Throttle(opsPerSecond);
+        File parent = storeFile.getParentFile();
+        if (parent != null && !parent.exists()) parent.mkdirs();
+        if (storeFile.exists()) {
+            for (Job j : mapper.readValue(storeFile, new TypeReference<List<Job>>(){})) {
+                if (j.username == null) continue;
+                // interrupted by the last shutdown: every step can be repeated, so just run it again
+                if (RUNNING.equals(j.state)) j.state = PENDING;
+                jobs.put(key(j.username), j);
+            }
+        }
+        this.writer = new WriteBehindWriter(storeFile, mapper, this::snapshot, FLUSH_DELAY_MILLIS);
+        this.worker = new Thread(this::workLoop, "user-deletion-thread");
+        this.worker.setDaemon(true);
+    }
+
+    /**
+     * Start the service for the given context. Throttle and chunk size come from USER_DELETE_OPS_PER_SECOND and
+     * USER_DELETE_CHUNK_ENTRIES in the environment or context init params.
+     */
+    public static UserDeletionService start(ServletContext context, HdfsFactory hdfsFactory) throws IOException {
+        synchronized (INIT_LOCK) {
+            Object existing = context.getAttribute(ATTRIBUTE);
+            if (existing instanceof UserDeletionService) return (UserDeletionService) existing;
+            UserDeletionService s = new UserDeletionService(new File(context.getRealPath("/WEB-INF/user-deletions.json")),
+                    MetadataRegistry.get(context), hdfsFactory,
+                    intSetting(context, "USER_DELETE_OPS_PER_SECOND", DEFAULT_OPS_PER_SECOND),
+                    intSetting(context, "USER_DELETE_CHUNK_ENTRIES", DEFAULT_CHUNK_ENTRIES));
+            s.worker.start();
+            context.setAttribute(ATTRIBUTE, s);
+            return s;
+        }
+    }
+
+    public static UserDeletionService get(ServletContext context) {
+        Object existing = context.getAttribute(ATTRIBUTE);
+        return existing instanceof UserDeletionService ? (UserDeletionService) existing : null;
+    }
+
+    public static void shutdown(ServletContext context) {
+        Object existing;
+        synchronized (INIT_LOCK) {
+            existing = context.getAttribute(ATTRIBUTE);
+            context.removeAttribute(ATTRIBUTE);
+        }
+        if (existing instanceof UserDeletionService) {
+            try {
+                ((UserDeletionService) existing).close();
+            } catch (IOException e) {
+                System.err.println("UserDeletionService: failed to save jobs: " + e.getMessage());
+            }
+        }
+    }
+
+    private static int intSetting(ServletContext context, String name, int dflt) {
+        try {
+            String v = System.getenv(name);
+            if (v == null || v.isEmpty()) v = context.getInitParameter(name);
+            return v == null || v.isEmpty() ? dflt : Integer.parseInt(v.trim());
+        } catch (NumberFormatException e) {
+            return dflt;
+        }
+    }
+
+    private static String key(String username) {
+        return username.toLowerCase(Locale.ROOT);
+    }
+
+    private synchronized List<Job> snapshot() {
+        List<Job> out = new ArrayList<>(jobs.size());
+        for (Job j : jobs.values()) out.add(j.copy());
+        return out;
+    }
+
+    /**
+     * Queue the deletion of an account. The caller has already marked it DELETING. Returns the job; a job already
+     * queued or running for this user is returned as is.
+     */
+    public synchronized Job enqueue(String username) {
+        Job j = jobs.get(key(username));
+        if (j != null && (PENDING.equals(j.state) || RUNNING.equals(j.state))) return j.copy();
+        long now = System.currentTimeMillis();
+        j = new Job();
+        j.username = username;
+        j.state = PENDING;
+        j.requestedAt = now;
+        j.updatedAt = now;
+        j.nextAttemptAt = now;
+        jobs.remove(key(username));
+        jobs.put(key(username), j);
+        trimFinished();
+        writer.markDirty();
+        notifyAll();
+        return j.copy();
+    }
+
+    /** Run a FAILED job again now, with a fresh attempt budget. Returns false if there is no failed job. */
+    public synchronized boolean retry(String username) {
+        Job j = jobs.get(key(username));
+        if (j == null || !FAILED.equals(j.state)) return false;
+        j.state = PENDING;
+        j.attempts = 0;
+        j.nextAttemptAt = System.currentTimeMillis();
+        j.updatedAt = j.nextAttemptAt;
+        writer.markDirty();
+        notifyAll();
+        return true;
+    }
+
+    /** All known jobs, most recent first. */
+    public synchronized List<Job> jobs() {
+        List<Job> out = snapshot();
+        Collections.reverse(out);
+        return out;
+    }
+
+    public synchronized Job job(String username) {
+        Job j = jobs.get(key(username));
+        return j == null ? null : j.copy();
+    }
+
+    private void trimFinished() {
+        int finished = 0;
+        for (Job j : jobs.values()) if (DONE.equals(j.state)) finished++;
+        Iterator<Job> it = jobs.values().iterator();
+        while (finished > KEEP_FINISHED && it.hasNext()) {
+            if (DONE.equals(it.next().state)) { it.remove(); finished--; }
+        }
+    }
+
+    private synchronized Job nextDue() throws InterruptedException {
+        while (running) {
+            long now = System.currentTimeMillis();
+            Job due = null;
+            long wakeAt = Long.MAX_VALUE;
+            for (Job j : jobs.values()) {
+                if (!PENDING.equals(j.state)) continue;
+                if (j.nextAttemptAt <= now) { due = j; break; }
+                wakeAt = Math.min(wakeAt, j.nextAttemptAt);
+            }
+            if (due != null) {
+                due.state = RUNNING;
+                due.attempts++;
+                due.updatedAt = now;
+                writer.markDirty();
+                return due;
+            }
+            if (wakeAt == Long.MAX_VALUE) wait();
+            else wait(Math.max(1L, wakeAt - now));
+        }
+        return null;
+    }
+
+    private void workLoop() {
+        while (running) {
+            Job job;
+            try {
+                job = nextDue();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (job == null) return;
+            try {
+                process(job);
+                finish(job, null);
+            } catch (InterruptedException e) {
+                // shutting down: leave it RUNNING, it resumes as PENDING on the next start
+                return;
+            } catch (Throwable t) {
+                if (!running) return;
+                System.err.println("UserDeletionService: deleting " + job.username + " failed: " + t.getMessage());
+                finish(job, t);
+            }
+        }
+    }
+
+    private synchronized void progress(Job job, String phase, long deleted) {
+        job.phase = phase;
+        job.deletedEntries += deleted;
+        job.updatedAt = System.currentTimeMillis();
+        writer.markDirty();
+    }
+
+    private synchronized void finish(Job job, Throwable error) {
+        long now = System.currentTimeMillis();
+        job.updatedAt = now;
+        if (error == null) {
+            job.state = DONE;
+            job.phase = null;
+            job.lastError = null;
+            System.out.println("UserDeletionService: deleted user " + job.username + " (" + job.deletedEntries + " HDFS entries)");
+        } else {
+            job.lastError = error.getMessage() == null ? error.toString() : error.getMessage();
+            if (job.attempts >= MAX_ATTEMPTS) {
+                job.state = FAILED;
+            } else {
+                long backoff = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << Math.min(job.attempts - 1, 20));
+                job.state = PENDING;
+                job.nextAttemptAt = now + backoff;
+            }
+        }
+        trimFinished();
+        writer.markDirty();
+    }
+
+    private void process(Job job) throws Exception {
+        // the home and shares are named after the stored spelling, whatever case the request used
+        User user = UserDao.findByUsername(job.username);
+        if (user == null) return; // the row goes last, so a missing one means an earlier run finished
+        if (!"DELETING".equalsIgnoreCase(user.getStatus())) {
+            throw new IllegalStateException("account " + user.getUsername() + " is no longer marked DELETING");
+        }
+        String username = user.getUsername();
+
+        progress(job, "shares", 0);
+        ShareService shares = registry.shares();
+        for (ShareService.Entry e : shares.listByOwner(username)) {
+            if (e.token != null) registry.shareTokens().revoke(e);
+            shares.remove(e.id);
+        }
+
+        progress(job, "trash", 0);
+        String home = USER_ROOT + "/" + username;
+        List<String> trashed = new ArrayList<>();
+        for (TrashService.Entry e : registry.trash().list()) {
+            if (e.path != null && (e.path.equals(home) || e.path.startsWith(home + "/"))) trashed.add(e.path);
+        }
+        if (!trashed.isEmpty()) registry.trash().removeAll(trashed);
+
+        try (HdfsService hdfs = hdfsFactory.create()) {
+            throttle.acquire();
+            long total = hdfs.countEntries(home);
+            synchronized (this) {
+                job.totalEntries = Math.max(0L, total);
+                job.deletedEntries = 0;
+            }
+            progress(job, "home", 0);
+            if (total > 0) deleteTree(hdfs, job, home, total);
+        }
+
+        progress(job, "account", 0);
+        UserDao.deleteUserByUsername(username);
+    }
+
+    /** Delete path, whose subtree holds entries files and directories, in chunks of at most chunkEntries. */
+    private void deleteTree(HdfsService hdfs, Job job, String path, long entries) throws Exception {
+        if (!running) throw new InterruptedException();
+        if (entries <= chunkEntries) {
+            throttle.acquire();
+            hdfs.delete(path, true);
+            progress(job, "home", entries);
+            return;
+        }
+        throttle.acquire();
+        for (HdfsService.FileEntry child : hdfs.listDirWithMeta(path)) {
+            if (!child.isDirectory) {
+                throttle.acquire();
+                hdfs.delete(child.path, false);
+                progress(job, "home", 1);
+                continue;
+            }
+            throttle.acquire();
+            long n = hdfs.countEntries(child.path);
+            if (n > 0) deleteTree(hdfs, job, child.path, n);
+        }
+        // now empty; anything created meanwhile is small enough to go with it
+        throttle.acquire();
+        hdfs.delete(path, true);
+        progress(job, "home", 1);
+    }
+
+    /** Counters for the admin console. */
+    public synchronized Map<String, Object> status() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        int pending = 0, runningJobs = 0, failed = 0, done = 0;
+        for (Job j : jobs.values()) {
+            if (PENDING.equals(j.state)) pending++;
+            else if (RUNNING.equals(j.state)) runningJobs++;
+            else if (FAILED.equals(j.state)) failed++;
+            else if (DONE.equals(j.state)) done++;
+        }
+        m.put("pending", pending);
+        m.put("running", runningJobs);
+        m.put("failed", failed);
+        m.put("done", done);
+        m.put("chunkEntries", chunkEntries);
+        return m;
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        worker.interrupt();
+        synchronized (this) {
+            notifyAll();
+        }
+        writer.close();
+    }
+}
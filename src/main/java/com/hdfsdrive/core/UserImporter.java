@@ -0,0 +1,285 @@
+package com.hdfsdrive.core;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+
+/**
+ * Bulk user provisioning. Rows (username, password, email, phone) are validated, inserted in chunks of
+ * CHUNK_SIZE with {@link UserDao#createUsers} (one JDBC batch per chunk), and each new user's home directory
+ * /users/&lt;name&gt; is created with owner = the user and mode 700 on a thread pool sharing one admin HDFS client.
+ * The next chunk is read and inserted while the previous chunk's directories are being created; a row's result is
+ * reported once its directory is done, in input order.
+ */
+public class UserImporter implements AutoCloseable {
+    public static final int CHUNK_SIZE = 500;
+    public static final int DEFAULT_THREADS = 16;
+    public static final String USER_ROOT = "/users";
+
+    // also a valid single HDFS path component (no leading '.' or '-', so never "." or "..")
+    private static final Pattern USERNAME = Pattern.compile("[A-Za-z0-9_][A-Za-z0-9_.-]{0,99}");
+    private static final String[] DEFAULT_COLUMNS = {"username", "password", "email", "phone"};
+
+    /** Receives one result map per input row, then the summary. */
+    public interface ResultSink {
+        void accept(Map<String, Object> result) throws IOException;
+    }
+
+    private final HdfsService hdfs;
+    private final ExecutorService pool;
+
+    public UserImporter(HdfsService hdfs, int threads) {
+        this.hdfs = hdfs;
+        this.pool = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread t = new Thread(r, "user-import-home");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    private static final class Row {
+        final int number;
+        final User user;
+        final Map<String, Object> result = new LinkedHashMap<>();
+        Future<?> home;
+
+        Row(int number, User user) {
+            this.number = number;
+            this.user = user;
+        }
+    }
+
+    /** Import all rows; results are passed to the sink as they complete. Returns the summary. */
+    public Map<String, Object> run(Iterator<Map<String, Object>> rows, ResultSink sink) throws IOException, SQLException {
+        long t0 = System.currentTimeMillis();
+        Set<String> seen = new HashSet<>();
+        int[] counts = new int[4]; // rows, created, skipped, homeFailed
+        List<Row> pending = new ArrayList<>();
+        int number = 0;
+        try {
+            while (rows.hasNext()) {
+                List<Row> chunk = new ArrayList<>(CHUNK_SIZE);
+                List<Row> invalid = new ArrayList<>();
+                while (rows.hasNext() && chunk.size() < CHUNK_SIZE) {
+                    Map<String, Object> in = rows.next();
+                    number++;
+                    User u = new User(0L, str(in.get("username")), str(in.get("password")));
+                    u.setEmail(str(in.get("email")));
+                    u.setPhone(str(in.get("phone")));
+                    Row row = new Row(number, u);
+                    String problem = validate(u);
+                    if (problem == null && !seen.add(u.getUsername().toLowerCase(Locale.ROOT))) problem = "文件中用户名重复";
+                    if (problem != null) {
+                        row.result.put("status", "skipped");
+                        row.result.put("message", problem);
+                        invalid.add(row);
+                    } else {
+                        chunk.add(row);
+                    }
+                }
+                insert(chunk);
+                // homes of this chunk are created while the previous chunk's results are written
+                drain(pending, sink, counts);
+                pending.addAll(invalid);
+                pending.addAll(chunk);
+                pending.sort(Comparator.comparingInt(r -> r.number));
+            }
+        } catch (UncheckedIOException e) {
+            // malformed input: report what was imported before the bad row, then fail
+            drain(pending, sink, counts);
+            throw e.getCause();
+        }
+        drain(pending, sink, counts);
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("summary", true);
+        summary.put("rows", counts[0]);
+        summary.put("created", counts[1]);
+        summary.put("skipped", counts[2]);
+        summary.put("homeFailed", counts[3]);
+        summary.put("millis", System.currentTimeMillis() - t0);
+        sink.accept(summary);
+        return summary;
+    }
+
+    private void insert(List<Row> chunk) throws SQLException {
+        if (chunk.isEmpty()) return;
+        List<User> users = new ArrayList<>(chunk.size());
+        for (Row r : chunk) users.add(r.user);
+        String[] errors = new String[users.size()];
+        long[] ids = UserDao.createUsers(users, errors);
+        for (int i = 0; i < chunk.size(); i++) {
+            Row r = chunk.get(i);
+            if (errors[i] != null) {
+                r.result.put("status", "skipped");
+                r.result.put("message", errors[i]);
+                continue;
+            }
+            r.result.put("status", "created");
+            if (ids[i] > 0) r.result.put("id", ids[i]);
+            String username = r.user.getUsername();
+            r.home = pool.submit(() -> {
+                createHome(username);
+                return null;
+            });
+        }
+    }
+
+    private void createHome(String username) throws IOException {
+        String home = USER_ROOT + "/" + username;
+        hdfs.mkdirs(home);
+        hdfs.setOwner(home, username, null);
+        hdfs.setPermissionOctal(home, "700");
+    }
+
+    private static void drain(List<Row> pending, ResultSink sink, int[] counts) throws IOException {
+        for (Row r : pending) {
+            if (r.home != null) {
+                try {
+                    r.home.get();
+                    r.result.put("home", true);
+                } catch (Exception e) {
+                    Throwable cause = e.getCause() == null ? e : e.getCause();
+                    r.result.put("home", false);
+                    r.result.put("message", "HDFS目录创建失败: " + cause.getMessage());
+                    counts[3]++;
+                }
+            }
+            counts[0]++;
+            if ("created".equals(r.result.get("status"))) counts[1]++;
+            else counts[2]++;
+            Map<String, Object> out = new LinkedHashMap<>();
+            out.put("row", r.number);
+            out.put("username", r.user.getUsername());
+            out.putAll(r.result);
+            sink.accept(out);
+        }
+        pending.clear();
+    }
+
+    private static String validate(User u) {
+        if (u.getUsername() == null || !USERNAME.matcher(u.getUsername()).matches()) return "用户名无效（1-100 个字母、数字、_ . -）";
+        if (u.getPassword() == null || u.getPassword().length() > 255) return "密码为必填，且不超过 255 个字符";
+        if (u.getEmail() != null && (u.getEmail().length() > 255 || u.getEmail().indexOf('@') <= 0)) return "邮箱格式无效";
+        if (u.getPhone() != null && u.getPhone().length() > 50) return "手机号过长";
+        return null;
+    }
+
+    private static String str(Object o) {
+        if (o == null) return null;
+        String s = String.valueOf(o).trim();
+        return s.isEmpty() ? null : s;
+    }
+
+    @Override
+    public void close() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * Rows from CSV, one record per line. If the first line names the columns (contains "username") it is used as
+     * the header, otherwise the columns are username,password,email,phone. Fields may be double-quoted, with ""
+     * for a literal quote; quoted fields cannot span lines.
+     */
+    public static Iterator<Map<String, Object>> csvRows(Reader reader) {
+        BufferedReader in = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+        return new Iterator<Map<String, Object>>() {
+            String[] columns;
+            List<String> next;
+
+            private List<String> advance() {
+                try {
+                    String line;
+                    while ((line = in.readLine()) != null) {
+                        if (line.trim().isEmpty()) continue;
+                        List<String> fields = splitCsv(line);
+                        if (columns == null) {
+                            if (fields.stream().anyMatch(f -> "username".equalsIgnoreCase(f.trim()))) {
+                                columns = new String[fields.size()];
+                                for (int i = 0; i < columns.length; i++) columns[i] = fields.get(i).trim().toLowerCase(Locale.ROOT);
+                                continue;
+                            }
+                            columns = DEFAULT_COLUMNS;
+                        }
+                        return fields;
+                    }
+                    return null;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                if (next == null) next = advance();
+                return next != null;
+            }
+
+            @Override
+            public Map<String, Object> next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                Map<String, Object> m = new HashMap<>();
+                for (int i = 0; i < columns.length && i < next.size(); i++) m.put(columns[i], next.get(i));
+                next = null;
+                return m;
+            }
+        };
+    }
+
+    static List<String> splitCsv(String line) {
+        List<String> out = new ArrayList<>();
+        StringBuilder sb = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') { sb.append('"'); i++; }
+                else if (c == '"') quoted = false;
+                else sb.append(c);
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                out.add(sb.toString());
+                sb.setLength(0);
+            } else {
+                sb.append(c);
+            }
+        }
+        out.add(sb.toString());
+        return out;
+    }
+
+    /** Rows from a JSON array of objects, or from objects one after another (NDJSON), read incrementally. */
+    public static Iterator<Map<String, Object>> jsonRows(ObjectMapper mapper, InputStream in) throws IOException {
+        MappingIterator<Map<String, Object>> it = mapper.readerFor(Map.class).readValues(in);
+        return new Iterator<Map<String, Object>>() {
+            @Override
+            public boolean hasNext() {
+                try {
+                    return it.hasNextValue();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            @Override
+            public Map<String, Object> next() {
+                try {
+                    return it.nextValue();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,102 @@
+package com.hdfsdrive.core;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Write-behind persistence for an in-memory JSON store.
+ * Mutations call {@link #markDirty()}; the first mark schedules a flush at most maxDelayMillis later, and any
+ * further marks before that flush are coalesced into it. Flushes write a snapshot to a temp file and atomically
+ * rename it over the store, so readers of the file never see a partial write.
+ */
+public class WriteBehindWriter implements Closeable {
+    /** Default upper bound between a mutation and its write to disk, for the metadata stores under WEB-INF. */
+    public static final long DEFAULT_FLUSH_DELAY_MILLIS = 200L;
+
+    private static final ScheduledExecutorService FLUSHER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "metadata-flush-thread");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /** Persists the store; runs on the flush thread, or the caller's for {@link #flush()} and {@link #close()}. */
+    public interface Flush {
+        void run() throws IOException;
+    }
+
+    private final File file;
+    private final Flush action;
+    private final long maxDelayMillis;
+    private final AtomicBoolean pending = new AtomicBoolean(false);
+
+    /**
+     * @param snapshot returns a consistent copy of the store contents; called on the flush thread
+     */
+    public WriteBehindWriter(File file, ObjectMapper mapper, Supplier<Object> snapshot, long maxDelayMillis) {
+        this(file, () -> writeAtomically(file, mapper, snapshot.get()), maxDelayMillis);
+    }
+
+    /**
+     * Coalesce flushes of a store that persists itself some other way than one whole-file snapshot, e.g. by
+     * appending what changed. Flushes never overlap.
+     */
+    public WriteBehindWriter(File file, Flush action, long maxDelayMillis) {
+        this.file = file;
+        this.action = action;
+        this.maxDelayMillis = Math.max(0L, maxDelayMillis);
+    }
+
+    public void markDirty() {
+        // plain read first: hot callers mark an already-dirty store without a CAS
+        if (!pending.get() && pending.compareAndSet(false, true)) {
+            FLUSHER.schedule(this::flushQuietly, maxDelayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public synchronized void flush() throws IOException {
+        // clear first so a mutation racing with this flush schedules another one
+        pending.set(false);
+        action.run();
+    }
+
+    /**
+     * Write data as JSON to a temp file and rename it over file, so readers never see a partial write.
+     */
+    public static void writeAtomically(File file, ObjectMapper mapper, Object data) throws IOException {
+        File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+        mapper.writeValue(tmp, data);
+        try {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException atomicUnsupported) {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            System.err.println("WriteBehindWriter: failed to persist " + file + ": " + e.getMessage());
+            // keep the data dirty so the next mutation (or close) retries
+            markDirty();
+        }
+    }
+
+    /**
+     * Flush any pending changes synchronously.
+     */
+    @Override
+    public void close() throws IOException {
+        if (pending.get()) flush();
+    }
+}
@@ -0,0 +1,64 @@
+package com.hdfsdrive.web.admin;
+
+import com.hdfsdrive.analytics.AuditAnalyticsRunner;
+import com.hdfsdrive.web.common.AbstractHdfsServlet;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Admin dashboard data computed from the archived audit log: GET returns the latest summary (per-user daily
+ * operations, upload/download volume, most shared paths), GET ?status=1 the run and archive state,
+ * POST action=run starts a new run in the background.
+ */
+@WebServlet(urlPatterns = {"/api/admin/analytics"})
+public class AdminAnalyticsServlet extends AbstractHdfsServlet {
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        if (!isAdmin(req)) {
+            resp.setStatus(HttpServletResponse.SC_FORBIDDEN);
+            sendJson(resp, mapOf("success", false, "message", "Admin only"));
+            return;
+        }
+        AuditAnalyticsRunner runner = AuditAnalyticsRunner.get(getServletContext());
+        if (runner == null) {
+            sendError(resp, "Analytics not available");
+            return;
+        }
+        if ("1".equals(req.getParameter("status"))) {
+            sendJson(resp, mapOf("success", true, "status", runner.status()));
+            return;
+        }
+        Map<String, Object> summary = runner.summary();
+        sendJson(resp, mapOf("success", summary != null, "summary", summary,
+                "message", summary == null ? "尚未生成统计，请稍后再试" : null));
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        if (!isAdmin(req)) {
+            resp.setStatus(HttpServletResponse.SC_FORBIDDEN);
+            sendJson(resp, mapOf("success", false, "message", "Admin only"));
+            return;
+        }
+        if (!"run".equals(req.getParameter("action"))) {
+            sendError(resp, "Invalid action");
+            return;
+        }
+        AuditAnalyticsRunner runner = AuditAnalyticsRunner.get(getServletContext());
+        if (runner == null) {
+            sendError(resp, "Analytics not available");
+            return;
+        }
+        boolean started = runner.trigger();
+        sendJson(resp, mapOf("success", started, "message", started ? "started" : "already running"));
+    }
+
+    private static Map<String,Object> mapOf(Object... kv){ Map<String,Object> m=new HashMap<>(); for(int i=0;i+1<kv.length;i+=2) m.put(String.valueOf(kv[i]), kv[i+1]); return m; }
+}
@@ -0,0 +1,35 @@
+package com.hdfsdrive.web.admin;
+
+import com.hdfsdrive.core.Database;
+import com.hdfsdrive.core.SchemaMigrator;
+import com.hdfsdrive.core.UserDao;
+import com.hdfsdrive.web.common.AbstractHdfsServlet;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Admin view of the shared connection pool: GET returns active/idle connections, waits, leaks reclaimed and
+ * prepared-statement cache hits, the schema version and what the startup migration did, and the user cache counters.
+ */
+@WebServlet(urlPatterns = {"/api/admin/db"})
+public class AdminDatabaseServlet extends AbstractHdfsServlet {
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        if (!isAdmin(req)) {
+            resp.setStatus(HttpServletResponse.SC_FORBIDDEN);
+            sendJson(resp, mapOf("success", false, "message", "Admin only"));
+            return;
+        }
+        sendJson(resp, mapOf("success", true, "pool", Database.metrics(), "schema", SchemaMigrator.status(),
+                "userCache", UserDao.cacheMetrics()));
+    }
+
+    private static Map<String,Object> mapOf(Object... kv){ Map<String,Object> m=new HashMap<>(); for(int i=0;i+1<kv.length;i+=2) m.put(String.valueOf(kv[i]), kv[i+1]); return m; }
+}
@@ -1,79 +1,204 @@
 package com.hdfsdrive.web.admin;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hdfsdrive.core.DuplicateScanner;
 import com.hdfsdrive.core.HdfsService;
+import com.hdfsdrive.core.NamespaceExplorer;
+import com.hdfsdrive.core.NamespaceSnapshot;
+import com.hdfsdrive.web.common.AbstractHdfsServlet;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.annotation.WebServlet;
-import jakarta.servlet.http.HttpServlet;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
-import org.apache.hadoop.conf.Configuration;
 
 import java.io.IOException;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Admin namespace explorer. Reads are served from the periodically refreshed namespace snapshot
+ * ({@link NamespaceExplorer}); a directory that is not in the snapshot yet is listed live from HDFS.
+ * <ul>
+ *   <li>GET ?path=&amp;sort=name|size|mtime&amp;offset=&amp;limit= : children of a directory, with recursive size,
+ *       file and directory counts for subdirectories</li>
+ *   <li>GET ?view=owners : per-owner file count and bytes</li>
+ *   <li>GET ?view=top&amp;by=size|age&amp;n= : largest / oldest files</li>
+ *   <li>GET ?view=files&amp;owner=&amp;prefix=&amp;minSize=&amp;maxSize=&amp;olderThanDays=&amp;newerThanDays=&amp;sort=size|mtime :
+ *       filtered files, paged</li>
+ *   <li>GET ?view=status : snapshot state; POST action=refresh rebuilds it</li>
+ * </ul>
+ */
 @WebServlet(urlPatterns = {"/api/admin/files"})
-public class AdminFilesServlet extends HttpServlet {
-    private static final ObjectMapper mapper = new ObjectMapper();
-    private static final List<Map<String,Object>> files = Collections.synchronizedList(new ArrayList<>());
-    static {
-        files.add(mapOf("path","/user1/docs/readme.txt","owner","user1","size",1024,"mtime",System.currentTimeMillis()-3600*1000));
-        files.add(mapOf("path","/user2/photos/img1.jpg","owner","user2","size",204800,"mtime",System.currentTimeMillis()-86400*1000));
-    }
+public class AdminFilesServlet extends AbstractHdfsServlet {
+    private static final int DEFAULT_LIMIT = 1000;
+    private static final int MAX_LIMIT = 5000;
 
     @Override
     protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
-        // try HDFS first (best-effort). HDFS URI and user are hard-coded for now; in production read from config.
-        try {
-            HdfsService hs = new HdfsService("hdfs://node1:8020", "root", new Configuration());
+        if (!isAdmin(req)) {
+            resp.setStatus(HttpServletResponse.SC_FORBIDDEN);
+            sendJson(resp, mapOf("success", false, "message", "Admin only"));
+            return;
+        }
+        // ?duplicates=1 returns the duplicate scan progress and the last finished report
+        if ("1".equals(req.getParameter("duplicates"))) {
+            DuplicateScanner scanner = duplicateScanner();
+            if (scanner == null) { sendError(resp, "duplicate scan not available"); return; }
+            Map<String,Object> report = scanner.report();
+            sendJson(resp, mapOf("success", true, "status", scanner.status(), "report", report));
+            return;
+        }
+
+        NamespaceExplorer explorer = explorer();
+        NamespaceSnapshot snap = explorer.snapshot();
+        String view = req.getParameter("view");
+        int offset = intParam(req, "offset", 0, 0, Integer.MAX_VALUE);
+        int limit = intParam(req, "limit", DEFAULT_LIMIT, 1, MAX_LIMIT);
+        if ("status".equals(view)) {
+            sendJson(resp, mapOf("success", true, "status", explorer.status()));
+            return;
+        }
+        if (view != null && snap == null) {
+            sendError(resp, "快照尚未生成，请稍后再试");
+            return;
+        }
+        if ("owners".equals(view)) {
+            sendJson(resp, mapOf("success", true, "items", snap.owners(), "snapshotAt", snap.builtAt()));
+            return;
+        }
+        if ("top".equals(view)) {
+            int n = intParam(req, "n", 100, 1, NamespaceSnapshot.TOP_N);
+            sendJson(resp, mapOf("success", true, "items", snap.top("age".equals(req.getParameter("by")), n), "snapshotAt", snap.builtAt()));
+            return;
+        }
+        if ("files".equals(view)) {
+            NamespaceSnapshot.FileFilter f = new NamespaceSnapshot.FileFilter();
+            f.owner = emptyToNull(req.getParameter("owner"));
+            f.prefix = emptyToNull(req.getParameter("prefix"));
             try {
-                // list root /users or configurable path; use "/" if not available
-                String start = req.getParameter("path");
-                if (start == null || start.trim().isEmpty()) start = "/";
-                List<HdfsService.FileEntry> entries = hs.listDirWithMeta(start);
-                List<Map<String,Object>> out = entries.stream().map(fe -> {
-                    Map<String,Object> m = new HashMap<>();
-                    m.put("path", fe.path);
-                    // derive owner from path (/users/...) if possible
-                    String owner = "";
-                    try { String[] parts = fe.path.split("/"); if (parts.length > 1 && parts[1] != null) owner = parts[1]; } catch (Exception ignore) { }
-                    m.put("owner", owner);
-                    m.put("size", fe.size);
-                    m.put("isDirectory", fe.isDirectory);
-                    m.put("mtime", fe.modificationTime);
-                    return m;
-                }).collect(Collectors.toList());
-                sendJson(resp, mapOf("items", out));
-            } finally {
-                try { hs.close(); } catch (Exception ignore) {}
+                f.minSize = longParam(req, "minSize");
+                f.maxSize = longParam(req, "maxSize");
+                long now = System.currentTimeMillis();
+                long older = longParam(req, "olderThanDays");
+                long newer = longParam(req, "newerThanDays");
+                if (older >= 0) f.modifiedBefore = now - TimeUnit.DAYS.toMillis(older);
+                if (newer >= 0) f.modifiedAfter = now - TimeUnit.DAYS.toMillis(newer);
+            } catch (NumberFormatException e) {
+                sendError(resp, "invalid number");
+                return;
             }
+            NamespaceSnapshot.Page page = snap.files(f, req.getParameter("sort"), offset, limit);
+            sendJson(resp, mapOf("success", true, "items", page.items, "total", page.total, "offset", offset, "snapshotAt", snap.builtAt()));
+            return;
+        }
+        if (view != null) {
+            sendError(resp, "Invalid view");
+            return;
+        }
+
+        String start = req.getParameter("path");
+        if (start == null || start.trim().isEmpty()) start = "/";
+        NamespaceSnapshot.Page page = snap == null ? null : snap.list(start, req.getParameter("sort"), offset, limit);
+        if (page != null) {
+            sendJson(resp, mapOf("items", page.items, "total", page.total, "offset", offset,
+                    "directory", snap.summary(start), "snapshotAt", snap.builtAt()));
+            return;
+        }
+        // not in the snapshot (not built yet, or created since): list live, without recursive totals
+        HdfsService hs = null;
+        try {
+            hs = createAdminHdfsService();
+            List<HdfsService.FileEntry> entries = hs.listDirWithMeta(start);
+            List<Map<String,Object>> out = new ArrayList<>();
+            for (int i = offset; i < entries.size() && out.size() < limit; i++) {
+                HdfsService.FileEntry fe = entries.get(i);
+                out.add(mapOf("path", fe.path, "owner", fe.owner, "size", fe.size, "isDirectory", fe.isDirectory, "mtime", fe.modificationTime));
+            }
+            sendJson(resp, mapOf("items", out, "total", entries.size(), "offset", offset));
         } catch (Exception e) {
-            // HDFS access failed -> fallback to in-memory sample
-            sendJson(resp, mapOf("items", files));
+            sendError(resp, "List failed: " + e.getMessage());
+        } finally {
+            if (hs != null) try { hs.close(); } catch (Exception ignore) {}
         }
     }
 
+    /**
+     * action=refresh rebuilds the namespace snapshot;
+     * action=scan-duplicates [&verify=1] starts a throttled background duplicate scan of /users (resuming from
+     * cached checksums), action=cancel-duplicates stops it.
+     */
+    @Override
+    protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        if (!isAdmin(req)) {
+            resp.setStatus(HttpServletResponse.SC_FORBIDDEN);
+            sendJson(resp, mapOf("success", false, "message", "Admin only"));
+            return;
+        }
+        String action = req.getParameter("action");
+        if ("refresh".equals(action)) {
+            boolean started = explorer().refresh();
+            sendJson(resp, mapOf("success", started, "message", started ? "started" : "already refreshing"));
+            return;
+        }
+        DuplicateScanner scanner = duplicateScanner();
+        if (scanner == null) { sendError(resp, "duplicate scan not available"); return; }
+        if ("scan-duplicates".equals(action)) {
+            boolean started = scanner.start("1".equals(req.getParameter("verify")));
+            sendJson(resp, mapOf("success", started, "message", started ? "started" : "already running", "status", scanner.status()));
+        } else if ("cancel-duplicates".equals(action)) {
+            scanner.cancel();
+            sendJson(resp, mapOf("success", true, "status", scanner.status()));
+        } else {
+            sendError(resp, "Invalid action");
+        }
+    }
+
+    @Override
+    public void destroy() {
+        DuplicateScanner.shutdown(getServletContext());
+        NamespaceExplorer.shutdown(getServletContext());
+    }
+
+    private DuplicateScanner duplicateScanner() {
+        return DuplicateScanner.get(getServletContext(), this::createAdminHdfsService);
+    }
+
+    private NamespaceExplorer explorer() {
+        return NamespaceExplorer.get(getServletContext(), this::createAdminHdfsService);
+    }
+
     @Override
     protected void doDelete(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        if (!isAdmin(req)) {
+            resp.setStatus(HttpServletResponse.SC_FORBIDDEN);
+            sendJson(resp, mapOf("success", false, "message", "Admin only"));
+            return;
+        }
         String path = req.getParameter("path");
-        if (path == null) { sendJson(resp, mapOf("success", false, "message", "path required")); return; }
-        // try HDFS delete first
+        if (path == null) { sendError(resp, "path required"); return; }
+        HdfsService hs = null;
         try {
-            HdfsService hs = new HdfsService("hdfs://node1:8020", "root", new Configuration());
-            try {
-                boolean ok = hs.delete(path, false);
-                sendJson(resp, mapOf("success", ok));
-            } finally {
-                try { hs.close(); } catch (Exception ignore) {}
-            }
+            hs = createAdminHdfsService();
+            boolean ok = hs.delete(path, false);
+            sendJson(resp, mapOf("success", ok));
         } catch (Exception e) {
-            // fallback to in-memory
-            boolean removed = files.removeIf(f -> path.equals(f.get("path")));
-            sendJson(resp, mapOf("success", removed));
+            sendError(resp, "Delete failed: " + e.getMessage());
+        } finally {
+            if (hs != null) try { hs.close(); } catch (Exception ignore) {}
         }
     }
 
+    private static int intParam(HttpServletRequest req, String name, int dflt, int min, int max) {
+        try { return Math.max(min, Math.min(max, Integer.parseInt(req.getParameter(name)))); } catch (Exception e) { return dflt; }
+    }
+
+    private static long longParam(HttpServletRequest req, String name) {
+        String v = req.getParameter(name);
+        return v == null || v.trim().isEmpty() ? -1L : Long.parseLong(v.trim());
+    }
+
+    private static String emptyToNull(String v) {
+        return v == null || v.trim().isEmpty() ? null : v.trim();
+    }
+
     private static Map<String,Object> mapOf(Object... kv){ Map<String,Object> m=new HashMap<>(); for(int i=0;i+1<kv.length;i+=2) m.put(String.valueOf(kv[i]), kv[i+1]); return m; }
-    private void sendJson(HttpServletResponse resp, Object data) throws IOException { resp.setContentType("application/json;charset=UTF-8"); mapper.writeValue(resp.getWriter(), data); }
 }
@@ -1,9 +1,11 @@
 package com.hdfsdrive.web.admin;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hdfsdrive.core.AuditLog;
+import com.hdfsdrive.core.AuditLogIndex;
+import com.hdfsdrive.core.AuditLogSegments;
+import com.hdfsdrive.web.common.AbstractHdfsServlet;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.annotation.WebServlet;
-import jakarta.servlet.http.HttpServlet;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 
@@ -11,8 +13,14 @@ import java.io.IOException;
 import java.util.*;
 
 @WebServlet(urlPatterns = {"/api/admin/logs"})
-public class AdminLogsServlet extends HttpServlet {
-    private static final ObjectMapper mapper = new ObjectMapper();
+public class AdminLogsServlet extends AbstractHdfsServlet {
+    private static final int DEFAULT_LIMIT = 200;
+    private static final int MAX_LIMIT = 1000;
+    /** Closed segments whose index is kept in memory (about 1-2 MB each for 16 MB segments). */
+    private static final int MAX_INDEXED_SEGMENTS = 32;
+    private final AuditLogIndex index = new AuditLogIndex(MAX_INDEXED_SEGMENTS);
+    private static final java.time.format.DateTimeFormatter TIME_FORMAT =
+            java.time.format.DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
     private static final List<Map<String,Object>> logs = Collections.synchronizedList(new ArrayList<>());
     static {
         logs.add(mapOf("time", System.currentTimeMillis()-60000, "user", "user1", "action", "上传", "detail", "/user1/docs/readme.txt"));
@@ -21,70 +29,71 @@ public class AdminLogsServlet extends HttpServlet {
 
     @Override
     protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
-        // Attempt to read WEB-INF/logs/admin-operations.log
-        List<Map<String,Object>> out = new ArrayList<>();
-        boolean loadedFromFile = false;
+        if (!isAdmin(req)) {
+            resp.setStatus(HttpServletResponse.SC_FORBIDDEN);
+            sendJson(resp, mapOf("success", false, "message", "Admin only"));
+            return;
+        }
+        // ?stats=1 reports the async audit appender counters instead of log lines
+        if ("1".equals(req.getParameter("stats"))) {
+            AuditLog audit = AuditLog.get(getServletContext());
+            sendJson(resp, mapOf("success", audit != null, "metrics", audit == null ? Collections.emptyMap() : audit.metrics(),
+                    "index", index.stats()));
+            return;
+        }
+
+        // Pages newest first: ?limit=N (default 200), ?before=<nextCursor of the previous page>,
+        // optional ?from= / ?to= as epoch millis or "yyyy-MM-dd[ HH:mm:ss]", and exact ?user= / ?action= or
+        // ?path= prefix (whole path components) filters answered from the inverted index
+        int limit = DEFAULT_LIMIT;
+        try { limit = Math.max(1, Math.min(MAX_LIMIT, Integer.parseInt(req.getParameter("limit")))); } catch (Exception ignore) {}
+        long from, to;
         try {
-            String logsDir = getServletContext().getRealPath("/WEB-INF/logs");
-            if (logsDir != null) {
-                java.io.File f = new java.io.File(logsDir, "admin-operations.log");
-                if (f.exists() && f.canRead()) {
-                    try (java.io.BufferedReader br = new java.io.BufferedReader(new java.io.InputStreamReader(new java.io.FileInputStream(f), "UTF-8"))) {
-                        String line;
-                        while ((line = br.readLine()) != null) {
-                            if (line.trim().isEmpty()) continue; // skip blank lines
-                            // expect format: yyyy-MM-dd HH:mm:ss\tuser=...\taction=...\tpath=...\tinfo=...
-                            String[] parts = line.split("\t");
-                            Map<String,Object> m = new HashMap<>();
-                            try {
-                                m.put("raw", line);
-                                // parse timestamp
-                                if (parts.length > 0) {
-                                    m.put("timeText", parts[0]);
-                                    try {
-                                        m.put("time", new java.text.SimpleDateFormat("yyyy-MM-dd HH:mm:ss").parse(parts[0]).getTime());
-                                    } catch (java.text.ParseException e) {
-                                        // if parsing fails, this log entry might not be sorted correctly
-                                    }
-                                }
-                                for (int i = 1; i < parts.length; i++) {
-                                    String p = parts[i];
-                                    int eq = p.indexOf('=');
-                                    if (eq > 0) {
-                                        String k = p.substring(0, eq);
-                                        String v = p.substring(eq + 1);
-                                        m.put(k, v);
-                                    }
-                                }
-                                // basic filter: ignore lines that do not have action
-                                if (!m.containsKey("action")) continue;
-                                out.add(m);
-                            } catch (Exception ignore) {}
-                        }
-                    }
-                    loadedFromFile = true;
-                }
-            }
-        } catch (Throwable t) {
-            // ignore and fall back to default mock
+            from = parseTime(req.getParameter("from"), Long.MIN_VALUE, false);
+            to = parseTime(req.getParameter("to"), Long.MAX_VALUE, true);
+        } catch (Exception e) {
+            resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            sendJson(resp, mapOf("success", false, "message", "invalid from/to"));
+            return;
         }
 
-        if (!loadedFromFile) {
-            out.addAll(logs);
+        String logsDir = getServletContext().getRealPath("/WEB-INF/logs");
+        // creating the appender migrates a pre-rotation admin-operations.log into a segment
+        AuditLog.get(getServletContext());
+        java.io.File dir = logsDir == null ? null : new java.io.File(logsDir);
+        if (dir == null || AuditLogSegments.segments(dir).isEmpty()) {
+            sendJson(resp, mapOf("items", new ArrayList<>(logs)));
+            return;
+        }
+        try {
+            AuditLogIndex.Filter filter = new AuditLogIndex.Filter();
+            filter.user = emptyToNull(req.getParameter("user"));
+            filter.action = emptyToNull(req.getParameter("action"));
+            filter.pathPrefix = emptyToNull(req.getParameter("path"));
+            AuditLogSegments.Page page = index.search(dir, filter, from, to, req.getParameter("before"), limit);
+            sendJson(resp, mapOf("items", page.items, "nextCursor", page.nextCursor));
+        } catch (IllegalArgumentException e) {
+            resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            sendJson(resp, mapOf("success", false, "message", e.getMessage()));
         }
+    }
 
-        // Sort logs by time descending, gracefully handling missing time field
-        out.sort((a, b) -> {
-            Object timeAObj = a.get("time");
-            Object timeBObj = b.get("time");
-            long timeA = (timeAObj instanceof Long) ? (Long) timeAObj : 0;
-            long timeB = (timeBObj instanceof Long) ? (Long) timeBObj : 0;
-            return Long.compare(timeB, timeA);
-        });
+    private static String emptyToNull(String v) {
+        return v == null || v.trim().isEmpty() ? null : v.trim();
+    }
 
-        sendJson(resp, mapOf("items", out));
+    private static long parseTime(String v, long dflt, boolean endOfRange) {
+        if (v == null || v.trim().isEmpty()) return dflt;
+        v = v.trim();
+        if (v.chars().allMatch(Character::isDigit)) return Long.parseLong(v);
+        java.time.ZoneId zone = java.time.ZoneId.systemDefault();
+        if (v.length() == 10) {
+            java.time.LocalDate d = java.time.LocalDate.parse(v);
+            return endOfRange ? d.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli() - 1
+                    : d.atStartOfDay(zone).toInstant().toEpochMilli();
+        }
+        return java.time.LocalDateTime.parse(v, TIME_FORMAT).atZone(zone).toInstant().toEpochMilli();
     }
 
     private static Map<String,Object> mapOf(Object... kv){ Map<String,Object> m=new HashMap<>(); for(int i=0;i+1<kv.length;i+=2) m.put(String.valueOf(kv[i]), kv[i+1]); return m; }
-    private void sendJson(HttpServletResponse resp, Object data) throws IOException { resp.setContentType("application/json;charset=UTF-8"); mapper.writeValue(resp.getWriter(), data); }
 }
@@ -1,32 +1,75 @@
 package com.hdfsdrive.web.admin;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hdfsdrive.core.AvatarStore;
+import com.hdfsdrive.core.User;
 import com.hdfsdrive.core.UserDao;
 import com.hdfsdrive.core.HdfsService;
+import com.hdfsdrive.core.UserDeletionService;
+import com.hdfsdrive.core.UserImporter;
+import com.hdfsdrive.web.common.AbstractHdfsServlet;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.annotation.WebServlet;
-import jakarta.servlet.http.HttpServlet;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
-import org.apache.hadoop.conf.Configuration;
 
 import java.io.IOException;
+import java.io.PrintWriter;
 import java.sql.SQLException;
 import java.util.*;
 
 @WebServlet(urlPatterns = {"/api/admin/users","/api/admin/users/*"})
-public class AdminUsersServlet extends HttpServlet {
-    private static final ObjectMapper mapper = new ObjectMapper();
-    private static final String HDFS_URI = "hdfs://node1:8020";
-    private static final String HDFS_ADMIN_USER = "root";
-    private static final String USER_ROOT = "/users";
+public class AdminUsersServlet extends AbstractHdfsServlet {
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 500;
 
+    /**
+     * GET ?limit=&amp;before=&amp;q= : one page of users, newest first. before is the nextBefore of the previous
+     * page; q is a username / email / phone prefix. total is the (cached) number of all users and is omitted when
+     * searching.
+     */
     @Override
     protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        if (req.getParameter("deletions") != null) {
+            // GET ?deletions=1 : background deletion jobs, most recent first
+            if (!isAdmin(req)) {
+                resp.setStatus(HttpServletResponse.SC_FORBIDDEN);
+                sendJson(resp, mapOf("success", false, "message", "Admin only"));
+                return;
+            }
+            UserDeletionService deletions = UserDeletionService.get(getServletContext());
+            if (deletions == null) {
+                sendJson(resp, mapOf("success", false, "message", "用户删除服务未启动"));
+                return;
+            }
+            sendJson(resp, mapOf("success", true, "jobs", deletions.jobs(), "status", deletions.status()));
+            return;
+        }
+        int limit = DEFAULT_PAGE_SIZE;
+        Long before = null;
         try {
-            List<Map<String,Object>> dbUsers = UserDao.listUsers();
+            String l = req.getParameter("limit");
+            if (l != null && !l.isEmpty()) limit = Math.max(1, Math.min(MAX_PAGE_SIZE, Integer.parseInt(l)));
+            String b = req.getParameter("before");
+            if (b != null && !b.isEmpty()) before = Long.parseLong(b);
+        } catch (NumberFormatException e) {
+            sendJson(resp, mapOf("success", false, "message", "invalid limit/before"));
+            return;
+        }
+        String q = req.getParameter("q");
+        boolean searching = q != null && !q.trim().isEmpty();
+        try {
+            // one extra row tells whether another page exists
+            List<Map<String,Object>> dbUsers = UserDao.listUsersPage(before, q, limit + 1);
+            boolean hasMore = dbUsers.size() > limit;
+            if (hasMore) dbUsers = dbUsers.subList(0, limit);
+            for (Map<String,Object> u : dbUsers) {
+                u.put("avatar", AvatarStore.url(req.getContextPath(), (String) u.get("avatar"), AvatarStore.SMALL_SIZE));
+            }
             Map<String,Object> out = new HashMap<>();
             out.put("users", dbUsers);
+            out.put("hasMore", hasMore);
+            out.put("nextBefore", hasMore ? dbUsers.get(dbUsers.size() - 1).get("id") : null);
+            if (!searching) out.put("total", UserDao.countUsers());
             sendJson(resp, out);
         } catch (SQLException e) {
             // return failure payload
@@ -44,7 +87,24 @@ public class AdminUsersServlet extends HttpServlet {
         // support two behaviors:
         // - POST /api/admin/users -> create new user (body JSON: username, email, password, role)
         // - POST /api/admin/users/reset?username=... -> reset password for username (body optional newPassword)
+        // - POST /api/admin/users/retry-deletion?username=... -> run a failed background deletion again
         String pathInfo = req.getPathInfo();
+        if (pathInfo != null && pathInfo.startsWith("/import")) {
+            handleImport(req, resp);
+            return;
+        }
+        if (pathInfo != null && pathInfo.startsWith("/retry-deletion")) {
+            if (!isAdmin(req)) {
+                resp.setStatus(HttpServletResponse.SC_FORBIDDEN);
+                sendJson(resp, mapOf("success", false, "message", "Admin only"));
+                return;
+            }
+            UserDeletionService deletions = UserDeletionService.get(getServletContext());
+            String username = req.getParameter("username");
+            boolean ok = deletions != null && username != null && deletions.retry(username);
+            sendJson(resp, ok ? mapOf("success", true) : mapOf("success", false, "message", "没有失败的删除任务"));
+            return;
+        }
         if (pathInfo != null && pathInfo.startsWith("/reset")) {
             // reset password
             String username = req.getParameter("username");
@@ -53,7 +113,7 @@ public class AdminUsersServlet extends HttpServlet {
                 return;
             }
             try {
-                Map<String,Object> body = mapper.readValue(req.getInputStream(), Map.class);
+                Map<String,Object> body = objectMapper.readValue(req.getInputStream(), Map.class);
                 String newPwd = body != null && body.get("password") != null ? String.valueOf(body.get("password")) : "123456";
                 boolean ok = UserDao.resetPasswordByUsername(username, newPwd);
                 sendJson(resp, mapOf("success", ok));
@@ -67,7 +127,7 @@ public class AdminUsersServlet extends HttpServlet {
 
         // create user
         try {
-            Map<String,Object> body = mapper.readValue(req.getInputStream(), Map.class);
+            Map<String,Object> body = objectMapper.readValue(req.getInputStream(), Map.class);
             String username = String.valueOf(body.getOrDefault("username", ""));
             String password = String.valueOf(body.getOrDefault("password", ""));
             String email = String.valueOf(body.getOrDefault("email", ""));
@@ -92,9 +152,8 @@ public class AdminUsersServlet extends HttpServlet {
                 return;
             }
             if (ok) {
-                // return created user info (id and createdAt fetched from DB list)
-                List<Map<String,Object>> all = UserDao.listUsers();
-                Map<String,Object> created = all.stream().filter(u -> username.equals(u.get("username"))).findFirst().orElse(null);
+                // return created user info (id and createdAt from DB)
+                Map<String,Object> created = UserDao.findUserRow(username);
                 sendJson(resp, mapOf("success", true, "user", created));
             } else {
                 sendJson(resp, mapOf("success", false, "message", "创建失败"));
@@ -106,44 +165,91 @@ public class AdminUsersServlet extends HttpServlet {
         }
     }
 
+    /**
+     * POST /api/admin/users/import : bulk create users from a CSV (text/csv, or ?format=csv) or JSON body (an array
+     * of {username, password, email, phone} objects, or one object per line). The response is NDJSON, one line per
+     * input row ({row, username, status: created|skipped, id, home, message}) followed by a summary line.
+     */
+    private void handleImport(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        if (!isAdmin(req)) {
+            resp.setStatus(HttpServletResponse.SC_FORBIDDEN);
+            sendJson(resp, mapOf("success", false, "message", "Admin only"));
+            return;
+        }
+        String format = req.getParameter("format");
+        String contentType = req.getContentType() == null ? "" : req.getContentType().toLowerCase();
+        boolean csv = format != null ? "csv".equalsIgnoreCase(format) : contentType.contains("csv") || contentType.startsWith("text/plain");
+        req.setCharacterEncoding("UTF-8");
+        Iterator<Map<String,Object>> rows = csv ? UserImporter.csvRows(req.getReader()) : UserImporter.jsonRows(objectMapper, req.getInputStream());
+
+        resp.setContentType("application/x-ndjson;charset=UTF-8");
+        PrintWriter out = resp.getWriter();
+        int[] written = {0};
+        try (HdfsService hs = createAdminHdfsService();
+             UserImporter importer = new UserImporter(hs, importThreads())) {
+            importer.run(rows, result -> {
+                out.write(objectMapper.writeValueAsString(result));
+                out.write('\n');
+                if (++written[0] % 100 == 0) out.flush();
+            });
+        } catch (Exception e) {
+            System.err.println("AdminUsersServlet: import failed: " + e.getMessage());
+            out.write(objectMapper.writeValueAsString(mapOf("summary", true, "success", false, "message", "导入中止: " + e.getMessage())));
+            out.write('\n');
+        }
+        out.flush();
+    }
+
+    private static int importThreads() {
+        String v = System.getenv("USER_IMPORT_THREADS");
+        try {
+            return v == null || v.isEmpty() ? UserImporter.DEFAULT_THREADS : Integer.parseInt(v.trim());
+        } catch (NumberFormatException e) {
+            return UserImporter.DEFAULT_THREADS;
+        }
+    }
+
+    /**
+     * DELETE ?username= : the account is marked DELETING (it can no longer log in, and AccountStatusFilter ends
+     * its open sessions) and its shares, trash entries, HDFS home and finally the users row are removed in the
+     * background by UserDeletionService. Progress is reported by GET ?deletions=1.
+     */
     @Override
     protected void doDelete(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        if (!isAdmin(req)) {
+            resp.setStatus(HttpServletResponse.SC_FORBIDDEN);
+            sendJson(resp, mapOf("success", false, "message", "Admin only"));
+            return;
+        }
         String username = req.getParameter("username");
         if (username == null || username.trim().isEmpty()) {
             sendJson(resp, mapOf("success", false, "message", "username required"));
             return;
         }
+        if (DEFAULT_ADMIN_USER.equalsIgnoreCase(username.trim())) {
+            sendJson(resp, mapOf("success", false, "message", "不能删除管理员账号"));
+            return;
+        }
+        UserDeletionService deletions = UserDeletionService.get(getServletContext());
+        if (deletions == null) {
+            resp.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            sendJson(resp, mapOf("success", false, "message", "用户删除服务未启动"));
+            return;
+        }
         try {
-            boolean removed = UserDao.deleteUserByUsername(username);
-            boolean hdfsDeleted = false;
-            String hdfsMessage = null;
-            if (removed) {
-                String userDir = USER_ROOT + "/" + username;
-                try (HdfsService hs = new HdfsService(HDFS_URI, HDFS_ADMIN_USER, new Configuration())) {
-                    if (hs.exists(userDir)) {
-                        hdfsDeleted = hs.delete(userDir, true);
-                    } else {
-                        hdfsDeleted = true; // treat missing dir as already removed
-                    }
-                } catch (Exception ex) {
-                    hdfsMessage = "删除HDFS目录失败: " + ex.getMessage();
-                }
+            if (!UserDao.setStatus(username, "DELETING")) {
+                sendJson(resp, mapOf("success", false, "message", "用户不存在"));
+                return;
             }
-            Map<String,Object> out = new HashMap<>();
-            out.put("success", removed && hdfsDeleted);
-            out.put("hdfsDeleted", removed && hdfsDeleted);
-            if (hdfsMessage != null) out.put("message", hdfsMessage);
-            sendJson(resp, out);
+            // queue under the stored spelling; the job names the home and shares after it
+            User user = UserDao.findByUsername(username);
+            UserDeletionService.Job job = deletions.enqueue(user != null ? user.getUsername() : username);
+            sendJson(resp, mapOf("success", true, "status", "queued", "job", job));
         } catch (SQLException e) {
             sendJson(resp, mapOf("success", false, "message", "删除用户失败: " + e.getMessage()));
         }
     }
 
-    private void sendJson(HttpServletResponse resp, Object data) throws IOException {
-        resp.setContentType("application/json;charset=UTF-8");
-        mapper.writeValue(resp.getWriter(), data);
-    }
-
     private Map<String,Object> mapOf(Object... kv) {
         Map<String,Object> m = new HashMap<>();
         for (int i = 0; i + 1 < kv.length; i += 2) m.put(String.valueOf(kv[i]), kv[i+1]);
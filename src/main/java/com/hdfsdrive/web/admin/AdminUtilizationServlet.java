@@ -0,0 +1,142 @@
+package com.hdfsdrive.web.admin;
+
+import com.carrental.core.FleetUtilization;
+import com.hdfsdrive.web.common.AbstractHdfsServlet;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fleet utilization from {@link FleetUtilization}: GET ?view=summary (default) returns the share of days rented per
+ * groupBy=store (default), category or vehicle, with the days each group had any car out and the days all its cars
+ * were out; view=idle the vehicles rented on none of the days; view=peak the busiest days per store; view=metrics
+ * the model's size and load counters.
+ * from / to are yyyy-MM-dd, inclusive; they default to the current week (Monday to Sunday) for idle and to the
+ * last 30 days otherwise. storeId / categoryId narrow the vehicles, limit (default 50) caps the rows.
+ */
+@WebServlet(urlPatterns = {"/api/admin/utilization"})
+public class AdminUtilizationServlet extends AbstractHdfsServlet {
+    private static final int MAX_RANGE_DAYS = 3660;
+    private static final int DEFAULT_LIMIT = 50;
+    private static final int MAX_LIMIT = 1000;
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        if (!isAdmin(req)) {
+            resp.setStatus(HttpServletResponse.SC_FORBIDDEN);
+            sendJson(resp, mapOf("success", false, "message", "Admin only"));
+            return;
+        }
+        FleetUtilization utilization = FleetUtilization.get(getServletContext());
+        try {
+            if (!utilization.awaitLoaded(2000L)) {
+                resp.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                sendJson(resp, mapOf("success", false, "message", "Utilization is still loading"));
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        String view = req.getParameter("view") == null ? "summary" : req.getParameter("view");
+        LocalDate from, to;
+        Long storeId, categoryId;
+        int limit;
+        try {
+            LocalDate today = utilization.today();
+            boolean week = "idle".equals(view);
+            to = parseDate(req.getParameter("to"), week ? today.with(DayOfWeek.SUNDAY) : today);
+            from = parseDate(req.getParameter("from"), week ? today.with(DayOfWeek.MONDAY) : to.minusDays(29));
+            storeId = parseId(req.getParameter("storeId"));
+            categoryId = parseId(req.getParameter("categoryId"));
+            limit = req.getParameter("limit") == null ? DEFAULT_LIMIT
+                    : Math.max(1, Math.min(MAX_LIMIT, Integer.parseInt(req.getParameter("limit").trim())));
+        } catch (DateTimeParseException | NumberFormatException e) {
+            sendError(resp, "Invalid parameter: " + e.getMessage());
+            return;
+        }
+        if (to.isBefore(from) || to.toEpochDay() - from.toEpochDay() >= MAX_RANGE_DAYS) {
+            sendError(resp, "from must not be after to, and the range must be under " + MAX_RANGE_DAYS + " days");
+            return;
+        }
+
+        switch (view) {
+            case "summary": {
+                String groupBy = req.getParameter("groupBy") == null ? "store" : req.getParameter("groupBy");
+                if (!"store".equals(groupBy) && !"category".equals(groupBy) && !"vehicle".equals(groupBy)) {
+                    sendError(resp, "groupBy must be store, category or vehicle");
+                    return;
+                }
+                List<FleetUtilization.Group> groups = utilization.utilization(from, to, storeId, categoryId, groupBy);
+                long vehicles = 0, rented = 0;
+                List<Map<String, Object>> rows = new ArrayList<>();
+                for (FleetUtilization.Group g : groups) {
+                    vehicles += g.vehicles;
+                    rented += g.rentedDays;
+                    if (rows.size() < limit) {
+                        rows.add(mapOf(groupBy + "Id", g.key, "vehicles", g.vehicles, "rentedDays", g.rentedDays,
+                                "utilization", percent(g.utilization()), "activeDays", g.activeDays, "soldOutDays", g.soldOutDays));
+                    }
+                }
+                long days = to.toEpochDay() - from.toEpochDay() + 1;
+                sendJson(resp, mapOf("success", true, "from", from.toString(), "to", to.toString(), "days", days,
+                        "groupBy", groupBy, "vehicles", vehicles, "rentedDays", rented,
+                        "utilization", percent(vehicles == 0 ? 0.0 : (double) rented / (vehicles * days)),
+                        "groups", rows, "totalGroups", groups.size()));
+                return;
+            }
+            case "idle": {
+                List<Map<String, Object>> rows = new ArrayList<>();
+                for (FleetUtilization.Vehicle v : utilization.idleVehicles(from, to, storeId, categoryId, limit)) {
+                    rows.add(mapOf("vehicleId", v.id, "categoryId", v.categoryId, "storeId", v.storeId));
+                }
+                sendJson(resp, mapOf("success", true, "from", from.toString(), "to", to.toString(), "vehicles", rows));
+                return;
+            }
+            case "peak": {
+                List<Map<String, Object>> stores = new ArrayList<>();
+                for (Map.Entry<Long, List<FleetUtilization.Day>> e : utilization.peakDays(from, to, storeId, categoryId, limit).entrySet()) {
+                    List<Map<String, Object>> days = new ArrayList<>();
+                    for (FleetUtilization.Day d : e.getValue()) {
+                        days.add(mapOf("date", d.date.toString(), "rented", d.rented, "vehicles", d.vehicles,
+                                "utilization", percent(d.vehicles == 0 ? 0.0 : (double) d.rented / d.vehicles)));
+                    }
+                    stores.add(mapOf("storeId", e.getKey(), "days", days));
+                }
+                sendJson(resp, mapOf("success", true, "from", from.toString(), "to", to.toString(), "stores", stores));
+                return;
+            }
+            case "metrics":
+                sendJson(resp, mapOf("success", true, "metrics", utilization.metrics()));
+                return;
+            default:
+                sendError(resp, "view must be summary, idle, peak or metrics");
+        }
+    }
+
+    private static LocalDate parseDate(String v, LocalDate defaultValue) {
+        return v == null || v.trim().isEmpty() ? defaultValue : LocalDate.parse(v.trim());
+    }
+
+    private static Long parseId(String v) {
+        return v == null || v.trim().isEmpty() ? null : Long.valueOf(v.trim());
+    }
+
+    /** 0..1 as a percentage with one decimal. */
+    private static double percent(double share) {
+        return Math.round(share * 1000.0) / 10.0;
+    }
+
+    private static Map<String,Object> mapOf(Object... kv){ Map<String,Object> m=new HashMap<>(); for(int i=0;i+1<kv.length;i+=2) m.put(String.valueOf(kv[i]), kv[i+1]); return m; }
+}
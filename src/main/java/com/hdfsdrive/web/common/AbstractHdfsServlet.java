@@ -1,6 +1,7 @@
 package com.hdfsdrive.web.common;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hdfsdrive.core.AuditLog;
 import com.hdfsdrive.core.HdfsService;
 import jakarta.servlet.http.HttpServlet;
 import jakarta.servlet.http.HttpServletRequest;
@@ -37,6 +38,13 @@ public abstract class AbstractHdfsServlet extends HttpServlet {
         return new HdfsService(DEFAULT_HDFS_URI, DEFAULT_ADMIN_USER, new Configuration());
     }
 
+    /**
+     * HDFS client acting as the given user, e.g. a share's owner when serving it to someone who is not logged in.
+     */
+    protected HdfsService createHdfsServiceAs(String user) throws Exception {
+        return new HdfsService(DEFAULT_HDFS_URI, user, new Configuration());
+    }
+
     // --- helpers for per-user path mapping and authorization ---
     protected String getSessionUsername(HttpServletRequest req) {
         HttpSession s = req.getSession(false);
@@ -118,29 +126,14 @@ public abstract class AbstractHdfsServlet extends HttpServlet {
     }
 
     /**
-     * Append an admin operation log entry under WEB-INF/logs/admin-operations.log.
+     * Append an admin operation log entry under WEB-INF/logs/admin-operations.log (queued, written asynchronously).
      */
     protected void appendAdminLog(HttpServletRequest req, String action, String detail, String result) {
         try {
-            String logsDir = getServletContext().getRealPath("/WEB-INF/logs");
-            if (logsDir == null) return;
-            java.io.File dir = new java.io.File(logsDir);
-            if (!dir.exists()) dir.mkdirs();
-            java.io.File f = new java.io.File(dir, "admin-operations.log");
+            AuditLog audit = AuditLog.get(getServletContext());
+            if (audit == null) return;
             String user = getSessionUsername(req);
-            String ts = new java.text.SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new java.util.Date());
-            String line = String.format(
-                    "%s\tuser=%s\taction=%s\tpath=%s\tinfo=%s\n",
-                    ts,
-                    user == null ? "(anon)" : user,
-                    action,
-                    detail == null ? "(none)" : detail,
-                    result == null ? "" : result.replace('\n', ' ')
-            );
-            try (java.io.FileWriter fw = new java.io.FileWriter(f, true);
-                 java.io.PrintWriter pw = new java.io.PrintWriter(fw)) {
-                pw.print(line);
-            }
+            audit.log(user == null ? "(anon)" : user, action, detail == null ? "(none)" : detail, result == null ? "" : result);
         } catch (Throwable ignore) {
         }
     }
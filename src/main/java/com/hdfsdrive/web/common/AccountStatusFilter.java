@@ -0,0 +1,66 @@
+package com.hdfsdrive.web.common;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hdfsdrive.core.User;
+import com.hdfsdrive.core.UserDao;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.annotation.WebFilter;
+import jakarta.servlet.http.HttpFilter;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Ends the session of an account that may no longer be used: disabled, being deleted (DELETING), or gone, including
+ * a name that was deleted and registered again. Login already refuses such accounts; this covers sessions opened
+ * before the change. The lookup goes through UserDao's cache, which this node invalidates on every status change;
+ * a change made on another app instance is seen once the cache TTL runs out.
+ */
+@WebFilter("/api/*")
+public class AccountStatusFilter extends HttpFilter {
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    @Override
+    protected void doFilter(HttpServletRequest req, HttpServletResponse resp, FilterChain chain) throws IOException, ServletException {
+        HttpSession s = req.getSession(false);
+        Object name = s == null ? null : s.getAttribute("username");
+        if (name == null || AbstractHdfsServlet.DEFAULT_ADMIN_USER.equals(String.valueOf(name))) {
+            chain.doFilter(req, resp);
+            return;
+        }
+        User u;
+        try {
+            u = UserDao.findByUsername(String.valueOf(name));
+        } catch (SQLException e) {
+            System.err.println("AccountStatusFilter: cannot check account " + name + ": " + e.getMessage());
+            resp.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            sendJson(resp, mapOf("success", false, "message", "账号状态查询失败"));
+            return;
+        }
+        Object id = s.getAttribute("userId");
+        if (u == null || !u.isActive() || (id instanceof Long && (Long) id != u.getId())) {
+            try {
+                s.invalidate();
+            } catch (IllegalStateException ignore) {
+                // invalidated concurrently
+            }
+            resp.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+            sendJson(resp, mapOf("success", false, "message", "账号已停用"));
+            return;
+        }
+        chain.doFilter(req, resp);
+    }
+
+    private static void sendJson(HttpServletResponse resp, Object data) throws IOException {
+        resp.setContentType("application/json;charset=UTF-8");
+        mapper.writeValue(resp.getWriter(), data);
+    }
+
+    private static Map<String,Object> mapOf(Object... kv){ Map<String,Object> m=new HashMap<>(); for(int i=0;i+1<kv.length;i+=2) m.put(String.valueOf(kv[i]), kv[i+1]); return m; }
+}
@@ -0,0 +1,34 @@
+package com.hdfsdrive.web.common;
+
+import com.hdfsdrive.analytics.AuditAnalyticsRunner;
+import com.hdfsdrive.core.AuditLog;
+import com.hdfsdrive.core.AuditLogArchiver;
+import com.hdfsdrive.core.HdfsService;
+import jakarta.servlet.ServletContextEvent;
+import jakarta.servlet.ServletContextListener;
+import jakarta.servlet.annotation.WebListener;
+import org.apache.hadoop.conf.Configuration;
+
+/**
+ * Starts the hourly archiving of closed audit log segments to HDFS and the daily analytics run;
+ * writes out queued audit log lines and closes the log file on shutdown.
+ */
+@WebListener
+public class AuditLogListener implements ServletContextListener {
+    @Override
+    public void contextInitialized(ServletContextEvent sce) {
+        // the log itself is created lazily on the first logged operation
+        AuditLogArchiver.start(sce.getServletContext(),
+                () -> new HdfsService(AbstractHdfsServlet.DEFAULT_HDFS_URI, AbstractHdfsServlet.DEFAULT_ADMIN_USER, new Configuration()),
+                AuditLogArchiver.DEFAULT_INTERVAL_MILLIS);
+        AuditAnalyticsRunner.start(sce.getServletContext(), AbstractHdfsServlet.DEFAULT_HDFS_URI,
+                AbstractHdfsServlet.DEFAULT_ADMIN_USER, AuditAnalyticsRunner.DEFAULT_INTERVAL_MILLIS);
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent sce) {
+        AuditAnalyticsRunner.shutdown(sce.getServletContext());
+        AuditLogArchiver.shutdown(sce.getServletContext());
+        AuditLog.shutdown(sce.getServletContext());
+    }
+}
@@ -0,0 +1,40 @@
+package com.hdfsdrive.web.common;
+
+import com.carrental.core.BookingEngine;
+import com.carrental.core.FleetUtilization;
+import com.carrental.core.PricingCalendar;
+import com.carrental.core.VehicleAvailability;
+import com.hdfsdrive.core.Database;
+import com.hdfsdrive.core.SchemaMigrator;
+import jakarta.servlet.ServletContextEvent;
+import jakarta.servlet.ServletContextListener;
+import jakarta.servlet.annotation.WebListener;
+
+/**
+ * Opens the shared connection pool at startup, so the first login does not pay for the TCP and auth handshakes,
+ * brings the schema up to date ({@link SchemaMigrator}), starts building the vehicle availability index and closes the
+ * pool on shutdown.
+ */
+@WebListener
+public class DatabaseListener implements ServletContextListener {
+    @Override
+    public void contextInitialized(ServletContextEvent sce) {
+        try {
+            SchemaMigrator.migrate(Database.dataSource());
+        } catch (Exception e) {
+            // DAOs retry lazily through Database.getConnection
+            System.err.println("DatabaseListener: database startup failed: " + e.getMessage());
+        }
+        // loads in the background; date-range vehicle searches use SQL until it is ready
+        VehicleAvailability.get(sce.getServletContext());
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent sce) {
+        BookingEngine.shutdown(sce.getServletContext());
+        PricingCalendar.shutdown(sce.getServletContext());
+        FleetUtilization.shutdown(sce.getServletContext());
+        VehicleAvailability.shutdown(sce.getServletContext());
+        Database.shutdown();
+    }
+}
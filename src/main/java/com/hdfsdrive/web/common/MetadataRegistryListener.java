@@ -0,0 +1,38 @@
+package com.hdfsdrive.web.common;
+
+import com.hdfsdrive.core.HdfsService;
+import com.hdfsdrive.core.MetadataRegistry;
+import com.hdfsdrive.core.UserDeletionService;
+import jakarta.servlet.ServletContextEvent;
+import jakarta.servlet.ServletContextListener;
+import jakarta.servlet.annotation.WebListener;
+import org.apache.hadoop.conf.Configuration;
+
+/**
+ * Loads the shared metadata stores at startup and flushes pending write-behind changes on shutdown.
+ * Also runs the background user deletion, which cleans up those stores along with the user's HDFS home.
+ */
+@WebListener
+public class MetadataRegistryListener implements ServletContextListener {
+    @Override
+    public void contextInitialized(ServletContextEvent sce) {
+        try {
+            MetadataRegistry.get(sce.getServletContext());
+        } catch (Exception e) {
+            // servlets retry lazily through MetadataRegistry.get
+            System.err.println("MetadataRegistryListener: failed to load metadata stores: " + e.getMessage());
+        }
+        try {
+            UserDeletionService.start(sce.getServletContext(),
+                    () -> new HdfsService(AbstractHdfsServlet.DEFAULT_HDFS_URI, AbstractHdfsServlet.DEFAULT_ADMIN_USER, new Configuration()));
+        } catch (Exception e) {
+            System.err.println("MetadataRegistryListener: failed to start user deletion: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent sce) {
+        UserDeletionService.shutdown(sce.getServletContext());
+        MetadataRegistry.shutdown(sce.getServletContext());
+    }
+}
@@ -1,7 +1,10 @@
 package com.hdfsdrive.web.file;
 
+import com.hdfsdrive.core.BatchStatusFetcher;
 import com.hdfsdrive.core.HdfsService;
 import com.hdfsdrive.core.LogUtil;
+import com.hdfsdrive.core.MetadataRegistry;
+import com.hdfsdrive.core.TrashPurger;
 import com.hdfsdrive.core.TrashService;
 import com.hdfsdrive.web.common.AbstractHdfsServlet;
 import jakarta.servlet.ServletException;
@@ -17,51 +20,44 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
 
 /**
  * Servlet for directory operations: list, create, delete directories in HDFS
  */
 @WebServlet("/api/directory/*")
 public class DirectoryServlet extends AbstractHdfsServlet {
+    private static final int PURGE_BATCH_SIZE = 64;
+    private static final int PURGE_PARALLELISM = 4;
+    private static final int PURGE_OPS_PER_SECOND = 50;
+    private static final long PURGE_BASE_BACKOFF_MS = 30L * 1000L;
+    private static final long PURGE_MAX_BACKOFF_MS = 60L * 60L * 1000L;
+    private static final int META_FETCH_PARALLELISM = 8;
+
     private TrashService trashService;
-    // scheduler to purge expired trash entries periodically
-    private ScheduledExecutorService purgeScheduler;
+    private TrashPurger trashPurger;
+    // shared pool for per-parent listings issued by BatchStatusFetcher in the trash view
+    private ExecutorService metaExecutor;
     // mapping from type key to list of extensions (lowercase, without dot)
     private Map<String, List<String>> typeExts = new HashMap<>();
 
     @Override
     public void init() throws ServletException {
         try {
-            String storePath = getServletContext().getRealPath("/WEB-INF/trash.json");
-            trashService = new TrashService(storePath);
+            trashService = MetadataRegistry.get(getServletContext()).trash();
             // initialize default type extension lists
             initDefaultTypeExts();
 
-            // start scheduled purge using admin HDFS connection: run periodic purge as admin/root
-            purgeScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
-                Thread t = new Thread(r, "trash-purge-thread");
+            // expiry-ordered purge engine; deletes run as admin/root in throttled parallel batches
+            trashPurger = new TrashPurger(trashService, this::createAdminHdfsService, TrashService.DEFAULT_RETENTION_MILLIS,
+                    PURGE_BATCH_SIZE, PURGE_PARALLELISM, PURGE_OPS_PER_SECOND, PURGE_BASE_BACKOFF_MS, PURGE_MAX_BACKOFF_MS);
+            trashPurger.start();
+            metaExecutor = Executors.newFixedThreadPool(META_FETCH_PARALLELISM, r -> {
+                Thread t = new Thread(r, "trash-meta-fetch");
                 t.setDaemon(true);
                 return t;
             });
-            // schedule initial run after 1 minute and then every 5 minutes (more responsive purge)
-            purgeScheduler.scheduleAtFixedRate(() -> {
-                HdfsService h = null;
-                try {
-                    h = createAdminHdfsService();
-                    java.util.List<String> purged = trashService.purgeExpired(h);
-                    if (purged != null && !purged.isEmpty()) {
-                        System.out.println("Purged expired trash entries: " + purged);
-                    }
-                } catch (Exception e) {
-                    System.err.println("Error while purging expired trash: " + e.getMessage());
-                    e.printStackTrace();
-                } finally {
-                    if (h != null) try { h.close(); } catch (IOException ignore) {}
-                }
-            }, 1, 5, TimeUnit.MINUTES);
 
             // optionally try to read `格式.txt` from webapp root to override/extend these lists
             try {
@@ -83,11 +79,8 @@ public class DirectoryServlet extends AbstractHdfsServlet {
 
     @Override
     public void destroy() {
-        if (purgeScheduler != null) {
-            try {
-                purgeScheduler.shutdownNow();
-            } catch (Exception e) { /* ignore */ }
-        }
+        if (trashPurger != null) trashPurger.close();
+        if (metaExecutor != null) metaExecutor.shutdownNow();
         super.destroy();
     }
 
@@ -151,6 +144,8 @@ public class DirectoryServlet extends AbstractHdfsServlet {
             handleSearch(req, resp);
         } else if ("purge".equals(action)) {
             handlePurge(req, resp);
+        } else if ("purgeStats".equals(action)) {
+            handlePurgeStats(req, resp);
         } else {
             sendError(resp, "Invalid action");
         }
@@ -158,7 +153,8 @@ public class DirectoryServlet extends AbstractHdfsServlet {
 
     private void handlePurge(HttpServletRequest req, HttpServletResponse resp) throws IOException {
         try {
-            List<String> purged = trashService.purgeExpired(createAdminHdfsService());
+            // only processes entries that are already due; a no-op when the queue head is in the future
+            List<String> purged = trashPurger.purgeDueNow();
             Map<String,Object> response = new HashMap<>();
             response.put("success", true);
             response.put("purged", purged);
@@ -168,6 +164,17 @@ public class DirectoryServlet extends AbstractHdfsServlet {
         }
     }
 
+    private void handlePurgeStats(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        if (!isAdmin(req)) {
+            sendError(resp, "Access denied");
+            return;
+        }
+        Map<String,Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("metrics", trashPurger.metrics());
+        sendJson(resp, response);
+    }
+
     @Override
     protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
         String action = req.getParameter("action");
@@ -247,18 +254,17 @@ public class DirectoryServlet extends AbstractHdfsServlet {
 
              // If listing the UI trash view, return entries from TrashService instead of HDFS
              if (path != null && path.startsWith("/.trash")) {
-                 // purge expired entries first so they won't be returned (use admin HDFS client for purge)
-                 try {
-                     try { adminHdfs = createAdminHdfsService(); } catch (Exception exx) { adminHdfs = null; }
-                     if (adminHdfs != null) {
-                         try { trashService.purgeExpired(adminHdfs); } catch (Exception ignore) {}
-                     }
-                 } catch (Throwable ignore) {}
+                 // expired entries are purged by the background TrashPurger; just hide the ones still pending
                  List<TrashService.Entry> trashEntries = trashService.list();
                  List<Map<String, Object>> items = new ArrayList<>();
-                 // default retention used when entry.expireAt==0 (ms)
-                 long defaultRetention = 30L * 24L * 60L * 60L * 1000L;
+                 // size/mtime captured at delete time is used as-is; only legacy entries without it
+                 // (or every file when refresh=true) are resolved against HDFS in one batch below
+                 boolean refresh = Boolean.parseBoolean(req.getParameter("refresh"));
+                 Map<String, Map<String, Object>> needMeta = new HashMap<>();
+                 long now = System.currentTimeMillis();
                 for (TrashService.Entry e : trashEntries) {
+                    long effectiveExpire = TrashService.effectiveExpireAt(e, TrashService.DEFAULT_RETENTION_MILLIS);
+                    if (effectiveExpire <= now) continue;
                     // non-admin users should only see their own trashed entries
                     if (!isAdmin(req)) {
                         String user = getSessionUsername(req);
@@ -272,32 +278,30 @@ public class DirectoryServlet extends AbstractHdfsServlet {
                      item.put("type", e.isDirectory ? "directory" : "file");
                      item.put("originalPath", e.path);
                      // include effective expireAt (if not set, treat as deletedAt + defaultRetention)
-                     long effectiveExpire = (e.expireAt > 0) ? e.expireAt : (e.deletedAt + defaultRetention);
                      item.put("expireAt", effectiveExpire);
-                     // try to include size/mtime if available
-                     try {
-                         // use adminHdfs if available, else try per-user hdfs
-                         HdfsService probe = null;
-                         try {
-                             if (adminHdfs != null) probe = adminHdfs; else probe = createHdfsService(req);
-                             if (!e.isDirectory && probe.exists(e.path)) {
-                                 String parent = e.path.substring(0, e.path.lastIndexOf('/'));
-                                 List<HdfsService.FileEntry> metaList = probe.listDirWithMeta(parent.isEmpty() ? "/" : parent);
-                                 for (HdfsService.FileEntry fe : metaList) {
-                                    if (fe.path.equals(e.path)) {
-                                         item.put("size", fe.size);
-                                         item.put("modificationTime", fe.modificationTime);
-                                         break;
-                                    }
-                                 }
-                             }
-                         } finally {
-                             if (probe != null && probe != adminHdfs) try { probe.close(); } catch (IOException ignore) {}
-                         }
-                     } catch (Exception ignore) {}
+                     if (e.modificationTime > 0) {
+                         item.put("size", e.size);
+                         item.put("modificationTime", e.modificationTime);
+                     }
+                     if (!e.isDirectory && (refresh || e.modificationTime <= 0)) needMeta.put(e.path, item);
                      items.add(item);
                 }
 
+                if (!needMeta.isEmpty()) {
+                    try {
+                        adminHdfs = createAdminHdfsService();
+                        BatchStatusFetcher fetcher = new BatchStatusFetcher(adminHdfs, metaExecutor);
+                        Map<String, HdfsService.FileEntry> metas = fetcher.fetch(needMeta.keySet());
+                        for (Map.Entry<String, HdfsService.FileEntry> me : metas.entrySet()) {
+                            Map<String, Object> item = needMeta.get(me.getKey());
+                            item.put("size", me.getValue().size);
+                            item.put("modificationTime", me.getValue().modificationTime);
+                        }
+                    } catch (Exception ignore) {
+                        // metadata is best-effort; the entries are still listed
+                    }
+                }
+
                 // sort by expireAt ascending (earliest expiration first). Treat missing as max.
                 items.sort(Comparator.comparingLong(m -> {
                     Object o = m.get("expireAt");
@@ -389,6 +393,7 @@ public class DirectoryServlet extends AbstractHdfsServlet {
             }
         } finally {
             if (hdfs != null) try { hdfs.close(); } catch (IOException ignore) {}
+            if (adminHdfs != null) try { adminHdfs.close(); } catch (IOException ignore) {}
         }
     }
 
@@ -471,15 +476,23 @@ public class DirectoryServlet extends AbstractHdfsServlet {
                 sendJson(resp, response);
                 LogUtil.log(getServletContext(), getSessionUsername(req), "delete-permanent", actualPath, deleted ? "成功" : "失败");
             } else {
-                // UI-only trash
-                boolean isDir = false;
-                try { isDir = createHdfsService(req).isDirectory(actualPath); } catch (Exception ignore) {}
+                // UI-only trash; one getFileStatus gives type plus the size/mtime shown in the trash view
+                HdfsService.FileEntry meta = null;
+                HdfsService h = null;
+                try {
+                    h = createHdfsService(req);
+                    meta = h.getFileEntry(actualPath);
+                } catch (Exception ignore) {
+                } finally {
+                    if (h != null) try { h.close(); } catch (IOException ignore) {}
+                }
                 long expireAt = 0L;
                 String daysParam = req.getParameter("days");
                 if (daysParam != null && !daysParam.isEmpty()) {
                     try { long days = Long.parseLong(daysParam); expireAt = System.currentTimeMillis() + days * 24L*60L*60L*1000L; } catch (Exception ignore) {}
                 }
-                trashService.add(actualPath, isDir, expireAt);
+                if (meta != null) trashService.add(actualPath, meta.isDirectory, expireAt, meta.size, meta.modificationTime);
+                else trashService.add(actualPath, false, expireAt);
                 response.put("success", true);
                 response.put("message", "Moved to trash (UI)");
                 sendJson(resp, response);
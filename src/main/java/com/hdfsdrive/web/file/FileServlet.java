@@ -2,6 +2,7 @@ package com.hdfsdrive.web.file;
 
 import com.hdfsdrive.core.HdfsService;
 import com.hdfsdrive.core.LogUtil;
+import com.hdfsdrive.core.MetadataRegistry;
 import com.hdfsdrive.core.TrashService;
 import com.hdfsdrive.web.common.AbstractHdfsServlet;
 import jakarta.servlet.ServletException;
@@ -37,8 +38,7 @@ public class FileServlet extends AbstractHdfsServlet {
     @Override
     public void init() throws ServletException {
         try {
-            String storePath = getServletContext().getRealPath("/WEB-INF/trash.json");
-            trashService = new TrashService(storePath);
+            trashService = MetadataRegistry.get(getServletContext()).trash();
         } catch (Exception e) {
             throw new ServletException("Failed to initialize FileServlet", e);
         }
@@ -381,6 +381,7 @@ public class FileServlet extends AbstractHdfsServlet {
                  if (hdfsService != null) try { hdfsService.close(); } catch (IOException ignore) {}
              }
 
+            long uploadedBytes = Files.size(tempFile);
             // Clean up temp file
             Files.delete(tempFile);
 
@@ -391,7 +392,7 @@ public class FileServlet extends AbstractHdfsServlet {
             sendJson(resp, response);
 
             // log admin action
-            LogUtil.log(getServletContext(), getSessionUsername(req), "upload", targetPath, "成功");
+            LogUtil.log(getServletContext(), getSessionUsername(req), "upload", targetPath, "成功, bytes=" + uploadedBytes);
         } catch (Exception e) {
             sendError(resp, "Upload failed: " + e.getMessage());
         }
@@ -423,17 +424,20 @@ public class FileServlet extends AbstractHdfsServlet {
             resp.setContentLengthLong(Files.size(tempFile));
 
             // Stream file to response
+            long sent = 0;
             try (InputStream in = Files.newInputStream(tempFile);
                  OutputStream out = resp.getOutputStream()) {
                 byte[] buffer = new byte[8192];
                 int bytesRead;
                 while ((bytesRead = in.read(buffer)) != -1) {
                     out.write(buffer, 0, bytesRead);
+                    sent += bytesRead;
                 }
             }
 
             // Clean up temp file
             Files.delete(tempFile);
+            LogUtil.log(getServletContext(), getSessionUsername(req), "download", actualPath, "bytes=" + sent);
 
         } catch (Exception e) {
             sendError(resp, "Download failed: " + e.getMessage());
@@ -488,17 +492,23 @@ public class FileServlet extends AbstractHdfsServlet {
             } else {
                 // UI-only trash: add entry to trash metadata, do NOT move files in HDFS
                 try {
-                    // determine if path is directory by asking HDFS
-                    boolean isDir = false;
+                    // one getFileStatus gives the type plus the size/mtime shown later in the trash view
+                    HdfsService.FileEntry meta = null;
                     HdfsService hdfsService = null;
-                    try { hdfsService = createHdfsService(req); isDir = hdfsService.listDir(actualPath) != null; } catch (Exception e) {}
-                    final boolean isDirectory = isDir;
+                    try {
+                        hdfsService = createHdfsService(req);
+                        meta = hdfsService.getFileEntry(actualPath);
+                    } catch (Exception e) {
+                    } finally {
+                        if (hdfsService != null) try { hdfsService.close(); } catch (IOException ignore) {}
+                    }
 
                     // add to trash metadata
                     String trashPath = null;
                     try {
                         // TrashService.add returns void; record actualPath as trashPath for UI
-                        trashService.add(actualPath, isDirectory);
+                        if (meta != null) trashService.add(actualPath, meta.isDirectory, 0L, meta.size, meta.modificationTime);
+                        else trashService.add(actualPath, false);
                         trashPath = actualPath;
                     } catch (Exception e) {
                         sendError(resp, "移动到回收站失败: " + e.getMessage());
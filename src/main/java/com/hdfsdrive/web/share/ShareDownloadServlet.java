@@ -0,0 +1,141 @@
+package com.hdfsdrive.web.share;
+
+import com.hdfsdrive.core.HdfsService;
+import com.hdfsdrive.core.LogUtil;
+import com.hdfsdrive.core.MetadataRegistry;
+import com.hdfsdrive.core.ShareService;
+import com.hdfsdrive.core.ShareStats;
+import com.hdfsdrive.core.ShareTokenService;
+import com.hdfsdrive.web.common.AbstractHdfsServlet;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Public download of a shared file: GET /api/share/download?id=&lt;share id or signed token&gt;.
+ * Streams straight from HDFS and records the download and bytes served in {@link ShareStats}.
+ */
+@WebServlet("/api/share/download")
+public class ShareDownloadServlet extends AbstractHdfsServlet {
+    private ShareService shareService;
+    private ShareTokenService shareTokens;
+    private ShareStats shareStats;
+
+    @Override
+    public void init() throws ServletException {
+        try {
+            MetadataRegistry registry = MetadataRegistry.get(getServletContext());
+            shareService = registry.shares();
+            shareTokens = registry.shareTokens();
+            shareStats = registry.shareStats();
+        } catch (Exception e) {
+            throw new ServletException(e);
+        }
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        String id = req.getParameter("id");
+        if (id == null || id.isEmpty()) {
+            sendError(resp, "id required");
+            return;
+        }
+
+        String shareId;
+        String path;
+        String owner;
+        if (ShareTokenService.isToken(id)) {
+            ShareTokenService.Claims c = shareTokens.verify(id);
+            if (c == null || !c.can(ShareTokenService.PERM_DOWNLOAD)) {
+                notFound(resp);
+                return;
+            }
+            shareId = c.id;
+            path = c.path;
+            owner = c.owner;
+        } else {
+            ShareService.Entry e = shareService.getById(id);
+            // the id is readable from the signed link's payload; a share that has one is only served through it,
+            // so a view-only link cannot be turned into a download
+            if (e == null || e.token != null) {
+                notFound(resp);
+                return;
+            }
+            shareId = e.id;
+            path = e.path;
+            owner = e.owner;
+        }
+
+        String actualPath = toSharedActualPath(path, owner);
+        if (actualPath == null) {
+            notFound(resp);
+            return;
+        }
+        HdfsService hdfs = null;
+        try {
+            // read as the owner, so HDFS permissions apply as if they were downloading it themselves
+            hdfs = createHdfsServiceAs(owner);
+            HdfsService.FileEntry meta = hdfs.getFileEntry(actualPath);
+            if (meta == null) {
+                notFound(resp);
+                return;
+            }
+            if (meta.isDirectory) {
+                sendError(resp, "目录不支持直接下载");
+                return;
+            }
+            String fileName = actualPath.substring(actualPath.lastIndexOf('/') + 1);
+            resp.setContentType("application/octet-stream");
+            resp.setHeader("Content-Disposition", "attachment; filename*=UTF-8''"
+                    + URLEncoder.encode(fileName, StandardCharsets.UTF_8).replace("+", "%20"));
+            resp.setContentLengthLong(meta.size);
+
+            long sent = 0;
+            try (InputStream in = hdfs.open(actualPath); OutputStream out = resp.getOutputStream()) {
+                byte[] buffer = new byte[64 * 1024];
+                int n;
+                while ((n = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, n);
+                    sent += n;
+                }
+            } finally {
+                // count partial transfers too: the bytes left the server either way
+                shareStats.recordDownload(shareId, sent);
+                LogUtil.log(getServletContext(), getSessionUsername(req), "share-download", actualPath, "id=" + shareId + ", bytes=" + sent);
+            }
+        } catch (Exception e) {
+            if (!resp.isCommitted()) sendError(resp, "Download failed: " + e.getMessage());
+        } finally {
+            if (hdfs != null) try { hdfs.close(); } catch (IOException ignore) {}
+        }
+    }
+
+    /**
+     * Actual HDFS path of a share. New shares store the actual path under the owner's home (any absolute path for
+     * the admin); older ones the virtual path the owner saw, relative to that home. Returns null for shares with no
+     * owner and for paths outside the owner's directory.
+     */
+    private String toSharedActualPath(String path, String owner) {
+        if (owner == null || owner.isEmpty() || path == null || ShareServlet.hasParentSegment(path)) return null;
+        if (DEFAULT_ADMIN_USER.equals(owner)) return path.startsWith("/") ? path : null;
+        String root = actualRootForUser(owner);
+        if (path.startsWith(USER_ROOT + "/")) {
+            return path.equals(root) || path.startsWith(root + "/") ? path : null;
+        }
+        if (path.equals("/")) return root;
+        return root + (path.startsWith("/") ? path : "/" + path);
+    }
+
+    private void notFound(HttpServletResponse resp) throws IOException {
+        resp.setStatus(HttpServletResponse.SC_NOT_FOUND);
+        resp.setContentType("application/json;charset=UTF-8");
+        resp.getWriter().write("{\"success\":false,\"message\":\"share not found or expired\"}");
+    }
+}
@@ -1,6 +1,9 @@
 package com.hdfsdrive.web.share;
 
+import com.hdfsdrive.core.MetadataRegistry;
 import com.hdfsdrive.core.ShareService;
+import com.hdfsdrive.core.ShareStats;
+import com.hdfsdrive.core.ShareTokenService;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.annotation.WebServlet;
 import jakarta.servlet.http.HttpServlet;
@@ -8,6 +11,10 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 
 import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * Public share viewer: given id, returns basic JSON info or redirects to file download/preview.
@@ -16,12 +23,16 @@ import java.io.IOException;
 @WebServlet("/api/share/public")
 public class SharePublicServlet extends HttpServlet {
     private ShareService shareService;
+    private ShareTokenService shareTokens;
+    private ShareStats shareStats;
 
     @Override
     public void init() throws ServletException {
         try {
-            String storePath = getServletContext().getRealPath("/WEB-INF/share.json");
-            shareService = new ShareService(storePath);
+            MetadataRegistry registry = MetadataRegistry.get(getServletContext());
+            shareService = registry.shares();
+            shareTokens = registry.shareTokens();
+            shareStats = registry.shareStats();
         } catch (Exception e) {
             throw new ServletException(e);
         }
@@ -38,7 +49,20 @@ public class SharePublicServlet extends HttpServlet {
         }
 
         try {
-            ShareService.Entry e = shareService.getById(id);
+            // signed links are validated in memory; plain ids go through the share store
+            Object e;
+            String shareId = null;
+            if (ShareTokenService.isToken(id)) {
+                ShareTokenService.Claims c = shareTokens.verify(id);
+                e = c == null ? null : tokenItem(id, c);
+                if (c != null) shareId = c.id;
+            } else {
+                ShareService.Entry entry = shareService.getById(id);
+                // a share created with a signed link is only reachable through it, so its perms always apply
+                if (entry != null && entry.token != null) entry = null;
+                e = entry == null ? null : entryItem(entry);
+                if (entry != null) shareId = entry.id;
+            }
             if (e == null) {
                 resp.setStatus(404);
                 resp.setContentType("application/json;charset=UTF-8");
@@ -55,10 +79,13 @@ public class SharePublicServlet extends HttpServlet {
             if (wantsHtml && !isAjax) {
                 // redirect to friendly share page which will call this API to get JSON
                 String ctx = req.getContextPath();
-                resp.sendRedirect(ctx + "/share.html?id=" + id);
+                resp.sendRedirect(ctx + "/share.html?id=" + URLEncoder.encode(id, StandardCharsets.UTF_8));
                 return;
             }
 
+            // count views on the JSON fetch only: the HTML redirect above comes back here from share.html
+            shareStats.recordView(shareId);
+
             // Otherwise return JSON representing the share entry
             resp.setContentType("application/json;charset=UTF-8");
             com.fasterxml.jackson.databind.ObjectMapper _m = new com.fasterxml.jackson.databind.ObjectMapper();
@@ -69,4 +96,25 @@ public class SharePublicServlet extends HttpServlet {
             resp.getWriter().write("{\"success\":false,\"message\":\"server error\"}");
         }
     }
+
+    /** The fields a visitor may see; owner and token stay private. */
+    private static Map<String, Object> entryItem(ShareService.Entry entry) {
+        Map<String, Object> item = new LinkedHashMap<>();
+        item.put("id", entry.id);
+        item.put("path", entry.path);
+        item.put("name", entry.name);
+        item.put("createdAt", entry.createdAt);
+        item.put("expireAt", entry.expireAt);
+        return item;
+    }
+
+    private static Map<String, Object> tokenItem(String token, ShareTokenService.Claims c) {
+        Map<String, Object> item = new LinkedHashMap<>();
+        item.put("id", token);
+        item.put("path", c.path);
+        item.put("name", c.name);
+        item.put("expireAt", c.expireAt);
+        item.put("perms", c.perms);
+        return item;
+    }
 }
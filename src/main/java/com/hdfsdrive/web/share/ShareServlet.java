@@ -1,30 +1,36 @@
 package com.hdfsdrive.web.share;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.hdfsdrive.core.LogUtil;
+import com.hdfsdrive.core.MetadataRegistry;
 import com.hdfsdrive.core.ShareService;
+import com.hdfsdrive.core.ShareStats;
+import com.hdfsdrive.core.ShareTokenService;
+import com.hdfsdrive.web.common.AbstractHdfsServlet;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.annotation.WebServlet;
-import jakarta.servlet.http.HttpServlet;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
-import jakarta.servlet.http.HttpSession;
 
 import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 @WebServlet("/api/share/*")
-public class ShareServlet extends HttpServlet {
+public class ShareServlet extends AbstractHdfsServlet {
     private ShareService shareService;
-    private ObjectMapper mapper = new ObjectMapper();
+    private ShareTokenService shareTokens;
+    private ShareStats shareStats;
 
     @Override
     public void init() throws ServletException {
         try {
-            String storePath = getServletContext().getRealPath("/WEB-INF/share.json");
-            shareService = new ShareService(storePath);
+            MetadataRegistry registry = MetadataRegistry.get(getServletContext());
+            shareService = registry.shares();
+            shareTokens = registry.shareTokens();
+            shareStats = registry.shareStats();
         } catch (Exception e) {
             throw new ServletException("Failed to init ShareService", e);
         }
@@ -35,6 +41,10 @@ public class ShareServlet extends HttpServlet {
         String action = req.getParameter("action");
         if ("list".equals(action)) {
             handleList(req, resp);
+        } else if ("stats".equals(action)) {
+            handleStats(req, resp);
+        } else if ("top".equals(action)) {
+            handleTop(req, resp);
         } else {
             sendError(resp, "Invalid action");
         }
@@ -54,7 +64,14 @@ public class ShareServlet extends HttpServlet {
 
     private void handleList(HttpServletRequest req, HttpServletResponse resp) throws IOException {
         try {
-            List<ShareService.Entry> entries = shareService.list();
+            String user = getSessionUsername(req);
+            if (user == null) {
+                sendError(resp, "Not logged in");
+                return;
+            }
+            // admin sees every share; everyone else only the shares they created
+            List<ShareService.Entry> entries = DEFAULT_ADMIN_USER.equals(user)
+                    ? shareService.list() : shareService.listByOwner(user);
             Map<String,Object> out = new HashMap<>();
             out.put("success", true);
             out.put("items", entries);
@@ -64,33 +81,105 @@ public class ShareServlet extends HttpServlet {
         }
     }
 
+    /**
+     * Access counters of one share; visible to its owner and the admin.
+     */
+    private void handleStats(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        String id = req.getParameter("id");
+        String user = getSessionUsername(req);
+        if (user == null) { sendError(resp, "Not logged in"); return; }
+        ShareService.Entry e = shareService.getById(id);
+        if (e == null || !(DEFAULT_ADMIN_USER.equals(user) || ShareService.isOwnedBy(e, user))) {
+            sendError(resp, "share not found");
+            return;
+        }
+        ShareStats.Snapshot s = shareStats.get(id);
+        Map<String,Object> out = new HashMap<>();
+        out.put("success", true);
+        out.put("id", id);
+        out.put("stats", s == null ? new ShareStats.Snapshot() : s);
+        sendJson(resp, out);
+    }
+
+    /**
+     * Admin only: most accessed shares, joined with their share entries.
+     */
+    private void handleTop(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        if (!isAdmin(req)) {
+            sendError(resp, "Forbidden");
+            return;
+        }
+        int n = 20;
+        try { n = Math.max(1, Math.min(100, Integer.parseInt(req.getParameter("n")))); } catch (Exception ignore) {}
+        List<Map<String,Object>> items = shareStats.top(n);
+        for (Map<String,Object> item : items) {
+            ShareService.Entry e = shareService.getById((String) item.get("id"));
+            if (e != null) {
+                item.put("path", e.path);
+                item.put("name", e.name);
+                item.put("owner", e.owner);
+            }
+        }
+        Map<String,Object> out = new HashMap<>();
+        out.put("success", true);
+        out.put("items", items);
+        sendJson(resp, out);
+    }
+
+    /**
+     * Share one of the caller's own files. The path is resolved under the caller's home (any path for the admin)
+     * and stored as the actual HDFS path, so a share can never point outside its owner's directory.
+     */
     private void handleCreate(HttpServletRequest req, HttpServletResponse resp) throws IOException {
-        String path = req.getParameter("path");
+        String user = getSessionUsername(req);
+        if (user == null) {
+            sendError(resp, "Not logged in");
+            return;
+        }
         String name = req.getParameter("name");
         String daysStr = req.getParameter("days");
-        if (path == null || path.isEmpty()) {
+        String requested = req.getParameter("path");
+        if (requested == null || requested.isEmpty()) {
             sendError(resp, "path is required");
             return;
         }
+        String path;
+        try {
+            if (hasParentSegment(requested)) throw new SecurityException("Access denied");
+            path = resolveToActualPath(req, requested);
+        } catch (SecurityException e) {
+            sendError(resp, e.getMessage());
+            return;
+        }
+        if (!path.startsWith("/") || path.startsWith("/.type/") || path.startsWith("/.trash")) {
+            // the virtual /.type and /.trash views are not files that can be shared
+            sendError(resp, "path cannot be shared");
+            return;
+        }
         long expireAt = 0;
         try {
             int days = Integer.parseInt(daysStr);
             if (days > 0) expireAt = System.currentTimeMillis() + (long)days * 24L * 3600L * 1000L;
         } catch (Exception ignore) {}
         try {
-            ShareService.Entry e = shareService.add(path, name == null ? "" : name, expireAt);
+            ShareService.Entry e = ShareService.newEntry(path, name == null ? "" : name, expireAt, user);
+            // signed=true issues a self-validating link that public access can check without a store lookup
+            if ("true".equals(req.getParameter("signed"))) {
+                e.token = shareTokens.issue(e, req.getParameter("perms"));
+            }
+            shareService.add(e);
             Map<String,Object> out = new HashMap<>();
             out.put("success", true);
             out.put("item", e);
             // also provide a public link path
             String ctx = req.getContextPath();
-            String link = ctx + "/api/share/public?id=" + e.id;
+            String link = ctx + "/api/share/public?id=" + URLEncoder.encode(e.token != null ? e.token : e.id, StandardCharsets.UTF_8);
             // include absolute URL fallback
             String origin = req.getScheme() + "://" + req.getServerName() + (req.getServerPort() == 80 || req.getServerPort() == 443 ? "" : ":" + req.getServerPort());
             out.put("link", origin + link);
             sendJson(resp, out);
             // admin log
-            LogUtil.log(getServletContext(), getSessionUsername(req), "share-create", path, "id=" + e.id + (name != null ? ", name=" + name : ""));
+            LogUtil.log(getServletContext(), user, "share-create", path, "id=" + e.id + (name != null ? ", name=" + name : ""));
         } catch (Exception e) {
             sendError(resp, "Create share failed: " + e.getMessage());
         }
@@ -99,38 +188,29 @@ public class ShareServlet extends HttpServlet {
     private void handleRemove(HttpServletRequest req, HttpServletResponse resp) throws IOException {
         String id = req.getParameter("id");
         if (id == null || id.isEmpty()) { sendError(resp, "id required"); return; }
+        String user = getSessionUsername(req);
+        if (user == null) { sendError(resp, "Not logged in"); return; }
         try {
+            ShareService.Entry existing = shareService.getById(id);
+            if (existing == null || !(DEFAULT_ADMIN_USER.equals(user) || ShareService.isOwnedBy(existing, user))) {
+                sendError(resp, "share not found");
+                return;
+            }
+            // signed links validate without the store, so they have to be revoked explicitly; revoke first so a
+            // failure to tell the other nodes leaves the share in place to be removed again
+            if (existing.token != null) shareTokens.revoke(existing);
             boolean ok = shareService.remove(id);
             Map<String,Object> out = new HashMap<>();
             out.put("success", ok);
             sendJson(resp, out);
-            LogUtil.log(getServletContext(), getSessionUsername(req), "share-remove", id, ok ? "成功" : "失败");
+            LogUtil.log(getServletContext(), user, "share-remove", id, ok ? "成功" : "失败");
         } catch (Exception e) {
             sendError(resp, "Remove failed: " + e.getMessage());
         }
     }
 
-    private String getSessionUsername(HttpServletRequest req) {
-        HttpSession session = req.getSession(false);
-        if (session != null) {
-            Object user = session.getAttribute("username");
-            if (user != null) {
-                return user.toString();
-            }
-        }
-        return null;
-    }
-
-    private void sendJson(HttpServletResponse resp, Object data) throws IOException {
-        resp.setContentType("application/json;charset=UTF-8");
-        mapper.writeValue(resp.getWriter(), data);
-    }
-
-    private void sendError(HttpServletResponse resp, String msg) throws IOException {
-        resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
-        Map<String,Object> out = new HashMap<>();
-        out.put("success", false);
-        out.put("message", msg);
-        sendJson(resp, out);
+    static boolean hasParentSegment(String path) {
+        for (String part : path.split("/")) if ("..".equals(part)) return true;
+        return false;
     }
 }
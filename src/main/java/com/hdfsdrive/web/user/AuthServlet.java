@@ -1,6 +1,7 @@
 package com.hdfsdrive.web.user;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hdfsdrive.core.AvatarStore;
 import com.hdfsdrive.core.HdfsService;
 import com.hdfsdrive.core.User;
 import com.hdfsdrive.core.UserDao;
@@ -61,9 +62,9 @@ public class AuthServlet extends HttpServlet {
                 out.put("loggedIn", true);
                 out.put("userId", s.getAttribute("userId"));
                 out.put("username", s.getAttribute("username"));
-                // include avatar if available
+                // include avatar if available; the session holds only the AvatarStore key
                 Object avatar = s.getAttribute("avatar");
-                if (avatar != null) out.put("avatar", avatar);
+                if (avatar != null) out.put("avatar", AvatarStore.url(req.getContextPath(), String.valueOf(avatar), AvatarStore.SMALL_SIZE));
             } else {
                 out.put("loggedIn", false);
             }
@@ -110,14 +111,20 @@ public class AuthServlet extends HttpServlet {
                 sendJson(resp, mapOf("success", false, "message", "密码错误"));
                 return;
             }
+            if (!u.isActive()) {
+                sendJson(resp, mapOf("success", false, "message", "账号已停用"));
+                return;
+            }
+            String avatar = AvatarStore.get(getServletContext()).migrate(u);
             HttpSession s = req.getSession(true);
             s.setAttribute("userId", u.getId());
             s.setAttribute("username", u.getUsername());
-            if (u.getAvatar() != null) s.setAttribute("avatar", u.getAvatar());
+            if (avatar != null) s.setAttribute("avatar", avatar);
             // set session timeout to 2 hours
             s.setMaxInactiveInterval(2 * 60 * 60);
 
-            sendJson(resp, mapOf("success", true, "userId", u.getId(), "username", u.getUsername(), "avatar", u.getAvatar()));
+            sendJson(resp, mapOf("success", true, "userId", u.getId(), "username", u.getUsername(),
+                    "avatar", AvatarStore.url(req.getContextPath(), avatar, AvatarStore.SMALL_SIZE)));
         } catch (Exception e) {
             // always append detailed log for later inspection
             appendAuthLog(req, e);
@@ -0,0 +1,57 @@
+package com.hdfsdrive.web.user;
+
+import com.hdfsdrive.core.AvatarStore;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * GET /api/avatar/&lt;key&gt;?s=&lt;size&gt; : a stored avatar. Keys are content hashes, so a key's image never changes
+ * and the response may be cached for a year; the ETag lets a client that lost that cache revalidate with a 304.
+ * The size is rounded up to one of the stored sizes.
+ */
+@WebServlet("/api/avatar/*")
+public class AvatarServlet extends HttpServlet {
+    private static final String CACHE_CONTROL = "public, max-age=31536000, immutable";
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        String key = req.getPathInfo() == null ? "" : req.getPathInfo().substring(1);
+        if (!AvatarStore.isKey(key)) {
+            resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        int size = AvatarStore.DEFAULT_SIZE;
+        String s = req.getParameter("s");
+        if (s != null && !s.isEmpty()) {
+            try {
+                size = Integer.parseInt(s);
+            } catch (NumberFormatException ignore) {
+                // keep the default
+            }
+        }
+        size = AvatarStore.servedSize(size);
+        File f = AvatarStore.get(getServletContext()).file(key, size);
+        if (!f.isFile()) {
+            resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        String etag = "\"" + key.substring(0, key.indexOf('.')) + "-" + size + "\"";
+        resp.setHeader("Cache-Control", CACHE_CONTROL);
+        resp.setHeader("ETag", etag);
+        String ifNoneMatch = req.getHeader("If-None-Match");
+        if (ifNoneMatch != null && (ifNoneMatch.contains(etag) || ifNoneMatch.trim().equals("*"))) {
+            resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        resp.setContentType(key.endsWith(".png") ? "image/png" : "image/jpeg");
+        resp.setContentLengthLong(f.length());
+        Files.copy(f.toPath(), resp.getOutputStream());
+    }
+}
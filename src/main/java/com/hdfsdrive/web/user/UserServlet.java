@@ -1,6 +1,7 @@
 package com.hdfsdrive.web.user;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hdfsdrive.core.AvatarStore;
 import com.hdfsdrive.core.LogUtil;
 import com.hdfsdrive.core.User;
 import com.hdfsdrive.core.UserDao;
@@ -12,14 +13,15 @@ import jakarta.servlet.http.HttpServletResponse;
 import jakarta.servlet.http.HttpSession;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.Base64;
 import java.util.HashMap;
 import java.util.Map;
 
 @WebServlet("/api/user")
 public class UserServlet extends HttpServlet {
+    // the profile page shows the avatar at 110 CSS px, 220 device px on 2x screens; 256 is the smallest of
+    // AvatarStore.SIZES that covers it, so the URL names the file actually served
+    private static final int AVATAR_PAGE_SIZE = 256;
     private final ObjectMapper mapper = new ObjectMapper();
 
     @Override
@@ -42,7 +44,7 @@ public class UserServlet extends HttpServlet {
             out.put("user", mapOf(
                     "id", u.getId(),
                     "username", u.getUsername(),
-                    "avatar", u.getAvatar(),
+                    "avatar", AvatarStore.url(req.getContextPath(), AvatarStore.get(getServletContext()).migrate(u), AVATAR_PAGE_SIZE),
                     "email", u.getEmail(),
                     "phone", u.getPhone()
             ));
@@ -92,72 +94,44 @@ public class UserServlet extends HttpServlet {
 
             if (email == null || email.trim().isEmpty()) email = existingUser.getEmail();
             if (phone == null || phone.trim().isEmpty()) phone = existingUser.getPhone();
-            // if avatar not provided, keep existing avatar
-            if (avatar == null || avatar.trim().isEmpty()) {
-                avatar = existingUser.getAvatar();
-            }
+            // only an uploaded image (data: URL) changes the avatar; anything else, including the page sending back
+            // the URL it displays, keeps the current one
             String ctxPath = req.getContextPath() == null ? "" : req.getContextPath();
-            String savedAvatarPath = null;
-            String previousAvatar = existingUser.getAvatar();
-
+            String previousAvatar = AvatarStore.get(getServletContext()).migrate(existingUser);
             if (avatar != null && avatar.startsWith("data:")) {
                 try {
-                    int comma = avatar.indexOf(',');
-                    if (comma > 0) {
-                        String meta = avatar.substring(5, comma);
-                        String data = avatar.substring(comma + 1);
-                        String mime = meta.split(";")[0];
-                        String ext = "png";
-                        if (mime.contains("jpeg") || mime.contains("jpg")) ext = "jpg";
-                        else if (mime.contains("gif")) ext = "gif";
-                        else if (mime.contains("bmp")) ext = "bmp";
-                        byte[] bytes = Base64.getDecoder().decode(data);
-                        String avatarsDir = getServletContext().getRealPath("/avatars");
-                        if (avatarsDir == null) avatarsDir = System.getProperty("java.io.tmpdir") + File.separator + "avatars";
-                        File dir = new File(avatarsDir);
-                        if (!dir.exists()) dir.mkdirs();
-                        String filename = "avatar_" + id + "_" + System.currentTimeMillis() + "." + ext;
-                        File outFile = new File(dir, filename);
-                        try (FileOutputStream fos = new FileOutputStream(outFile)) { fos.write(bytes); }
-                        savedAvatarPath = ctxPath + "/avatars/" + filename;
-                        avatar = savedAvatarPath;
-                        try {
-                            if (previousAvatar != null && previousAvatar.startsWith(ctxPath + "/avatars/") && !previousAvatar.equals(savedAvatarPath)) {
-                                String prevName = previousAvatar.substring((ctxPath + "/avatars/").length());
-                                File prevFile = new File(dir, prevName);
-                                if (prevFile.exists()) prevFile.delete();
-                            }
-                        } catch (Throwable ignore) {}
-                    }
-                } catch (Exception e) {
-                    avatar = previousAvatar;
+                    avatar = AvatarStore.get(getServletContext()).storeDataUrl(avatar);
+                } catch (IOException e) {
+                    sendJson(resp, mapOf("success", false, "message", "头像保存失败: " + e.getMessage()));
+                    return;
                 }
+            } else {
+                avatar = previousAvatar;
             }
 
-            try { UserDao.ensureAvatarColumnIsText(); } catch (Exception ignore) {}
-            try {
-                if (avatar != null && avatar.length() > 2000) {
-                    if (savedAvatarPath != null && savedAvatarPath.length() < 2000) avatar = savedAvatarPath;
-                    else avatar = null;
-                }
-            } catch (Throwable ignore) {}
-
             boolean ok;
             try {
                 ok = UserDao.updateUser(id, newUsername, newPassword, avatar, email, phone);
             } catch (java.sql.SQLException sqe) {
-                try {
-                    ok = UserDao.updateUser(id, newUsername, newPassword, savedAvatarPath, email, phone);
-                } catch (Exception ex2) {
-                    sendJson(resp, mapOf("success", false, "message", "保存失败: " + sqe.getMessage()));
-                    return;
-                }
+                sendJson(resp, mapOf("success", false, "message", "保存失败: " + sqe.getMessage()));
+                return;
             }
 
             if (ok) {
+                // files from before the avatar store, written under /avatars by earlier versions of this servlet
+                if (previousAvatar != null && !previousAvatar.equals(avatar) && previousAvatar.startsWith(ctxPath + "/avatars/")) {
+                    try {
+                        String avatarsDir = getServletContext().getRealPath("/avatars");
+                        if (avatarsDir != null) {
+                            File prevFile = new File(avatarsDir, new File(previousAvatar).getName());
+                            if (prevFile.exists()) prevFile.delete();
+                        }
+                    } catch (Throwable ignore) {}
+                }
                 s.setAttribute("username", newUsername);
-                s.setAttribute("avatar", avatar);
-                sendJson(resp, mapOf("success", true, "avatar", avatar, "email", email, "phone", phone));
+                if (avatar != null) s.setAttribute("avatar", avatar);
+                else s.removeAttribute("avatar");
+                sendJson(resp, mapOf("success", true, "avatar", AvatarStore.url(ctxPath, avatar, AVATAR_PAGE_SIZE), "email", email, "phone", phone));
                 LogUtil.log(getServletContext(), newUsername, "update-user-info", "用户信息已更新");
             } else {
                 sendJson(resp, mapOf("success", false, "message", "更新失败"));
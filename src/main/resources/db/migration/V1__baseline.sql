@@ -448,13 +448,13 @@ CREATE TABLE IF NOT EXISTS member_levels (
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='会员等级配置表';
 
 -- Insert default member levels
-INSERT INTO member_levels (level_name, level_code, min_points, min_orders, min_amount, discount_rate, benefits) VALUES
+INSERT IGNORE INTO member_levels (level_name, level_code, min_points, min_orders, min_amount, discount_rate, benefits) VALUES
 ('普通会员', 'NORMAL', 0, 0, 0.00, 100.00, '基础租车服务'),
 ('黄金会员', 'GOLD', 1000, 5, 5000.00, 95.00, '95折优惠,优先取车,专属客服'),
 ('钻石会员', 'DIAMOND', 5000, 20, 20000.00, 90.00, '9折优惠,免押金,免费升级,VIP通道');
 
 -- Insert default vehicle categories
-INSERT INTO vehicle_categories (category_name, category_code, description, sort_order) VALUES
+INSERT IGNORE INTO vehicle_categories (category_name, category_code, description, sort_order) VALUES
 ('经济型', 'ECONOMY', '经济实惠，适合日常代步', 1),
 ('舒适型', 'COMFORT', '舒适宽敞，适合商务出行', 2),
 ('SUV', 'SUV', '空间大，适合家庭出游', 3),
@@ -0,0 +1,33 @@
+-- Bring a users table created by the old UserDao DDL up to the columns the DAOs expect.
+-- 旧版 UserDao 建的 users 表缺少部分列；每列只在缺失时添加（MySQL 没有 ADD COLUMN IF NOT EXISTS）。
+
+SET @ddl = IF((SELECT COUNT(*) FROM information_schema.columns WHERE table_schema = DATABASE() AND table_name = 'users' AND column_name = 'created_at') = 0, 'ALTER TABLE users ADD COLUMN created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP', 'DO 0');
+PREPARE stmt FROM @ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+SET @ddl = IF((SELECT COUNT(*) FROM information_schema.columns WHERE table_schema = DATABASE() AND table_name = 'users' AND column_name = 'password') = 0, 'ALTER TABLE users ADD COLUMN password VARCHAR(255) DEFAULT NULL', 'DO 0');
+PREPARE stmt FROM @ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+SET @ddl = IF((SELECT COUNT(*) FROM information_schema.columns WHERE table_schema = DATABASE() AND table_name = 'users' AND column_name = 'email') = 0, 'ALTER TABLE users ADD COLUMN email VARCHAR(255) DEFAULT NULL', 'DO 0');
+PREPARE stmt FROM @ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+SET @ddl = IF((SELECT COUNT(*) FROM information_schema.columns WHERE table_schema = DATABASE() AND table_name = 'users' AND column_name = 'phone') = 0, 'ALTER TABLE users ADD COLUMN phone VARCHAR(50) DEFAULT NULL', 'DO 0');
+PREPARE stmt FROM @ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+-- avatar may hold a long path or data URL: add it as TEXT, or widen a short VARCHAR
+SET @ddl = IF((SELECT COUNT(*) FROM information_schema.columns WHERE table_schema = DATABASE() AND table_name = 'users' AND column_name = 'avatar') = 0, 'ALTER TABLE users ADD COLUMN avatar TEXT DEFAULT NULL', 'DO 0');
+PREPARE stmt FROM @ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+SET @ddl = IF((SELECT COUNT(*) FROM information_schema.columns WHERE table_schema = DATABASE() AND table_name = 'users' AND column_name = 'avatar' AND data_type NOT LIKE '%text%' AND data_type NOT LIKE '%blob%' AND (character_maximum_length IS NULL OR character_maximum_length < 2048)) > 0, 'ALTER TABLE users MODIFY COLUMN avatar TEXT DEFAULT NULL', 'DO 0');
+PREPARE stmt FROM @ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
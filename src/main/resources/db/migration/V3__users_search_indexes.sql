@@ -0,0 +1,12 @@
+-- Admin user search matches username/email/phone prefixes; users tables created by the old UserDao DDL have no
+-- index on email or phone. 只在缺少以该列开头的索引时添加。
+
+SET @ddl = IF((SELECT COUNT(*) FROM information_schema.statistics WHERE table_schema = DATABASE() AND table_name = 'users' AND column_name = 'email' AND seq_in_index = 1) = 0, 'ALTER TABLE users ADD INDEX idx_email (email)', 'DO 0');
+PREPARE stmt FROM @ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+SET @ddl = IF((SELECT COUNT(*) FROM information_schema.statistics WHERE table_schema = DATABASE() AND table_name = 'users' AND column_name = 'phone' AND seq_in_index = 1) = 0, 'ALTER TABLE users ADD INDEX idx_phone (phone)', 'DO 0');
+PREPARE stmt FROM @ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
@@ -0,0 +1,7 @@
+-- Account status (ACTIVE / DISABLED / DELETING); users tables created by the old UserDao DDL have no status column.
+-- 删除用户时先把账号标记为 DELETING，后台清理完成后再删除该行。
+
+SET @ddl = IF((SELECT COUNT(*) FROM information_schema.columns WHERE table_schema = DATABASE() AND table_name = 'users' AND column_name = 'status') = 0, 'ALTER TABLE users ADD COLUMN status VARCHAR(20) DEFAULT ''ACTIVE''', 'DO 0');
+PREPARE stmt FROM @ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
@@ -0,0 +1,7 @@
+-- Booking overlap checks (OrderServlet.createOrder, VehicleServlet availability search) look up a vehicle's orders by
+-- time: vehicle_id = ? AND pickup_time < ? AND return_time > ?. 只在缺少该索引时添加。
+
+SET @ddl = IF((SELECT COUNT(*) FROM information_schema.statistics WHERE table_schema = DATABASE() AND table_name = 'orders' AND index_name = 'idx_vehicle_time') = 0, 'ALTER TABLE orders ADD INDEX idx_vehicle_time (vehicle_id, pickup_time, return_time)', 'DO 0');
+PREPARE stmt FROM @ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
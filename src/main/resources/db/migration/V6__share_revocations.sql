@@ -0,0 +1,11 @@
+-- Revoked signed share links (ShareRevocationList). Every node polls this table, so removing a signed share on one
+-- node stops its link on all of them. 吊销记录保留到链接本身过期（expire_at 为 0 表示永不过期）。
+
+CREATE TABLE IF NOT EXISTS share_revocations (
+    seq BIGINT AUTO_INCREMENT PRIMARY KEY,
+    share_id VARCHAR(64) NOT NULL,
+    expire_at BIGINT NOT NULL DEFAULT 0,
+    revoked_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    UNIQUE KEY uk_share_id (share_id),
+    INDEX idx_expire_at (expire_at)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='分享链接吊销表';
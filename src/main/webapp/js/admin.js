@@ -896,9 +896,17 @@
      ];
      renderUsers(usersCache);
    }
-    async function loadUsers(){
+   // paging state: the server returns newest-first pages; nextBefore continues after the last row shown
+   let usersNextBefore = null;
+   let usersTotal = null;
+   let usersQuery = '';
+   let usersSearchTimer = null;
+    async function loadUsers(append){
+      append = append === true;
       try{
-        const url = base + '/api/admin/users';
+        let url = base + '/api/admin/users?limit=50';
+        if (append && usersNextBefore != null) url += '&before=' + encodeURIComponent(usersNextBefore);
+        if (usersQuery) url += '&q=' + encodeURIComponent(usersQuery);
         const data = await fetchJson(url);
         // Backend should return { users: [...] } on success. Some error cases return { success: false, message: '...' }
        if (data && data.success === false) {
@@ -908,7 +916,9 @@
          enableMockUsers();
          return;
        }
-       usersCache = data.users || [];
+       usersCache = append ? usersCache.concat(data.users || []) : (data.users || []);
+       usersNextBefore = data.hasMore ? data.nextBefore : null;
+       usersTotal = data.total != null ? data.total : null;
        renderUsers(usersCache);
       }catch(e){
        const out = el('userList'); if (out) {
@@ -954,33 +964,51 @@
       const isRoleAdmin = ['admin','administrator','root','super'].some(k => roleLower.includes(k));
       const displayRole = (isRootUser || isRoleAdmin) ? 'admin' : (u.role || 'user');
       const roleBadge = `<span class="badge ${displayRole === 'admin' ? 'badge-red' : 'badge-blue'}">${escapeHtml(displayRole)}</span>`;
+      // accounts being removed in the background stay listed until their HDFS home is gone
+      const deleting = u.status && u.status !== 'ACTIVE';
+      const statusBadge = deleting ? ` <span class="badge badge-orange">${u.status === 'DELETING' ? '删除中' : '已停用'}</span>` : '';
        tr.innerHTML = `
         <td>
             <div class="file-cell">
                 <img src="${avatarUrl}" alt="avatar" style="width:32px; height:32px; border-radius:50%; object-fit:cover;">
-                <span class="file-name">${escapeHtml(uname)}</span>
+                <span class="file-name">${escapeHtml(uname)}</span>${statusBadge}
             </div>
         </td>
         <td>${roleBadge}</td>
         <td class="text-muted">${new Date(u.createdAt||0).toLocaleString()}</td>
         <td style="text-align:center;">
             <button class="btn btn-xs" data-name="${escapeHtml(uname)}" data-action="imp">重置密码</button>
-            <button class="btn btn-xs btn-ghost-danger" data-name="${escapeHtml(uname)}" data-action="del">删除</button>
+            <button class="btn btn-xs btn-ghost-danger" data-name="${escapeHtml(uname)}" data-action="del"${deleting ? ' disabled' : ''}>删除</button>
         </td>`;
        tb.appendChild(tr);
      });
      table.appendChild(tb);
      wrapper.appendChild(table);
      out.appendChild(wrapper);
+     if (!useMockUsers) {
+       const more = document.createElement('div');
+       more.className = 'muted'; more.style.marginTop = '8px';
+       more.textContent = usersTotal != null ? `已显示 ${list.length} / ${usersTotal} 个用户 ` : `已显示 ${list.length} 个用户 `;
+       if (usersNextBefore != null) {
+         const btn = document.createElement('button'); btn.className = 'btn btn-xs'; btn.textContent = '加载更多';
+         btn.addEventListener('click', () => loadUsers(true));
+         more.appendChild(btn);
+       }
+       out.appendChild(more);
+     }
      out.querySelectorAll('button[data-action="imp"]').forEach(b=>b.addEventListener('click', ()=>{ const n=b.getAttribute('data-name'); if (!confirm('确定重置用户 '+n+' 的密码吗?')) return; adminResetPwd(n); }));
      out.querySelectorAll('button[data-action="del"]').forEach(b=>b.addEventListener('click', ()=>{ const n=b.getAttribute('data-name'); if (!confirm('确定删除用户 '+n+' ?')) return; adminDeleteUser(n); }));
    }
 
    function renderUsersFilter(q){
      const f = q && q.trim().toLowerCase();
-     if (!f) return renderUsers(usersCache);
-     const filtered = usersCache.filter(u => (u.username||'').toLowerCase().includes(f));
-     renderUsers(filtered);
+     if (useMockUsers) {
+       if (!f) return renderUsers(usersCache);
+       return renderUsers(usersCache.filter(u => (u.username||'').toLowerCase().includes(f)));
+     }
+     // server-side prefix search on username / email / phone
+     clearTimeout(usersSearchTimer);
+     usersSearchTimer = setTimeout(() => { usersQuery = q ? q.trim() : ''; usersNextBefore = null; loadUsers(); }, 250);
    }
 
    async function openNewUserModal(){
@@ -1015,7 +1043,11 @@
      try{
        const url = base + '/api/admin/users?username=' + encodeURIComponent(username);
        if (useMockUsers) { usersCache = usersCache.filter(u=>u.username!==username); renderUsers(usersCache); }
-       else { await fetchJson(url, { method:'DELETE' }); await loadUsers(); }
+       else {
+         const r = await fetchJson(url, { method:'DELETE' });
+         if (r && r.success === false) { alert(r.message || '删除失败'); return; }
+         await loadUsers();
+       }
      }catch(e){ alert(e.message || (e.code===404?('接口未实现: '+e.url):e)); }
    }
 
@@ -1776,7 +1776,7 @@ class CloudDrive {
             const resp = await fetch(url);
             const data = await this.parseJson(resp);
             if (data.success) {
-                const items = (data.items || []).map(it => ({ id: it.id, path: it.path, name: it.name, createdAt: it.createdAt, expireAt: it.expireAt }));
+                const items = (data.items || []).map(it => ({ id: it.id, path: it.path, name: it.name, createdAt: it.createdAt, expireAt: it.expireAt, token: it.token }));
                 this.renderShareList(items);
             } else {
                 this.showError('获取分享列表失败: ' + (data.message || '未知错误'));
@@ -1842,7 +1842,7 @@ class CloudDrive {
                 });
 
                 row.querySelector('.open-share').addEventListener('click', async () => {
-                    const id = it.id;
+                    const id = it.token || it.id;
                     // verify share exists before opening to avoid raw 404 in new window
                     try {
                         const check = await fetch(`${this.base}/api/share/public?id=${encodeURIComponent(id)}`);
@@ -1855,7 +1855,7 @@ class CloudDrive {
                             return;
                         }
                         // open the share view
-                        const url = `${this.base}/share.html?id=${encodeURIComponent(it.id)}`;
+                        const url = `${this.base}/share.html?id=${encodeURIComponent(id)}`;
                         window.open(url, '_blank');
                     } catch (err) {
                         this.showError('无法打开分享: ' + err.message);
@@ -1863,7 +1863,7 @@ class CloudDrive {
                 });
 
                 row.querySelector('.copy-share').addEventListener('click', async () => {
-                    const id = it.id;
+                    const id = it.token || it.id;
                     const url = `${this.base}/share.html?id=${encodeURIComponent(id)}`;
                     try {
                         await navigator.clipboard.writeText(url);
@@ -0,0 +1,121 @@
+package com.carrental.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/** Checks DayBitmap against java.util.BitSet on random sets of day ranges. */
+public class DayBitmapTest {
+    // spans several 1024-day chunks
+    private static final int DAYS = 5000;
+    private static final int ROUNDS = 500;
+
+    private final Random random = new Random(42);
+
+    /** Random ranges: a few long rentals (run containers) or many short ones (bitmap containers). */
+    private long[][] randomRanges() {
+        boolean scattered = random.nextBoolean();
+        int n = scattered ? 50 + random.nextInt(400) : random.nextInt(20);
+        long[][] ranges = new long[n][];
+        for (int i = 0; i < n; i++) {
+            int from = random.nextInt(DAYS);
+            int len = scattered ? random.nextInt(3) : random.nextInt(400);
+            ranges[i] = new long[]{from, Math.min(DAYS - 1, from + len)};
+        }
+        return ranges;
+    }
+
+    private static BitSet bits(long[][] ranges) {
+        BitSet b = new BitSet(DAYS);
+        for (long[] r : ranges) b.set((int) r[0], (int) r[1] + 1);
+        return b;
+    }
+
+    private static void assertSame(BitSet expected, DayBitmap actual) {
+        assertEquals(expected.cardinality(), actual.cardinality());
+        assertEquals(expected.isEmpty(), actual.isEmpty());
+        List<long[]> ranges = new ArrayList<>();
+        actual.forEachRange(0, DAYS, (from, to) -> ranges.add(new long[]{from, to}));
+        List<long[]> expectedRanges = new ArrayList<>();
+        for (int i = expected.nextSetBit(0); i >= 0; ) {
+            int end = expected.nextClearBit(i);
+            expectedRanges.add(new long[]{i, end - 1});
+            i = expected.nextSetBit(end);
+        }
+        assertEquals(expectedRanges.size(), ranges.size());
+        for (int i = 0; i < ranges.size(); i++) assertTrue(Arrays.equals(expectedRanges.get(i), ranges.get(i)));
+    }
+
+    @Test
+    public void ofMatchesBitSet() {
+        for (int round = 0; round < ROUNDS; round++) {
+            long[][] ranges = randomRanges();
+            assertSame(bits(ranges), DayBitmap.of(ranges));
+        }
+    }
+
+    @Test
+    public void andOrMatchBitSet() {
+        for (int round = 0; round < ROUNDS; round++) {
+            long[][] a = randomRanges(), b = randomRanges();
+            BitSet and = bits(a), or = bits(a);
+            and.and(bits(b));
+            or.or(bits(b));
+            assertSame(and, DayBitmap.of(a).and(DayBitmap.of(b)));
+            assertSame(or, DayBitmap.of(a).or(DayBitmap.of(b)));
+        }
+    }
+
+    @Test
+    public void andAllOrAllMatchBitSet() {
+        for (int round = 0; round < ROUNDS / 5; round++) {
+            List<DayBitmap> maps = new ArrayList<>();
+            BitSet and = null, or = new BitSet(DAYS);
+            for (int i = 1 + random.nextInt(6); i > 0; i--) {
+                long[][] ranges = randomRanges();
+                maps.add(DayBitmap.of(ranges));
+                BitSet b = bits(ranges);
+                if (and == null) and = (BitSet) b.clone();
+                else and.and(b);
+                or.or(b);
+            }
+            assertSame(and, DayBitmap.andAll(maps));
+            assertSame(or, DayBitmap.orAll(maps));
+        }
+    }
+
+    @Test
+    public void partialRangesMatchBitSet() {
+        for (int round = 0; round < ROUNDS; round++) {
+            long[][] ranges = randomRanges();
+            BitSet expected = bits(ranges);
+            DayBitmap actual = DayBitmap.of(ranges);
+            int from = random.nextInt(DAYS), to = from + random.nextInt(DAYS - from);
+            assertEquals(expected.get(from, to + 1).cardinality(), actual.cardinality(from, to));
+            assertEquals(expected.get(from), actual.contains(from));
+            List<long[]> seen = new ArrayList<>();
+            actual.forEachRange(from, to, (a, b) -> seen.add(new long[]{a, b}));
+            long covered = 0;
+            for (long[] r : seen) {
+                assertTrue(r[0] >= from && r[1] <= to && r[0] <= r[1]);
+                assertEquals(r[1] - r[0] + 1, expected.get((int) r[0], (int) r[1] + 1).cardinality());
+                covered += r[1] - r[0] + 1;
+            }
+            assertEquals(actual.cardinality(from, to), covered);
+        }
+    }
+
+    @Test
+    public void emptyInputs() {
+        assertTrue(DayBitmap.of(new long[0][]).isEmpty());
+        assertTrue(DayBitmap.andAll(new ArrayList<>()).isEmpty());
+        assertEquals(0L, DayBitmap.range(10, 20).cardinality(30, 20));
+    }
+}
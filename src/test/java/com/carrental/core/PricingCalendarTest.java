@@ -0,0 +1,87 @@
+package com.carrental.core;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PricingCalendarTest {
+    private static final LocalDate TODAY = LocalDate.now();
+
+    private static PricingCalendar calendar(PricingCalendar.Rule... rules) {
+        PricingCalendar p = new PricingCalendar();
+        p.replaceRules(List.of(rules));
+        return p;
+    }
+
+    private static PricingCalendar.Rule vehicleRule(long id, long vehicleId, LocalDate from, LocalDate to, String price) {
+        return new PricingCalendar.Rule(id, vehicleId, 0, 0, null, from, to, new BigDecimal(price), null, null);
+    }
+
+    private static VehiclePricingCache.Snapshot vehicle(long id, BigDecimal dailyPrice) {
+        return new VehiclePricingCache.Snapshot(id, 0, 0, VehicleAvailability.RENTABLE_STATUS, dailyPrice, null);
+    }
+
+    @Test
+    public void daysWithoutRulesCostTheDailyPrice() throws Exception {
+        PricingCalendar p = calendar();
+        PricingCalendar.Quote q = p.quote(vehicle(1, new BigDecimal("199.50")), TODAY, 3);
+        assertEquals(new BigDecimal("598.50"), q.total);
+        assertFalse(q.capped);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void nullDailyPriceWithoutRuleIsRefused() throws Exception {
+        calendar().quote(vehicle(1, null), TODAY, 2);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void nullDailyPriceIsRefusedOnceTheRuleEnds() throws Exception {
+        PricingCalendar p = calendar(vehicleRule(1, 7, TODAY, TODAY.plusDays(1), "80.00"));
+        p.quote(vehicle(7, null), TODAY, 3);
+    }
+
+    @Test
+    public void nullDailyPriceIsFineWhereRulesCoverEveryDay() throws Exception {
+        PricingCalendar p = calendar(vehicleRule(1, 7, TODAY, TODAY.plusDays(1), "80.00"));
+        assertEquals(new BigDecimal("160.00"), p.quote(vehicle(7, null), TODAY, 2).total);
+    }
+
+    @Test
+    public void pricesAboveTheIntRangeAreNotTruncated() throws Exception {
+        // 30 million a day is 3e9 cents, more than an int holds
+        PricingCalendar p = calendar(vehicleRule(1, 7, TODAY, TODAY.plusDays(5), "30000000.00"));
+        assertEquals(new BigDecimal("90000000.00"), p.quote(vehicle(7, BigDecimal.ONE), TODAY, 3).total);
+    }
+
+    @Test
+    public void weeklyCapLowersTheTotal() throws Exception {
+        PricingCalendar.Rule r = new PricingCalendar.Rule(1, 7, 0, 0, null, TODAY, TODAY.plusDays(30),
+                new BigDecimal("100.00"), new BigDecimal("500.00"), null);
+        PricingCalendar.Quote q = calendar(r).quote(vehicle(7, BigDecimal.TEN), TODAY, 7);
+        assertEquals(new BigDecimal("500.00"), q.total);
+        assertTrue(q.capped);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void windowsLongerThanTheMaximumAreRefused() throws Exception {
+        calendar().quote(vehicle(1, BigDecimal.TEN), TODAY, PricingCalendar.MAX_QUOTE_DAYS + 1L);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void hugeDayCountsAreRefusedBeforeAllocating() throws Exception {
+        calendar().quote(vehicle(1, BigDecimal.TEN), TODAY, Integer.MAX_VALUE + 5L);
+    }
+
+    @Test
+    public void ruleWithoutVehicleAppliesToAll() throws Exception {
+        PricingCalendar.Rule all = new PricingCalendar.Rule(1, 0, 0, 0, TODAY, null, null, new BigDecimal("42.00"), null, null);
+        PricingCalendar p = calendar(all);
+        assertEquals(new BigDecimal("42.00"), p.quote(vehicle(3, null), TODAY, 1).total);
+    }
+}